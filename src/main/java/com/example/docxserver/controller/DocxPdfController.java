@@ -1,10 +1,21 @@
 package com.example.docxserver.controller;
 
+import com.example.docxserver.service.ArtifactBundleService;
+import com.example.docxserver.service.BatchService;
+import com.example.docxserver.service.CompareService;
 import com.example.docxserver.service.DocxPdfService;
+import com.example.docxserver.service.GracefulShutdown;
+import com.example.docxserver.service.PipelineExecutors;
+import com.example.docxserver.service.PipelineMetrics;
+import com.example.docxserver.service.SharedWorkQueue;
+import com.example.docxserver.service.TaskPriority;
+import com.example.docxserver.service.TaskProgressPublisher;
+import com.example.docxserver.service.WarmUpService;
 import lombok.extern.slf4j.Slf4j;
 import com.example.docxserver.util.tagged.dto.MatchRequest;
 import com.example.docxserver.util.tagged.dto.MatchResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -12,13 +23,20 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
-import com.example.docxserver.util.taggedPDF.TenderPdfExtractor;
+import com.example.docxserver.util.common.HttpRangeFileSender;
+import com.example.docxserver.util.common.ZipStreamUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.*;
 import java.net.URLEncoder;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.zip.ZipEntry;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.zip.ZipOutputStream;
 
 /**
@@ -29,9 +47,56 @@ import java.util.zip.ZipOutputStream;
 @RequestMapping("/api/docx-pdf")
 public class DocxPdfController {
 
+    private static final String DOCX_MEDIA_TYPE = "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
+
     @Autowired
     private DocxPdfService docxPdfService;
 
+    @Autowired
+    private PipelineExecutors pipelineExecutors;
+
+    @Autowired
+    private ArtifactBundleService artifactBundleService;
+
+    @Autowired
+    private TaskProgressPublisher progressPublisher;
+
+    @Autowired
+    private BatchService batchService;
+
+    @Autowired
+    private PipelineMetrics pipelineMetrics;
+
+    @Autowired
+    private SharedWorkQueue sharedWorkQueue;
+
+    @Autowired
+    private CompareService compareService;
+
+    @Autowired
+    private GracefulShutdown gracefulShutdown;
+
+    @Autowired
+    private WarmUpService warmUpService;
+
+    /**
+     * 流式上传（/process-stream）的最大字节数，与 multipart 上传限制保持一致
+     */
+    @Value("${docx.upload.max-bytes:104857600}")
+    private long maxUploadBytes;
+
+    /**
+     * 按页读取（/elements）单次最多页数
+     */
+    @Value("${docx.elements.max-pages:50}")
+    private int maxElementPages;
+
+    /**
+     * 同步处理（/process-sync）的文档大小上限，超过时按 /process 异步处理
+     */
+    @Value("${docx.fast-path.max-bytes:2097152}")
+    private long fastPathMaxBytes;
+
     /**
      * 上传DOCX文件
      *
@@ -69,6 +134,10 @@ public class DocxPdfController {
 
             return ResponseEntity.ok(result);
 
+        } catch (IllegalArgumentException e) {
+            result.put("success", false);
+            result.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(result);
         } catch (IOException e) {
             result.put("success", false);
             result.put("message", "文件保存失败: " + e.getMessage());
@@ -82,17 +151,25 @@ public class DocxPdfController {
      * 接收DOCX文件后立即返回taskId，后台异步执行转换和解析。
      * 使用 /status/{taskId} 轮询处理状态。
      * 处理完成后使用 /artifact/{taskId} 下载结果。
+     * 处理队列已满时返回 429，并通过 Retry-After 头提示重试间隔。
      *
      * @param file DOCX文件
      * @param includeMcid 是否在TXT输出中包含MCID和page属性（默认false）
+     * @param priority 优先级 interactive / bulk（默认按 X-Client-Id 所属通道，未配置时为 interactive）
+     * @param clientId API 客户端标识（可选，用于按客户端划分通道）
      * @return 包含taskId的JSON响应
      */
     @PostMapping("/process")
     public ResponseEntity<Map<String, Object>> processDocxToPdfTxt(
             @RequestParam("file") MultipartFile file,
-            @RequestParam(value = "includeMcid", required = false, defaultValue = "false") boolean includeMcid) {
+            @RequestParam(value = "includeMcid", required = false, defaultValue = "false") boolean includeMcid,
+            @RequestParam(value = "priority", required = false) String priority,
+            @RequestHeader(value = "X-Client-Id", required = false) String clientId) {
 
         Map<String, Object> result = new HashMap<>();
+        if (gracefulShutdown.isDraining()) {
+            return serviceUnavailable(result);
+        }
 
         // 验证文件
         if (file.isEmpty()) {
@@ -108,47 +185,332 @@ public class DocxPdfController {
             return ResponseEntity.badRequest().body(result);
         }
 
+        TaskPriority taskPriority = pipelineExecutors.resolvePriority(priority, clientId);
+
+        // 准入控制：入口队列（该优先级通道）已满时直接拒绝，避免先写盘再排队
+        // 多实例部署时任务可由其他实例处理，由共享队列的容量决定是否拒绝
+        if (!sharedWorkQueue.isEnabled() && !pipelineExecutors.hasCapacity(taskPriority)) {
+            return tooManyRequests(result);
+        }
+
         try {
-            log.info("接收文件: {}, includeMcid={}", originalFilename, includeMcid);
+            log.info("接收文件: {}, includeMcid={}, priority={}", originalFilename, includeMcid, taskPriority);
 
             // Step 1: 只保存文件，立即返回taskId
             Map<String, Object> uploadResult = docxPdfService.uploadDocx(file);
-            String taskId = (String) uploadResult.get("taskId");
-            String docxPath = (String) uploadResult.get("filePath");
-            String taskDir = (String) uploadResult.get("taskDir");
-            String originalName = (String) uploadResult.get("originalName");
+            return submitUploaded(uploadResult, includeMcid, taskPriority, result);
+
+        } catch (IllegalArgumentException e) {
+            result.put("success", false);
+            result.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(result);
+        } catch (Exception e) {
+            log.error("文件上传失败: {}", e.getMessage(), e);
+            result.put("success", false);
+            result.put("message", "上传失败: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(result);
+        }
+    }
 
-            // 更新状态为已上传
-            docxPdfService.updateTaskStatus(taskId, DocxPdfService.STATUS_UPLOADED, "文件已上传，开始处理", null);
+    /**
+     * 完整处理流程（流式上传）：请求体就是 DOCX 内容
+     *
+     * 与 /process 相同，但不经过 multipart 解析：请求体直接流式写入任务目录，
+     * 同时计算内容哈希并校验 ZIP 中央目录，最后一个字节写完即返回 taskId，大文件只写盘一次。
+     * Content-Type 需为 application/octet-stream 或 DOCX 的 MIME 类型，文件名通过 filename 参数传递。
+     *
+     * @param filename 原始文件名（.docx）
+     * @param includeMcid 是否在TXT输出中包含MCID和page属性（默认false）
+     * @param priority 优先级 interactive / bulk
+     * @param clientId API 客户端标识（可选）
+     * @param request HTTP请求（读取请求体）
+     * @return 包含taskId的JSON响应
+     */
+    @PostMapping(value = "/process-stream", consumes = {MediaType.APPLICATION_OCTET_STREAM_VALUE, DOCX_MEDIA_TYPE})
+    public ResponseEntity<Map<String, Object>> processDocxStream(
+            @RequestParam("filename") String filename,
+            @RequestParam(value = "includeMcid", required = false, defaultValue = "false") boolean includeMcid,
+            @RequestParam(value = "priority", required = false) String priority,
+            @RequestHeader(value = "X-Client-Id", required = false) String clientId,
+            HttpServletRequest request) {
 
-            log.info("文件已保存: taskId={}, originalName={}, 开始异步处理", taskId, originalName);
+        Map<String, Object> result = new HashMap<>();
+        if (gracefulShutdown.isDraining()) {
+            return serviceUnavailable(result);
+        }
 
-            // Step 2: 异步执行后续处理（移除页眉页脚、转换PDF、解析TXT）
-            docxPdfService.processDocxToPdfTxtAsync(taskId, docxPath, taskDir, includeMcid, originalName);
+        if (!filename.toLowerCase().endsWith(".docx")) {
+            result.put("success", false);
+            result.put("message", "只支持.docx文件");
+            return ResponseEntity.badRequest().body(result);
+        }
+        long contentLength = request.getContentLengthLong();
+        if (contentLength > maxUploadBytes) {
+            result.put("success", false);
+            result.put("message", "文件超过大小限制: " + maxUploadBytes + " 字节");
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(result);
+        }
 
-            // 立即返回taskId
-            result.put("success", true);
-            result.put("taskId", taskId);
-            result.put("message", "文件已接收，正在后台处理。请使用 /status/{taskId} 查询进度，处理完成后使用 /artifact/{taskId} 下载结果");
+        TaskPriority taskPriority = pipelineExecutors.resolvePriority(priority, clientId);
+        if (!sharedWorkQueue.isEnabled() && !pipelineExecutors.hasCapacity(taskPriority)) {
+            return tooManyRequests(result);
+        }
 
-            return ResponseEntity.ok(result);
+        try (InputStream body = request.getInputStream()) {
+            log.info("接收流式上传: {}, Content-Length={}, includeMcid={}, priority={}",
+                    filename, contentLength, includeMcid, taskPriority);
+            Map<String, Object> uploadResult = docxPdfService.saveDocx(body, filename, maxUploadBytes);
+            return submitUploaded(uploadResult, includeMcid, taskPriority, result);
 
+        } catch (IllegalArgumentException e) {
+            result.put("success", false);
+            result.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(result);
         } catch (Exception e) {
-            log.error("文件上传失败: {}", e.getMessage(), e);
+            log.error("流式上传失败: {}", e.getMessage(), e);
             result.put("success", false);
             result.put("message", "上传失败: " + e.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(result);
         }
     }
 
+    /**
+     * 小文档同步处理：在内存中完成转换和解析，直接在响应中返回表格/段落 TXT
+     *
+     * 不超过 docx.fast-path.max-bytes 的文档不写中间文件，处理完立即返回 TXT 和 taskId；
+     * DOCX、PDF、AI JSON、页面图片等产物随后在后台保存，完成后可通过 /status/{taskId}、/artifact/{taskId} 获取。
+     * 超过大小上限的文档按 /process 异步处理（响应中只有 taskId）。
+     *
+     * @param file DOCX文件
+     * @param includeMcid 是否在TXT输出中包含MCID和page属性（默认false）
+     * @param priority 超过大小上限时使用的优先级
+     * @param clientId API 客户端标识（可选）
+     * @return 包含taskId、tableTxt、paragraphTxt的JSON响应（sync=false 时只有taskId）
+     */
+    @PostMapping("/process-sync")
+    public ResponseEntity<Map<String, Object>> processDocxSync(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "includeMcid", required = false, defaultValue = "false") boolean includeMcid,
+            @RequestParam(value = "priority", required = false) String priority,
+            @RequestHeader(value = "X-Client-Id", required = false) String clientId) {
+
+        if (file.getSize() > fastPathMaxBytes) {
+            log.info("文件 {} 超过同步处理上限 {} 字节，改为异步处理", file.getOriginalFilename(), fastPathMaxBytes);
+            ResponseEntity<Map<String, Object>> response = processDocxToPdfTxt(file, includeMcid, priority, clientId);
+            if (response.getBody() != null) {
+                response.getBody().put("sync", false);
+            }
+            return response;
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        if (gracefulShutdown.isDraining()) {
+            return serviceUnavailable(result);
+        }
+
+        // 验证文件
+        if (file.isEmpty()) {
+            result.put("success", false);
+            result.put("message", "文件不能为空");
+            return ResponseEntity.badRequest().body(result);
+        }
+
+        String originalFilename = file.getOriginalFilename();
+        if (originalFilename == null || !originalFilename.toLowerCase().endsWith(".docx")) {
+            result.put("success", false);
+            result.put("message", "只支持.docx文件");
+            return ResponseEntity.badRequest().body(result);
+        }
+
+        if (!pipelineExecutors.hasCapacity(TaskPriority.INTERACTIVE)) {
+            return tooManyRequests(result);
+        }
+
+        try {
+            log.info("接收同步处理: {}, {} 字节, includeMcid={}", originalFilename, file.getSize(), includeMcid);
+            result.putAll(docxPdfService.processSmallDocxSync(file.getBytes(), originalFilename, includeMcid));
+            result.put("sync", true);
+            return ResponseEntity.ok(result);
+
+        } catch (RejectedExecutionException e) {
+            if (gracefulShutdown.isDraining()) {
+                return serviceUnavailable(result);
+            }
+            log.warn("处理队列已满，拒绝同步处理: {}", originalFilename);
+            return tooManyRequests(result);
+        } catch (CancellationException e) {
+            if (gracefulShutdown.isDraining()) {
+                // 停机时尚未开始的阶段被丢弃
+                return serviceUnavailable(result);
+            }
+            result.put("success", false);
+            result.put("message", "处理失败: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(result);
+        } catch (IllegalArgumentException e) {
+            result.put("success", false);
+            result.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(result);
+        } catch (Exception e) {
+            log.error("同步处理失败: {}", e.getMessage(), e);
+            result.put("success", false);
+            result.put("message", "处理失败: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(result);
+        }
+    }
+
+    /**
+     * 已保存的DOCX提交异步处理（/process 和 /process-stream 共用）
+     */
+    private ResponseEntity<Map<String, Object>> submitUploaded(Map<String, Object> uploadResult, boolean includeMcid,
+                                                               TaskPriority taskPriority, Map<String, Object> result) {
+        String taskId = (String) uploadResult.get("taskId");
+        String docxPath = (String) uploadResult.get("filePath");
+        String taskDir = (String) uploadResult.get("taskDir");
+        String originalName = (String) uploadResult.get("originalName");
+        String contentHash = (String) uploadResult.get("contentHash");
+
+        // 更新状态为已上传
+        docxPdfService.updateTaskStatus(taskId, DocxPdfService.STATUS_UPLOADED, "文件已上传，开始处理", null);
+
+        log.info("文件已保存: taskId={}, originalName={}, 开始异步处理", taskId, originalName);
+
+        // Step 2: 异步执行后续处理（移除页眉页脚、转换PDF、解析TXT）
+        try {
+            docxPdfService.processDocxToPdfTxtAsync(taskId, docxPath, taskDir, includeMcid, originalName, contentHash,
+                    taskPriority);
+        } catch (RejectedExecutionException e) {
+            // 检查容量与提交之间队列被占满，或等待处理预算的任务已达上限：清理已保存的文件后拒绝
+            log.warn("处理队列已满，拒绝任务: taskId={}, {}", taskId, e.getMessage());
+            docxPdfService.deleteTask(taskId);
+            return tooManyRequests(result);
+        } catch (IllegalArgumentException e) {
+            // 预估处理成本超过上限，无论等待多久都无法处理
+            log.warn("文档超过处理能力，拒绝任务: taskId={}, {}", taskId, e.getMessage());
+            docxPdfService.deleteTask(taskId);
+            result.put("success", false);
+            result.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(result);
+        }
+
+        // 立即返回taskId
+        result.put("success", true);
+        result.put("taskId", taskId);
+        result.put("priority", taskPriority.name().toLowerCase());
+        result.put("message", "文件已接收，正在后台处理。请使用 /status/{taskId} 查询进度，处理完成后使用 /artifact/{taskId} 下载结果");
+
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * 批量处理：一次上传多个DOCX，或一个包含DOCX的ZIP（如整个标书目录）
+     *
+     * 所有文档保存后立即返回 batchId，后台按有界窗口逐个送入处理流水线，
+     * 与其他请求在各阶段线程池中交替执行。
+     * 使用 /batch/{batchId} 查询汇总进度，完成后使用 /batch/{batchId}/artifact 下载合并结果。
+     *
+     * @param files DOCX文件或ZIP压缩包（可多个）
+     * @param includeMcid 是否在TXT输出中包含MCID和page属性（默认false）
+     * @return 包含batchId和各文档taskId的JSON响应
+     */
+    @PostMapping("/process-batch")
+    public ResponseEntity<Map<String, Object>> processBatch(
+            @RequestParam("files") List<MultipartFile> files,
+            @RequestParam(value = "includeMcid", required = false, defaultValue = "false") boolean includeMcid) {
+
+        Map<String, Object> result = new HashMap<>();
+        if (gracefulShutdown.isDraining()) {
+            return serviceUnavailable(result);
+        }
+        if (files == null || files.isEmpty()) {
+            result.put("success", false);
+            result.put("message", "文件不能为空");
+            return ResponseEntity.badRequest().body(result);
+        }
+
+        try {
+            log.info("接收批量处理: {} 个上传文件, includeMcid={}", files.size(), includeMcid);
+            BatchService.BatchInfo info = batchService.submitBatch(files, includeMcid);
+
+            result.putAll(info.toMap());
+            result.put("success", true);
+            result.put("message", "批次已接收，正在后台处理。请使用 /batch/{batchId} 查询进度，完成后使用 /batch/{batchId}/artifact 下载结果");
+            return ResponseEntity.ok(result);
+
+        } catch (IllegalArgumentException e) {
+            result.put("success", false);
+            result.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(result);
+        } catch (Exception e) {
+            log.error("批量上传失败: {}", e.getMessage(), e);
+            result.put("success", false);
+            result.put("message", "批量上传失败: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(result);
+        }
+    }
+
+    /**
+     * 查询批次汇总进度
+     *
+     * @param batchId 批次ID
+     * @return 总数、已结束数、各状态计数和每个文档的状态
+     */
+    @GetMapping("/batch/{batchId}")
+    public ResponseEntity<Map<String, Object>> getBatchStatus(@PathVariable String batchId) {
+        Map<String, Object> status = batchService.getBatchStatus(batchId);
+        if (status == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(status);
+    }
+
+    /**
+     * 下载批次合并结果（每个已完成文档的产物放在以原始文件名命名的目录下）
+     *
+     * @param batchId 批次ID
+     * @return ZIP压缩包（流式响应）
+     */
+    @GetMapping("/batch/{batchId}/artifact")
+    public ResponseEntity<StreamingResponseBody> downloadBatchArtifact(@PathVariable String batchId) {
+        try {
+            final Map<String, File> entries = batchService.collectBatchEntries(batchId);
+            if (entries == null) {
+                return ResponseEntity.notFound().build();
+            }
+
+            StreamingResponseBody body = outputStream -> {
+                long startTime = System.currentTimeMillis();
+                BufferedOutputStream bos = new BufferedOutputStream(outputStream, ZipStreamUtils.BUFFER_SIZE);
+                batchService.writeBatchZip(entries, bos);
+                bos.flush();
+                log.info("批次 artifact 流式输出完成: batchId={}, 条目数={}, 耗时={}ms",
+                        batchId, entries.size(), System.currentTimeMillis() - startTime);
+            };
+
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+            headers.setContentDispositionFormData("attachment", URLEncoder.encode("batch_" + batchId + ".zip", "UTF-8"));
+            return new ResponseEntity<>(body, headers, HttpStatus.OK);
+
+        } catch (Exception e) {
+            log.error("下载批次artifact失败: batchId={}, error={}", batchId, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     /**
      * 下载处理结果（ZIP压缩包，包含PDF和聚合TXT）
      *
+     * 任务完成时已预先生成 ZIP 包：直接发送该文件（支持 ETag / Range 断点续传，
+     * 容器支持时使用 sendfile 零拷贝）。
+     * 没有预生成包的旧任务：ZIP 条目边读边写入响应流，内存占用与文档大小无关。
+     *
      * @param taskId 任务ID
-     * @return ZIP压缩包
+     * @return ZIP压缩包（流式响应；发送预生成包时直接写入 response 并返回 null）
      */
     @GetMapping("/artifact/{taskId}")
-    public ResponseEntity<byte[]> downloadArtifact(@PathVariable String taskId) {
+    public ResponseEntity<StreamingResponseBody> downloadArtifact(@PathVariable String taskId,
+                                                                  HttpServletRequest request,
+                                                                  HttpServletResponse response) {
         try {
             // 获取任务目录
             String taskDir = docxPdfService.getTaskDir(taskId);
@@ -159,87 +521,39 @@ public class DocxPdfController {
                 return ResponseEntity.notFound().build();
             }
 
-            // 查找PDF和两个独立的TXT文件（表格和段落）
-            File pdfFile = null;
-            File tableTxtFile = null;      // {taskId}_pdf_*.txt（不含paragraph）
-            File paragraphTxtFile = null;  // {taskId}_pdf_paragraph_*.txt
-            File aiJsonFile = null;        // {originalName}.json（AI训练用）
-
-            File[] files = taskDirFile.listFiles();
-            if (files != null) {
-                for (File f : files) {
-                    String name = f.getName();
-                    if (name.endsWith(".pdf")) {
-                        pdfFile = f;
-                    } else if (name.endsWith(".json") && !name.equals("status.json")) {
-                        // AI训练用JSON（排除status.json）
-                        aiJsonFile = f;
-                    } else if (name.startsWith(taskId + "_pdf_paragraph_") && name.endsWith(".txt")) {
-                        // 段落文件：取最新的
-                        if (paragraphTxtFile == null || name.compareTo(paragraphTxtFile.getName()) > 0) {
-                            paragraphTxtFile = f;
-                        }
-                    } else if (name.startsWith(taskId + "_pdf_") && name.endsWith(".txt") && !name.contains("paragraph") && !name.contains("merged")) {
-                        // 表格文件：取最新的
-                        if (tableTxtFile == null || name.compareTo(tableTxtFile.getName()) > 0) {
-                            tableTxtFile = f;
-                        }
-                    }
-                }
+            String zipFileName = taskId + ".zip";
+
+            // 优先发送预生成的 ZIP 包
+            ArtifactBundleService.BundleManifest manifest = artifactBundleService.getBundle(taskId);
+            if (manifest != null) {
+                File bundleFile = artifactBundleService.getBundleFile(taskId, manifest);
+                HttpRangeFileSender.send(request, response, bundleFile, manifest.getETag(), zipFileName);
+                return null;
             }
 
-            // 查找图片目录
-            File imagesDir = new File(taskDirFile, "images");
+            // 收集待打包的文件（ZIP条目名 -> 文件）
+            final Map<String, File> entries = artifactBundleService.collectArtifactEntries(taskId);
 
-            // 打包成ZIP
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            try (ZipOutputStream zos = new ZipOutputStream(baos)) {
-                // PDF文件
-                if (pdfFile != null) {
-                    addFileToZip(zos, pdfFile, taskId + ".pdf");
-                }
-                // 表格TXT
-                if (tableTxtFile != null) {
-                    addFileToZip(zos, tableTxtFile, taskId + "_table.txt");
-                }
-                // 段落TXT
-                if (paragraphTxtFile != null) {
-                    addFileToZip(zos, paragraphTxtFile, taskId + "_paragraph.txt");
-                }
-                // AI训练用JSON（使用原始文件名）
-                if (aiJsonFile != null) {
-                    addFileToZip(zos, aiJsonFile, aiJsonFile.getName());
-                }
-                // 图片目录（结构：images/{filename}/0.png, 1.png, ...）
-                // ZIP中使用原始文件名作为目录名
-                if (imagesDir.exists() && imagesDir.isDirectory()) {
-                    File[] subDirs = imagesDir.listFiles(File::isDirectory);
-                    if (subDirs != null) {
-                        for (File subDir : subDirs) {
-                            File[] imageFiles = subDir.listFiles((dir, name) -> name.endsWith(".png"));
-                            if (imageFiles != null) {
-                                for (File img : imageFiles) {
-                                    addFileToZip(zos, img, "images/" + subDir.getName() + "/" + img.getName());
-                                }
-                            }
+            StreamingResponseBody body = outputStream -> {
+                long startTime = System.currentTimeMillis();
+                byte[] buffer = new byte[ZipStreamUtils.BUFFER_SIZE];
+                try (ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(outputStream, ZipStreamUtils.BUFFER_SIZE))) {
+                    for (Map.Entry<String, File> entry : entries.entrySet()) {
+                        if (!ZipStreamUtils.addFile(zos, entry.getValue(), entry.getKey(), buffer)) {
+                            log.warn("文件不存在，跳过: {}", entry.getValue().getAbsolutePath());
                         }
                     }
                 }
-            }
+                log.info("artifact 流式输出完成: taskId={}, 条目数={}, 耗时={}ms",
+                        taskId, entries.size(), System.currentTimeMillis() - startTime);
+            };
 
             // 构建响应头
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
-            String zipFileName = taskId + ".zip";
             headers.setContentDispositionFormData("attachment", URLEncoder.encode(zipFileName, "UTF-8"));
 
-            log.info("下载artifact: taskId={}, 表格={}, 段落={}, AI JSON={}, 图片目录={}",
-                    taskId,
-                    tableTxtFile != null ? tableTxtFile.getName() : "无",
-                    paragraphTxtFile != null ? paragraphTxtFile.getName() : "无",
-                    aiJsonFile != null ? "有" : "无",
-                    imagesDir.exists() ? "有" : "无");
-            return new ResponseEntity<>(baos.toByteArray(), headers, HttpStatus.OK);
+            return new ResponseEntity<>(body, headers, HttpStatus.OK);
 
         } catch (Exception e) {
             log.error("下载artifact失败: taskId={}, error={}", taskId, e.getMessage(), e);
@@ -261,23 +575,211 @@ public class DocxPdfController {
     }
 
     /**
-     * 将文件添加到ZIP压缩包
+     * 按页读取提取结果
+     *
+     * 只返回与 [fromPage, toPage] 有交集的表格和表格外段落（原文与 TXT 中一致），
+     * 通过提取时写入的按页偏移索引直接定位，耗时与文档总页数无关。
+     * 单次最多 docx.elements.max-pages 页。
+     *
+     * @param taskId 任务ID
+     * @param fromPage 起始页（1-based，含）
+     * @param toPage 结束页（含，默认等于 fromPage）
+     * @return pageCount、tables、paragraphs
      */
-    private void addFileToZip(ZipOutputStream zos, File file, String entryName) throws IOException {
-        if (!file.exists()) {
-            log.warn("文件不存在，跳过: {}", file.getAbsolutePath());
-            return;
-        }
-
-        zos.putNextEntry(new ZipEntry(entryName));
-        try (FileInputStream fis = new FileInputStream(file)) {
-            byte[] buffer = new byte[8192];
-            int len;
-            while ((len = fis.read(buffer)) > 0) {
-                zos.write(buffer, 0, len);
+    @GetMapping("/elements/{taskId}")
+    public ResponseEntity<Map<String, Object>> getElements(
+            @PathVariable String taskId,
+            @RequestParam(value = "fromPage", defaultValue = "1") int fromPage,
+            @RequestParam(value = "toPage", required = false) Integer toPage) {
+        Map<String, Object> result = new HashMap<>();
+        int lastPage = toPage != null ? toPage : fromPage;
+        if (fromPage < 1 || lastPage < fromPage) {
+            result.put("success", false);
+            result.put("message", "页码范围无效: " + fromPage + "-" + lastPage);
+            return ResponseEntity.badRequest().body(result);
+        }
+        if (lastPage - fromPage + 1 > maxElementPages) {
+            result.put("success", false);
+            result.put("message", "单次最多读取 " + maxElementPages + " 页");
+            return ResponseEntity.badRequest().body(result);
+        }
+
+        try {
+            Map<String, Object> elements = docxPdfService.getElements(taskId, fromPage, lastPage);
+            if (elements == null) {
+                result.put("success", false);
+                result.put("message", "任务不存在或尚未完成提取: " + taskId);
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(result);
             }
+            result.putAll(elements);
+            result.put("success", true);
+            return ResponseEntity.ok(result);
+        } catch (IllegalStateException e) {
+            result.put("success", false);
+            result.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(result);
+        } catch (IOException e) {
+            log.error("按页读取失败: taskId={}, error={}", taskId, e.getMessage(), e);
+            result.put("success", false);
+            result.put("message", "读取失败: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(result);
         }
-        zos.closeEntry();
+    }
+
+    /**
+     * 订阅任务进度（Server-Sent Events）
+     *
+     * 事件：
+     * - status：状态变更（内容同 /status/{taskId}），任务结束后服务端关闭连接
+     * - progress：{stage, done, total, percent}，stage 为 MCID_PRELOAD / EXTRACT_TXT / RENDER
+     *
+     * @param taskId 任务ID
+     * @return SSE 连接
+     */
+    @GetMapping(value = "/status/{taskId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamTaskStatus(@PathVariable String taskId) {
+        log.info("订阅任务进度: taskId={}", taskId);
+        return progressPublisher.subscribe(taskId, () -> docxPdfService.getTaskStatus(taskId));
+    }
+
+    /**
+     * 重新提取：沿用任务已有的 PDF，只重新执行 TXT / AI JSON 提取（如提取逻辑升级后）
+     *
+     * PDF 已不存在时从 PDF 转换缓存恢复，缓存未命中才重新转换。
+     * 任务处理中返回 409，任务不存在时返回 404，入口队列已满时返回 429，文档超过处理能力时返回 413。
+     *
+     * @param taskId 任务ID
+     * @param includeMcid 是否在TXT输出中包含MCID和page属性（默认沿用上次处理的选项）
+     * @param priority 优先级 interactive / bulk
+     * @param clientId API 客户端标识（可选）
+     * @return 任务状态
+     */
+    @PostMapping("/reprocess/{taskId}")
+    public ResponseEntity<Map<String, Object>> reprocessTask(
+            @PathVariable String taskId,
+            @RequestParam(value = "includeMcid", required = false) Boolean includeMcid,
+            @RequestParam(value = "priority", required = false) String priority,
+            @RequestHeader(value = "X-Client-Id", required = false) String clientId) {
+
+        Map<String, Object> result = new HashMap<>();
+        if (gracefulShutdown.isDraining()) {
+            return serviceUnavailable(result);
+        }
+        TaskPriority taskPriority = pipelineExecutors.resolvePriority(priority, clientId);
+        log.info("重新提取: taskId={}, includeMcid={}, priority={}", taskId, includeMcid, taskPriority);
+        try {
+            if (docxPdfService.reprocessTask(taskId, includeMcid, taskPriority) == null) {
+                result.put("success", false);
+                result.put("message", "任务不存在");
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(result);
+            }
+        } catch (IllegalStateException e) {
+            result.put("success", false);
+            result.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(result);
+        } catch (IllegalArgumentException e) {
+            result.put("success", false);
+            result.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(result);
+        } catch (RejectedExecutionException e) {
+            return tooManyRequests(result);
+        }
+        result.put("success", true);
+        result.put("taskId", taskId);
+        result.put("priority", taskPriority.name().toLowerCase());
+        result.put("message", "已提交重新提取。请使用 /status/{taskId} 查询进度，处理完成后使用 /artifact/{taskId} 下载结果");
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * 取消任务
+     *
+     * 尚未开始处理的任务立即变为 CANCELLED（200）；处理中的任务先变为 CANCELLING（202），
+     * 在下一个检查点（阶段之间、逐页/逐元素处理之间）停止并释放线程后变为 CANCELLED。
+     * 任务已结束时返回 409，任务不存在时返回 404。
+     *
+     * @param taskId 任务ID
+     * @return 取消后的任务状态
+     */
+    @DeleteMapping("/task/{taskId}")
+    public ResponseEntity<Map<String, Object>> cancelTask(@PathVariable String taskId) {
+        log.info("取消任务: taskId={}", taskId);
+        Map<String, Object> status = docxPdfService.cancelTask(taskId);
+        Object state = status.get("status");
+        if (DocxPdfService.STATUS_NOT_FOUND.equals(state)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(status);
+        }
+        if (DocxPdfService.STATUS_CANCELLING.equals(state)) {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(status);
+        }
+        if (!DocxPdfService.STATUS_CANCELLED.equals(state)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(status);
+        }
+        return ResponseEntity.ok(status);
+    }
+
+    /**
+     * 就绪检查（供负载均衡 / 容器探针使用）
+     *
+     * 启动预热完成前、停机排空期间返回 503，其余时间返回 200。
+     *
+     * @return 就绪状态
+     */
+    @GetMapping("/ready")
+    public ResponseEntity<Map<String, Object>> ready() {
+        Map<String, Object> status = warmUpService.getStatus();
+        if (!warmUpService.isReady()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(status);
+        }
+        return ResponseEntity.ok(status);
+    }
+
+    /**
+     * 处理流水线指标（JSON）
+     *
+     * 各阶段耗时分位数（p50/p95/p99）、页/秒、字形/秒、队列深度、MCID缓存命中率、存储占用
+     *
+     * @return 指标快照
+     */
+    @GetMapping("/metrics")
+    public ResponseEntity<Map<String, Object>> getMetrics() {
+        return ResponseEntity.ok(pipelineMetrics.snapshot());
+    }
+
+    /**
+     * 处理流水线指标（Prometheus 文本格式）
+     *
+     * @return Prometheus exposition format
+     */
+    @GetMapping(value = "/metrics/prometheus", produces = "text/plain; version=0.0.4; charset=utf-8")
+    public ResponseEntity<String> getPrometheusMetrics() {
+        return ResponseEntity.ok(pipelineMetrics.toPrometheus());
+    }
+
+    /**
+     * 服务正在停机排空时返回 503，客户端（或负载均衡）改投其他实例或稍后重试
+     */
+    private ResponseEntity<Map<String, Object>> serviceUnavailable(Map<String, Object> result) {
+        int retryAfter = pipelineExecutors.getRetryAfterSeconds();
+        result.put("success", false);
+        result.put("retryAfter", retryAfter);
+        result.put("message", "服务正在停止，请稍后重试");
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter))
+                .body(result);
+    }
+
+    /**
+     * 构建 429 响应（处理队列已满）
+     */
+    private ResponseEntity<Map<String, Object>> tooManyRequests(Map<String, Object> result) {
+        int retryAfter = pipelineExecutors.getRetryAfterSeconds();
+        result.put("success", false);
+        result.put("retryAfter", retryAfter);
+        result.put("message", "服务繁忙，处理队列已满，请 " + retryAfter + " 秒后重试");
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter))
+                .body(result);
     }
 
     /**
@@ -309,17 +811,20 @@ public class DocxPdfController {
     }
 
     /**
-     * 运行DOCX与PDF比较测试
+     * DOCX与PDF比较（后台执行，结构化报告）
      *
-     * 根据taskId运行TenderPdfExtractor的比较流程：
-     * 1. compareDocxAndPdfParagraphs - 比较表格外段落
-     * 2. compareDocxAndPdfTableParagraphs - 比较表格段落
+     * 比较表格段落（DOCX为主，精确匹配 + TR内回退匹配）和表格外段落（PDF为主）。
+     * 当前产物版本已有报告时直接返回 200 和报告；否则提交后台比较并返回 202，
+     * 客户端稍后以相同请求轮询。比较队列已满时返回 429。
      *
-     * @param taskId 任务ID（对应/data/docx_server/{taskId}/目录）
-     * @return 比较结果
+     * @param taskId 任务ID
+     * @param refresh 是否忽略已有报告重新比较（默认false）
+     * @return status=COMPLETED 时带 report（matched/mismatched/missing 及按表格统计）
      */
     @GetMapping("/compare/{taskId}")
-    public ResponseEntity<Map<String, Object>> compareDocxAndPdf(@PathVariable String taskId) {
+    public ResponseEntity<Map<String, Object>> compareDocxAndPdf(
+            @PathVariable String taskId,
+            @RequestParam(value = "refresh", defaultValue = "false") boolean refresh) {
         Map<String, Object> result = new HashMap<>();
 
         if (taskId == null || taskId.trim().isEmpty()) {
@@ -330,85 +835,29 @@ public class DocxPdfController {
 
         try {
             taskId = taskId.trim();
-            // 使用项目的存储路径
-            String baseDir = "/data/docx_server/" + taskId + "/";
-
-            log.info("开始DOCX与PDF比较: taskId={}, baseDir={}", taskId, baseDir);
-
-            // 检查目录是否存在
-            File dir = new File(baseDir);
-            if (!dir.exists() || !dir.isDirectory()) {
-                result.put("success", false);
-                result.put("message", "目录不存在: " + baseDir);
-                return ResponseEntity.badRequest().body(result);
+            Map<String, Object> compare = compareService.getOrStart(taskId, refresh);
+            result.putAll(compare);
+            Object status = compare.get("status");
+            if (CompareService.STATUS_COMPLETED.equals(status)) {
+                result.put("success", true);
+                return ResponseEntity.ok(result);
             }
-
-            // 查找DOCX文件
-            File[] docxFiles = dir.listFiles(new FilenameFilter() {
-                @Override
-                public boolean accept(File d, String name) {
-                    return name.toLowerCase().endsWith(".docx");
-                }
-            });
-
-            if (docxFiles == null || docxFiles.length == 0) {
+            if (CompareService.STATUS_FAILED.equals(status)) {
                 result.put("success", false);
-                result.put("message", "目录中未找到DOCX文件: " + baseDir);
-                return ResponseEntity.badRequest().body(result);
+                result.put("message", "比较失败: " + compare.get("error"));
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(result);
             }
-
-            File docxFile = docxFiles[0];
-            log.info("找到DOCX文件: {}", docxFile.getName());
-
-            // 查找PDF表格TXT文件（{taskId}_pdf_*.txt）
-            final String currentTaskId = taskId;
-            File[] pdfTableFiles = dir.listFiles(new FilenameFilter() {
-                @Override
-                public boolean accept(File d, String name) {
-                    return name.startsWith(currentTaskId + "_pdf_") &&
-                           name.endsWith(".txt") &&
-                           !name.contains("paragraph");
-                }
-            });
-
-            if (pdfTableFiles == null || pdfTableFiles.length == 0) {
-                result.put("success", false);
-                result.put("message", "未找到PDF表格文件: " + taskId + "_pdf_*.txt");
-                return ResponseEntity.badRequest().body(result);
-            }
-
-            // 按文件名排序，取最新的
-            java.util.Arrays.sort(pdfTableFiles, new java.util.Comparator<File>() {
-                @Override
-                public int compare(File f1, File f2) {
-                    return f2.getName().compareTo(f1.getName());
-                }
-            });
-
-            File pdfTableFile = pdfTableFiles[0];
-            log.info("找到PDF表格文件: {}", pdfTableFile.getName());
-
-            // 定义输出文件路径
-            String docxTxtPath = baseDir + taskId + "_docx.txt";
-            String docxTableTxtPath = baseDir + taskId + "_docx_table.txt";
-
-            // 运行比较流程
-            log.info("步骤1: 比较DOCX和PDF的表格外段落");
-            TenderPdfExtractor.compareDocxAndPdfParagraphs(docxFile, docxTxtPath, taskId);
-
-            log.info("步骤2: 比较DOCX和PDF的表格段落");
-            TenderPdfExtractor.compareDocxAndPdfTableParagraphs(docxFile, docxTableTxtPath, pdfTableFile);
-
             result.put("success", true);
-            result.put("taskId", taskId);
-            result.put("baseDir", baseDir);
-            result.put("docxFile", docxFile.getName());
-            result.put("pdfTableFile", pdfTableFile.getName());
-            result.put("message", "比较完成，详细结果请查看控制台日志");
-
-            log.info("DOCX与PDF比较完成: taskId={}", taskId);
-            return ResponseEntity.ok(result);
+            result.put("message", "比较进行中，请稍后重试");
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(result);
 
+        } catch (IllegalArgumentException e) {
+            result.put("success", false);
+            result.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(result);
+        } catch (RejectedExecutionException e) {
+            log.warn("比较队列已满，拒绝请求: taskId={}", taskId);
+            return tooManyRequests(result);
         } catch (Exception e) {
             log.error("比较失败: taskId={}, error={}", taskId, e.getMessage(), e);
             result.put("success", false);
@@ -0,0 +1,465 @@
+package com.example.docxserver.service;
+
+import com.example.docxserver.util.docx.DocxCostEstimator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 按文档成本的准入控制
+ *
+ * 每个任务提交前由 {@link DocxCostEstimator} 预估 CPU 秒数和峰值堆内存，
+ * 所有在途任务的预估值之和不超过全局预算时立即开始，否则按优先级通道排队，
+ * 有任务结束、预算释放后再按 INTERACTIVE → BULK 的顺序启动：
+ * - 立即开始：预算足够（或当前没有在途任务，避免单个大文档永远无法开始）
+ * - 排队：预算不足，排队数未满
+ * - 拒绝：排队数已满（RejectedExecutionException，调用方返回 429），
+ *   或单个文档的预估内存超过整个内存预算（IllegalArgumentException，无论等多久都无法处理）
+ *
+ * 流水线线程池按阶段限制并发数，这里按文档大小限制总工作量：
+ * 少量超大标书不会占满内存，同时小文档不必排在它们后面。
+ */
+@Slf4j
+@Component
+public class AdmissionController {
+
+    private static final int RETRY_DELAY_SECONDS = 1;
+
+    @Value("${docx.admission.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 在途任务预估 CPU 秒数之和的上限
+     */
+    @Value("${docx.admission.cpu-budget-seconds:600}")
+    private double cpuBudgetSeconds;
+
+    /**
+     * 在途任务预估峰值堆内存之和的上限（MB），0 表示取最大堆的 60%
+     */
+    @Value("${docx.admission.heap-budget-mb:0}")
+    private long heapBudgetMb;
+
+    /**
+     * 等待预算的任务上限（两个通道合计）
+     */
+    @Value("${docx.admission.max-queued:200}")
+    private int maxQueued;
+
+    private final Map<String, DocxCostEstimator.Estimate> admitted = new HashMap<>();
+    private final Map<TaskPriority, Deque<Pending>> queues = new EnumMap<>(TaskPriority.class);
+    private final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "docx-admission-retry");
+        t.setDaemon(true);
+        return t;
+    });
+    private double cpuInFlight;
+    private long heapInFlight;
+    private long rejectedCount;
+    private boolean suspended;
+
+    /**
+     * 停机时仍在排队的任务
+     */
+    public static class QueuedTask {
+        public final String taskId;
+        public final TaskPriority priority;
+
+        QueuedTask(String taskId, TaskPriority priority) {
+            this.taskId = taskId;
+            this.priority = priority;
+        }
+    }
+
+    /**
+     * 排队等待预算的任务
+     */
+    private static class Pending {
+        final String taskId;
+        final DocxCostEstimator.Estimate estimate;
+        final TaskPriority priority;
+        final Supplier<CompletableFuture<Void>> starter;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        final long enqueueTime = System.currentTimeMillis();
+
+        Pending(String taskId, DocxCostEstimator.Estimate estimate, TaskPriority priority,
+                Supplier<CompletableFuture<Void>> starter) {
+            this.taskId = taskId;
+            this.estimate = estimate;
+            this.priority = priority;
+            this.starter = starter;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        if (heapBudgetMb <= 0) {
+            heapBudgetMb = Runtime.getRuntime().maxMemory() * 6 / 10 / (1024 * 1024);
+        }
+        for (TaskPriority priority : TaskPriority.values()) {
+            queues.put(priority, new ArrayDeque<>());
+        }
+        log.info("准入控制: enabled={}, CPU预算={}s, 内存预算={}MB, 最大排队数={}",
+                enabled, cpuBudgetSeconds, heapBudgetMb, maxQueued);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        retryScheduler.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 提交任务：预算足够时立即启动，否则排队
+     *
+     * @param taskId 任务ID
+     * @param estimate 成本预估
+     * @param priority 优先级（决定排队通道）
+     * @param starter 启动流水线，返回任务结束时完成的 Future（可能抛出 RejectedExecutionException）
+     * @return 任务结束时完成的 Future（排队的任务在启动并结束后完成）
+     * @throws RejectedExecutionException 排队数已满，或立即启动时流水线入口队列已满
+     * @throws IllegalArgumentException 单个文档的预估内存超过内存预算
+     */
+    public CompletableFuture<Void> submit(String taskId, DocxCostEstimator.Estimate estimate, TaskPriority priority,
+                                          Supplier<CompletableFuture<Void>> starter) {
+        if (!enabled) {
+            return starter.get();
+        }
+        checkAcceptable(estimate);
+
+        Pending pending = new Pending(taskId, estimate, priority, starter);
+        synchronized (this) {
+            if (suspended) {
+                throw new RejectedExecutionException("服务正在停止");
+            }
+            if (!canStartNow(estimate, priority)) {
+                if (queuedCount() >= maxQueued) {
+                    rejectedCount++;
+                    throw new RejectedExecutionException("等待处理的任务已达上限: " + maxQueued);
+                }
+                queues.get(priority).addLast(pending);
+                log.info("[taskId: {}] 预算不足，排队等待（{}），在途 CPU={}s/{}s, 内存={}MB/{}MB",
+                        taskId, estimate, String.format("%.1f", cpuInFlight), cpuBudgetSeconds, heapInFlight, heapBudgetMb);
+                return pending.future;
+            }
+            reserve(taskId, estimate);
+        }
+        log.info("[taskId: {}] 准入: {}", taskId, estimate);
+        CompletableFuture<Void> future;
+        try {
+            future = starter.get();
+        } catch (RejectedExecutionException e) {
+            unreserve(taskId);
+            throw e;
+        }
+        future.whenComplete((v, e) -> release(taskId));
+        return future;
+    }
+
+    /**
+     * 排队提交：不在调用线程上启动，由排队调度按预算启动，流水线入口队列已满时稍后重试
+     *
+     * 用于已有部分产物、调用方不能等待也不应因入口队列暂满而放弃的任务（如同步处理结果的后续步骤）。
+     * 准入控制关闭时同样排队，只是预算检查按配置值进行。
+     *
+     * @return 任务结束时完成的 Future
+     * @throws RejectedExecutionException 排队数已满或服务正在停止
+     */
+    public CompletableFuture<Void> enqueue(String taskId, DocxCostEstimator.Estimate estimate, TaskPriority priority,
+                                           Supplier<CompletableFuture<Void>> starter) {
+        Pending pending = new Pending(taskId, estimate, priority, starter);
+        synchronized (this) {
+            if (suspended) {
+                throw new RejectedExecutionException("服务正在停止");
+            }
+            if (queuedCount() >= maxQueued) {
+                rejectedCount++;
+                throw new RejectedExecutionException("等待处理的任务已达上限: " + maxQueued);
+            }
+            queues.get(priority).addLast(pending);
+        }
+        log.info("[taskId: {}] 排队等待处理（{}）", taskId, estimate);
+        drain();
+        return pending.future;
+    }
+
+    /**
+     * 尝试立即占用预算（同步处理的请求不排队，预算不足时由调用方返回 429）
+     *
+     * @return true 表示已占用，任务结束后须调用 {@link #release(String)}
+     * @throws IllegalArgumentException 单个文档的预估内存超过内存预算
+     */
+    public boolean tryAcquire(String taskId, DocxCostEstimator.Estimate estimate) {
+        if (!enabled) {
+            return true;
+        }
+        checkAcceptable(estimate);
+        synchronized (this) {
+            if (suspended) {
+                return false;
+            }
+            if (!canStartNow(estimate, TaskPriority.INTERACTIVE)) {
+                rejectedCount++;
+                return false;
+            }
+            reserve(taskId, estimate);
+        }
+        log.info("[taskId: {}] 准入（同步）: {}", taskId, estimate);
+        return true;
+    }
+
+    /**
+     * 尝试立即占用预算，不排队也不计入拒绝数（如从共享队列认领任务：预算不足时留给其他实例）
+     *
+     * @return true 表示已占用，任务结束后须调用 {@link #release(String)}
+     * @throws IllegalArgumentException 单个文档的预估内存超过内存预算
+     */
+    public boolean tryReserve(String taskId, DocxCostEstimator.Estimate estimate, TaskPriority priority) {
+        if (!enabled) {
+            return true;
+        }
+        checkAcceptable(estimate);
+        synchronized (this) {
+            if (suspended || !canStartNow(estimate, priority)) {
+                return false;
+            }
+            reserve(taskId, estimate);
+        }
+        log.info("[taskId: {}] 准入（认领）: {}", taskId, estimate);
+        return true;
+    }
+
+    /**
+     * 任务结束：释放预算并启动排队中可以开始的任务（未占用预算的任务调用无影响）
+     */
+    public void release(String taskId) {
+        if (unreserve(taskId)) {
+            drain();
+        }
+    }
+
+    /**
+     * 移除排队中的任务（任务被取消或删除）
+     *
+     * @return true 表示任务仍在排队并已移除
+     */
+    public boolean remove(String taskId) {
+        Pending removed = null;
+        synchronized (this) {
+            for (Deque<Pending> queue : queues.values()) {
+                Iterator<Pending> it = queue.iterator();
+                while (it.hasNext()) {
+                    Pending pending = it.next();
+                    if (pending.taskId.equals(taskId)) {
+                        it.remove();
+                        removed = pending;
+                        break;
+                    }
+                }
+            }
+        }
+        if (removed == null) {
+            return false;
+        }
+        removed.future.complete(null);
+        log.info("[taskId: {}] 已从准入队列移除", taskId);
+        return true;
+    }
+
+    /**
+     * 停机：不再启动排队中的任务，也不再接收新任务
+     *
+     * @return 仍在排队的任务（INTERACTIVE 在前，各通道内按排队顺序）
+     */
+    public synchronized List<QueuedTask> suspend() {
+        suspended = true;
+        List<QueuedTask> queued = new ArrayList<>();
+        for (TaskPriority priority : TaskPriority.values()) {
+            for (Pending pending : queues.get(priority)) {
+                queued.add(new QueuedTask(pending.taskId, priority));
+            }
+        }
+        return queued;
+    }
+
+    /**
+     * 任务是否在排队等待预算
+     */
+    public synchronized boolean isQueued(String taskId) {
+        for (Deque<Pending> queue : queues.values()) {
+            for (Pending pending : queue) {
+                if (pending.taskId.equals(taskId)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 预算使用情况（/metrics）
+     */
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("cpuBudgetSeconds", cpuBudgetSeconds);
+        stats.put("cpuInFlightSeconds", Math.round(cpuInFlight * 10) / 10.0);
+        stats.put("heapBudgetMb", heapBudgetMb);
+        stats.put("heapInFlightMb", heapInFlight);
+        stats.put("running", admitted.size());
+        stats.put("queuedInteractive", queues.get(TaskPriority.INTERACTIVE).size());
+        stats.put("queuedBulk", queues.get(TaskPriority.BULK).size());
+        stats.put("rejected", rejectedCount);
+        return stats;
+    }
+
+    /**
+     * 检查单个文档能否处理（不占用预算），用于由其他实例处理的任务在入队前拒绝
+     *
+     * @throws IllegalArgumentException 单个文档的预估内存超过内存预算
+     */
+    public void checkAcceptable(DocxCostEstimator.Estimate estimate) {
+        if (estimate.heapMb > heapBudgetMb) {
+            synchronized (this) {
+                rejectedCount++;
+            }
+            throw new IllegalArgumentException("文档过大：预计占用内存 " + estimate.heapMb + "MB，超过处理上限 "
+                    + heapBudgetMb + "MB（" + estimate + "）");
+        }
+    }
+
+    /**
+     * 预算足够，且没有同优先级或更高优先级的任务在排队（保持先来先服务）
+     */
+    private boolean canStartNow(DocxCostEstimator.Estimate estimate, TaskPriority priority) {
+        for (TaskPriority p : TaskPriority.values()) {
+            if (!queues.get(p).isEmpty()) {
+                return false;
+            }
+            if (p == priority) {
+                break;
+            }
+        }
+        return fits(estimate);
+    }
+
+    private boolean fits(DocxCostEstimator.Estimate estimate) {
+        if (admitted.isEmpty()) {
+            return true;
+        }
+        return cpuInFlight + estimate.cpuSeconds <= cpuBudgetSeconds && heapInFlight + estimate.heapMb <= heapBudgetMb;
+    }
+
+    private void reserve(String taskId, DocxCostEstimator.Estimate estimate) {
+        admitted.put(taskId, estimate);
+        cpuInFlight += estimate.cpuSeconds;
+        heapInFlight += estimate.heapMb;
+    }
+
+    private synchronized boolean unreserve(String taskId) {
+        DocxCostEstimator.Estimate estimate = admitted.remove(taskId);
+        if (estimate == null) {
+            return false;
+        }
+        cpuInFlight -= estimate.cpuSeconds;
+        heapInFlight -= estimate.heapMb;
+        return true;
+    }
+
+    private int queuedCount() {
+        int count = 0;
+        for (Deque<Pending> queue : queues.values()) {
+            count += queue.size();
+        }
+        return count;
+    }
+
+    /**
+     * 按通道优先级启动排队的任务，直到队首任务不再满足预算
+     */
+    private void drain() {
+        while (true) {
+            List<Pending> toStart = new ArrayList<>();
+            synchronized (this) {
+                if (suspended) {
+                    return;
+                }
+                for (TaskPriority priority : TaskPriority.values()) {
+                    Deque<Pending> queue = queues.get(priority);
+                    while (!queue.isEmpty() && fits(queue.peekFirst().estimate)) {
+                        Pending pending = queue.pollFirst();
+                        reserve(pending.taskId, pending.estimate);
+                        toStart.add(pending);
+                    }
+                    if (!queue.isEmpty()) {
+                        // 高优先级通道的队首还在等待预算时，低优先级通道不插队
+                        break;
+                    }
+                }
+            }
+            if (toStart.isEmpty()) {
+                return;
+            }
+            boolean requeued = false;
+            for (Pending pending : toStart) {
+                requeued |= !startQueued(pending);
+            }
+            if (requeued) {
+                // 流水线入口队列已满：稍后重试，不在当前线程上空转
+                retryScheduler.schedule(this::drain, RETRY_DELAY_SECONDS, TimeUnit.SECONDS);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 启动排队的任务，任务结束后释放预算
+     *
+     * @return false 表示流水线入口队列已满，任务已放回队首
+     */
+    private boolean startQueued(Pending pending) {
+        log.info("[taskId: {}] 预算已释放，开始处理（排队 {} ms）", pending.taskId,
+                System.currentTimeMillis() - pending.enqueueTime);
+        CompletableFuture<Void> future;
+        try {
+            future = pending.starter.get();
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                unreserve(pending.taskId);
+                queues.get(pending.priority).addFirst(pending);
+            }
+            log.warn("[taskId: {}] 流水线入口队列已满，重新排队", pending.taskId);
+            return false;
+        }
+        future.whenComplete((v, e) -> {
+            release(pending.taskId);
+            if (e != null) {
+                pending.future.completeExceptionally(e);
+            } else {
+                pending.future.complete(null);
+            }
+        });
+        return true;
+    }
+}
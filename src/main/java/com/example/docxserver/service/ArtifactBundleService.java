@@ -0,0 +1,232 @@
+package com.example.docxserver.service;
+
+import com.example.docxserver.util.common.ArtifactManifest;
+import com.example.docxserver.util.common.ZipStreamUtils;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 任务产物打包服务
+ *
+ * 任务完成时一次性生成 ZIP 包（bundle/{taskId}.zip）和清单（bundle/manifest.json），
+ * 之后的下载直接发送该文件，不再重复扫描目录和压缩。
+ */
+@Slf4j
+@Service
+public class ArtifactBundleService {
+
+    private static final String BUNDLE_DIR_NAME = "bundle";
+    private static final String MANIFEST_FILE_NAME = "manifest.json";
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    @Value("${docx.storage.base-path:/data/docx_server}")
+    private String basePath;
+
+    /**
+     * 收集任务目录中需要打包的文件
+     *
+     * 包含：PDF、最新的表格TXT和段落TXT、AI训练JSON、页面图片
+     *
+     * @param taskId 任务ID
+     * @return ZIP条目名 -> 文件（保持写入顺序）
+     */
+    public Map<String, File> collectArtifactEntries(String taskId) {
+        File taskDirFile = new File(basePath, taskId);
+
+        // 从产物清单定位PDF、两个独立的TXT文件（表格和段落）、AI训练JSON和图片目录
+        File pdfFile = ArtifactManifest.resolve(taskDirFile, ArtifactManifest.KIND_PDF);
+        File tableTxtFile = ArtifactManifest.resolve(taskDirFile, ArtifactManifest.KIND_TABLE_TXT);
+        File paragraphTxtFile = ArtifactManifest.resolve(taskDirFile, ArtifactManifest.KIND_PARAGRAPH_TXT);
+        File aiJsonFile = ArtifactManifest.resolve(taskDirFile, ArtifactManifest.KIND_AI_JSON);
+        ArtifactManifest.Entry images = ArtifactManifest.read(taskDirFile).get(ArtifactManifest.KIND_IMAGES);
+
+        Map<String, File> entries = new LinkedHashMap<>();
+        // PDF文件
+        if (pdfFile != null) {
+            entries.put(taskId + ".pdf", pdfFile);
+        }
+        // 表格TXT
+        if (tableTxtFile != null) {
+            entries.put(taskId + "_table.txt", tableTxtFile);
+        }
+        // 段落TXT
+        if (paragraphTxtFile != null) {
+            entries.put(taskId + "_paragraph.txt", paragraphTxtFile);
+        }
+        // AI训练用JSON（使用原始文件名）
+        if (aiJsonFile != null) {
+            entries.put(aiJsonFile.getName(), aiJsonFile);
+        }
+        // 图片目录（结构：images/{filename}/0.png, 1.png, ...），按清单中的图片数逐个定位
+        // ZIP中使用原始文件名作为目录名
+        if (images != null && images.count != null) {
+            File imageDir = new File(taskDirFile, images.path);
+            for (int i = 0; i < images.count; i++) {
+                File img = new File(imageDir, i + ".png");
+                if (img.exists()) {
+                    entries.put(images.path + "/" + img.getName(), img);
+                }
+            }
+        }
+
+        log.info("收集artifact: taskId={}, 表格={}, 段落={}, AI JSON={}, 图片={}",
+                taskId,
+                tableTxtFile != null ? tableTxtFile.getName() : "无",
+                paragraphTxtFile != null ? paragraphTxtFile.getName() : "无",
+                aiJsonFile != null ? "有" : "无",
+                images != null ? images.count : "无");
+        return entries;
+    }
+
+    /**
+     * 生成任务的 ZIP 包和清单
+     *
+     * 先写入临时文件再原子重命名，下载方不会读到半成品。
+     *
+     * @param taskId 任务ID
+     * @return 生成的清单
+     * @throws IOException 文件读写异常
+     */
+    public BundleManifest buildBundle(String taskId) throws IOException {
+        long startTime = System.currentTimeMillis();
+        File bundleDir = new File(new File(basePath, taskId), BUNDLE_DIR_NAME);
+        if (!bundleDir.exists()) {
+            bundleDir.mkdirs();
+        }
+
+        Map<String, File> entries = collectArtifactEntries(taskId);
+        File bundleFile = new File(bundleDir, taskId + ".zip");
+        File tmpFile = new File(bundleDir, taskId + ".zip.tmp");
+
+        MessageDigest digest = newSha256();
+        List<BundleManifest.Entry> manifestEntries = new ArrayList<>();
+        byte[] buffer = new byte[ZipStreamUtils.BUFFER_SIZE];
+        try (OutputStream os = new DigestOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmpFile.toPath()), ZipStreamUtils.BUFFER_SIZE), digest);
+             ZipOutputStream zos = new ZipOutputStream(os)) {
+            for (Map.Entry<String, File> entry : entries.entrySet()) {
+                if (ZipStreamUtils.addFile(zos, entry.getValue(), entry.getKey(), buffer)) {
+                    manifestEntries.add(new BundleManifest.Entry(entry.getKey(), entry.getValue().length()));
+                }
+            }
+        }
+        Files.move(tmpFile.toPath(), bundleFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        BundleManifest manifest = new BundleManifest();
+        manifest.taskId = taskId;
+        manifest.fileName = bundleFile.getName();
+        manifest.size = bundleFile.length();
+        manifest.sha256 = toHex(digest.digest());
+        manifest.createTime = System.currentTimeMillis();
+        manifest.entries = manifestEntries;
+
+        File manifestFile = new File(bundleDir, MANIFEST_FILE_NAME);
+        Files.write(manifestFile.toPath(), GSON.toJson(manifest).getBytes(StandardCharsets.UTF_8));
+
+        log.info("[taskId: {}] artifact 包已生成: {} 个条目, {} 字节, 耗时 {} ms",
+                taskId, manifestEntries.size(), manifest.size, System.currentTimeMillis() - startTime);
+        return manifest;
+    }
+
+    /**
+     * 读取已生成的清单（ZIP文件缺失或大小不符时视为无效）
+     *
+     * @param taskId 任务ID
+     * @return 清单，不存在或无效返回 null
+     */
+    public BundleManifest getBundle(String taskId) {
+        File bundleDir = new File(new File(basePath, taskId), BUNDLE_DIR_NAME);
+        File manifestFile = new File(bundleDir, MANIFEST_FILE_NAME);
+        if (!manifestFile.isFile()) {
+            return null;
+        }
+        try {
+            String json = new String(Files.readAllBytes(manifestFile.toPath()), StandardCharsets.UTF_8);
+            BundleManifest manifest = GSON.fromJson(json, BundleManifest.class);
+            File bundleFile = getBundleFile(taskId, manifest);
+            if (!bundleFile.isFile() || bundleFile.length() != manifest.size) {
+                log.warn("[taskId: {}] artifact 包与清单不一致，忽略", taskId);
+                return null;
+            }
+            return manifest;
+        } catch (Exception e) {
+            log.warn("[taskId: {}] 读取 artifact 清单失败: {}", taskId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 获取清单对应的 ZIP 文件
+     */
+    public File getBundleFile(String taskId, BundleManifest manifest) {
+        File bundleDir = new File(new File(basePath, taskId), BUNDLE_DIR_NAME);
+        return new File(bundleDir, manifest.fileName);
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 不可用", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * artifact 包清单
+     */
+    public static class BundleManifest {
+        public String taskId;
+        public String fileName;
+        public long size;
+        public String sha256;
+        public long createTime;
+        public List<Entry> entries;
+
+        /**
+         * 用作 HTTP ETag（强校验）
+         */
+        public String getETag() {
+            return "\"" + sha256 + "\"";
+        }
+
+        public static class Entry {
+            public String name;
+            public long size;
+
+            public Entry() {}
+
+            public Entry(String name, long size) {
+                this.name = name;
+                this.size = size;
+            }
+        }
+    }
+}
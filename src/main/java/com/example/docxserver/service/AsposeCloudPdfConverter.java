@@ -0,0 +1,46 @@
+package com.example.docxserver.service;
+
+import com.example.docxserver.util.AsposeCloudConverter;
+import com.example.docxserver.util.docx.DocxHeaderFooterRemover;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Aspose Cloud 转换（见 {@link AsposeCloudConverter}）
+ *
+ * 云端不做清理：先用 POI 在本地移除页眉、页脚和批注，再上传清理后的 DOCX。
+ */
+@Component
+public class AsposeCloudPdfConverter implements DocxPdfConverter {
+
+    public static final String NAME = "aspose-cloud";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+    @Override
+    public void convert(String docxPath, String pdfPath, String cleanedDocxPath) throws Exception {
+        File cleaned = cleanedDocxPath != null
+                ? new File(cleanedDocxPath)
+                : File.createTempFile("docx-cloud-", ".docx");
+        try {
+            DocxHeaderFooterRemover.removeHeaderFooter(docxPath, cleaned.getAbsolutePath());
+            if (!AsposeCloudConverter.convert(cleaned.getAbsolutePath(), pdfPath)) {
+                throw new IOException("Aspose Cloud 转换失败");
+            }
+        } finally {
+            if (cleanedDocxPath == null) {
+                cleaned.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,548 @@
+package com.example.docxserver.service;
+
+import com.example.docxserver.util.common.ZipStreamUtils;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 批量处理服务（一次提交整个标书目录的 DOCX）
+ *
+ * 每个批次维护一个有界的"在途窗口"：同时在流水线中的文档数不超过 docx.batch.max-in-flight，
+ * 一个文档完成后再提交下一个。这样多个批次和单文件 /process 请求在各阶段线程池中交替执行，
+ * 大批次不会一次性占满入口队列，流水线各阶段也始终有活可干。
+ * 批次文档一律走 BULK 通道，各阶段让位于单文件交互请求。
+ *
+ * 批次元数据持久化为 {basePath}/batches/{batchId}/batch.json，进度由各任务状态实时汇总。
+ */
+@Slf4j
+@Service
+public class BatchService {
+
+    private static final String BATCH_DIR_NAME = "batches";
+    private static final String BATCH_FILE_NAME = "batch.json";
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    @Value("${docx.storage.base-path:/data/docx_server}")
+    private String basePath;
+
+    /**
+     * 每个批次同时在流水线中的最大文档数
+     */
+    @Value("${docx.batch.max-in-flight:4}")
+    private int maxInFlight;
+
+    /**
+     * 单个批次的最大文档数
+     */
+    @Value("${docx.batch.max-documents:1000}")
+    private int maxDocuments;
+
+    /**
+     * 单个文档的最大字节数（ZIP 中的条目按解压后的大小计算）
+     */
+    @Value("${docx.upload.max-bytes:104857600}")
+    private long maxUploadBytes;
+
+    /**
+     * 单个批次中 ZIP 解压后的总字节数上限（防止高压缩比的 ZIP 解压后占满磁盘）
+     */
+    @Value("${docx.batch.max-decompressed-bytes:2147483648}")
+    private long maxDecompressedBytes;
+
+    @Autowired
+    private DocxPdfService docxPdfService;
+
+    @Autowired
+    private ArtifactBundleService artifactBundleService;
+
+    /**
+     * 正在调度中的批次（全部提交后移除）
+     */
+    private final Map<String, BatchRun> runningBatches = new ConcurrentHashMap<>();
+
+    /**
+     * 停机排空中：不再提交批次中的文档
+     */
+    private volatile boolean suspended;
+
+    /**
+     * 批次调度线程：处理文档完成回调、入口队列已满时延迟重试提交
+     */
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "docx-batch-scheduler");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * 提交批次：上传的文件可以是多个 DOCX，也可以是包含 DOCX 的 ZIP
+     *
+     * @param files 上传的文件
+     * @param includeMcid 是否在TXT输出中包含MCID
+     * @return 批次信息
+     * @throws IOException 文件保存异常
+     * @throws IllegalArgumentException 没有可处理的 DOCX 或超过文档数上限
+     */
+    public BatchInfo submitBatch(List<MultipartFile> files, boolean includeMcid) throws IOException {
+        String batchId = UUID.randomUUID().toString().replace("-", "");
+        BatchInfo info = new BatchInfo();
+        info.batchId = batchId;
+        info.includeMcid = includeMcid;
+        info.createTime = System.currentTimeMillis();
+        info.documents = new ArrayList<>();
+
+        List<Map<String, Object>> uploads = new ArrayList<>();
+        long decompressedBytes = 0;
+        try {
+            for (MultipartFile file : files) {
+                String name = file.getOriginalFilename();
+                if (name == null || file.isEmpty()) {
+                    continue;
+                }
+                String lower = name.toLowerCase();
+                if (lower.endsWith(".zip")) {
+                    try (ZipInputStream zis = new ZipInputStream(file.getInputStream())) {
+                        decompressedBytes = saveZipEntries(zis, uploads, decompressedBytes);
+                    }
+                } else if (lower.endsWith(".docx")) {
+                    checkLimit(uploads.size() + 1);
+                    try {
+                        uploads.add(docxPdfService.uploadDocx(file));
+                    } catch (IllegalArgumentException e) {
+                        log.warn("[batchId: {}] 跳过无效的 DOCX: {}, {}", batchId, name, e.getMessage());
+                    }
+                } else {
+                    log.warn("[batchId: {}] 跳过不支持的文件: {}", batchId, name);
+                }
+            }
+            if (uploads.isEmpty()) {
+                throw new IllegalArgumentException("没有可处理的 .docx 文件");
+            }
+        } catch (IOException | RuntimeException e) {
+            // 批次创建失败：清理已保存的文档
+            for (Map<String, Object> upload : uploads) {
+                docxPdfService.deleteTask((String) upload.get("taskId"));
+            }
+            throw e;
+        }
+
+        Deque<Map<String, Object>> pending = new ArrayDeque<>();
+        for (Map<String, Object> upload : uploads) {
+            String taskId = (String) upload.get("taskId");
+            info.documents.add(new BatchInfo.Document(taskId, (String) upload.get("originalName")));
+            docxPdfService.updateTaskStatus(taskId, DocxPdfService.STATUS_UPLOADED, "文件已上传，等待批量调度", null);
+            // 先写入处理日志：服务重启时尚未调度的文档也能恢复
+            docxPdfService.recordSubmission(taskId, includeMcid, (String) upload.get("originalName"),
+                    (String) upload.get("contentHash"), TaskPriority.BULK);
+            pending.add(upload);
+        }
+        writeBatchInfo(info);
+
+        BatchRun run = new BatchRun(info, pending);
+        runningBatches.put(batchId, run);
+        log.info("[batchId: {}] 批次已创建: {} 个文档, 在途窗口 {}", batchId, uploads.size(), maxInFlight);
+        pump(run);
+        return info;
+    }
+
+    /**
+     * 查询批次进度（由各任务状态汇总）
+     *
+     * @param batchId 批次ID
+     * @return 批次进度，批次不存在返回 null
+     */
+    public Map<String, Object> getBatchStatus(String batchId) {
+        BatchInfo info = readBatchInfo(batchId);
+        if (info == null) {
+            return null;
+        }
+
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        List<Map<String, Object>> documents = new ArrayList<>();
+        int finished = 0;
+        for (BatchInfo.Document doc : info.documents) {
+            Map<String, Object> status = docxPdfService.getTaskStatus(doc.taskId);
+            String state = String.valueOf(status.get("status"));
+            counts.merge(state, 1, Integer::sum);
+            if (isFinished(state)) {
+                finished++;
+            }
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("taskId", doc.taskId);
+            item.put("name", doc.name);
+            item.put("status", state);
+            item.put("message", status.get("message"));
+            documents.add(item);
+        }
+
+        int total = info.documents.size();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("batchId", batchId);
+        result.put("total", total);
+        result.put("finished", finished);
+        result.put("percent", total > 0 ? finished * 100 / total : 100);
+        result.put("completed", finished == total);
+        result.put("statusCounts", counts);
+        result.put("createTime", info.createTime);
+        result.put("documents", documents);
+        return result;
+    }
+
+    /**
+     * 收集批次合并下载包的条目：每个已完成文档的产物放在以原始文件名命名的目录下
+     *
+     * @param batchId 批次ID
+     * @return ZIP条目名 -> 文件，批次不存在返回 null
+     */
+    public Map<String, File> collectBatchEntries(String batchId) {
+        BatchInfo info = readBatchInfo(batchId);
+        if (info == null) {
+            return null;
+        }
+        Map<String, File> entries = new LinkedHashMap<>();
+        Set<String> usedPrefixes = new HashSet<>();
+        for (BatchInfo.Document doc : info.documents) {
+            Map<String, Object> status = docxPdfService.getTaskStatus(doc.taskId);
+            if (!DocxPdfService.STATUS_COMPLETED.equals(status.get("status"))) {
+                continue;
+            }
+            // 同名文档加 taskId 区分
+            String prefix = doc.name;
+            if (!usedPrefixes.add(prefix)) {
+                prefix = doc.name + "_" + doc.taskId;
+                usedPrefixes.add(prefix);
+            }
+            for (Map.Entry<String, File> entry : artifactBundleService.collectArtifactEntries(doc.taskId).entrySet()) {
+                entries.put(prefix + "/" + entry.getKey(), entry.getValue());
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * 将批次合并下载包写入输出流
+     *
+     * @param entries collectBatchEntries 的结果
+     * @param out 输出流（不关闭）
+     * @throws IOException IO 异常
+     */
+    public void writeBatchZip(Map<String, File> entries, OutputStream out) throws IOException {
+        byte[] buffer = new byte[ZipStreamUtils.BUFFER_SIZE];
+        ZipOutputStream zos = new ZipOutputStream(out);
+        for (Map.Entry<String, File> entry : entries.entrySet()) {
+            ZipStreamUtils.addFile(zos, entry.getValue(), entry.getKey(), buffer);
+        }
+        zos.finish();
+        zos.flush();
+    }
+
+    /**
+     * 停机：停止调度，返回各批次中尚未提交的文档（处理日志已在批次创建时写入）
+     *
+     * @return 尚未提交的 taskId（按批次内顺序）
+     */
+    public List<String> suspend() {
+        suspended = true;
+        List<String> taskIds = new ArrayList<>();
+        for (BatchRun run : runningBatches.values()) {
+            synchronized (run) {
+                for (Map<String, Object> upload : run.pending) {
+                    taskIds.add((String) upload.get("taskId"));
+                }
+            }
+        }
+        return taskIds;
+    }
+
+    /**
+     * 在窗口允许的范围内提交待处理文档
+     */
+    private void pump(BatchRun run) {
+        if (suspended) {
+            return;
+        }
+        synchronized (run) {
+            while (run.inFlight < maxInFlight && !run.pending.isEmpty()) {
+                Map<String, Object> upload = run.pending.poll();
+                String taskId = (String) upload.get("taskId");
+                try {
+                    // 完成回调切到调度线程执行，避免复用结果（同步完成）时在当前调用栈中递归提交
+                    docxPdfService.processDocxToPdfTxtAsync(taskId,
+                                    (String) upload.get("filePath"),
+                                    (String) upload.get("taskDir"),
+                                    run.info.includeMcid,
+                                    (String) upload.get("originalName"),
+                                    (String) upload.get("contentHash"),
+                                    TaskPriority.BULK)
+                            .whenCompleteAsync((v, e) -> onDocumentFinished(run), scheduler);
+                } catch (IllegalArgumentException e) {
+                    // 预估处理成本超过上限：该文档标记失败，继续处理其余文档
+                    log.warn("[batchId: {}] 文档 {} 超过处理能力: {}", run.info.batchId, taskId, e.getMessage());
+                    Map<String, Object> errorInfo = new HashMap<>();
+                    errorInfo.put("error", e.getMessage());
+                    docxPdfService.updateTaskStatus(taskId, DocxPdfService.STATUS_FAILED, "处理失败: " + e.getMessage(), errorInfo);
+                    continue;
+                } catch (RejectedExecutionException e) {
+                    // 入口队列已满（其他请求占用），稍后重试
+                    run.pending.addFirst(upload);
+                    log.debug("[batchId: {}] 入口队列已满，1 秒后重试提交", run.info.batchId);
+                    scheduler.schedule(() -> pump(run), 1, TimeUnit.SECONDS);
+                    return;
+                }
+                run.inFlight++;
+            }
+            if (run.pending.isEmpty() && run.inFlight == 0) {
+                runningBatches.remove(run.info.batchId);
+                log.info("[batchId: {}] 批次处理完成: {} 个文档", run.info.batchId, run.info.documents.size());
+            }
+        }
+    }
+
+    private void onDocumentFinished(BatchRun run) {
+        synchronized (run) {
+            run.inFlight--;
+        }
+        pump(run);
+    }
+
+    /**
+     * 逐个保存 ZIP 中的 DOCX 条目（忽略目录和 macOS 元数据文件）
+     *
+     * 按实际解压出的字节数限制单个条目（docx.upload.max-bytes）和整个批次（docx.batch.max-decompressed-bytes），
+     * 不信任 ZipEntry.getSize()。超过限制时整个批次失败，且不再读完当前条目（避免继续解压）。
+     *
+     * @param decompressedBytes 本批次此前已解压的字节数
+     * @return 本批次累计解压的字节数
+     * @throws IllegalArgumentException 超过文档数或解压大小上限
+     */
+    private long saveZipEntries(ZipInputStream zis, List<Map<String, Object>> uploads, long decompressedBytes) throws IOException {
+        LimitedEntryStream entryStream = new LimitedEntryStream(zis, decompressedBytes);
+        ZipEntry entry;
+        while ((entry = zis.getNextEntry()) != null) {
+            String entryName = entry.getName().replace('\\', '/');
+            String fileName = entryName.substring(entryName.lastIndexOf('/') + 1);
+            if (entry.isDirectory() || entryName.startsWith("__MACOSX/") || fileName.startsWith("._")
+                    || fileName.startsWith("~$") || !fileName.toLowerCase().endsWith(".docx")) {
+                continue;
+            }
+            checkLimit(uploads.size() + 1);
+            entryStream.startEntry();
+            try {
+                uploads.add(docxPdfService.saveDocx(entryStream, fileName, maxUploadBytes));
+            } catch (SizeLimitExceededException e) {
+                throw e;
+            } catch (IllegalArgumentException e) {
+                log.warn("跳过 ZIP 中无效的 DOCX: {}, {}", entryName, e.getMessage());
+            }
+        }
+        return entryStream.batchBytes;
+    }
+
+    /**
+     * ZIP 解压大小超过上限
+     */
+    private static class SizeLimitExceededException extends IllegalArgumentException {
+        SizeLimitExceededException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * ZIP 条目流：按读出的字节数检查条目和批次的大小上限
+     *
+     * saveDocx 会关闭传入的流：关闭时只结束当前条目，不关闭整个 ZIP；超过上限后关闭时不读完剩余内容。
+     */
+    private class LimitedEntryStream extends FilterInputStream {
+        private final ZipInputStream zis;
+        long batchBytes;
+        private long entryBytes;
+        private boolean exceeded;
+
+        LimitedEntryStream(ZipInputStream zis, long batchBytes) {
+            super(zis);
+            this.zis = zis;
+            this.batchBytes = batchBytes;
+        }
+
+        void startEntry() {
+            entryBytes = 0;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!exceeded) {
+                zis.closeEntry();
+            }
+        }
+
+        private void count(long n) {
+            entryBytes += n;
+            batchBytes += n;
+            if (entryBytes > maxUploadBytes) {
+                exceeded = true;
+                throw new SizeLimitExceededException("ZIP 中的文档解压后超过大小限制: " + maxUploadBytes + " 字节");
+            }
+            if (batchBytes > maxDecompressedBytes) {
+                exceeded = true;
+                throw new SizeLimitExceededException("ZIP 解压后的总大小超过上限: " + maxDecompressedBytes + " 字节");
+            }
+        }
+    }
+
+    private void checkLimit(int count) {
+        if (count > maxDocuments) {
+            throw new IllegalArgumentException("批次文档数超过上限: " + maxDocuments);
+        }
+    }
+
+    private static boolean isFinished(String status) {
+        return DocxPdfService.isFinishedStatus(status);
+    }
+
+    private File getBatchDir(String batchId) {
+        return new File(new File(basePath, BATCH_DIR_NAME), batchId);
+    }
+
+    private void writeBatchInfo(BatchInfo info) throws IOException {
+        File batchDir = getBatchDir(info.batchId);
+        if (!batchDir.exists()) {
+            batchDir.mkdirs();
+        }
+        Files.write(new File(batchDir, BATCH_FILE_NAME).toPath(), GSON.toJson(info).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private BatchInfo readBatchInfo(String batchId) {
+        BatchRun run = runningBatches.get(batchId);
+        if (run != null) {
+            return run.info;
+        }
+        File batchFile = new File(getBatchDir(batchId), BATCH_FILE_NAME);
+        if (!batchFile.isFile()) {
+            return null;
+        }
+        try {
+            String json = new String(Files.readAllBytes(batchFile.toPath()), StandardCharsets.UTF_8);
+            return GSON.fromJson(json, BatchInfo.class);
+        } catch (Exception e) {
+            log.warn("[batchId: {}] 读取批次信息失败: {}", batchId, e.getMessage());
+            return null;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        int pendingCount = 0;
+        for (BatchRun run : runningBatches.values()) {
+            pendingCount += run.pending.size();
+        }
+        if (pendingCount > 0) {
+            log.warn("服务关闭，{} 个批次共 {} 个文档尚未提交", runningBatches.size(), pendingCount);
+        }
+    }
+
+    /**
+     * 批次元数据（持久化为 batch.json）
+     */
+    public static class BatchInfo {
+        public String batchId;
+        public boolean includeMcid;
+        public long createTime;
+        public List<Document> documents;
+
+        public static class Document {
+            public String taskId;
+            public String name;
+
+            public Document() {}
+
+            public Document(String taskId, String name) {
+                this.taskId = taskId;
+                this.name = name;
+            }
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("batchId", batchId);
+            map.put("total", documents.size());
+            List<String> taskIds = new ArrayList<>();
+            for (Document doc : documents) {
+                taskIds.add(doc.taskId);
+            }
+            map.put("taskIds", taskIds);
+            return map;
+        }
+    }
+
+    /**
+     * 调度中的批次：待提交队列 + 在途计数（均由 BatchRun 自身加锁保护）
+     */
+    private static class BatchRun {
+        final BatchInfo info;
+        final Deque<Map<String, Object>> pending;
+        int inFlight;
+
+        BatchRun(BatchInfo info, Deque<Map<String, Object>> pending) {
+            this.info = info;
+            this.pending = pending;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.docxserver.service;
+
+import com.example.docxserver.util.common.ArtifactManifest;
+import com.example.docxserver.util.taggedPDF.DocxPdfComparator;
+import com.example.docxserver.util.taggedPDF.dto.CompareReport;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * DOCX 与 PDF 比较服务（后台执行，报告按产物版本缓存）
+ *
+ * - 比较在独立的小线程池上执行，HTTP 线程只负责查询和提交
+ * - 报告写入 {taskDir}/compare/report.json，带输入产物版本（来自产物清单中的 SHA-256），
+ *   DOCX 或 PDF TXT 重新生成后版本变化，旧报告自动失效
+ * - 同一任务同时只运行一个比较
+ */
+@Slf4j
+@Service
+public class CompareService {
+
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_COMPLETED = DocxPdfService.STATUS_COMPLETED;
+    public static final String STATUS_FAILED = DocxPdfService.STATUS_FAILED;
+
+    private static final String REPORT_DIR_NAME = "compare";
+    private static final String REPORT_FILE_NAME = "report.json";
+
+    private static final Gson GSON = new GsonBuilder().create();
+
+    @Value("${docx.storage.base-path:/data/docx_server}")
+    private String basePath;
+
+    /**
+     * 比较线程数（DOCX 解析和 Jsoup 解析，CPU 密集）
+     */
+    @Value("${docx.compare.threads:1}")
+    private int threads;
+
+    /**
+     * 等待比较的任务上限，超过后拒绝（429）
+     */
+    @Value("${docx.compare.queue-capacity:16}")
+    private int queueCapacity;
+
+    private ThreadPoolExecutor executor;
+
+    /**
+     * 正在比较的任务：taskId -> 输入版本
+     */
+    private final Map<String, String> running = new ConcurrentHashMap<>();
+
+    /**
+     * 最近一次失败：taskId -> {输入版本, 错误信息}，同一版本不自动重试
+     */
+    private final Map<String, String[]> failures = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                r -> {
+                    Thread t = new Thread(r, "docx-compare-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        log.info("比较线程池已初始化: 线程数={}, 队列容量={}", threads, queueCapacity);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 获取比较报告：当前产物版本已有报告时直接返回，否则提交后台比较
+     *
+     * @param taskId 任务ID
+     * @param refresh 是否忽略缓存和上次失败，重新比较
+     * @return status（COMPLETED/RUNNING/FAILED），COMPLETED 时带 report，FAILED 时带 error
+     * @throws IllegalArgumentException 任务不存在或缺少 DOCX/PDF TXT 产物
+     * @throws RejectedExecutionException 比较队列已满
+     */
+    public Map<String, Object> getOrStart(String taskId, boolean refresh) {
+        File taskDir = new File(basePath, taskId);
+        if (!taskDir.isDirectory()) {
+            throw new IllegalArgumentException("任务不存在: " + taskId);
+        }
+        Map<String, ArtifactManifest.Entry> artifacts = ArtifactManifest.read(taskDir);
+        File docxFile = ArtifactManifest.resolve(taskDir, ArtifactManifest.KIND_DOCX);
+        if (docxFile == null) {
+            throw new IllegalArgumentException("目录中未找到DOCX文件: " + taskDir.getAbsolutePath());
+        }
+        File tableFile = ArtifactManifest.resolve(taskDir, ArtifactManifest.KIND_TABLE_TXT);
+        File paragraphFile = ArtifactManifest.resolve(taskDir, ArtifactManifest.KIND_PARAGRAPH_TXT);
+        if (tableFile == null && paragraphFile == null) {
+            throw new IllegalArgumentException("未找到PDF表格/段落文件: " + taskId + "_pdf_*.txt");
+        }
+        String version = version(artifacts);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("taskId", taskId);
+        result.put("version", version);
+
+        if (!refresh) {
+            CompareReport cached = readReport(taskDir);
+            if (cached != null && version.equals(cached.version)) {
+                result.put("status", STATUS_COMPLETED);
+                result.put("report", cached);
+                return result;
+            }
+            String[] failure = failures.get(taskId);
+            if (failure != null && version.equals(failure[0])) {
+                result.put("status", STATUS_FAILED);
+                result.put("error", failure[1]);
+                return result;
+            }
+        }
+
+        result.put("status", STATUS_RUNNING);
+        if (running.putIfAbsent(taskId, version) != null) {
+            return result;
+        }
+        failures.remove(taskId);
+        try {
+            executor.execute(() -> runCompare(taskId, taskDir, version, docxFile, tableFile, paragraphFile));
+        } catch (RejectedExecutionException e) {
+            running.remove(taskId);
+            throw e;
+        }
+        log.info("[taskId: {}] 已提交DOCX与PDF比较, version={}", taskId, version);
+        return result;
+    }
+
+    private void runCompare(String taskId, File taskDir, String version, File docxFile, File tableFile, File paragraphFile) {
+        try {
+            CompareReport report = DocxPdfComparator.compare(docxFile, tableFile, paragraphFile);
+            report.taskId = taskId;
+            report.version = version;
+            writeReport(taskDir, report);
+        } catch (Exception e) {
+            log.error("[taskId: {}] DOCX与PDF比较失败: {}", taskId, e.getMessage(), e);
+            failures.put(taskId, new String[]{version, e.getMessage()});
+        } finally {
+            running.remove(taskId);
+        }
+    }
+
+    /**
+     * 输入产物版本：DOCX、表格TXT、段落TXT 的 SHA-256（取自产物清单，不重新读取文件）
+     */
+    private static String version(Map<String, ArtifactManifest.Entry> artifacts) {
+        StringBuilder sb = new StringBuilder();
+        for (String kind : new String[]{ArtifactManifest.KIND_DOCX, ArtifactManifest.KIND_TABLE_TXT,
+                ArtifactManifest.KIND_PARAGRAPH_TXT}) {
+            ArtifactManifest.Entry entry = artifacts.get(kind);
+            if (sb.length() > 0) {
+                sb.append('-');
+            }
+            sb.append(entry != null && entry.sha256 != null ? entry.sha256.substring(0, Math.min(16, entry.sha256.length())) : "none");
+        }
+        return sb.toString();
+    }
+
+    private static CompareReport readReport(File taskDir) {
+        File reportFile = new File(new File(taskDir, REPORT_DIR_NAME), REPORT_FILE_NAME);
+        if (!reportFile.exists()) {
+            return null;
+        }
+        try {
+            String json = new String(Files.readAllBytes(reportFile.toPath()), StandardCharsets.UTF_8);
+            return GSON.fromJson(json, CompareReport.class);
+        } catch (Exception e) {
+            log.warn("读取比较报告失败: {}, {}", reportFile.getAbsolutePath(), e.getMessage());
+            return null;
+        }
+    }
+
+    private static void writeReport(File taskDir, CompareReport report) throws IOException {
+        File reportDir = new File(taskDir, REPORT_DIR_NAME);
+        if (!reportDir.exists()) {
+            reportDir.mkdirs();
+        }
+        File reportFile = new File(reportDir, REPORT_FILE_NAME);
+        File tmpFile = new File(reportDir, REPORT_FILE_NAME + ".tmp");
+        Files.write(tmpFile.toPath(), GSON.toJson(report).getBytes(StandardCharsets.UTF_8));
+        try {
+            Files.move(tmpFile.toPath(), reportFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmpFile.toPath(), reportFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,491 @@
+package com.example.docxserver.service;
+
+import com.example.docxserver.util.aspose.ConvertWorkerMain;
+import com.example.docxserver.util.aspose.DocxConvertPdf;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.JarFile;
+
+/**
+ * Aspose 转换子进程池
+ *
+ * Aspose.Words 转换大文档时会占用大量堆内存，在 Web 进程内执行会让所有请求一起承受 GC 停顿。
+ * 这里把转换放到独立的本机 JVM 子进程中（{@link ConvertWorkerMain}），通过标准输入 / 输出管道传递
+ * DOCX 路径或内容，Web 进程只等待结果。
+ *
+ * - 进程数由 docx.convert-worker.pool-size 控制（通常与 convert 阶段线程数一致），按需启动
+ * - 每个进程转换 max-documents 个文档，或峰值常驻内存超过 max-rss-mb 后退役，下次使用时启动新进程
+ * - 单次转换超过 timeout-ms 时杀掉进程，本次转换失败
+ * - 未启用或子进程无法启动时在当前进程内转换（与原来行为一致）
+ */
+@Slf4j
+@Component
+public class ConvertWorkerPool {
+
+    /**
+     * 子进程启动失败后，在这段时间内直接在当前进程内转换，不再反复尝试启动
+     */
+    private static final long LAUNCH_RETRY_INTERVAL_MS = 60_000;
+
+    @Value("${docx.convert-worker.enabled:false}")
+    private boolean enabled;
+
+    @Value("${docx.convert-worker.pool-size:2}")
+    private int poolSize;
+
+    /**
+     * 每个进程最多转换的文档数，达到后退役
+     */
+    @Value("${docx.convert-worker.max-documents:50}")
+    private int maxDocuments;
+
+    /**
+     * 进程峰值常驻内存上限（MB），超过后退役
+     */
+    @Value("${docx.convert-worker.max-rss-mb:2048}")
+    private long maxRssMb;
+
+    /**
+     * 子进程最大堆（MB）
+     */
+    @Value("${docx.convert-worker.heap-mb:1536}")
+    private int heapMb;
+
+    /**
+     * 子进程额外的 JVM 参数（空格分隔）
+     */
+    @Value("${docx.convert-worker.jvm-options:}")
+    private String jvmOptions;
+
+    @Value("${docx.convert-worker.timeout-ms:600000}")
+    private long timeoutMs;
+
+    @Value("${docx.convert-worker.startup-timeout-ms:60000}")
+    private long startupTimeoutMs;
+
+    private final BlockingQueue<Worker> idle = new LinkedBlockingQueue<>();
+    private final Set<Worker> all = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger workerCount = new AtomicInteger();
+    private final AtomicInteger nextWorkerId = new AtomicInteger(1);
+
+    private final AtomicLong conversions = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong recycled = new AtomicLong();
+    private final AtomicLong inProcessFallbacks = new AtomicLong();
+
+    private ScheduledExecutorService watchdog;
+    private List<String> launchCommand;
+    private volatile long launchRetryAfter;
+    private volatile boolean closed;
+
+    /**
+     * 一个转换子进程
+     */
+    private static class Worker {
+        final int id;
+        final Process process;
+        final DataInputStream in;
+        final DataOutputStream out;
+        int documents;
+        long peakRssKb;
+        volatile boolean timedOut;
+
+        Worker(int id, Process process) {
+            this.id = id;
+            this.process = process;
+            this.in = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+            this.out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "docx-convert-worker-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        launchCommand = buildLaunchCommand();
+        log.info("转换子进程池已启用: 进程数={}, 每进程最多 {} 个文档, 峰值内存上限 {} MB, 启动命令: {}",
+                poolSize, maxDocuments, maxRssMb, String.join(" ", launchCommand));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        closed = true;
+        for (Worker worker : all) {
+            stopWorker(worker);
+        }
+        if (watchdog != null) {
+            watchdog.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 转换 DOCX 文件为 PDF，同时保存清理后的 DOCX（见 {@link DocxConvertPdf#convert(String, String, String)}）
+     *
+     * @param docxPath        docx 文件路径
+     * @param pdfPath         输出的 pdf 文件路径
+     * @param cleanedDocxPath 清理后 docx 的输出路径（为null时不保存）
+     * @throws Exception 转换异常
+     */
+    public void convert(String docxPath, String pdfPath, String cleanedDocxPath) throws Exception {
+        Worker worker = borrowOrNull();
+        if (worker == null) {
+            DocxConvertPdf.convert(docxPath, pdfPath, cleanedDocxPath);
+            return;
+        }
+        boolean healthy = false;
+        ScheduledFuture<?> kill = scheduleKill(worker, timeoutMs);
+        try {
+            worker.out.writeInt(ConvertWorkerMain.OP_CONVERT_FILE);
+            worker.out.writeUTF(new File(docxPath).getAbsolutePath());
+            worker.out.writeUTF(new File(pdfPath).getAbsolutePath());
+            worker.out.writeUTF(cleanedDocxPath != null ? new File(cleanedDocxPath).getAbsolutePath() : "");
+            worker.out.flush();
+
+            byte status = worker.in.readByte();
+            String error = status == ConvertWorkerMain.STATUS_OK ? null : worker.in.readUTF();
+            worker.peakRssKb = worker.in.readLong();
+            healthy = true;
+            if (error != null) {
+                throw new IOException("转换失败: " + error);
+            }
+        } catch (IOException e) {
+            throw asConversionFailure(worker, healthy, e);
+        } finally {
+            kill.cancel(false);
+            release(worker, healthy);
+        }
+    }
+
+    /**
+     * 在子进程中转换内存中的 DOCX（见 {@link DocxConvertPdf#convert(byte[], OutputStream)}）
+     *
+     * @param docx        docx 内容
+     * @param cleanedDocx 清理后 docx 的输出流（为null时不输出）
+     * @return pdf 内容
+     * @throws Exception 转换异常
+     */
+    public byte[] convert(byte[] docx, OutputStream cleanedDocx) throws Exception {
+        Worker worker = borrowOrNull();
+        if (worker == null) {
+            return DocxConvertPdf.convert(docx, cleanedDocx);
+        }
+        return convertBytes(worker, docx, cleanedDocx);
+    }
+
+    /**
+     * 启动预热：把所有进程启动起来，并在每个进程中转换一次样例文档（完成 Aspose 的字体扫描）
+     *
+     * 池未启用或进程无法启动时在当前进程内转换一次。
+     *
+     * @param docx 样例 docx 内容
+     * @return 样例的 pdf 内容
+     * @throws Exception 转换异常
+     */
+    public byte[] warmUp(byte[] docx) throws Exception {
+        List<Worker> borrowed = new ArrayList<>();
+        for (int i = 0; i < poolSize; i++) {
+            Worker worker = borrowOrNull();
+            if (worker == null) {
+                break;
+            }
+            borrowed.add(worker);
+        }
+        if (borrowed.isEmpty()) {
+            return DocxConvertPdf.convert(docx, null);
+        }
+        byte[] pdf = null;
+        Exception failure = null;
+        for (Worker worker : borrowed) {
+            try {
+                pdf = convertBytes(worker, docx, null);
+            } catch (Exception e) {
+                failure = e;
+            }
+        }
+        if (pdf == null) {
+            throw failure;
+        }
+        return pdf;
+    }
+
+    /**
+     * 在借出的进程中转换内存中的 DOCX，完成后归还进程
+     */
+    private byte[] convertBytes(Worker worker, byte[] docx, OutputStream cleanedDocx) throws Exception {
+        boolean healthy = false;
+        ScheduledFuture<?> kill = scheduleKill(worker, timeoutMs);
+        try {
+            worker.out.writeInt(ConvertWorkerMain.OP_CONVERT_BYTES);
+            worker.out.writeInt(docx.length);
+            worker.out.write(docx);
+            worker.out.writeBoolean(cleanedDocx != null);
+            worker.out.flush();
+
+            byte status = worker.in.readByte();
+            String error = null;
+            byte[] pdf = null;
+            if (status == ConvertWorkerMain.STATUS_OK) {
+                pdf = new byte[worker.in.readInt()];
+                worker.in.readFully(pdf);
+                int cleanedLength = worker.in.readInt();
+                if (cleanedLength >= 0) {
+                    byte[] cleaned = new byte[cleanedLength];
+                    worker.in.readFully(cleaned);
+                    if (cleanedDocx != null) {
+                        cleanedDocx.write(cleaned);
+                    }
+                }
+            } else {
+                error = worker.in.readUTF();
+            }
+            worker.peakRssKb = worker.in.readLong();
+            healthy = true;
+            if (error != null) {
+                throw new IOException("转换失败: " + error);
+            }
+            return pdf;
+        } catch (IOException e) {
+            throw asConversionFailure(worker, healthy, e);
+        } finally {
+            kill.cancel(false);
+            release(worker, healthy);
+        }
+    }
+
+    /**
+     * 进程池统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        if (!enabled) {
+            return stats;
+        }
+        stats.put("poolSize", poolSize);
+        stats.put("workers", workerCount.get());
+        stats.put("idle", idle.size());
+        stats.put("conversions", conversions.get());
+        stats.put("failures", failures.get());
+        stats.put("recycled", recycled.get());
+        stats.put("inProcessFallbacks", inProcessFallbacks.get());
+        List<Map<String, Object>> workers = new ArrayList<>();
+        for (Worker worker : all) {
+            Map<String, Object> w = new LinkedHashMap<>();
+            w.put("id", worker.id);
+            w.put("documents", worker.documents);
+            w.put("peakRssMb", worker.peakRssKb / 1024);
+            workers.add(w);
+        }
+        stats.put("workerDetails", workers);
+        return stats;
+    }
+
+    /**
+     * 借出一个空闲进程，必要时启动新进程；池未启用或进程无法启动时返回 null（在当前进程内转换）
+     */
+    private Worker borrowOrNull() throws InterruptedException {
+        if (!enabled || closed) {
+            return null;
+        }
+        if (System.currentTimeMillis() < launchRetryAfter && workerCount.get() == 0) {
+            inProcessFallbacks.incrementAndGet();
+            return null;
+        }
+        while (true) {
+            Worker worker = idle.poll();
+            if (worker != null) {
+                if (worker.process.isAlive()) {
+                    return worker;
+                }
+                log.warn("转换进程 #{} 已退出，启动新进程", worker.id);
+                discard(worker);
+                continue;
+            }
+            int count = workerCount.get();
+            if (count < poolSize) {
+                if (!workerCount.compareAndSet(count, count + 1)) {
+                    continue;
+                }
+                try {
+                    return startWorker();
+                } catch (IOException e) {
+                    workerCount.decrementAndGet();
+                    launchRetryAfter = System.currentTimeMillis() + LAUNCH_RETRY_INTERVAL_MS;
+                    inProcessFallbacks.incrementAndGet();
+                    log.error("启动转换进程失败，{} 秒内在当前进程内转换: {}",
+                            LAUNCH_RETRY_INTERVAL_MS / 1000, e.getMessage());
+                    return null;
+                }
+            }
+            // 所有进程都在转换：等待归还（进程退役时会让出名额，因此定期重新检查）
+            worker = idle.poll(1, TimeUnit.SECONDS);
+            if (worker != null) {
+                if (worker.process.isAlive()) {
+                    return worker;
+                }
+                discard(worker);
+            }
+        }
+    }
+
+    /**
+     * 归还进程：已损坏、已达到文档数或内存上限的进程退役
+     */
+    private void release(Worker worker, boolean healthy) {
+        conversions.incrementAndGet();
+        worker.documents++;
+        if (closed || !healthy || !worker.process.isAlive()) {
+            discard(worker);
+            return;
+        }
+        if (worker.documents >= maxDocuments || worker.peakRssKb >= maxRssMb * 1024) {
+            log.info("转换进程 #{} 退役: 已转换 {} 个文档, 峰值内存 {} MB",
+                    worker.id, worker.documents, worker.peakRssKb / 1024);
+            recycled.incrementAndGet();
+            discard(worker);
+            return;
+        }
+        idle.offer(worker);
+    }
+
+    private void discard(Worker worker) {
+        if (all.remove(worker)) {
+            workerCount.decrementAndGet();
+        }
+        stopWorker(worker);
+    }
+
+    private Exception asConversionFailure(Worker worker, boolean healthy, IOException e) {
+        failures.incrementAndGet();
+        if (healthy) {
+            // 子进程应答了转换错误，进程本身可以继续使用
+            return e;
+        }
+        if (worker.timedOut) {
+            return new IOException("转换超时（" + timeoutMs + " ms），已终止转换进程 #" + worker.id, e);
+        }
+        return new IOException("转换进程 #" + worker.id + " 异常退出: " + e.getMessage(), e);
+    }
+
+    private Worker startWorker() throws IOException, InterruptedException {
+        long startTime = System.currentTimeMillis();
+        ProcessBuilder builder = new ProcessBuilder(launchCommand);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        Worker worker = new Worker(nextWorkerId.getAndIncrement(), builder.start());
+        all.add(worker);
+        ScheduledFuture<?> kill = scheduleKill(worker, startupTimeoutMs);
+        try {
+            if (worker.in.readByte() != ConvertWorkerMain.STATUS_OK) {
+                throw new IOException("转换进程握手失败");
+            }
+        } catch (IOException e) {
+            all.remove(worker);
+            stopWorker(worker);
+            throw worker.timedOut ? new IOException("转换进程启动超时", e) : e;
+        } finally {
+            kill.cancel(false);
+        }
+        log.info("转换进程 #{} 已启动，耗时 {} ms", worker.id, System.currentTimeMillis() - startTime);
+        return worker;
+    }
+
+    private ScheduledFuture<?> scheduleKill(Worker worker, long delayMs) {
+        return watchdog.schedule(() -> {
+            worker.timedOut = true;
+            log.warn("转换进程 #{} 超时未应答，强制终止", worker.id);
+            worker.process.destroyForcibly();
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void stopWorker(Worker worker) {
+        if (!worker.process.isAlive()) {
+            return;
+        }
+        try {
+            worker.out.writeInt(ConvertWorkerMain.OP_EXIT);
+            worker.out.flush();
+            if (worker.process.waitFor(5, TimeUnit.SECONDS)) {
+                return;
+            }
+        } catch (IOException ignored) {
+            // 进程已关闭管道，直接终止
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        worker.process.destroyForcibly();
+    }
+
+    /**
+     * 子进程启动命令：使用当前 JVM 和类路径
+     *
+     * 以 Spring Boot 可执行 jar 运行时，依赖在 jar 内的 BOOT-INF/lib 下，
+     * 需要通过 PropertiesLauncher 指定主类（loader.main）来加载。
+     */
+    private List<String> buildLaunchCommand() {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-Xmx" + heapMb + "m");
+        command.add("-Dfile.encoding=UTF-8");
+        for (String option : jvmOptions.trim().split("\\s+")) {
+            if (!option.isEmpty()) {
+                command.add(option);
+            }
+        }
+        String classPath = System.getProperty("java.class.path");
+        command.add("-cp");
+        command.add(classPath);
+        if (isBootJar(classPath)) {
+            command.add("-Dloader.main=" + ConvertWorkerMain.class.getName());
+            command.add("org.springframework.boot.loader.PropertiesLauncher");
+        } else {
+            command.add(ConvertWorkerMain.class.getName());
+        }
+        return command;
+    }
+
+    private static boolean isBootJar(String classPath) {
+        if (classPath.contains(File.pathSeparator) || !classPath.endsWith(".jar")) {
+            return false;
+        }
+        try (JarFile jar = new JarFile(classPath)) {
+            return jar.getEntry("BOOT-INF/classes/") != null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,479 @@
+package com.example.docxserver.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * DOCX 转 PDF 路由
+ *
+ * 在 docx.converter.backends 配置的后端（{@link DocxPdfConverter}）之间选择：
+ * - 按每个后端最近 window-size 次转换统计耗时中位数和失败率
+ * - 优先使用还没有耗时样本的后端（按配置顺序，先试一次再比较），其余按耗时中位数从快到慢
+ * - 失败率达到 max-error-rate（样本数不少于 min-samples）的后端暂停使用，
+ *   每隔 probe-interval-ms 放一个请求试探，试探成功即清空统计恢复使用
+ * - 转换失败时依次改用下一个后端
+ * - 启用对冲时，主后端超过其 p95 耗时（样本不足时为 default-delay-ms）仍未完成，
+ *   再用下一个后端同时转换，先成功的结果生效
+ *
+ * 每次尝试输出到各自的临时文件，生效的结果再原子重命名为目标文件；
+ * 落选的尝试无法中途中断（Aspose 转换、远程命令），完成后丢弃其产物。
+ */
+@Slf4j
+@Component
+public class ConverterRouter {
+
+    private static final String PART_SUFFIX = ".part";
+
+    @Autowired
+    private List<DocxPdfConverter> converters;
+
+    /**
+     * 参与路由的后端名称（逗号分隔，顺序即冷启动时的优先顺序）
+     */
+    @Value("${docx.converter.backends:local-aspose}")
+    private String backendNames;
+
+    @Value("${docx.converter.window-size:50}")
+    private int windowSize;
+
+    @Value("${docx.converter.min-samples:5}")
+    private int minSamples;
+
+    @Value("${docx.converter.max-error-rate:0.5}")
+    private double maxErrorRate;
+
+    @Value("${docx.converter.probe-interval-ms:60000}")
+    private long probeIntervalMs;
+
+    @Value("${docx.converter.hedge.enabled:false}")
+    private boolean hedgeEnabled;
+
+    /**
+     * 主后端耗时样本不足时的对冲等待时间
+     */
+    @Value("${docx.converter.hedge.default-delay-ms:30000}")
+    private long hedgeDefaultDelayMs;
+
+    /**
+     * 对冲等待时间下限（避免小文档频繁对冲）
+     */
+    @Value("${docx.converter.hedge.min-delay-ms:2000}")
+    private long hedgeMinDelayMs;
+
+    /**
+     * 对冲时等待结果的最长时间（不对冲时由各后端自身的超时控制）
+     */
+    @Value("${docx.converter.timeout-ms:900000}")
+    private long timeoutMs;
+
+    private final List<Backend> backends = new ArrayList<>();
+    private ExecutorService attemptExecutor;
+
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        Map<String, DocxPdfConverter> byName = new LinkedHashMap<>();
+        for (DocxPdfConverter converter : converters) {
+            byName.put(converter.getName(), converter);
+        }
+        for (String name : backendNames.split(",")) {
+            name = name.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            DocxPdfConverter converter = byName.get(name);
+            if (converter == null) {
+                throw new IllegalStateException("未知的转换后端: " + name + "，可选: " + byName.keySet());
+            }
+            backends.add(new Backend(converter, windowSize));
+        }
+        if (backends.isEmpty()) {
+            throw new IllegalStateException("docx.converter.backends 未配置转换后端");
+        }
+        AtomicInteger counter = new AtomicInteger(1);
+        attemptExecutor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "docx-convert-attempt-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("转换后端: {}, 对冲: {}", backendNames, hedgeEnabled ? "启用" : "关闭");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (attemptExecutor != null) {
+            attemptExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 转换 DOCX 为 PDF，同时保存清理后的 DOCX
+     *
+     * @param docxPath        docx 文件路径
+     * @param pdfPath         输出的 pdf 文件路径
+     * @param cleanedDocxPath 清理后 docx 的输出路径（为null时不保存，可以与 docxPath 相同）
+     * @return 实际完成转换的后端名称
+     * @throws Exception 所有后端都转换失败时抛出最后一个异常
+     */
+    public String convert(String docxPath, String pdfPath, String cleanedDocxPath) throws Exception {
+        Deque<Backend> remaining = new ArrayDeque<>(rank());
+        if (remaining.isEmpty()) {
+            throw new IllegalStateException("没有可用的转换后端");
+        }
+        Exception failure = null;
+        while (!remaining.isEmpty()) {
+            if (failure != null) {
+                fallbacks.incrementAndGet();
+                log.warn("转换失败，改用 {}: {}", remaining.peek().getName(), failure.getMessage());
+            }
+            try {
+                Attempt winner = race(remaining, docxPath, pdfPath, cleanedDocxPath);
+                winner.commit(pdfPath, cleanedDocxPath);
+                return winner.backend.getName();
+            } catch (Exception e) {
+                failure = e;
+            }
+        }
+        throw failure;
+    }
+
+    /**
+     * 各后端的统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("hedgeEnabled", hedgeEnabled);
+        stats.put("hedges", hedges.get());
+        stats.put("hedgeWins", hedgeWins.get());
+        stats.put("fallbacks", fallbacks.get());
+        Map<String, Object> backendStats = new LinkedHashMap<>();
+        for (Backend backend : backends) {
+            Snapshot snapshot = backend.snapshot();
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("available", backend.converter.isAvailable());
+            item.put("healthy", isHealthy(snapshot));
+            item.put("samples", snapshot.samples);
+            item.put("errorRate", snapshot.errorRate());
+            item.put("p50Ms", snapshot.p50Ms);
+            item.put("p95Ms", snapshot.p95Ms);
+            item.put("conversions", backend.conversions.get());
+            backendStats.put(backend.getName(), item);
+        }
+        stats.put("backends", backendStats);
+        return stats;
+    }
+
+    /**
+     * 按健康状况和耗时排出本次的尝试顺序
+     */
+    List<Backend> rank() {
+        List<Backend> healthy = new ArrayList<>();
+        List<Backend> unhealthy = new ArrayList<>();
+        Map<Backend, Long> p50 = new LinkedHashMap<>();
+        for (Backend backend : backends) {
+            if (!backend.converter.isAvailable()) {
+                continue;
+            }
+            Snapshot snapshot = backend.snapshot();
+            p50.put(backend, snapshot.p50Ms);
+            (isHealthy(snapshot) ? healthy : unhealthy).add(backend);
+        }
+        // 没有样本（-1）的排在最前；List.sort 是稳定排序，同值保持配置顺序
+        healthy.sort((a, b) -> Long.compare(p50.get(a), p50.get(b)));
+
+        long now = System.currentTimeMillis();
+        for (Backend backend : unhealthy) {
+            if (backend.tryProbe(now, probeIntervalMs)) {
+                log.info("转换后端 {} 失败率过高已暂停，本次试探", backend.getName());
+                healthy.add(0, backend);
+                return healthy;
+            }
+        }
+        // 全部不健康时仍按配置顺序尝试，而不是直接拒绝
+        return healthy.isEmpty() ? unhealthy : healthy;
+    }
+
+    private boolean isHealthy(Snapshot snapshot) {
+        return snapshot.samples < minSamples || snapshot.errorRate() < maxErrorRate;
+    }
+
+    /**
+     * 用队首后端转换，需要时对冲队列中的下一个后端；用到的后端从队列中移除
+     */
+    private Attempt race(Deque<Backend> remaining, String docxPath, String pdfPath, String cleanedDocxPath) throws Exception {
+        Backend primary = remaining.poll();
+        if (!hedgeEnabled || remaining.isEmpty()) {
+            Attempt attempt = new Attempt(primary, docxPath, pdfPath, cleanedDocxPath);
+            try {
+                attempt.run();
+            } catch (Exception e) {
+                attempt.discard();
+                throw e;
+            }
+            return attempt;
+        }
+
+        Race race = new Race();
+        race.startIfUndecided(new Attempt(primary, docxPath, pdfPath, cleanedDocxPath));
+        long delayMs = hedgeDelayMs(primary);
+        try {
+            return race.winner.get(delayMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            Backend hedge = remaining.peek();
+            if (race.startIfUndecided(new Attempt(hedge, docxPath, pdfPath, cleanedDocxPath))) {
+                remaining.poll();
+                hedges.incrementAndGet();
+                log.info("{} 转换超过 {} ms 未完成，同时使用 {} 转换", primary.getName(), delayMs, hedge.getName());
+            }
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+
+        try {
+            Attempt winner = race.winner.get(timeoutMs, TimeUnit.MILLISECONDS);
+            if (winner.backend != primary) {
+                hedgeWins.incrementAndGet();
+            }
+            return winner;
+        } catch (TimeoutException e) {
+            // 之后完成的尝试在 Race 中自行丢弃产物
+            race.winner.cancel(false);
+            throw new TimeoutException("转换超时（" + timeoutMs + " ms）");
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    /**
+     * 对冲等待时间：主后端最近耗时的 p95（不低于 min-delay-ms），样本不足时为 default-delay-ms
+     */
+    private long hedgeDelayMs(Backend backend) {
+        Snapshot snapshot = backend.snapshot();
+        if (snapshot.successes < minSamples) {
+            return hedgeDefaultDelayMs;
+        }
+        return Math.max(hedgeMinDelayMs, snapshot.p95Ms);
+    }
+
+    private static Exception unwrap(ExecutionException e) {
+        Throwable cause = e.getCause();
+        return cause instanceof Exception ? (Exception) cause : e;
+    }
+
+    private static void moveAtomically(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * 同时进行的若干次尝试：第一个成功的胜出，全部失败时以最后一个异常结束
+     */
+    private final class Race {
+        final CompletableFuture<Attempt> winner = new CompletableFuture<>();
+        private int running;
+
+        synchronized boolean startIfUndecided(Attempt attempt) {
+            if (winner.isDone()) {
+                return false;
+            }
+            running++;
+            attemptExecutor.execute(() -> {
+                Exception error = null;
+                try {
+                    attempt.run();
+                } catch (Exception e) {
+                    error = e;
+                }
+                if (!finish(attempt, error)) {
+                    attempt.discard();
+                }
+            });
+            return true;
+        }
+
+        private synchronized boolean finish(Attempt attempt, Exception error) {
+            running--;
+            if (error == null) {
+                return winner.complete(attempt);
+            }
+            if (running == 0) {
+                winner.completeExceptionally(error);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 一次转换尝试：输出到以后端名区分的临时文件
+     */
+    private static final class Attempt {
+        final Backend backend;
+        final String docxPath;
+        final File pdfPart;
+        final File docxPart;
+
+        Attempt(Backend backend, String docxPath, String pdfPath, String cleanedDocxPath) {
+            this.backend = backend;
+            this.docxPath = docxPath;
+            String suffix = "." + backend.getName() + PART_SUFFIX;
+            this.pdfPart = new File(pdfPath + suffix);
+            this.docxPart = cleanedDocxPath != null ? new File(cleanedDocxPath + suffix) : null;
+        }
+
+        void run() throws Exception {
+            long startTime = System.currentTimeMillis();
+            boolean success = false;
+            try {
+                backend.converter.convert(docxPath, pdfPart.getPath(), docxPart != null ? docxPart.getPath() : null);
+                if (!pdfPart.isFile()) {
+                    throw new IOException(backend.getName() + " 转换失败：PDF文件未生成");
+                }
+                success = true;
+            } finally {
+                backend.record(System.currentTimeMillis() - startTime, success);
+            }
+        }
+
+        void commit(String pdfPath, String cleanedDocxPath) throws IOException {
+            if (docxPart != null) {
+                moveAtomically(docxPart, new File(cleanedDocxPath));
+            }
+            moveAtomically(pdfPart, new File(pdfPath));
+            backend.conversions.incrementAndGet();
+        }
+
+        void discard() {
+            pdfPart.delete();
+            if (docxPart != null) {
+                docxPart.delete();
+            }
+        }
+    }
+
+    /**
+     * 单个后端及其最近的转换记录
+     */
+    static final class Backend {
+        final DocxPdfConverter converter;
+        final AtomicLong conversions = new AtomicLong();
+        /**
+         * 因失败率过高暂停的时间（0 表示未暂停），每次试探后更新
+         */
+        private final AtomicLong pausedAt = new AtomicLong();
+
+        private final long[] latencies;
+        private final boolean[] outcomes;
+        private int next;
+        private int size;
+
+        Backend(DocxPdfConverter converter, int windowSize) {
+            this.converter = converter;
+            this.latencies = new long[Math.max(1, windowSize)];
+            this.outcomes = new boolean[latencies.length];
+        }
+
+        String getName() {
+            return converter.getName();
+        }
+
+        synchronized void record(long elapsedMs, boolean success) {
+            // 暂停期间转换成功（试探或对冲）：清空之前的记录，恢复使用
+            if (success && pausedAt.get() > 0) {
+                pausedAt.set(0);
+                next = 0;
+                size = 0;
+            }
+            latencies[next] = elapsedMs;
+            outcomes[next] = success;
+            next = (next + 1) % latencies.length;
+            if (size < latencies.length) {
+                size++;
+            }
+        }
+
+        synchronized Snapshot snapshot() {
+            long[] successLatencies = new long[size];
+            int successes = 0;
+            for (int i = 0; i < size; i++) {
+                if (outcomes[i]) {
+                    successLatencies[successes++] = latencies[i];
+                }
+            }
+            long[] sorted = Arrays.copyOf(successLatencies, successes);
+            Arrays.sort(sorted);
+            return new Snapshot(size, successes, percentile(sorted, 0.5), percentile(sorted, 0.95));
+        }
+
+        /**
+         * 不健康的后端：首次调用时开始暂停，之后距上次试探超过间隔时占用本次试探
+         */
+        boolean tryProbe(long now, long intervalMs) {
+            long last = pausedAt.get();
+            if (last == 0) {
+                pausedAt.compareAndSet(0, now);
+                return false;
+            }
+            return now - last >= intervalMs && pausedAt.compareAndSet(last, now);
+        }
+
+        private static long percentile(long[] sorted, double q) {
+            if (sorted.length == 0) {
+                return -1;
+            }
+            int index = (int) Math.ceil(q * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+        }
+    }
+
+    /**
+     * 后端统计快照（p50Ms / p95Ms 只统计成功的转换，没有样本时为 -1）
+     */
+    static final class Snapshot {
+        final int samples;
+        final int successes;
+        final long p50Ms;
+        final long p95Ms;
+
+        Snapshot(int samples, int successes, long p50Ms, long p95Ms) {
+            this.samples = samples;
+            this.successes = successes;
+            this.p50Ms = p50Ms;
+            this.p95Ms = p95Ms;
+        }
+
+        double errorRate() {
+            return samples == 0 ? 0.0 : (samples - successes) * 1.0 / samples;
+        }
+    }
+}
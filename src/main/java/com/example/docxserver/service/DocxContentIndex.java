@@ -0,0 +1,144 @@
+package com.example.docxserver.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 上传DOCX的内容索引（内容寻址去重）
+ *
+ * 索引键 = 原始DOCX的 SHA-256 + 影响输出的处理选项（如 includeMcid），
+ * 索引值 = 已成功处理该内容的 taskId。
+ *
+ * 持久化为 {basePath}/content_index.txt，每行一条 "key\ttaskId"，只追加写入；
+ * 启动时加载（同一 key 以最后一行为准）并压缩重写。
+ */
+@Slf4j
+@Component
+public class DocxContentIndex {
+
+    private static final String INDEX_FILE_NAME = "content_index.txt";
+
+    @Value("${docx.storage.base-path:/data/docx_server}")
+    private String basePath;
+
+    private final Map<String, String> index = new ConcurrentHashMap<>();
+
+    private File indexFile;
+
+    @PostConstruct
+    public void init() {
+        File baseDir = new File(basePath);
+        if (!baseDir.exists()) {
+            baseDir.mkdirs();
+        }
+        indexFile = new File(baseDir, INDEX_FILE_NAME);
+        if (!indexFile.exists()) {
+            return;
+        }
+
+        try {
+            List<String> lines = Files.readAllLines(indexFile.toPath(), StandardCharsets.UTF_8);
+            for (String line : lines) {
+                int tab = line.indexOf('\t');
+                if (tab > 0 && tab < line.length() - 1) {
+                    index.put(line.substring(0, tab), line.substring(tab + 1));
+                }
+            }
+            // 压缩：去掉被覆盖的旧记录
+            if (lines.size() > index.size()) {
+                rewrite();
+            }
+            log.info("内容索引已加载: {} 条记录", index.size());
+        } catch (IOException e) {
+            log.error("加载内容索引失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 构建索引键
+     *
+     * @param contentHash 原始DOCX的 SHA-256（十六进制）
+     * @param includeMcid 是否包含MCID（影响TXT输出）
+     * @return 索引键
+     */
+    public static String buildKey(String contentHash, boolean includeMcid) {
+        return contentHash + "|mcid=" + includeMcid;
+    }
+
+    /**
+     * 查找已处理过相同内容的任务
+     *
+     * @param key 索引键
+     * @return taskId，不存在返回 null
+     */
+    public String lookup(String key) {
+        return key != null ? index.get(key) : null;
+    }
+
+    /**
+     * 登记已成功处理的任务
+     *
+     * @param key 索引键
+     * @param taskId 任务ID
+     */
+    public void register(String key, String taskId) {
+        if (key == null || taskId == null) {
+            return;
+        }
+        String previous = index.put(key, taskId);
+        if (taskId.equals(previous)) {
+            return;
+        }
+        synchronized (this) {
+            try (BufferedWriter writer = Files.newBufferedWriter(indexFile.toPath(), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                writer.write(key + "\t" + taskId);
+                writer.newLine();
+            } catch (IOException e) {
+                log.error("[taskId: {}] 写入内容索引失败: {}", taskId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 移除失效的索引记录（源任务已不存在）
+     *
+     * @param key 索引键
+     * @param taskId 失效的任务ID
+     */
+    public void remove(String key, String taskId) {
+        if (index.remove(key, taskId)) {
+            synchronized (this) {
+                try {
+                    rewrite();
+                } catch (IOException e) {
+                    log.error("重写内容索引失败: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void rewrite() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, String> entry : index.entrySet()) {
+            lines.add(entry.getKey() + "\t" + entry.getValue());
+        }
+        File tmp = new File(indexFile.getParentFile(), INDEX_FILE_NAME + ".tmp");
+        Files.write(tmp.toPath(), lines, StandardCharsets.UTF_8);
+        Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.docxserver.service;
+
+/**
+ * DOCX 转 PDF 后端
+ *
+ * 每个实现是一个 Spring 组件，由 {@link ConverterRouter} 按 docx.converter.backends 配置选用。
+ * 转换前须移除页眉、页脚和批注，并输出带结构标签的 PDF（后续按 MCID 提取依赖结构树）。
+ */
+public interface DocxPdfConverter {
+
+    /**
+     * 后端名称（对应 docx.converter.backends 中的名称，也用于日志和指标）
+     */
+    String getName();
+
+    /**
+     * 当前是否可以使用（依赖未就绪时返回 false，路由会跳过该后端）
+     */
+    boolean isAvailable();
+
+    /**
+     * 转换 DOCX 为 PDF
+     *
+     * @param docxPath        docx 文件路径（不会被修改）
+     * @param pdfPath         输出的 pdf 文件路径
+     * @param cleanedDocxPath 清理后 docx 的输出路径（为null时不保存）
+     * @throws Exception 转换异常
+     */
+    void convert(String docxPath, String pdfPath, String cleanedDocxPath) throws Exception;
+}
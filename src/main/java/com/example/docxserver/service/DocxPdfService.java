@@ -1,27 +1,45 @@
 package com.example.docxserver.service;
 
-import com.example.docxserver.util.aspose.DocxConvertPdf;
-import com.example.docxserver.util.docx.DocxHeaderFooterRemover;
+import com.example.docxserver.util.aspose.LineLevelArtifactGenerator;
+import com.example.docxserver.util.aspose.PdfImageRenderer;
+import com.example.docxserver.util.common.ArtifactManifest;
+import com.example.docxserver.util.common.DocxZipValidator;
+import com.example.docxserver.util.common.ProgressListener;
+import com.example.docxserver.util.common.ZipStreamUtils;
+import com.example.docxserver.util.docx.DocxCostEstimator;
+import com.example.docxserver.util.taggedPDF.PageMcidCache;
+import com.example.docxserver.util.taggedPDF.PageOffsetIndex;
+import com.example.docxserver.util.taggedPDF.PdfExtractionContext;
 import com.example.docxserver.util.taggedPDF.PdfTableExtractor;
 import com.example.docxserver.util.tagged.PdfTextMatcher;
 import com.example.docxserver.util.tagged.dto.MatchRequest;
 import com.example.docxserver.util.tagged.dto.MatchResponse;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.annotation.PostConstruct;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * PDF文档处理服务
@@ -39,6 +57,51 @@ public class DocxPdfService {
     @Value("${docx.storage.base-path:/data/docx_server}")
     private String basePath;
 
+    @Autowired
+    private PipelineExecutors pipelineExecutors;
+
+    @Autowired
+    private DocxContentIndex contentIndex;
+
+    @Autowired
+    private ArtifactBundleService artifactBundleService;
+
+    @Autowired
+    private TaskStateRegistry taskStateRegistry;
+
+    @Autowired
+    private TaskProgressPublisher progressPublisher;
+
+    @Autowired
+    private TaskJournal taskJournal;
+
+    @Autowired
+    private StorageManager storageManager;
+
+    @Autowired
+    private TaskCancellation taskCancellation;
+
+    @Autowired
+    private SharedWorkQueue sharedWorkQueue;
+
+    @Autowired
+    private PipelineMetrics pipelineMetrics;
+
+    @Autowired
+    private AdmissionController admissionController;
+
+    @Autowired
+    private DrainingState drainingState;
+
+    @Autowired
+    private ConvertWorkerPool convertWorkerPool;
+
+    @Autowired
+    private PdfConversionCache pdfConversionCache;
+
+    @Autowired
+    private ConverterRouter converterRouter;
+
     @PostConstruct
     public void init() {
         log.info("文档存储基础目录: {}", basePath);
@@ -48,6 +111,8 @@ public class DocxPdfService {
             boolean created = baseDir.mkdirs();
             log.info("创建基础目录: {}, 结果: {}", basePath, created);
         }
+        // 多实例部署：从共享队列认领的任务按处理日志执行
+        sharedWorkQueue.setTaskRunner(this::runClaimedTask);
     }
 
     /**
@@ -58,6 +123,38 @@ public class DocxPdfService {
      * @throws IOException 文件保存异常
      */
     public Map<String, Object> uploadDocx(MultipartFile file) throws IOException {
+        try (InputStream is = file.getInputStream()) {
+            return saveDocx(is, file.getOriginalFilename());
+        }
+    }
+
+    /**
+     * 保存DOCX流到新任务目录（上传和批量处理共用）
+     *
+     * @param input DOCX内容流（由调用方关闭）
+     * @param originalFilename 原始文件名（可为null）
+     * @return 包含taskId、filePath、taskDir、originalName、contentHash的Map
+     * @throws IOException 文件保存异常
+     * @throws IllegalArgumentException 不是有效的DOCX（任务目录已清理）
+     */
+    public Map<String, Object> saveDocx(InputStream input, String originalFilename) throws IOException {
+        return saveDocx(input, originalFilename, Long.MAX_VALUE);
+    }
+
+    /**
+     * 保存DOCX流到新任务目录（限制大小）
+     *
+     * 单次流式写盘：写入的同时计算 SHA-256 并保留文件尾部，写完后校验 ZIP 中央目录，
+     * 不再需要额外读一遍文件。可直接传入请求体（/process-stream），避免 multipart 先缓冲再复制的二次写盘。
+     *
+     * @param input DOCX内容流（由调用方关闭）
+     * @param originalFilename 原始文件名（可为null）
+     * @param maxBytes 最大字节数，超过时中止并清理
+     * @return 包含taskId、filePath、taskDir、originalName、contentHash的Map
+     * @throws IOException 文件保存异常
+     * @throws IllegalArgumentException 超过大小限制或不是有效的DOCX（任务目录已清理）
+     */
+    public Map<String, Object> saveDocx(InputStream input, String originalFilename, long maxBytes) throws IOException {
         Map<String, Object> result = new HashMap<>();
 
         // 生成taskId
@@ -74,29 +171,42 @@ public class DocxPdfService {
         String savedFileName = taskId + ".docx";
         File savedFile = new File(taskDir, savedFileName);
 
-        // 使用流式写入，避免 transferTo 的路径问题
-        try (InputStream is = file.getInputStream();
-             OutputStream os = Files.newOutputStream(savedFile.toPath())) {
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            while ((bytesRead = is.read(buffer)) != -1) {
-                os.write(buffer, 0, bytesRead);
+        // 使用流式写入，避免 transferTo 的路径问题；写入的同时计算 SHA-256（用于内容去重）并保留尾部（用于结构校验）
+        MessageDigest digest = newSha256();
+        DocxZipValidator validator = new DocxZipValidator();
+        try {
+            try (InputStream is = new DigestInputStream(input, digest);
+                 OutputStream os = Files.newOutputStream(savedFile.toPath())) {
+                byte[] buffer = new byte[ZipStreamUtils.BUFFER_SIZE];
+                int bytesRead;
+                while ((bytesRead = is.read(buffer)) != -1) {
+                    validator.update(buffer, 0, bytesRead);
+                    if (validator.getTotal() > maxBytes) {
+                        throw new IllegalArgumentException("文件超过大小限制: " + maxBytes + " 字节");
+                    }
+                    os.write(buffer, 0, bytesRead);
+                }
             }
+            validator.validate(savedFile, validator.getTotal());
+        } catch (IllegalArgumentException | IOException e) {
+            FileSystemUtils.deleteRecursively(taskDir.toPath());
+            log.warn("[taskId: {}] 保存上传文件失败，已清理: {}", taskId, e.getMessage());
+            throw e;
         }
+        String contentHash = toHex(digest.digest());
 
-        log.info("文件保存成功: {}", savedFile.getAbsolutePath());
+        log.info("文件保存成功: {}, sha256={}", savedFile.getAbsolutePath(), contentHash);
+        ArtifactManifest.record(taskDir, ArtifactManifest.KIND_DOCX, savedFile, contentHash);
 
         // 获取原始文件名（不含扩展名）
-        String originalFilename = file.getOriginalFilename();
-        String originalName = originalFilename != null && originalFilename.contains(".")
-                ? originalFilename.substring(0, originalFilename.lastIndexOf('.'))
-                : taskId;
+        String originalName = originalNameOf(originalFilename, taskId);
 
         // 返回结果
         result.put("taskId", taskId);
         result.put("filePath", savedFile.getAbsolutePath());
         result.put("taskDir", taskDir.getAbsolutePath());
         result.put("originalName", originalName);
+        result.put("contentHash", contentHash);
 
         return result;
     }
@@ -145,6 +255,22 @@ public class DocxPdfService {
      * @throws IOException 文件读写异常
      */
     public void extractPdfToXml(String taskId, String pdfPath, String outputDir, boolean includeMcid, String originalName) throws IOException {
+        extractPdfToXml(taskId, pdfPath, outputDir, includeMcid, originalName, ProgressListener.NONE);
+    }
+
+    /**
+     * 从PDF提取表格和段落结构到XML格式（回调MCID预热和表格/段落提取进度）
+     *
+     * @param taskId 任务ID
+     * @param pdfPath PDF文件路径
+     * @param outputDir 输出目录
+     * @param includeMcid 是否在输出中包含MCID和page属性
+     * @param originalName 原始文件名（不含扩展名），用于AI训练JSON文件名
+     * @param listener 进度回调
+     * @throws IOException 文件读写异常
+     */
+    public void extractPdfToXml(String taskId, String pdfPath, String outputDir, boolean includeMcid, String originalName,
+                                ProgressListener listener) throws IOException {
         // 验证PDF文件存在
         File pdfFile = new File(pdfPath);
         if (!pdfFile.exists()) {
@@ -157,8 +283,8 @@ public class DocxPdfService {
             outDir.mkdirs();
         }
 
-        // 调用PdfTableExtractor提取结构
-        PdfTableExtractor.extractToXml(taskId, pdfPath, outputDir, includeMcid, originalName);
+        // 调用PdfTableExtractor提取结构（同时输出 TXT 和 AI训练JSON）
+        PdfTableExtractor.extract(taskId, pdfPath, outputDir, new String[]{"txt", "infer"}, includeMcid, originalName, listener);
     }
 
     /**
@@ -200,19 +326,15 @@ public class DocxPdfService {
             // 更新状态：已上传
             updateTaskStatus(taskId, STATUS_UPLOADED, "文件已上传", null);
 
-            // Step 1.5: 移除DOCX中的页眉、页脚和页码
-            log.info("[taskId: {}] Step 1.5: 移除页眉页脚页码...", taskId);
-            DocxHeaderFooterRemover.removeHeaderFooter(docxPath);
-            log.info("[taskId: {}] 页眉页脚页码已移除", taskId);
-
-            // Step 2: 使用本机Aspose.Words JAR转换DOCX为PDF
-            log.info("[taskId: {}] Step 2: 使用本机Aspose.Words转换DOCX为PDF...", taskId);
+            // Step 2: 转换DOCX为PDF（移除页眉、页脚和批注，清理后的DOCX覆盖原文件；后端由 ConverterRouter 选择）
+            log.info("[taskId: {}] Step 2: 转换DOCX为PDF...", taskId);
             updateTaskStatus(taskId, STATUS_CONVERTING, "正在转换PDF", null);
 
             // PDF输出路径：与DOCX同目录，文件名改为.pdf
             String pdfPath = taskDir + File.separator + taskId + ".pdf";
 
-            DocxConvertPdf.convert(docxPath, pdfPath);
+            converterRouter.convert(docxPath, pdfPath, docxPath);
+            recordArtifact(taskId, taskDir, ArtifactManifest.KIND_DOCX, new File(docxPath));
 
             File pdfFile = new File(pdfPath);
             if (!pdfFile.exists()) {
@@ -220,59 +342,29 @@ public class DocxPdfService {
             }
             result.put("pdfPath", pdfPath);
             log.info("[taskId: {}] PDF文件生成成功: {}", taskId, pdfPath);
+            recordArtifact(taskId, taskDir, ArtifactManifest.KIND_PDF, pdfFile);
 
             // Step 3 & 4: 并行执行 - 提取TXT/JSON 和 渲染图片
             log.info("[taskId: {}] Step 3&4: 并行执行 TXT/JSON提取 和 图片渲染...", taskId);
             updateTaskStatus(taskId, STATUS_EXTRACTING, "正在解析PDF和渲染图片", null);
 
-            final String finalTaskId = taskId;
-            final String finalPdfPath = pdfPath;
-            final String finalTaskDir = taskDir;
-            final String finalOriginalName = originalName;
-            final File finalPdfFile = pdfFile;
-
-            // 并行任务1: 提取TXT + AI JSON
-            CompletableFuture<Void> extractFuture = CompletableFuture.runAsync(() -> {
-                try {
-                    log.info("[taskId: {}] [并行] 开始提取TXT/JSON...", finalTaskId);
-                    extractPdfToXml(finalTaskId, finalPdfPath, finalTaskDir, includeMcid, finalOriginalName);
-                    log.info("[taskId: {}] [并行] TXT/JSON提取完成", finalTaskId);
-                } catch (IOException e) {
-                    throw new RuntimeException("TXT/JSON提取失败: " + e.getMessage(), e);
-                }
-            });
-
-            // 并行任务2: 渲染图片
-            CompletableFuture<Void> renderFuture = CompletableFuture.runAsync(() -> {
-                try {
-                    log.info("[taskId: {}] [并行] 开始渲染图片...", finalTaskId);
-                    File imageDir = new File(finalTaskDir, "images" + File.separator + finalOriginalName);
-                    DocxConvertPdf.renderPdfToImages(finalPdfFile, imageDir);
-                    log.info("[taskId: {}] [并行] 图片渲染完成, 目录: {}", finalTaskId, imageDir.getAbsolutePath());
-                } catch (Exception e) {
-                    log.warn("[taskId: {}] [并行] 图片渲染失败（非致命）: {}", finalTaskId, e.getMessage());
-                }
-            });
-
-            // 等待两个任务都完成
-            CompletableFuture.allOf(extractFuture, renderFuture).join();
-
-            // 查找生成的TXT文件
-            File taskDirFile = new File(taskDir);
-            File[] txtFiles = taskDirFile.listFiles((dir, name) -> name.endsWith(".txt"));
-            if (txtFiles != null && txtFiles.length > 0) {
-                for (File txt : txtFiles) {
-                    if (txt.getName().contains("_pdf_") && !txt.getName().contains("_paragraph_")) {
-                        result.put("txtPath", txt.getAbsolutePath());
-                    } else if (txt.getName().contains("_paragraph_")) {
-                        result.put("paragraphTxtPath", txt.getAbsolutePath());
-                    }
-                }
+            // 在 extract/render 阶段线程池上并行执行，等待两个任务都完成
+            TaskCancellation.Token token = taskCancellation.register(taskId);
+            try {
+                runExtractAndRender(taskId, pdfPath, taskDir, includeMcid, originalName, TaskPriority.INTERACTIVE,
+                        token, new TaskJournal.State()).join();
+            } finally {
+                taskCancellation.unregister(taskId);
             }
 
+            // 生成的TXT文件
+            putTxtPaths(result, taskDir);
+
             log.info("[taskId: {}] 处理完成！", taskId);
             result.put("success", true);
 
+            buildArtifactBundle(taskId);
+
             // 更新状态：完成
             updateTaskStatus(taskId, STATUS_COMPLETED, "处理完成", result);
 
@@ -290,124 +382,1091 @@ public class DocxPdfService {
     }
 
     /**
-     * 异步处理：转换PDF并提取结构（后台执行）
+     * 小文档同步处理：页眉页脚移除、PDF 转换和 TXT 提取全部在内存中完成，TXT 直接在响应中返回
+     *
+     * 页眉页脚移除与 PDF 转换在 INTERACTIVE 通道的 convert 线程池（入口队列）上执行，TXT 提取在 extract 线程池上执行，期间不写中间文件。
+     * 返回后由 BULK 通道异步写入 DOCX、PDF、TXT（含页索引）、AI JSON 和页面图片，
+     * 写完后任务状态变为 COMPLETED，下载、比较、按页读取等接口照常可用。
+     *
+     * @param docxBytes DOCX 内容
+     * @param originalFilename 原始文件名（可为null）
+     * @param includeMcid 是否在TXT输出中包含MCID和page属性
+     * @return taskId、pageCount、tableTxt、paragraphTxt 等
+     * @throws IllegalArgumentException 不是有效的DOCX
+     * @throws RejectedExecutionException INTERACTIVE 通道队列已满（任务目录已清理）
+     * @throws CancellationException 服务正在停止，尚未开始的阶段被丢弃（任务目录已清理）
+     * @throws Exception 处理异常
+     */
+    public Map<String, Object> processSmallDocxSync(byte[] docxBytes, String originalFilename, boolean includeMcid) throws Exception {
+        DocxZipValidator.validate(docxBytes);
+        String contentHash = toHex(newSha256().digest(docxBytes));
+
+        String taskId = UUID.randomUUID().toString().replace("-", "");
+
+        // 同步请求不排队：预算不足时直接拒绝
+        DocxCostEstimator.Estimate estimate = DocxCostEstimator.estimate(docxBytes);
+        if (admissionController.isEnabled() && !admissionController.tryAcquire(taskId, estimate)) {
+            throw new RejectedExecutionException("处理预算已满");
+        }
+        File taskDir = new File(basePath, taskId);
+        taskDir.mkdirs();
+        String originalName = originalNameOf(originalFilename, taskId);
+        String pdfPath = taskDir.getAbsolutePath() + File.separator + taskId + ".pdf";
+        long submitTime = System.currentTimeMillis();
+
+        log.info("[taskId: {}] 小文档同步处理: {} 字节", taskId, docxBytes.length);
+        updateTaskStatus(taskId, STATUS_PROCESSING, "正在同步处理", null);
+
+        PipelineExecutors.StageExecutors executors = pipelineExecutors.forPriority(TaskPriority.INTERACTIVE);
+        TaskCancellation.Token token = taskCancellation.register(taskId);
+        ProgressListener listener = TaskCancellation.wrap(token, progressPublisher.listener(taskId));
+        InMemoryResult state = new InMemoryResult();
+        try {
+            PipelineExecutors
+                    .runAsync(() -> {
+                        token.check();
+                        if (readCachedConversion(taskId, contentHash, state)) {
+                            return;
+                        }
+                        long stageStart = System.currentTimeMillis();
+                        try {
+                            ByteArrayOutputStream cleanedDocx = new ByteArrayOutputStream(docxBytes.length);
+                            state.pdf = convertWorkerPool.convert(docxBytes, cleanedDocx);
+                            state.docx = cleanedDocx.toByteArray();
+                        } catch (Exception e) {
+                            throw new CompletionException(e);
+                        }
+                        pipelineMetrics.recordStage(TaskJournal.STAGE_CONVERT, System.currentTimeMillis() - stageStart, 0, 0);
+                    }, executors.getEntryExecutor())
+                    .thenCompose(v -> PipelineExecutors.runAsync(() -> {
+                        token.check();
+                        long stageStart = System.currentTimeMillis();
+                        try {
+                            state.ctx = new PdfExtractionContext(state.pdf, pdfPath, listener);
+                            state.txt = PdfTableExtractor.extractTxtToMemory(state.ctx, includeMcid, listener);
+                        } catch (IOException e) {
+                            throw new CompletionException(e);
+                        } finally {
+                            PdfTableExtractor.releaseThreadResources();
+                        }
+                        pipelineMetrics.recordStage(TaskJournal.STAGE_TXT, System.currentTimeMillis() - stageStart,
+                                state.ctx.getDoc().getNumberOfPages(), state.ctx.getMcidCache().getGlyphsParsed());
+                    }, executors.getExtractExecutor()))
+                    .join();
+        } catch (RuntimeException e) {
+            state.closeQuietly();
+            admissionController.release(taskId);
+            Throwable cause = unwrapCompletionException(e);
+            if (cause instanceof RejectedExecutionException) {
+                deleteTask(taskId);
+                throw (RejectedExecutionException) cause;
+            }
+            if (cause instanceof CancellationException && drainingState.isDraining()) {
+                // 停机时尚未开始的阶段被丢弃：同步请求没有留下任何产物，由客户端稍后重试
+                taskCancellation.unregister(taskId);
+                deleteTask(taskId);
+                throw (CancellationException) cause;
+            }
+            taskCancellation.unregister(taskId);
+            failTask(taskId, token, cause);
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("taskId", taskId);
+        result.put("originalName", originalName);
+        result.put("contentHash", contentHash);
+        result.put("pageCount", state.ctx.getDoc().getNumberOfPages());
+        result.put("tableCount", state.txt.getTableCount());
+        result.put("paragraphCount", state.txt.getParagraphCount());
+        result.put("tableTxt", state.txt.getTableTxt());
+        result.put("paragraphTxt", state.txt.getParagraphTxt());
+        result.put("elapsedMs", System.currentTimeMillis() - submitTime);
+        result.put("success", true);
+        log.info("[taskId: {}] 同步处理完成，耗时 {} ms，开始异步保存产物", taskId, result.get("elapsedMs"));
+
+        persistInMemoryResult(taskId, taskDir.getAbsolutePath(), pdfPath, includeMcid, originalName, contentHash,
+                submitTime, estimate, token, state);
+        return result;
+    }
+
+    /**
+     * 同步处理的中间结果（在各阶段线程间传递，由 CompletableFuture 保证可见性）
+     */
+    private static class InMemoryResult {
+        byte[] docx;
+        byte[] pdf;
+        PdfExtractionContext ctx;
+        PdfTableExtractor.TxtOutput txt;
+
+        void closeQuietly() {
+            if (ctx != null) {
+                try {
+                    ctx.close();
+                } catch (IOException e) {
+                    log.warn("关闭PDF文档失败: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 在 BULK 通道上保存同步处理的结果，再补做 AI JSON 和图片渲染
+     *
+     * 写盘步骤按处理日志记录，服务中途重启后按普通任务恢复。
+     * 同步响应不等待 BULK 通道：提取阶段的 BULK 队列已满时见 {@link #deferInMemoryResult}。
+     */
+    private void persistInMemoryResult(String taskId, String taskDir, String pdfPath, boolean includeMcid,
+                                       String originalName, String contentHash, long submitTime,
+                                       DocxCostEstimator.Estimate estimate, TaskCancellation.Token token,
+                                       InMemoryResult state) {
+        PipelineExecutors.StageExecutors executors = pipelineExecutors.forPriority(TaskPriority.BULK);
+        if (!executors.hasExtractCapacity()) {
+            deferInMemoryResult(taskId, taskDir, pdfPath, includeMcid, originalName, contentHash, estimate, token, state);
+            return;
+        }
+        String contentKey = DocxContentIndex.buildKey(contentHash, includeMcid);
+
+        PipelineExecutors
+                .runAsync(() -> {
+                    try {
+                        writeInMemoryOutputs(taskId, taskDir, pdfPath, includeMcid, originalName, contentHash, state);
+
+                        token.check();
+                        long stageStart = System.currentTimeMillis();
+                        LineLevelArtifactGenerator.generateWithContext(state.ctx, taskId, taskDir, originalName);
+                        recordAiJsonOutput(taskId, taskDir, originalName, System.currentTimeMillis() - stageStart,
+                                state.ctx.getDoc().getNumberOfPages(), state.ctx.getMcidCache().getGlyphsParsed());
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    } finally {
+                        state.closeQuietly();
+                        PdfTableExtractor.releaseThreadResources();
+                    }
+                }, executors.getExtractExecutor())
+                .thenCompose(v -> {
+                    token.check();
+                    // TXT 和 AI JSON 已完成，只提交渲染：当前线程占着 BULK 提取名额，不能再向提取阶段提交
+                    TaskJournal.State journalState = taskJournal.read(taskId);
+                    return runRenderStage(taskId, pdfPath, taskDir, originalName, TaskPriority.BULK, token,
+                            journalState != null ? journalState : new TaskJournal.State());
+                })
+                .thenRun(() -> {
+                    token.check();
+                    completeTask(taskId, taskDir, pdfPath, originalName, contentHash, contentKey,
+                            TaskPriority.INTERACTIVE, submitTime);
+                })
+                .exceptionally(e -> {
+                    failTask(taskId, token, e);
+                    return null;
+                })
+                .whenComplete((v, e) -> {
+                    taskCancellation.unregister(taskId);
+                    admissionController.release(taskId);
+                });
+    }
+
+    /**
+     * 提取阶段的 BULK 队列已满：在请求线程上写入内存中已有的 DOCX、PDF 和 TXT（只有写盘，不做解析），
+     * 释放同步处理占用的预算，AI JSON 和图片渲染交给准入控制排队，按处理日志作为普通 BULK 任务继续
+     *
+     * 准入队列也已满时任务停留在处理中状态，服务重启后按处理日志恢复。
+     */
+    private void deferInMemoryResult(String taskId, String taskDir, String pdfPath, boolean includeMcid,
+                                     String originalName, String contentHash, DocxCostEstimator.Estimate estimate,
+                                     TaskCancellation.Token token, InMemoryResult state) {
+        try {
+            writeInMemoryOutputs(taskId, taskDir, pdfPath, includeMcid, originalName, contentHash, state);
+        } catch (IOException e) {
+            taskCancellation.unregister(taskId);
+            failTask(taskId, token, e);
+            return;
+        } finally {
+            state.closeQuietly();
+            admissionController.release(taskId);
+        }
+
+        try {
+            admissionController.enqueue(taskId, estimate, TaskPriority.BULK,
+                    () -> resumeOrFail(taskId, TaskPriority.BULK));
+            log.info("[taskId: {}] BULK 提取通道已满，AI JSON 和图片渲染排队处理", taskId);
+        } catch (RejectedExecutionException e) {
+            taskCancellation.unregister(taskId);
+            log.warn("[taskId: {}] 无法排队生成 AI JSON 和图片，将在服务重启后按处理日志恢复: {}", taskId, e.getMessage());
+        }
+    }
+
+    /**
+     * 把同步处理的 DOCX、PDF、TXT 写入任务目录并记入处理日志
+     */
+    private void writeInMemoryOutputs(String taskId, String taskDir, String pdfPath, boolean includeMcid,
+                                      String originalName, String contentHash, InMemoryResult state) throws IOException {
+        File docxFile = new File(taskDir, taskId + ".docx");
+        updateTaskStatus(taskId, STATUS_EXTRACTING, "正在保存处理结果", null);
+        writeAtomically(state.docx, docxFile);
+        writeAtomically(state.pdf, new File(pdfPath));
+        pdfConversionCache.put(contentHash, new File(pdfPath), docxFile);
+        recordSubmission(taskId, includeMcid, originalName, contentHash, TaskPriority.BULK);
+        recordConvertOutputs(taskId, taskDir, docxFile, new File(pdfPath));
+
+        state.txt.write(state.ctx, taskId, taskDir);
+        recordTxtOutputs(taskId, taskDir, state.ctx);
+    }
+
+    /**
+     * 异步处理：转换PDF并提取结构（提交到分阶段线程池执行）
+     *
+     * 页眉页脚移除与 PDF 转换在 convert 线程池（入口队列）上运行，之后由 extract（TXT、AI JSON）和 render（页面图片）线程池并行处理。
+     * 入口队列已满时直接抛出 RejectedExecutionException，由调用方返回 429。
      *
      * @param taskId 任务ID
      * @param docxPath DOCX文件路径
      * @param taskDir 任务目录
      * @param includeMcid 是否包含MCID
      * @param originalName 原始文件名（不含扩展名）
+     * @param contentHash 原始DOCX的 SHA-256（可为null，为null时不做去重）
+     * @return 整个处理流程的 Future（异常已在内部处理并写入任务状态）
+     * @throws RejectedExecutionException 入口队列已满
      */
-    @Async
-    public void processDocxToPdfTxtAsync(String taskId, String docxPath, String taskDir, boolean includeMcid, String originalName) {
-        log.info("[taskId: {}] 开始异步处理...", taskId);
+    public CompletableFuture<Void> processDocxToPdfTxtAsync(String taskId, String docxPath, String taskDir, boolean includeMcid,
+                                                            String originalName, String contentHash) {
+        return processDocxToPdfTxtAsync(taskId, docxPath, taskDir, includeMcid, originalName, contentHash,
+                TaskPriority.INTERACTIVE);
+    }
 
-        try {
-            // Step 1.5: 移除DOCX中的页眉、页脚和页码
-            log.info("[taskId: {}] Step 1.5: 移除页眉页脚页码...", taskId);
-            updateTaskStatus(taskId, STATUS_PROCESSING, "正在移除页眉页脚", null);
-            DocxHeaderFooterRemover.removeHeaderFooter(docxPath);
-            log.info("[taskId: {}] 页眉页脚页码已移除", taskId);
-
-            // Step 2: 使用本机Aspose.Words JAR转换DOCX为PDF
-            log.info("[taskId: {}] Step 2: 使用本机Aspose.Words转换DOCX为PDF...", taskId);
-            updateTaskStatus(taskId, STATUS_CONVERTING, "正在转换PDF", null);
+    /**
+     * 异步处理（指定优先级通道）
+     *
+     * INTERACTIVE 任务在每个阶段优先于 BULK 任务出队；批量上传、任务恢复使用 BULK。
+     *
+     * @param priority 优先级
+     * @throws RejectedExecutionException 入口队列该通道已满
+     */
+    public CompletableFuture<Void> processDocxToPdfTxtAsync(String taskId, String docxPath, String taskDir, boolean includeMcid,
+                                                            String originalName, String contentHash, TaskPriority priority) {
+        // 尚未开始就被取消（如批次中排队的文档）
+        if (taskCancellation.isCancelled(taskId)) {
+            taskCancellation.unregister(taskId);
+            log.info("[taskId: {}] 任务已取消，不再提交", taskId);
+            return CompletableFuture.completedFuture(null);
+        }
 
-            String pdfPath = taskDir + File.separator + taskId + ".pdf";
-            DocxConvertPdf.convert(docxPath, pdfPath);
+        final String contentKey = contentHash != null ? DocxContentIndex.buildKey(contentHash, includeMcid) : null;
 
-            File pdfFile = new File(pdfPath);
-            if (!pdfFile.exists()) {
-                throw new IOException("转换失败：PDF文件未生成");
+        // 相同内容 + 相同选项已处理过：直接复用已有产物
+        if (reuseCompletedTask(taskId, taskDir, originalName, contentKey)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // 按文档成本准入：预估失败时不阻止处理（结构已在上传时校验过，真正的错误由流水线报告）
+        DocxCostEstimator.Estimate estimate = estimateCost(taskId, docxPath);
+
+        if (sharedWorkQueue.isEnabled()) {
+            // 多实例部署：写入共享队列，由空闲的实例认领；超出处理能力的文档入队前拒绝，预算在认领的实例上占用
+            if (estimate != null) {
+                admissionController.checkAcceptable(estimate);
             }
-            log.info("[taskId: {}] PDF文件生成成功: {}", taskId, pdfPath);
+            recordSubmission(taskId, includeMcid, originalName, contentHash, priority);
+            return sharedWorkQueue.submit(taskId, priority);
+        }
 
-            // Step 3 & 4: 并行执行 - 提取TXT/JSON 和 渲染图片
-            log.info("[taskId: {}] Step 3&4: 并行执行 TXT/JSON提取 和 图片渲染...", taskId);
-            updateTaskStatus(taskId, STATUS_EXTRACTING, "正在解析PDF和渲染图片", null);
+        recordSubmission(taskId, includeMcid, originalName, contentHash, priority);
+        log.info("[taskId: {}] 提交异步处理, 优先级: {}", taskId, priority);
+        if (estimate == null) {
+            return runPipeline(taskId, docxPath, taskDir, includeMcid, originalName, contentHash, priority,
+                    new TaskJournal.State());
+        }
+        CompletableFuture<Void> future = admissionController.submit(taskId, estimate, priority,
+                () -> runPipeline(taskId, docxPath, taskDir, includeMcid, originalName, contentHash, priority,
+                        new TaskJournal.State()));
+        if (admissionController.isQueued(taskId)) {
+            Map<String, Object> extra = new HashMap<>();
+            extra.put("estimatedPages", estimate.estimatedPages);
+            extra.put("estimatedCpuSeconds", Math.round(estimate.cpuSeconds * 10) / 10.0);
+            updateTaskStatus(taskId, STATUS_UPLOADED, "等待处理资源（排队中）", extra);
+        }
+        return future;
+    }
 
-            final String finalTaskId = taskId;
-            final String finalPdfPath = pdfPath;
-            final String finalTaskDir = taskDir;
-            final String finalOriginalName = originalName;
-            final File finalPdfFile = pdfFile;
+    /**
+     * 预估文档处理成本（准入控制关闭或预估失败时返回 null）
+     */
+    private DocxCostEstimator.Estimate estimateCost(String taskId, String docxPath) {
+        if (!admissionController.isEnabled()) {
+            return null;
+        }
+        try {
+            return DocxCostEstimator.estimate(new File(docxPath));
+        } catch (IOException e) {
+            log.warn("[taskId: {}] 成本预估失败，不做准入控制: {}", taskId, e.getMessage());
+            return null;
+        }
+    }
 
-            // 并行任务1: 提取TXT + AI JSON
-            CompletableFuture<Void> extractFuture = CompletableFuture.runAsync(() -> {
-                try {
-                    log.info("[taskId: {}] [并行] 开始提取TXT/JSON...", finalTaskId);
-                    extractPdfToXml(finalTaskId, finalPdfPath, finalTaskDir, includeMcid, finalOriginalName);
-                    log.info("[taskId: {}] [并行] TXT/JSON提取完成", finalTaskId);
-                } catch (IOException e) {
-                    throw new RuntimeException("TXT/JSON提取失败: " + e.getMessage(), e);
+    /**
+     * 从处理日志恢复中断的任务（服务重启后调用），已完成的阶段不再重复执行
+     *
+     * 恢复的任务一律走 BULK 通道，不与重启后的新交互请求争抢线程。
+     *
+     * @param taskId 任务ID
+     * @return 整个处理流程的 Future；没有可用的处理日志（无法恢复）时返回 null
+     * @throws RejectedExecutionException 入口队列已满
+     */
+    public CompletableFuture<Void> resumeTask(String taskId) {
+        return resumeTask(taskId, TaskPriority.BULK);
+    }
+
+    /**
+     * 从处理日志执行任务（指定优先级通道）
+     *
+     * @param taskId 任务ID
+     * @param priority 优先级
+     * @return 整个处理流程的 Future；没有可用的处理日志时返回 null
+     * @throws RejectedExecutionException 入口队列该通道已满
+     */
+    public CompletableFuture<Void> resumeTask(String taskId, TaskPriority priority) {
+        TaskJournal.State journalState = taskJournal.read(taskId);
+        File docxFile = new File(basePath, taskId + File.separator + taskId + ".docx");
+        if (journalState == null || journalState.params == null || !docxFile.isFile()) {
+            return null;
+        }
+
+        Map<String, Object> params = journalState.params;
+        boolean includeMcid = Boolean.TRUE.equals(params.get("includeMcid"));
+        String originalName = params.get("originalName") != null ? params.get("originalName").toString() : taskId;
+        String contentHash = params.get("contentHash") != null ? params.get("contentHash").toString() : null;
+        String taskDir = getTaskDir(taskId);
+
+        log.info("[taskId: {}] 从处理日志恢复任务，已完成阶段: {}", taskId, journalState.completed.keySet());
+        return runPipeline(taskId, docxFile.getAbsolutePath(), taskDir, includeMcid, originalName, contentHash,
+                priority, journalState);
+    }
+
+    /**
+     * 重新提取：沿用任务已有的 PDF，只重新执行 TXT / AI JSON 提取（如提取逻辑升级后）
+     *
+     * 重写处理日志：清理后的DOCX和PDF记为已完成，已有页面图片时渲染也记为已完成，
+     * 然后按普通任务执行流水线。PDF 已不存在时由 convert 阶段从 PDF 转换缓存恢复，缓存未命中才重新转换。
+     *
+     * @param taskId 任务ID
+     * @param includeMcid 是否包含MCID（为null时沿用上次处理的选项）
+     * @param priority 优先级
+     * @return 整个处理流程的 Future；任务不存在时返回 null
+     * @throws IllegalStateException 任务正在处理中或缺少DOCX文件
+     * @throws IllegalArgumentException 文档的预估处理成本超过上限
+     * @throws RejectedExecutionException 入口队列该通道已满，或等待处理预算的任务已达上限（任务状态保持不变）
+     */
+    public CompletableFuture<Void> reprocessTask(String taskId, Boolean includeMcid, TaskPriority priority) {
+        Map<String, Object> status = getTaskStatus(taskId);
+        Object current = status.get("status");
+        if (STATUS_NOT_FOUND.equals(current)) {
+            return null;
+        }
+        if (!isFinishedStatus(current)) {
+            throw new IllegalStateException("任务正在处理中");
+        }
+        String taskDir = getTaskDir(taskId);
+        File docxFile = new File(taskDir, taskId + ".docx");
+        if (!docxFile.isFile()) {
+            throw new IllegalStateException("缺少DOCX文件");
+        }
+        if (!sharedWorkQueue.isEnabled() && !pipelineExecutors.hasCapacity(priority)) {
+            throw new RejectedExecutionException("处理队列已满");
+        }
+        DocxCostEstimator.Estimate estimate = estimateCost(taskId, docxFile.getAbsolutePath());
+        if (estimate != null) {
+            admissionController.checkAcceptable(estimate);
+        }
+
+        TaskJournal.State previous = taskJournal.read(taskId);
+        Map<String, Object> params = previous != null && previous.params != null ? previous.params : status;
+        boolean mcid = includeMcid != null ? includeMcid : Boolean.TRUE.equals(params.get("includeMcid"));
+        String originalName = params.get("originalName") != null ? params.get("originalName").toString() : taskId;
+        String contentHash = params.get("contentHash") != null ? params.get("contentHash").toString() : null;
+
+        // 旧输出即将被替换：撤下上次处理登记的索引键（选项变化时旧键不会被新结果覆盖），完成后按新选项重新登记
+        String previousKey = null;
+        if (contentHash != null) {
+            previousKey = DocxContentIndex.buildKey(contentHash, Boolean.TRUE.equals(params.get("includeMcid")));
+            contentIndex.remove(previousKey, taskId);
+        }
+
+        recordSubmission(taskId, mcid, originalName, contentHash, priority);
+        File pdfFile = new File(taskDir, taskId + ".pdf");
+        if (pdfFile.isFile()) {
+            taskJournal.record(taskId, TaskJournal.STAGE_HEADER_FOOTER, docxFile);
+            taskJournal.record(taskId, TaskJournal.STAGE_CONVERT, pdfFile);
+        }
+        File imageDir = new File(taskDir, "images" + File.separator + originalName);
+        String[] images = imageDir.list((dir, name) -> name.endsWith(".png"));
+        if (images != null && images.length > 0) {
+            taskJournal.record(taskId, TaskJournal.STAGE_RENDER, imageDir);
+        }
+
+        Map<String, Object> previousState = taskStateRegistry.get(taskId);
+        log.info("[taskId: {}] 重新提取，includeMcid={}, 沿用PDF: {}", taskId, mcid, pdfFile.isFile());
+        updateTaskStatus(taskId, STATUS_UPLOADED, "等待重新提取", null, true);
+        if (sharedWorkQueue.isEnabled()) {
+            return sharedWorkQueue.submit(taskId, priority);
+        }
+        try {
+            TaskJournal.State journalState = taskJournal.read(taskId);
+            if (estimate == null) {
+                return runPipeline(taskId, docxFile.getAbsolutePath(), taskDir, mcid, originalName, contentHash,
+                        priority, journalState);
+            }
+            return admissionController.submit(taskId, estimate, priority,
+                    () -> runPipeline(taskId, docxFile.getAbsolutePath(), taskDir, mcid, originalName, contentHash,
+                            priority, journalState));
+        } catch (RejectedExecutionException e) {
+            taskCancellation.unregister(taskId);
+            if (previousState != null) {
+                taskStateRegistry.put(taskId, previousState);
+            }
+            if (previousKey != null && STATUS_COMPLETED.equals(current)) {
+                contentIndex.register(previousKey, taskId);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 执行从共享队列认领的任务（可能由其他实例上传，或在其他实例上处理到一半）
+     *
+     * 在本实例占用处理预算：预算不足时抛出 RejectedExecutionException，租约放回共享队列留给其他实例；
+     * 文档超过本实例的内存预算时任务失败。
+     */
+    private CompletableFuture<Void> runClaimedTask(String taskId, TaskPriority priority) {
+        DocxCostEstimator.Estimate estimate = estimateCost(taskId, getTaskDir(taskId) + File.separator + taskId + ".docx");
+        if (estimate != null) {
+            try {
+                if (!admissionController.tryReserve(taskId, estimate, priority)) {
+                    throw new RejectedExecutionException("处理预算已满");
                 }
-            });
+            } catch (IllegalArgumentException e) {
+                Map<String, Object> errorInfo = new HashMap<>();
+                errorInfo.put("error", e.getMessage());
+                updateTaskStatus(taskId, STATUS_FAILED, "处理失败: " + e.getMessage(), errorInfo);
+                return CompletableFuture.completedFuture(null);
+            }
+        }
+        CompletableFuture<Void> future;
+        try {
+            future = resumeOrFail(taskId, priority);
+        } catch (RuntimeException e) {
+            admissionController.release(taskId);
+            throw e;
+        }
+        return future.whenComplete((v, e) -> admissionController.release(taskId));
+    }
 
-            // 并行任务2: 渲染图片
-            CompletableFuture<Void> renderFuture = CompletableFuture.runAsync(() -> {
-                try {
-                    log.info("[taskId: {}] [并行] 开始渲染图片...", finalTaskId);
-                    File imageDir = new File(finalTaskDir, "images" + File.separator + finalOriginalName);
-                    DocxConvertPdf.renderPdfToImages(finalPdfFile, imageDir);
-                    log.info("[taskId: {}] [并行] 图片渲染完成, 目录: {}", finalTaskId, imageDir.getAbsolutePath());
-                } catch (Exception e) {
-                    log.warn("[taskId: {}] [并行] 图片渲染失败（非致命）: {}", finalTaskId, e.getMessage());
+    /**
+     * 按处理日志执行任务，缺少处理日志或DOCX文件时任务失败
+     */
+    private CompletableFuture<Void> resumeOrFail(String taskId, TaskPriority priority) {
+        CompletableFuture<Void> future = resumeTask(taskId, priority);
+        if (future == null) {
+            Map<String, Object> errorInfo = new HashMap<>();
+            errorInfo.put("error", "缺少处理日志或DOCX文件");
+            updateTaskStatus(taskId, STATUS_FAILED, "处理失败: 缺少处理日志或DOCX文件", errorInfo);
+            return CompletableFuture.completedFuture(null);
+        }
+        return future;
+    }
+
+    /**
+     * 记录任务提交参数（写入处理日志的第一条记录，重启后据此恢复）
+     */
+    public void recordSubmission(String taskId, boolean includeMcid, String originalName, String contentHash,
+                                 TaskPriority priority) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("includeMcid", includeMcid);
+        params.put("priority", priority.name());
+        params.put("originalName", originalName);
+        if (contentHash != null) {
+            params.put("contentHash", contentHash);
+        }
+        taskJournal.begin(taskId, params);
+    }
+
+    /**
+     * 按阶段执行处理流水线，跳过处理日志中已完成的阶段
+     */
+    private CompletableFuture<Void> runPipeline(String taskId, String docxPath, String taskDir, boolean includeMcid,
+                                                String originalName, String contentHash, TaskPriority priority,
+                                                TaskJournal.State journalState) {
+        final PipelineExecutors.StageExecutors executors = pipelineExecutors.forPriority(priority);
+        final TaskCancellation.Token token = taskCancellation.register(taskId);
+        final String contentKey = contentHash != null ? DocxContentIndex.buildKey(contentHash, includeMcid) : null;
+        final String pdfPath = taskDir + File.separator + taskId + ".pdf";
+        final long submitTime = System.currentTimeMillis();
+
+        return PipelineExecutors
+                // 直接进入 convert 阶段的入口队列（该通道已满时拒绝），DOCX 清理已并入 convert 阶段
+                .runAsync(() -> {
+                    token.check();
+                    if (!journalState.isDone(TaskJournal.STAGE_CONVERT)) {
+                        long stageStart = System.currentTimeMillis();
+                        if (runConvertStage(taskId, docxPath, pdfPath, contentHash)) {
+                            pipelineMetrics.recordStage(TaskJournal.STAGE_CONVERT, System.currentTimeMillis() - stageStart, 0, 0);
+                        }
+                        recordConvertOutputs(taskId, taskDir, new File(docxPath), new File(pdfPath));
+                    }
+                }, executors.getEntryExecutor())
+                .thenCompose(v -> {
+                    token.check();
+                    // Step 3 & 4: 并行执行 - 提取TXT/JSON 和 渲染图片
+                    log.info("[taskId: {}] Step 3&4: 并行执行 TXT/JSON提取 和 图片渲染...", taskId);
+                    updateTaskStatus(taskId, STATUS_EXTRACTING, "正在解析PDF和渲染图片", null);
+                    return runExtractAndRender(taskId, pdfPath, taskDir, includeMcid, originalName, priority, token, journalState);
+                })
+                .thenRun(() -> {
+                    token.check();
+                    completeTask(taskId, taskDir, pdfPath, originalName, contentHash, contentKey, priority, submitTime);
+                })
+                .exceptionally(e -> {
+                    failTask(taskId, token, e);
+                    return null;
+                })
+                .whenComplete((v, e) -> taskCancellation.unregister(taskId));
+    }
+
+    /**
+     * 流水线结束：记录耗时、生成下载包、更新状态并登记内容索引
+     */
+    private void completeTask(String taskId, String taskDir, String pdfPath, String originalName, String contentHash,
+                              String contentKey, TaskPriority priority, long submitTime) {
+        // 构建结果信息
+        Map<String, Object> resultInfo = new HashMap<>();
+        resultInfo.put("pdfPath", pdfPath);
+        resultInfo.put("originalName", originalName);
+        if (contentHash != null) {
+            resultInfo.put("contentHash", contentHash);
+        }
+
+        // 生成的TXT文件
+        putTxtPaths(resultInfo, taskDir);
+
+        log.info("[taskId: {}] 异步处理完成！", taskId);
+        long totalMs = System.currentTimeMillis() - submitTime;
+        pipelineMetrics.recordStage(PipelineMetrics.STAGE_TOTAL, totalMs, 0, 0);
+        pipelineMetrics.recordStage(PipelineMetrics.STAGE_TOTAL + "_" + priority.name(), totalMs, 0, 0);
+        pipelineMetrics.recordTaskFinished(true);
+        buildArtifactBundle(taskId);
+        updateTaskStatus(taskId, STATUS_COMPLETED, "处理完成", resultInfo);
+
+        // 登记内容索引，后续相同内容的上传直接复用
+        contentIndex.register(contentKey, taskId);
+    }
+
+    /**
+     * 流水线异常：区分取消和失败，更新任务状态
+     */
+    private void failTask(String taskId, TaskCancellation.Token token, Throwable e) {
+        Throwable cause = unwrapCompletionException(e);
+        if (drainingState.isDraining()) {
+            // 停机排空：后续阶段被拒绝或在检查点停止，状态保持处理中，重启后按处理日志继续
+            log.info("[taskId: {}] 服务正在停止，任务将在重启后继续: {}", taskId, cause.getMessage());
+            return;
+        }
+        if (sharedWorkQueue.isLeaseLost(taskId)) {
+            // 租约已被回收：任务由重新认领的实例继续，本实例不写入结束状态
+            log.info("[taskId: {}] 租约已丢失，本实例停止处理: {}", taskId, cause.getMessage());
+            return;
+        }
+        if (cause instanceof CancellationException && !token.isDeadlineExceeded()) {
+            log.info("[taskId: {}] 任务已取消，停止处理", taskId);
+            updateTaskStatus(taskId, STATUS_CANCELLED, "任务已取消", null);
+            return;
+        }
+        log.error("[taskId: {}] 异步处理失败: {}", taskId, cause.getMessage(), cause);
+        pipelineMetrics.recordTaskFinished(false);
+        Map<String, Object> errorInfo = new HashMap<>();
+        errorInfo.put("error", cause.getMessage());
+        updateTaskStatus(taskId, STATUS_FAILED, "处理失败: " + cause.getMessage(), errorInfo);
+    }
+
+    /**
+     * 复用已处理过相同内容的任务产物（硬链接，跨文件系统时退化为复制）
+     *
+     * 链接的产物：PDF、表格/段落/聚合TXT、AI训练JSON、页面图片。
+     * 文件名中的源 taskId 和原始文件名替换为当前任务的值。
+     *
+     * @return true 表示复用成功，任务已标记为完成
+     */
+    private boolean reuseCompletedTask(String taskId, String taskDir, String originalName, String contentKey) {
+        String sourceTaskId = contentIndex.lookup(contentKey);
+        if (sourceTaskId == null || sourceTaskId.equals(taskId)) {
+            return false;
+        }
+
+        Map<String, Object> sourceStatus = getTaskStatus(sourceTaskId);
+        if (!STATUS_COMPLETED.equals(sourceStatus.get("status"))) {
+            // 源任务已被删除或状态异常，索引失效
+            contentIndex.remove(contentKey, sourceTaskId);
+            return false;
+        }
+
+        long startTime = System.currentTimeMillis();
+        File sourceDir = new File(basePath, sourceTaskId);
+        File targetDir = new File(taskDir);
+
+        try {
+            Map<String, ArtifactManifest.Entry> sourceArtifacts = ArtifactManifest.read(sourceDir);
+            if (sourceArtifacts.get(ArtifactManifest.KIND_PDF) == null) {
+                return false;
+            }
+            for (Map.Entry<String, ArtifactManifest.Entry> artifact : sourceArtifacts.entrySet()) {
+                String kind = artifact.getKey();
+                String sourcePath = artifact.getValue().path;
+                if (ArtifactManifest.KIND_DOCX.equals(kind)) {
+                    continue;
+                }
+                String targetPath;
+                if (ArtifactManifest.KIND_AI_JSON.equals(kind)) {
+                    // AI训练JSON以原始文件名命名
+                    targetPath = originalName + ".json";
+                } else if (ArtifactManifest.KIND_IMAGES.equals(kind)) {
+                    // 图片目录：images/{originalName}/*.png
+                    targetPath = "images/" + originalName;
+                } else {
+                    targetPath = taskId + sourcePath.substring(sourceTaskId.length());
                 }
-            });
-
-            // 等待两个任务都完成
-            CompletableFuture.allOf(extractFuture, renderFuture).join();
-
-            // 构建结果信息
-            Map<String, Object> resultInfo = new HashMap<>();
-            resultInfo.put("pdfPath", pdfPath);
-
-            // 查找生成的TXT文件
-            File taskDirFile = new File(taskDir);
-            File[] txtFiles = taskDirFile.listFiles((dir, name) -> name.endsWith(".txt"));
-            if (txtFiles != null) {
-                for (File txt : txtFiles) {
-                    if (txt.getName().contains("_pdf_") && !txt.getName().contains("_paragraph_")) {
-                        resultInfo.put("txtPath", txt.getAbsolutePath());
-                    } else if (txt.getName().contains("_paragraph_")) {
-                        resultInfo.put("paragraphTxtPath", txt.getAbsolutePath());
+
+                File source = new File(sourceDir, sourcePath);
+                File target = new File(targetDir, targetPath);
+                if (source.isDirectory()) {
+                    File[] images = source.listFiles((dir, name) -> name.endsWith(".png"));
+                    target.mkdirs();
+                    if (images != null) {
+                        for (File img : images) {
+                            linkOrCopy(img, new File(target, img.getName()));
+                        }
+                    }
+                } else {
+                    linkOrCopy(source, target);
+                    File sourceIndex = PageOffsetIndex.indexFileFor(source);
+                    if (sourceIndex.exists()) {
+                        linkOrCopy(sourceIndex, PageOffsetIndex.indexFileFor(target));
                     }
                 }
+                ArtifactManifest.recordCopy(targetDir, kind, artifact.getValue(), targetPath);
             }
+        } catch (IOException e) {
+            log.warn("[taskId: {}] 复用任务 {} 的产物失败，改为完整处理: {}", taskId, sourceTaskId, e.getMessage());
+            return false;
+        }
+
+        Map<String, Object> resultInfo = new HashMap<>();
+        resultInfo.put("originalName", originalName);
+        resultInfo.put("contentHash", contentKey.substring(0, contentKey.indexOf('|')));
+        resultInfo.put("reusedFrom", sourceTaskId);
+        buildArtifactBundle(taskId);
+        updateTaskStatus(taskId, STATUS_COMPLETED, "处理完成（复用相同内容的处理结果）", resultInfo);
+
+        log.info("[taskId: {}] 内容与任务 {} 相同，已复用处理结果，耗时 {} ms",
+                taskId, sourceTaskId, System.currentTimeMillis() - startTime);
+        return true;
+    }
+
+    /**
+     * 记录 convert 阶段完成：清理后的DOCX和PDF写入处理日志并登记到任务清单
+     */
+    private void recordConvertOutputs(String taskId, String taskDir, File docxFile, File pdfFile) {
+        taskJournal.record(taskId, TaskJournal.STAGE_HEADER_FOOTER, docxFile);
+        taskJournal.record(taskId, TaskJournal.STAGE_CONVERT, pdfFile);
+        recordArtifact(taskId, taskDir, ArtifactManifest.KIND_DOCX, docxFile);
+        recordArtifact(taskId, taskDir, ArtifactManifest.KIND_PDF, pdfFile);
+    }
+
+    /**
+     * 记录 TXT 提取完成：表格/段落/合并TXT写入处理日志并登记到任务清单
+     */
+    private void recordTxtOutputs(String taskId, String taskDir, PdfExtractionContext ctx) {
+        taskJournal.record(taskId, TaskJournal.STAGE_TXT, new File(ctx.getTableTxtPath()));
+        recordArtifact(taskId, taskDir, ArtifactManifest.KIND_TABLE_TXT, new File(ctx.getTableTxtPath()));
+        recordArtifact(taskId, taskDir, ArtifactManifest.KIND_PARAGRAPH_TXT, new File(ctx.getParagraphTxtPath()));
+        recordArtifact(taskId, taskDir, ArtifactManifest.KIND_MERGED_TXT, new File(ctx.getMergedTxtPath()));
+    }
+
+    /**
+     * 记录 AI JSON 生成完成：阶段耗时、处理日志和任务清单
+     */
+    private void recordAiJsonOutput(String taskId, String taskDir, String originalName, long elapsedMs,
+                                    int pages, long glyphs) {
+        pipelineMetrics.recordStage(TaskJournal.STAGE_AI_JSON, elapsedMs, pages, glyphs);
+        File aiJson = new File(taskDir, originalName + ".json");
+        taskJournal.record(taskId, TaskJournal.STAGE_AI_JSON, aiJson);
+        recordArtifact(taskId, taskDir, ArtifactManifest.KIND_AI_JSON, aiJson);
+    }
+
+    /**
+     * 登记产物到任务清单（失败只记录日志，不影响任务结果）
+     */
+    private void recordArtifact(String taskId, String taskDir, String kind, File artifact) {
+        try {
+            ArtifactManifest.record(new File(taskDir), kind, artifact);
+        } catch (IOException e) {
+            log.warn("[taskId: {}] 登记产物 {} 失败: {}", taskId, kind, e.getMessage());
+        }
+    }
 
-            log.info("[taskId: {}] 异步处理完成！", taskId);
-            updateTaskStatus(taskId, STATUS_COMPLETED, "处理完成", resultInfo);
+    /**
+     * 从任务清单取出表格/段落TXT路径放入结果
+     */
+    private static void putTxtPaths(Map<String, Object> result, String taskDir) {
+        File dir = new File(taskDir);
+        File tableTxt = ArtifactManifest.resolve(dir, ArtifactManifest.KIND_TABLE_TXT);
+        if (tableTxt != null) {
+            result.put("txtPath", tableTxt.getAbsolutePath());
+        }
+        File paragraphTxt = ArtifactManifest.resolve(dir, ArtifactManifest.KIND_PARAGRAPH_TXT);
+        if (paragraphTxt != null) {
+            result.put("paragraphTxtPath", paragraphTxt.getAbsolutePath());
+        }
+    }
 
+    /**
+     * 生成 artifact 下载包（失败不影响任务结果，下载时退化为现场打包）
+     */
+    private void buildArtifactBundle(String taskId) {
+        try {
+            artifactBundleService.buildBundle(taskId);
         } catch (Exception e) {
-            log.error("[taskId: {}] 异步处理失败: {}", taskId, e.getMessage(), e);
-            Map<String, Object> errorInfo = new HashMap<>();
-            errorInfo.put("error", e.getMessage());
-            updateTaskStatus(taskId, STATUS_FAILED, "处理失败: " + e.getMessage(), errorInfo);
+            log.warn("[taskId: {}] 生成 artifact 包失败（非致命）: {}", taskId, e.getMessage());
+        }
+    }
+
+    /**
+     * 创建硬链接，不支持时（如跨文件系统）退化为复制
+     */
+    private static void linkOrCopy(File source, File target) throws IOException {
+        try {
+            Files.createLink(target.toPath(), source.toPath());
+        } catch (UnsupportedOperationException | IOException e) {
+            Files.copy(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * 原始文件名（不含扩展名），没有时使用 taskId
+     */
+    private static String originalNameOf(String originalFilename, String taskId) {
+        return originalFilename != null && originalFilename.contains(".")
+                ? originalFilename.substring(0, originalFilename.lastIndexOf('.'))
+                : taskId;
+    }
+
+    /**
+     * 写入临时文件后原子替换
+     */
+    private static void writeAtomically(byte[] content, File target) throws IOException {
+        File tmpFile = new File(target.getParentFile(), target.getName() + ".tmp");
+        Files.write(tmpFile.toPath(), content);
+        moveAtomically(tmpFile, target);
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 不可用", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * convert 阶段：转换DOCX为PDF，同时移除页眉、页脚和批注
+     *
+     * 转换后端由 {@link ConverterRouter} 选择（默认本机Aspose.Words：DOCX 只解析一次，先导出清理后的DOCX，再导出PDF）。
+     * 两者都先输出到临时文件再原子重命名，中途崩溃不会留下不完整的DOCX或PDF。
+     * 相同内容、相同转换设置的文档转换过时直接使用 PDF 转换缓存中的产物。
+     *
+     * @return true 表示实际执行了转换，false 表示命中缓存
+     */
+    private boolean runConvertStage(String taskId, String docxPath, String pdfPath, String contentHash) {
+        log.info("[taskId: {}] Step 2: 移除页眉页脚批注并转换DOCX为PDF...", taskId);
+        updateTaskStatus(taskId, STATUS_CONVERTING, "正在转换PDF", null);
+        String docxTmpPath = docxPath + ".tmp";
+        String pdfTmpPath = pdfPath + ".tmp";
+
+        PdfConversionCache.Cached cached = pdfConversionCache.lookup(contentHash);
+        if (cached != null) {
+            try {
+                linkOrCopy(cached.docx, new File(docxTmpPath));
+                linkOrCopy(cached.pdf, new File(pdfTmpPath));
+                moveAtomically(new File(docxTmpPath), new File(docxPath));
+                moveAtomically(new File(pdfTmpPath), new File(pdfPath));
+                log.info("[taskId: {}] PDF转换缓存命中，跳过转换: {}", taskId, pdfPath);
+                return false;
+            } catch (IOException e) {
+                // 条目可能刚被淘汰
+                log.warn("[taskId: {}] 读取PDF转换缓存失败，重新转换: {}", taskId, e.getMessage());
+            }
+        }
+
+        String backend;
+        try {
+            backend = converterRouter.convert(docxPath, pdfTmpPath, docxTmpPath);
+            moveAtomically(new File(docxTmpPath), new File(docxPath));
+            moveAtomically(new File(pdfTmpPath), new File(pdfPath));
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+
+        File pdfFile = new File(pdfPath);
+        if (!pdfFile.exists()) {
+            throw new CompletionException(new IOException("转换失败：PDF文件未生成"));
+        }
+        log.info("[taskId: {}] PDF文件生成成功（{}）: {}", taskId, backend, pdfPath);
+        // 缓存键中的转换设置指纹只描述本机 Aspose 的输出
+        if (LocalAsposePdfConverter.NAME.equals(backend)) {
+            pdfConversionCache.put(contentHash, pdfFile, new File(docxPath));
+        }
+        return true;
+    }
+
+    /**
+     * 小文档同步处理：从 PDF 转换缓存读取转换结果
+     *
+     * @return true 表示命中缓存，state 中已填入 PDF 和清理后的 DOCX
+     */
+    private boolean readCachedConversion(String taskId, String contentHash, InMemoryResult state) {
+        PdfConversionCache.Cached cached = pdfConversionCache.lookup(contentHash);
+        if (cached == null) {
+            return false;
+        }
+        try {
+            state.pdf = Files.readAllBytes(cached.pdf.toPath());
+            state.docx = Files.readAllBytes(cached.docx.toPath());
+            log.info("[taskId: {}] PDF转换缓存命中，跳过转换", taskId);
+            return true;
+        } catch (IOException e) {
+            log.warn("[taskId: {}] 读取PDF转换缓存失败，重新转换: {}", taskId, e.getMessage());
+            state.pdf = null;
+            state.docx = null;
+            return false;
         }
     }
 
+    /**
+     * extract/render 阶段：在各自线程池上并行提取TXT/JSON和渲染图片
+     *
+     * TXT、AI JSON、图片渲染各自记入处理日志，恢复时只补做未完成的部分。
+     * 图片渲染失败不影响整体结果（非致命）。
+     */
+    private CompletableFuture<Void> runExtractAndRender(String taskId, String pdfPath, String taskDir,
+                                                        boolean includeMcid, String originalName,
+                                                        TaskPriority priority, TaskCancellation.Token token,
+                                                        TaskJournal.State journalState) {
+        PipelineExecutors.StageExecutors executors = pipelineExecutors.forPriority(priority);
+        ProgressListener listener = TaskCancellation.wrap(token, progressPublisher.listener(taskId));
+        boolean needTxt = !journalState.isDone(TaskJournal.STAGE_TXT);
+        boolean needAiJson = !journalState.isDone(TaskJournal.STAGE_AI_JSON);
+
+        // 并行任务1: 提取TXT + AI JSON（共享同一个 Context，MCID 缓存只预热一次），都已完成时不占用提取线程
+        if (!needTxt && !needAiJson) {
+            return runRenderStage(taskId, pdfPath, taskDir, originalName, priority, token, journalState);
+        }
+        CompletableFuture<Void> extractFuture = PipelineExecutors.runAsync(() -> {
+            token.check();
+            log.info("[taskId: {}] [并行] 开始提取TXT/JSON...", taskId);
+            long stageStart = System.currentTimeMillis();
+            try (PdfExtractionContext ctx = new PdfExtractionContext(pdfPath, listener)) {
+                PageMcidCache mcidCache = ctx.getMcidCache();
+                int pages = ctx.getDoc().getNumberOfPages();
+                long glyphs = mcidCache.getGlyphsParsed();
+                pipelineMetrics.recordStage(TaskJournal.STAGE_MCID_PRELOAD, System.currentTimeMillis() - stageStart, pages, glyphs);
+                taskJournal.record(taskId, TaskJournal.STAGE_MCID_PRELOAD, null);
+
+                if (needTxt) {
+                    stageStart = System.currentTimeMillis();
+                    PdfTableExtractor.extractTxtWithContext(ctx, taskId, taskDir, includeMcid, listener);
+                    pipelineMetrics.recordStage(TaskJournal.STAGE_TXT, System.currentTimeMillis() - stageStart, pages, glyphs);
+                    recordTxtOutputs(taskId, taskDir, ctx);
+                }
+                if (needAiJson) {
+                    stageStart = System.currentTimeMillis();
+                    LineLevelArtifactGenerator.generateWithContext(ctx, taskId, taskDir, originalName);
+                    recordAiJsonOutput(taskId, taskDir, originalName, System.currentTimeMillis() - stageStart, pages, glyphs);
+                }
+                pipelineMetrics.recordCache(mcidCache.getCacheHits(), mcidCache.getCacheMisses());
+                log.info("[taskId: {}] [并行] TXT/JSON提取完成: {}", taskId, ctx.getCacheStats());
+            } catch (IOException e) {
+                throw new RuntimeException("TXT/JSON提取失败: " + e.getMessage(), e);
+            } finally {
+                PdfTableExtractor.releaseThreadResources();
+            }
+        }, executors.getExtractExecutor());
+
+        // 并行任务2: 渲染图片
+        CompletableFuture<Void> renderFuture = runRenderStage(taskId, pdfPath, taskDir, originalName, priority, token,
+                journalState);
+
+        return CompletableFuture.allOf(extractFuture, renderFuture);
+    }
+
+    /**
+     * render 阶段：在 render 线程池上渲染页面图片，已记入处理日志时跳过
+     *
+     * 图片渲染失败不影响整体结果（非致命）。
+     */
+    private CompletableFuture<Void> runRenderStage(String taskId, String pdfPath, String taskDir, String originalName,
+                                                   TaskPriority priority, TaskCancellation.Token token,
+                                                   TaskJournal.State journalState) {
+        PipelineExecutors.StageExecutors executors = pipelineExecutors.forPriority(priority);
+        ProgressListener listener = TaskCancellation.wrap(token, progressPublisher.listener(taskId));
+        return PipelineExecutors.runAsync(() -> {
+            if (journalState.isDone(TaskJournal.STAGE_RENDER)) {
+                return;
+            }
+            token.check();
+            try {
+                log.info("[taskId: {}] [并行] 开始渲染图片...", taskId);
+                File imageDir = new File(taskDir, "images" + File.separator + originalName);
+                long stageStart = System.currentTimeMillis();
+                PdfImageRenderer.render(new File(pdfPath), imageDir, listener);
+                String[] images = imageDir.list((dir, name) -> name.endsWith(".png"));
+                pipelineMetrics.recordStage(TaskJournal.STAGE_RENDER, System.currentTimeMillis() - stageStart,
+                        images != null ? images.length : 0, 0);
+                taskJournal.record(taskId, TaskJournal.STAGE_RENDER, imageDir);
+                recordArtifact(taskId, taskDir, ArtifactManifest.KIND_IMAGES, imageDir);
+                log.info("[taskId: {}] [并行] 图片渲染完成, 目录: {}", taskId, imageDir.getAbsolutePath());
+            } catch (CancellationException e) {
+                throw e;
+            } catch (Exception e) {
+                log.warn("[taskId: {}] [并行] 图片渲染失败（非致命）: {}", taskId, e.getMessage());
+            }
+        }, executors.getRenderExecutor());
+    }
+
+    /**
+     * 原子替换文件（文件系统不支持时退化为普通替换）
+     */
+    private static void moveAtomically(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * 展开 CompletableFuture 包装的异常，取得真实原因
+     */
+    private static Throwable unwrapCompletionException(Throwable e) {
+        Throwable cause = e;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
     /**
      * 根据taskId获取任务目录
      */
     public String getTaskDir(String taskId) {
+        storageManager.touch(taskId);
         return new File(basePath, taskId).getAbsolutePath();
     }
 
+    /**
+     * 删除任务目录（用于清理被拒绝的任务）
+     *
+     * @param taskId 任务ID
+     */
+    public void deleteTask(String taskId) {
+        taskCancellation.unregister(taskId);
+        admissionController.remove(taskId);
+        File taskDir = new File(basePath, taskId);
+        if (!taskDir.exists()) {
+            return;
+        }
+        try {
+            taskStateRegistry.remove(taskId);
+            storageManager.remove(taskId);
+            FileSystemUtils.deleteRecursively(taskDir.toPath());
+            log.info("[taskId: {}] 任务目录已删除", taskId);
+        } catch (IOException e) {
+            log.warn("[taskId: {}] 删除任务目录失败: {}", taskId, e.getMessage());
+        }
+    }
+
+    /**
+     * 取消任务：处理中的任务在下一个检查点停止，已结束的任务不受影响
+     *
+     * 正在处理的任务先标记为 CANCELLING：转换等步骤无法中断，处理线程可能还要写入任务目录，
+     * 停下后才由 {@link #failTask} 写入 CANCELLED（之后才允许登记存储占用和淘汰）。
+     * 尚未开始处理的任务（准入队列、共享队列中排队，或批次中等待调度）直接标记为 CANCELLED。
+     *
+     * @param taskId 任务ID
+     * @return 取消后的任务状态；任务不存在时 status 为 NOT_FOUND，已结束时为原状态
+     */
+    public Map<String, Object> cancelTask(String taskId) {
+        Map<String, Object> status = getTaskStatus(taskId);
+        Object current = status.get("status");
+        if (STATUS_NOT_FOUND.equals(current) || isFinishedStatus(current)) {
+            return status;
+        }
+        boolean running = taskCancellation.isRegistered(taskId);
+        taskCancellation.cancel(taskId);
+        // 还在等待处理预算的任务直接出队
+        boolean dequeued = admissionController.remove(taskId);
+        if (sharedWorkQueue.isEnabled()) {
+            // 任务可能在其他实例上处理，由持有租约的实例停止后写入 CANCELLED
+            dequeued |= sharedWorkQueue.cancel(taskId);
+            running |= !dequeued && sharedWorkQueue.isLeased(taskId);
+        }
+        if (dequeued) {
+            // 已出队的任务不会再开始处理，清除待生效的取消
+            taskCancellation.unregister(taskId);
+        }
+        if (running && !dequeued) {
+            updateTaskStatus(taskId, STATUS_CANCELLING, "正在取消，等待当前步骤结束", null);
+        } else {
+            updateTaskStatus(taskId, STATUS_CANCELLED, "任务已取消", null);
+        }
+        return getTaskStatus(taskId);
+    }
+
     /**
      * 任务状态常量
      */
     public static final String STATUS_UPLOADED = "UPLOADED";       // 文件已上传
-    public static final String STATUS_PROCESSING = "PROCESSING";   // 正在处理（移除页眉页脚）
+    public static final String STATUS_PROCESSING = "PROCESSING";   // 正在处理
     public static final String STATUS_CONVERTING = "CONVERTING";   // 正在转换PDF
     public static final String STATUS_EXTRACTING = "EXTRACTING";   // 正在解析PDF
     public static final String STATUS_COMPLETED = "COMPLETED";     // 处理完成
     public static final String STATUS_FAILED = "FAILED";           // 处理失败
+    public static final String STATUS_CANCELLING = "CANCELLING";   // 正在取消（等待处理线程在检查点停止）
+    public static final String STATUS_CANCELLED = "CANCELLED";     // 已取消
     public static final String STATUS_NOT_FOUND = "NOT_FOUND";     // 任务不存在
 
-    private static final String STATUS_FILE_NAME = "status.json";
+    private static final String STATUS_FILE_NAME = TaskStateRegistry.STATUS_FILE_NAME;
+
+    /**
+     * 是否为结束状态（COMPLETED / FAILED / CANCELLED）
+     */
+    public static boolean isFinishedStatus(Object status) {
+        return STATUS_COMPLETED.equals(status) || STATUS_FAILED.equals(status) || STATUS_CANCELLED.equals(status);
+    }
+
+    private static boolean isFinalOrCancelling(Object status) {
+        return isFinishedStatus(status) || STATUS_CANCELLING.equals(status);
+    }
 
     /**
-     * 更新任务状态（写入 status.json）
+     * 更新任务状态（写入内存注册表，由注册表异步批量写回 status.json）
+     *
+     * 已结束（COMPLETED / FAILED / CANCELLED）或正在取消的任务只接受结束状态，
+     * 处理线程稍后写入的进度状态（CONVERTING、EXTRACTING 等）被忽略。
      *
      * @param taskId 任务ID
      * @param status 状态
@@ -415,9 +1474,16 @@ public class DocxPdfService {
      * @param extra 额外信息（可选）
      */
     public void updateTaskStatus(String taskId, String status, String message, Map<String, Object> extra) {
-        File taskDir = new File(basePath, taskId);
-        File statusFile = new File(taskDir, STATUS_FILE_NAME);
+        updateTaskStatus(taskId, status, message, extra, false);
+    }
 
+    /**
+     * 更新任务状态
+     *
+     * @param restart true 表示重新处理已结束的任务，允许覆盖结束状态
+     */
+    private void updateTaskStatus(String taskId, String status, String message, Map<String, Object> extra,
+                                  boolean restart) {
         Map<String, Object> statusData = new HashMap<>();
         statusData.put("taskId", taskId);
         statusData.put("status", status);
@@ -435,28 +1501,79 @@ public class DocxPdfService {
             }
         }
 
-        try {
-            // 使用 Gson 写入 JSON
-            String json = new com.google.gson.GsonBuilder()
-                    .setPrettyPrinting()
-                    .create()
-                    .toJson(statusData);
-            Files.write(statusFile.toPath(), json.getBytes(java.nio.charset.StandardCharsets.UTF_8));
-        } catch (IOException e) {
-            log.error("[taskId: {}] 写入状态文件失败: {}", taskId, e.getMessage());
+        boolean finishing = isFinishedStatus(status);
+        boolean updated = taskStateRegistry.putIf(taskId, statusData, current -> restart || finishing
+                || current == null || !isFinalOrCancelling(current.get("status")));
+        if (!updated) {
+            log.debug("[taskId: {}] 任务已结束或正在取消，忽略状态更新: {}", taskId, status);
+            return;
+        }
+
+        // 任务结束：清理被取代的旧输出并登记存储占用
+        if (finishing) {
+            storageManager.onTaskFinished(taskId);
+        }
+
+        // 推送给 SSE 订阅者
+        statusData.put("exists", true);
+        progressPublisher.publishStatus(taskId, statusData);
+    }
+
+    /**
+     * 按页读取表格和表格外段落（使用提取时写入的按页偏移索引，只读取这些页的元素）
+     *
+     * @param taskId 任务ID
+     * @param fromPage 起始页（1-based，含）
+     * @param toPage 结束页（含）
+     * @return pageCount、tables、paragraphs（元素原文，与TXT中一致）；任务或TXT不存在时返回 null
+     * @throws IllegalStateException TXT 没有页索引（该功能之前处理的任务）
+     * @throws IOException 读取失败
+     */
+    public Map<String, Object> getElements(String taskId, int fromPage, int toPage) throws IOException {
+        File taskDir = new File(basePath, taskId);
+        File tableTxt = ArtifactManifest.resolve(taskDir, ArtifactManifest.KIND_TABLE_TXT);
+        File paragraphTxt = ArtifactManifest.resolve(taskDir, ArtifactManifest.KIND_PARAGRAPH_TXT);
+        if (tableTxt == null || paragraphTxt == null) {
+            return null;
         }
+        PageOffsetIndex.PageSlice tables = PageOffsetIndex.read(tableTxt, fromPage, toPage);
+        PageOffsetIndex.PageSlice paragraphs = PageOffsetIndex.read(paragraphTxt, fromPage, toPage);
+        if (tables == null || paragraphs == null) {
+            throw new IllegalStateException("任务没有页索引，请重新处理后再按页读取: " + taskId);
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("taskId", taskId);
+        result.put("fromPage", fromPage);
+        result.put("toPage", toPage);
+        result.put("pageCount", tables.pageCount);
+        result.put("tables", tables.elements);
+        result.put("paragraphs", paragraphs.elements);
+        return result;
     }
 
     /**
-     * 查询任务状态（读取 status.json）
+     * 查询任务状态（优先读内存注册表，未登记的任务再检查磁盘）
      *
      * @param taskId 任务ID
      * @return 任务状态信息
      */
-    @SuppressWarnings("unchecked")
     public Map<String, Object> getTaskStatus(String taskId) {
         Map<String, Object> result = new HashMap<>();
         result.put("taskId", taskId);
+        storageManager.touch(taskId);
+
+        Map<String, Object> state = taskStateRegistry.get(taskId);
+        if (state != null && sharedWorkQueue.isEnabled() && !isFinishedStatus(state.get("status"))
+                && !sharedWorkQueue.holdsLease(taskId)) {
+            // 多实例部署：未在本实例处理的任务以共享存储上的状态文件为准
+            state = taskStateRegistry.refresh(taskId);
+        }
+        if (state != null) {
+            result.put("exists", true);
+            result.putAll(state);
+            return result;
+        }
 
         // 获取任务目录
         File taskDir = new File(basePath, taskId);
@@ -471,18 +1588,13 @@ public class DocxPdfService {
 
         result.put("exists", true);
 
-        // 读取 status.json
-        File statusFile = new File(taskDir, STATUS_FILE_NAME);
-        if (statusFile.exists()) {
-            try {
-                String json = new String(Files.readAllBytes(statusFile.toPath()), java.nio.charset.StandardCharsets.UTF_8);
-                Map<String, Object> statusData = new com.google.gson.Gson().fromJson(json, Map.class);
-                result.putAll(statusData);
-            } catch (IOException e) {
-                log.error("[taskId: {}] 读取状态文件失败: {}", taskId, e.getMessage());
-                result.put("status", "UNKNOWN");
-                result.put("message", "无法读取状态文件");
-            }
+        // 注册表中没有（如其他实例创建的任务）：读取 status.json
+        Map<String, Object> statusData = taskStateRegistry.readStatusFile(taskDir);
+        if (statusData != null) {
+            result.putAll(statusData);
+        } else if (new File(taskDir, STATUS_FILE_NAME).exists()) {
+            result.put("status", "UNKNOWN");
+            result.put("message", "无法读取状态文件");
         } else {
             // 没有状态文件，根据文件判断状态
             File docxFile = new File(taskDir, taskId + ".docx");
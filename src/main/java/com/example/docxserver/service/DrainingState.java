@@ -0,0 +1,29 @@
+package com.example.docxserver.service;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * 停机排空状态（由 {@link GracefulShutdown} 置位）
+ *
+ * 单独成为一个没有依赖的组件：处理流水线和共享队列只需要读取这个标志，
+ * 不必依赖 GracefulShutdown 本身（它依赖批次服务，批次服务又依赖处理服务，会形成循环依赖）。
+ */
+@Component
+public class DrainingState {
+
+    private volatile boolean draining;
+
+    /**
+     * 是否正在停机排空（不再接收和启动新任务）
+     */
+    public boolean isDraining() {
+        return draining;
+    }
+
+    /**
+     * 进入排空状态（不可恢复）
+     */
+    void startDraining() {
+        draining = true;
+    }
+}
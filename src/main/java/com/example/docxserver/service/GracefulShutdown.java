@@ -0,0 +1,255 @@
+package com.example.docxserver.service;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 优雅停机：停止接收任务，等待正在执行的阶段完成，把未完成的任务记录下来留给下一个进程
+ *
+ * 在 Spring 关闭流程中先于各线程池的 @PreDestroy 执行（SmartLifecycle 最高 phase 最先停止）：
+ * 1. 进入排空状态：上传接口返回 503，准入队列、批次调度、共享队列认领、启动恢复都不再启动新任务
+ * 2. 丢弃各阶段线程池中尚未开始的阶段，关闭线程池；正在执行的阶段继续运行，完成后照常写入处理日志，
+ *    其后续阶段因线程池关闭而停止，任务状态保持处理中（不标记失败或取消）
+ * 3. 等待正在执行的阶段完成（docx.shutdown.grace-period-ms）；超时后通过取消令牌让它们在下一个检查点停止。
+ *    TXT 在整个结构树遍历完成后才写文件，停在检查点的任务不会留下写了一半的 TXT
+ * 4. 把未完成任务的 ID 和优先级写入 {basePath}/.shutdown-checkpoint.json，顺序为：
+ *    被中断的在途任务 → 准入队列中的任务 → 批次中尚未调度的文档。
+ *    多实例部署时各实例共享 {basePath}，检查点按实例分文件（.shutdown-checkpoint_{nodeId}.json），互不覆盖
+ *
+ * 下次启动时 {@link TaskRecoveryService} 先按检查点的顺序和优先级恢复这些任务，
+ * 各任务根据处理日志从第一个未完成的阶段继续，已完成的阶段不重复执行。
+ * 多实例部署时，本实例持有的租约放回共享队列，由其他实例立即认领。
+ */
+@Slf4j
+@Component
+public class GracefulShutdown implements SmartLifecycle {
+
+    private static final String CHECKPOINT_FILE_NAME = ".shutdown-checkpoint.json";
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    @Value("${docx.storage.base-path:/data/docx_server}")
+    private String basePath;
+
+    /**
+     * 等待正在执行的阶段完成的最长时间（毫秒）
+     */
+    @Value("${docx.shutdown.grace-period-ms:60000}")
+    private long gracePeriodMs;
+
+    /**
+     * 宽限期结束后，等待被取消的阶段在检查点停止的时间（毫秒）
+     */
+    @Value("${docx.shutdown.cancel-wait-ms:10000}")
+    private long cancelWaitMs;
+
+    @Autowired
+    private PipelineExecutors pipelineExecutors;
+
+    @Autowired
+    private AdmissionController admissionController;
+
+    @Autowired
+    private BatchService batchService;
+
+    @Autowired
+    private TaskCancellation taskCancellation;
+
+    @Autowired
+    private TaskJournal taskJournal;
+
+    @Autowired
+    private DrainingState drainingState;
+
+    @Autowired
+    private SharedWorkQueue sharedWorkQueue;
+
+    private volatile boolean running;
+
+    /**
+     * 检查点文件内容
+     */
+    public static class Checkpoint {
+        public long createTime;
+        public List<Entry> tasks = new ArrayList<>();
+
+        public static class Entry {
+            public String taskId;
+            public String priority;
+            /**
+             * INTERRUPTED（执行中被中断）/ QUEUED（等待处理预算）/ BATCH（批次中尚未调度）
+             */
+            public String reason;
+
+            public Entry() {}
+
+            Entry(String taskId, String priority, String reason) {
+                this.taskId = taskId;
+                this.priority = priority;
+                this.reason = reason;
+            }
+        }
+    }
+
+    /**
+     * 是否正在停机排空（不再接收和启动新任务）
+     */
+    public boolean isDraining() {
+        return drainingState.isDraining();
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        drainingState.startDraining();
+        log.info("开始优雅停机：停止接收新任务，等待正在执行的阶段完成（最长 {} ms）", gracePeriodMs);
+
+        // 1. 准入队列和批次中尚未开始的任务：不再启动（处理日志已在提交时写入）
+        List<AdmissionController.QueuedTask> admissionQueued = admissionController.suspend();
+        List<String> batchPending = batchService.suspend();
+
+        // 2. 丢弃尚未开始的阶段，正在执行的阶段继续运行
+        //    （先记下在途任务：被丢弃阶段的 Future 立即以取消结束，任务随即注销取消令牌）
+        List<String> inFlight = taskCancellation.activeTaskIds();
+        int dropped = pipelineExecutors.drainAndShutdown();
+        log.info("停机排空: 在途任务 {} 个（丢弃未开始的阶段 {} 个），准入队列 {} 个，批次待调度 {} 个",
+                inFlight.size(), dropped, admissionQueued.size(), batchPending.size());
+
+        // 3. 等待正在执行的阶段完成，超时后在检查点取消
+        if (!pipelineExecutors.awaitTermination(gracePeriodMs)) {
+            List<String> remaining = taskCancellation.activeTaskIds();
+            log.warn("宽限期内仍有 {} 个任务在执行，通知它们在下一个检查点停止: {}", remaining.size(), remaining);
+            for (String taskId : remaining) {
+                taskCancellation.cancel(taskId);
+            }
+            if (!pipelineExecutors.awaitTermination(cancelWaitMs)) {
+                log.warn("仍有阶段未能在检查点停止（如 Aspose 转换），强制结束，这些阶段将在重启后重新执行");
+            }
+        }
+
+        // 4. 记录未完成的任务
+        Checkpoint checkpoint = new Checkpoint();
+        checkpoint.createTime = System.currentTimeMillis();
+        for (String taskId : inFlight) {
+            checkpoint.tasks.add(new Checkpoint.Entry(taskId, priorityOf(taskId), "INTERRUPTED"));
+        }
+        for (AdmissionController.QueuedTask queued : admissionQueued) {
+            checkpoint.tasks.add(new Checkpoint.Entry(queued.taskId, queued.priority.name(), "QUEUED"));
+        }
+        for (String taskId : batchPending) {
+            checkpoint.tasks.add(new Checkpoint.Entry(taskId, TaskPriority.BULK.name(), "BATCH"));
+        }
+        writeCheckpoint(checkpoint);
+
+        running = false;
+        log.info("优雅停机完成: 记录未完成任务 {} 个，耗时 {} ms",
+                checkpoint.tasks.size(), System.currentTimeMillis() - startTime);
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 最先停止：在 Web 请求仍可应答（返回 503）、各线程池尚未销毁时排空
+     */
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * 读取并删除上次停机留下的检查点
+     *
+     * @return 检查点，没有时返回 null
+     */
+    public Checkpoint takeCheckpoint() {
+        File file = checkpointFile();
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            String json = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            return GSON.fromJson(json, Checkpoint.class);
+        } catch (Exception e) {
+            log.warn("读取停机检查点失败: {}", e.getMessage());
+            return null;
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * 检查点文件：多实例部署时按实例分文件（与 StorageManager 的索引文件相同的命名方式）
+     */
+    private File checkpointFile() {
+        if (!sharedWorkQueue.isEnabled()) {
+            return new File(basePath, CHECKPOINT_FILE_NAME);
+        }
+        String node = sharedWorkQueue.getNodeId().replaceAll("[^A-Za-z0-9._-]", "_");
+        return new File(basePath, CHECKPOINT_FILE_NAME.replace(".json", "_" + node + ".json"));
+    }
+
+    /**
+     * 任务提交时的优先级（来自处理日志），默认 BULK
+     */
+    private String priorityOf(String taskId) {
+        TaskJournal.State state = taskJournal.read(taskId);
+        if (state != null && state.params != null && state.params.get("priority") != null) {
+            return state.params.get("priority").toString();
+        }
+        return TaskPriority.BULK.name();
+    }
+
+    private void writeCheckpoint(Checkpoint checkpoint) {
+        if (checkpoint.tasks.isEmpty()) {
+            return;
+        }
+        // 同一任务只保留第一次出现（在途优先）
+        Map<String, Checkpoint.Entry> unique = new LinkedHashMap<>();
+        for (Checkpoint.Entry entry : checkpoint.tasks) {
+            unique.putIfAbsent(entry.taskId, entry);
+        }
+        checkpoint.tasks = new ArrayList<>(unique.values());
+
+        File file = checkpointFile();
+        File tmpFile = new File(basePath, file.getName() + ".tmp");
+        try {
+            Files.write(tmpFile.toPath(), GSON.toJson(checkpoint).getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            log.info("停机检查点已写入: {}", file.getAbsolutePath());
+        } catch (IOException e) {
+            // 没有检查点时启动恢复仍会按状态扫描找到这些任务
+            log.error("写入停机检查点失败: {}", e.getMessage());
+        }
+    }
+}
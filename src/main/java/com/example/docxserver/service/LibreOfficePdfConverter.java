@@ -0,0 +1,66 @@
+package com.example.docxserver.service;
+
+import com.example.docxserver.util.RemoteLibreOfficeCli;
+import com.example.docxserver.util.docx.DocxHeaderFooterRemover;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 远程 LibreOffice 转换（SSH + Docker，见 {@link RemoteLibreOfficeCli}）
+ *
+ * 先用 POI 在本地移除页眉、页脚和批注，再上传清理后的 DOCX 转换为带结构标签的 PDF。
+ */
+@Component
+public class LibreOfficePdfConverter implements DocxPdfConverter {
+
+    public static final String NAME = "libreoffice";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+    @Override
+    public void convert(String docxPath, String pdfPath, String cleanedDocxPath) throws Exception {
+        File workDir = Files.createTempDirectory("docx-lo-").toFile();
+        try {
+            // 远端工作目录按文件名存放，用随机文件名避免并发任务互相覆盖
+            String baseName = "lo-" + UUID.randomUUID().toString().replace("-", "");
+            File cleaned = new File(workDir, baseName + ".docx");
+            DocxHeaderFooterRemover.removeHeaderFooter(docxPath, cleaned.getAbsolutePath());
+
+            List<File> files = RemoteLibreOfficeCli.executeRemoteWithUploadDownload(
+                    cleaned.getAbsolutePath(), new File(workDir, "out").getAbsolutePath(),
+                    RemoteLibreOfficeCli.IMAGE_NAME, RemoteLibreOfficeCli.getDocxToPdfCommandTemplate());
+            File pdf = null;
+            for (File file : files) {
+                if (file.getName().equals(baseName + ".pdf")) {
+                    pdf = file;
+                    break;
+                }
+            }
+            if (pdf == null) {
+                throw new IOException("LibreOffice 转换失败：PDF文件未生成");
+            }
+            Files.move(pdf.toPath(), Paths.get(pdfPath), StandardCopyOption.REPLACE_EXISTING);
+            if (cleanedDocxPath != null) {
+                Files.copy(cleaned.toPath(), Paths.get(cleanedDocxPath), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            FileSystemUtils.deleteRecursively(workDir);
+        }
+    }
+}
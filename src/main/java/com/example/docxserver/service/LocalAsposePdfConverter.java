@@ -0,0 +1,31 @@
+package com.example.docxserver.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * 本机 Aspose.Words 转换（经转换子进程池，见 {@link ConvertWorkerPool}）
+ */
+@Component
+public class LocalAsposePdfConverter implements DocxPdfConverter {
+
+    public static final String NAME = "local-aspose";
+
+    @Autowired
+    private ConvertWorkerPool convertWorkerPool;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+    @Override
+    public void convert(String docxPath, String pdfPath, String cleanedDocxPath) throws Exception {
+        convertWorkerPool.convert(docxPath, pdfPath, cleanedDocxPath);
+    }
+}
@@ -0,0 +1,263 @@
+package com.example.docxserver.service;
+
+import com.example.docxserver.util.aspose.DocxConvertPdf;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PDF 转换缓存（磁盘，按大小上限 LRU 淘汰）
+ *
+ * 缓存键 = SHA-256(原始DOCX的 SHA-256 + 转换设置指纹)，设置指纹见 {@link DocxConvertPdf#saveOptionsFingerprint()}。
+ * 每个条目保存 convert 阶段的两个产物：{key}.pdf 和清理后的 {key}.docx。
+ *
+ * 与 {@link DocxContentIndex} 的区别：内容索引复用整个任务的产物，要求源任务仍然存在且处理选项相同；
+ * 本缓存只跳过 Aspose 转换，源任务被删除、includeMcid 不同、提取逻辑升级后重新提取时都能命中。
+ *
+ * 存放在 {basePath}/.pdf-cache/，写入时优先硬链接任务目录中的产物（同一文件系统上不额外占用空间）。
+ * 最近使用时间记录在文件修改时间上，重启后按修改时间恢复 LRU 顺序。
+ */
+@Slf4j
+@Component
+public class PdfConversionCache {
+
+    private static final String CACHE_DIR_NAME = ".pdf-cache";
+    private static final String PDF_SUFFIX = ".pdf";
+    private static final String DOCX_SUFFIX = ".docx";
+
+    @Value("${docx.storage.base-path:/data/docx_server}")
+    private String basePath;
+
+    @Value("${docx.pdf-cache.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 缓存总大小上限（字节）
+     */
+    @Value("${docx.pdf-cache.max-bytes:10737418240}")
+    private long maxBytes;
+
+    private File cacheDir;
+    private String optionsFingerprint;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private static class Entry {
+        final long bytes;
+        volatile long lastAccess;
+
+        Entry(long bytes, long lastAccess) {
+            this.bytes = bytes;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    /**
+     * 命中的缓存条目
+     */
+    public static class Cached {
+        public final File pdf;
+        public final File docx;
+
+        Cached(File pdf, File docx) {
+            this.pdf = pdf;
+            this.docx = docx;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            optionsFingerprint = DocxConvertPdf.saveOptionsFingerprint();
+        } catch (Throwable e) {
+            // 没有 Aspose（如只部署提取功能的环境）时不启用缓存
+            log.warn("无法获取转换设置指纹，PDF 转换缓存不启用: {}", e.getMessage());
+            enabled = false;
+            return;
+        }
+        cacheDir = new File(basePath, CACHE_DIR_NAME);
+        cacheDir.mkdirs();
+
+        File[] files = cacheDir.listFiles((dir, name) -> name.endsWith(PDF_SUFFIX));
+        if (files != null) {
+            for (File pdf : files) {
+                String key = pdf.getName().substring(0, pdf.getName().length() - PDF_SUFFIX.length());
+                File docx = new File(cacheDir, key + DOCX_SUFFIX);
+                if (!docx.isFile()) {
+                    pdf.delete();
+                    continue;
+                }
+                long bytes = pdf.length() + docx.length();
+                entries.put(key, new Entry(bytes, pdf.lastModified()));
+                totalBytes.addAndGet(bytes);
+            }
+        }
+        // 清理上次中断留下的临时文件
+        File[] tmpFiles = cacheDir.listFiles((dir, name) -> name.endsWith(".tmp"));
+        if (tmpFiles != null) {
+            for (File tmp : tmpFiles) {
+                tmp.delete();
+            }
+        }
+        log.info("PDF 转换缓存已加载: {} 条, {} MB（上限 {} MB）, 设置指纹: {}",
+                entries.size(), totalBytes.get() / (1024 * 1024), maxBytes / (1024 * 1024), optionsFingerprint);
+        evictIfNeeded();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 查找缓存
+     *
+     * @param contentHash 原始DOCX的 SHA-256（为null时不查找）
+     * @return 命中的条目，未命中返回 null
+     */
+    public Cached lookup(String contentHash) {
+        if (!enabled || contentHash == null) {
+            return null;
+        }
+        String key = buildKey(contentHash);
+        Entry entry = entries.get(key);
+        File pdf = new File(cacheDir, key + PDF_SUFFIX);
+        File docx = new File(cacheDir, key + DOCX_SUFFIX);
+        if (entry == null || !pdf.isFile() || !docx.isFile()) {
+            misses.incrementAndGet();
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        entry.lastAccess = now;
+        pdf.setLastModified(now);
+        hits.incrementAndGet();
+        return new Cached(pdf, docx);
+    }
+
+    /**
+     * 登记 convert 阶段的产物（硬链接，跨文件系统时复制）
+     *
+     * @param contentHash 原始DOCX的 SHA-256（为null时不登记）
+     * @param pdf 转换得到的 PDF
+     * @param cleanedDocx 清理后的 DOCX
+     */
+    public void put(String contentHash, File pdf, File cleanedDocx) {
+        if (!enabled || contentHash == null) {
+            return;
+        }
+        String key = buildKey(contentHash);
+        if (entries.containsKey(key)) {
+            return;
+        }
+        File pdfTarget = new File(cacheDir, key + PDF_SUFFIX);
+        File docxTarget = new File(cacheDir, key + DOCX_SUFFIX);
+        try {
+            // 先放 DOCX 再放 PDF：启动扫描以 PDF 为准，只有 DOCX 的残留条目不会被加载
+            linkOrCopyAtomically(cleanedDocx, docxTarget);
+            linkOrCopyAtomically(pdf, pdfTarget);
+        } catch (IOException e) {
+            log.warn("写入 PDF 转换缓存失败: {}", e.getMessage());
+            pdfTarget.delete();
+            docxTarget.delete();
+            return;
+        }
+        long bytes = pdfTarget.length() + docxTarget.length();
+        if (entries.putIfAbsent(key, new Entry(bytes, System.currentTimeMillis())) == null) {
+            totalBytes.addAndGet(bytes);
+            evictIfNeeded();
+        }
+    }
+
+    /**
+     * 缓存统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        if (!enabled) {
+            return stats;
+        }
+        stats.put("entries", entries.size());
+        stats.put("usedBytes", totalBytes.get());
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+
+    /**
+     * 超过大小上限时按最近使用时间淘汰最旧的条目
+     */
+    private synchronized void evictIfNeeded() {
+        if (totalBytes.get() <= maxBytes) {
+            return;
+        }
+        List<Map.Entry<String, Entry>> candidates = new ArrayList<>(entries.entrySet());
+        candidates.sort((a, b) -> Long.compare(a.getValue().lastAccess, b.getValue().lastAccess));
+        for (Map.Entry<String, Entry> candidate : candidates) {
+            if (totalBytes.get() <= maxBytes) {
+                break;
+            }
+            String key = candidate.getKey();
+            if (entries.remove(key, candidate.getValue())) {
+                new File(cacheDir, key + PDF_SUFFIX).delete();
+                new File(cacheDir, key + DOCX_SUFFIX).delete();
+                totalBytes.addAndGet(-candidate.getValue().bytes);
+                evictions.incrementAndGet();
+                log.debug("淘汰 PDF 转换缓存: {}", key);
+            }
+        }
+    }
+
+    private String buildKey(String contentHash) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest((contentHash + "|" + optionsFingerprint).getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 不可用", e);
+        }
+    }
+
+    private static void linkOrCopyAtomically(File source, File target) throws IOException {
+        File tmp = new File(target.getParentFile(), target.getName() + ".tmp");
+        Files.deleteIfExists(tmp.toPath());
+        try {
+            Files.createLink(tmp.toPath(), source.toPath());
+        } catch (UnsupportedOperationException | IOException e) {
+            Files.copy(source.toPath(), tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        try {
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,431 @@
+package com.example.docxserver.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * DOCX→PDF→TXT 处理流水线的分阶段线程池
+ *
+ * 每个阶段使用独立、命名、有界的线程池：
+ * - convert：Aspose 一次解析中移除页眉页脚和批注并转换 PDF
+ * - extract：TXT/AI JSON 提取
+ * - render：页面图片渲染
+ *
+ * convert 阶段的队列同时是流水线的入口队列：新任务通过 {@link StageExecutors#getEntryExecutor()} 提交，
+ * 该通道已满时直接拒绝（RejectedExecutionException），由 Controller 返回 429，不阻塞请求线程。
+ * 下游阶段队列满时阻塞提交线程（即上游阶段的工作线程），形成反压，
+ * 避免突发上传时 CPU 和堆内存被过度占用。
+ *
+ * 阶段任务通过 {@link #runAsync(Runnable, Executor)} 提交：停机时被丢弃的阶段任务以 CancellationException 结束，
+ * 等待它的调用方（如同步处理的请求线程）不会一直阻塞。
+ *
+ * 每个阶段的队列分 INTERACTIVE / BULK 两个通道（见 {@link PriorityLaneQueue}）：
+ * 交互任务在每个阶段边界都优先出队，并且每个阶段预留线程只给交互任务使用，
+ * 批量任务在阶段之间让出位置。通过 {@link #forPriority(TaskPriority)} 获取对应通道的执行器。
+ */
+@Slf4j
+@Component
+public class PipelineExecutors {
+
+    public static final String STAGE_CONVERT = "convert";
+    public static final String STAGE_EXTRACT = "extract";
+    public static final String STAGE_RENDER = "render";
+
+    @Value("${docx.pipeline.convert.threads:2}")
+    private int convertThreads;
+
+    /**
+     * convert 阶段每个通道的队列容量，即入口队列容量
+     */
+    @Value("${docx.pipeline.convert.queue-capacity:50}")
+    private int convertQueueCapacity;
+
+    @Value("${docx.pipeline.extract.threads:2}")
+    private int extractThreads;
+
+    @Value("${docx.pipeline.extract.queue-capacity:20}")
+    private int extractQueueCapacity;
+
+    @Value("${docx.pipeline.render.threads:2}")
+    private int renderThreads;
+
+    @Value("${docx.pipeline.render.queue-capacity:20}")
+    private int renderQueueCapacity;
+
+    /**
+     * 每个阶段为交互任务预留的线程数（阶段线程数为1时不预留）
+     */
+    @Value("${docx.pipeline.interactive-reserved-threads:1}")
+    private int interactiveReservedThreads;
+
+    /**
+     * 默认走 BULK 通道的 API 客户端（请求头 X-Client-Id，逗号分隔），如批量导入程序
+     */
+    @Value("${docx.pipeline.bulk-clients:}")
+    private String bulkClients;
+
+    /**
+     * 入口队列满时返回给客户端的 Retry-After 基准秒数
+     */
+    @Value("${docx.pipeline.retry-after-seconds:30}")
+    private int retryAfterSeconds;
+
+    private ThreadPoolExecutor convertExecutor;
+    private ThreadPoolExecutor extractExecutor;
+    private ThreadPoolExecutor renderExecutor;
+
+    private final Map<TaskPriority, StageExecutors> laneExecutors = new EnumMap<>(TaskPriority.class);
+
+    @PostConstruct
+    public void init() {
+        convertExecutor = createExecutor(STAGE_CONVERT, convertThreads, convertQueueCapacity, new BlockingPolicy());
+        extractExecutor = createExecutor(STAGE_EXTRACT, extractThreads, extractQueueCapacity, new BlockingPolicy());
+        renderExecutor = createExecutor(STAGE_RENDER, renderThreads, renderQueueCapacity, new BlockingPolicy());
+        for (TaskPriority priority : TaskPriority.values()) {
+            laneExecutors.put(priority, new StageExecutors(priority));
+        }
+        log.info("流水线线程池已初始化: convert={}/{}, extract={}/{}, render={}/{} (线程数/每通道队列容量), 交互预留线程={}",
+                convertThreads, convertQueueCapacity,
+                extractThreads, extractQueueCapacity, renderThreads, renderQueueCapacity, interactiveReservedThreads);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        convertExecutor.shutdown();
+        extractExecutor.shutdown();
+        renderExecutor.shutdown();
+        log.info("流水线线程池已关闭");
+    }
+
+    /**
+     * 在指定阶段执行任务
+     *
+     * 与 CompletableFuture.runAsync 相同，区别是任务在停机时被丢弃（{@link #drainAndShutdown()}）时，
+     * 返回的 Future 以 CancellationException 结束。
+     *
+     * @param action 阶段任务
+     * @param stage 阶段执行器（{@link StageExecutors} 中的某个阶段）
+     * @return 阶段任务结束时完成的 Future
+     * @throws RejectedExecutionException 入口队列已满或线程池已关闭
+     */
+    public static CompletableFuture<Void> runAsync(Runnable action, Executor stage) {
+        StageTask task = new StageTask(action);
+        stage.execute(task);
+        return task.future;
+    }
+
+    /**
+     * 停机：丢弃各阶段尚未开始的任务并关闭线程池，正在执行的阶段继续运行
+     *
+     * 被丢弃任务的 Future 以 CancellationException 结束；之后提交的阶段会被拒绝（RejectedExecutionException），
+     * 流水线在阶段边界停止。
+     *
+     * @return 丢弃的阶段任务数
+     */
+    public int drainAndShutdown() {
+        List<Runnable> dropped = new ArrayList<>();
+        for (ThreadPoolExecutor executor : allExecutors()) {
+            executor.getQueue().drainTo(dropped);
+            executor.shutdown();
+        }
+        for (Runnable task : dropped) {
+            Runnable delegate = PriorityLaneQueue.unwrap(task);
+            if (delegate instanceof StageTask) {
+                ((StageTask) delegate).drop();
+            }
+        }
+        return dropped.size();
+    }
+
+    /**
+     * 等待各阶段线程池中正在执行的任务结束
+     *
+     * @param timeoutMs 最长等待时间
+     * @return true 表示全部结束
+     */
+    public boolean awaitTermination(long timeoutMs) {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        try {
+            for (ThreadPoolExecutor executor : allExecutors()) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0 || !executor.awaitTermination(remaining, TimeUnit.MILLISECONDS)) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private List<ThreadPoolExecutor> allExecutors() {
+        return Arrays.asList(convertExecutor, extractExecutor, renderExecutor);
+    }
+
+    public ThreadPoolExecutor getConvertExecutor() {
+        return convertExecutor;
+    }
+
+    public ThreadPoolExecutor getExtractExecutor() {
+        return extractExecutor;
+    }
+
+    public ThreadPoolExecutor getRenderExecutor() {
+        return renderExecutor;
+    }
+
+    /**
+     * 获取指定优先级通道的各阶段执行器
+     *
+     * @param priority 优先级
+     * @return 各阶段执行器
+     */
+    public StageExecutors forPriority(TaskPriority priority) {
+        return laneExecutors.get(priority);
+    }
+
+    /**
+     * 确定请求的优先级：显式的 priority 参数优先，否则按客户端所属通道，默认 INTERACTIVE
+     *
+     * @param requested 请求参数 priority（可为null）
+     * @param clientId 请求头 X-Client-Id（可为null）
+     * @return 优先级
+     */
+    public TaskPriority resolvePriority(String requested, String clientId) {
+        TaskPriority defaultPriority = TaskPriority.INTERACTIVE;
+        if (clientId != null && !clientId.trim().isEmpty()) {
+            for (String bulkClient : bulkClients.split(",")) {
+                if (bulkClient.trim().equals(clientId.trim())) {
+                    defaultPriority = TaskPriority.BULK;
+                    break;
+                }
+            }
+        }
+        return TaskPriority.parse(requested, defaultPriority);
+    }
+
+    /**
+     * 入口队列是否还能接收新任务（交互通道）
+     */
+    public boolean hasCapacity() {
+        return hasCapacity(TaskPriority.INTERACTIVE);
+    }
+
+    /**
+     * 入口队列（convert 阶段）指定通道是否还能接收新任务
+     */
+    public boolean hasCapacity(TaskPriority priority) {
+        return !convertExecutor.isShutdown() && laneQueue(convertExecutor).remainingCapacity(priority) > 0;
+    }
+
+    /**
+     * 入口阶段（convert）是否有空闲线程可以立即执行该通道的新任务：该通道没有排队任务、
+     * 有线程空闲，且 BULK 任务未用完执行名额
+     *
+     * 多实例部署时据此决定是否从共享队列认领任务，忙碌的实例把任务留给空闲的实例。
+     */
+    public boolean isIdle(TaskPriority priority) {
+        return !convertExecutor.isShutdown()
+                && convertExecutor.getActiveCount() < convertExecutor.getMaximumPoolSize()
+                && laneQueue(convertExecutor).isLaneIdle(priority);
+    }
+
+    /**
+     * 建议客户端的重试间隔（秒），按入口队列积压程度线性放大
+     */
+    public int getRetryAfterSeconds() {
+        int queued = convertExecutor.getQueue().size();
+        int threads = Math.max(1, convertExecutor.getMaximumPoolSize());
+        return retryAfterSeconds * (1 + queued / (threads * 10));
+    }
+
+    /**
+     * 各阶段当前队列深度和活跃线程数
+     */
+    public Map<String, Object> getStageStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put(STAGE_CONVERT, stageStats(convertExecutor));
+        stats.put(STAGE_EXTRACT, stageStats(extractExecutor));
+        stats.put(STAGE_RENDER, stageStats(renderExecutor));
+        return stats;
+    }
+
+    private Map<String, Object> stageStats(ThreadPoolExecutor executor) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("threads", executor.getMaximumPoolSize());
+        stats.put("active", executor.getActiveCount());
+        stats.put("queued", executor.getQueue().size());
+        stats.put("queuedInteractive", laneQueue(executor).size(TaskPriority.INTERACTIVE));
+        stats.put("queuedBulk", laneQueue(executor).size(TaskPriority.BULK));
+        stats.put("queueCapacity", executor.getQueue().size() + executor.getQueue().remainingCapacity());
+        stats.put("completed", executor.getCompletedTaskCount());
+        return stats;
+    }
+
+    private ThreadPoolExecutor createExecutor(String stage, int threads, int queueCapacity,
+                                              RejectedExecutionHandler handler) {
+        int reserved = threads > 1 ? Math.min(interactiveReservedThreads, threads - 1) : 0;
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threads, threads,
+                60L, TimeUnit.SECONDS,
+                new PriorityLaneQueue(queueCapacity, threads - reserved),
+                new NamedThreadFactory("docx-" + stage + "-"),
+                handler);
+        // 线程常驻：保证任务总是经过队列（按通道调度），不会因新建线程而绕过队列直接执行
+        executor.prestartAllCoreThreads();
+        return executor;
+    }
+
+    private static PriorityLaneQueue laneQueue(ThreadPoolExecutor executor) {
+        return (PriorityLaneQueue) executor.getQueue();
+    }
+
+    /**
+     * 某一优先级通道的各阶段执行器：提交的任务按该优先级进入各阶段队列
+     */
+    public class StageExecutors {
+        private final TaskPriority priority;
+        private final Executor entry;
+        private final Executor convert;
+        private final Executor extract;
+        private final Executor render;
+
+        StageExecutors(TaskPriority priority) {
+            this.priority = priority;
+            this.entry = entryExecutor(convertExecutor, priority);
+            this.convert = laneExecutor(convertExecutor, priority);
+            this.extract = laneExecutor(extractExecutor, priority);
+            this.render = laneExecutor(renderExecutor, priority);
+        }
+
+        /**
+         * 流水线入口：任务进入 convert 阶段该通道的队列，队列已满或线程池已关闭时抛出 RejectedExecutionException
+         */
+        public Executor getEntryExecutor() {
+            return entry;
+        }
+
+        public Executor getConvertExecutor() {
+            return convert;
+        }
+
+        public Executor getExtractExecutor() {
+            return extract;
+        }
+
+        public Executor getRenderExecutor() {
+            return render;
+        }
+
+        /**
+         * 提取阶段该通道是否还有队列空位
+         *
+         * 下游阶段满时提交会阻塞（BlockingPolicy），不能等待的调用方先检查。
+         * 检查与提交之间可能被其他任务占满，此时仍会短暂阻塞。
+         */
+        public boolean hasExtractCapacity() {
+            return !extractExecutor.isShutdown() && laneQueue(extractExecutor).remainingCapacity(priority) > 0;
+        }
+
+        private Executor laneExecutor(ThreadPoolExecutor executor, TaskPriority priority) {
+            PriorityLaneQueue queue = laneQueue(executor);
+            return command -> executor.execute(queue.wrap(command, priority));
+        }
+
+        /**
+         * 不阻塞的入队：核心线程已全部预先启动，任务直接放入队列即可被执行，
+         * 不经过 execute() 的拒绝策略（BlockingPolicy 会阻塞请求线程）
+         */
+        private Executor entryExecutor(ThreadPoolExecutor executor, TaskPriority priority) {
+            PriorityLaneQueue queue = laneQueue(executor);
+            return command -> {
+                if (executor.isShutdown() || !queue.offer(queue.wrap(command, priority))) {
+                    throw new RejectedExecutionException("入口队列已满: " + priority);
+                }
+            };
+        }
+    }
+
+    /**
+     * 阶段任务：执行结果写入自己的 Future，停机丢弃时以 CancellationException 结束
+     */
+    private static class StageTask implements Runnable {
+        private final Runnable action;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        StageTask(Runnable action) {
+            this.action = action;
+        }
+
+        @Override
+        public void run() {
+            try {
+                action.run();
+                future.complete(null);
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }
+
+        void drop() {
+            future.completeExceptionally(new CancellationException("服务正在停止，未开始的阶段已丢弃"));
+        }
+    }
+
+    /**
+     * 下游阶段的拒绝策略：阻塞提交线程直到队列有空位
+     */
+    private static class BlockingPolicy implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("线程池已关闭");
+            }
+            try {
+                executor.getQueue().put(r);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("等待队列空位时被中断", e);
+            }
+        }
+    }
+
+    /**
+     * 带阶段名前缀的线程工厂，便于在日志和线程栈中区分
+     */
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger counter = new AtomicInteger(1);
+
+        NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, prefix + counter.getAndIncrement());
+            thread.setDaemon(false);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package com.example.docxserver.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 处理流水线指标
+ *
+ * - 各阶段耗时分位数（p50/p95/p99，基于最近 N 次样本的环形缓冲区）
+ * - 各阶段吞吐：页/秒、字形/秒（累计处理量 / 累计耗时，即单线程吞吐）
+ * - 各阶段线程池队列深度和活跃线程数
+ * - PageMcidCache 命中率
+ *
+ * 以 JSON（/metrics）和 Prometheus 文本格式（/metrics/prometheus）输出。
+ */
+@Component
+public class PipelineMetrics {
+
+    /**
+     * 整个任务（提交到完成）的耗时；另按优先级分别记录 TOTAL_INTERACTIVE / TOTAL_BULK
+     */
+    public static final String STAGE_TOTAL = "TOTAL";
+
+    private static final double[] QUANTILES = {0.5, 0.95, 0.99};
+
+    @Value("${docx.metrics.reservoir-size:1024}")
+    private int reservoirSize;
+
+    @Autowired
+    private PipelineExecutors pipelineExecutors;
+
+    @Autowired
+    private StorageManager storageManager;
+
+    @Autowired
+    private AdmissionController admissionController;
+
+    @Autowired
+    private ConvertWorkerPool convertWorkerPool;
+
+    @Autowired
+    private PdfConversionCache pdfConversionCache;
+
+    @Autowired
+    private ConverterRouter converterRouter;
+
+    private final Map<String, StageMetrics> stages = new ConcurrentHashMap<>();
+
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private final AtomicLong tasksCompleted = new AtomicLong();
+    private final AtomicLong tasksFailed = new AtomicLong();
+
+    /**
+     * 记录一次阶段执行
+     *
+     * @param stage 阶段名
+     * @param elapsedMs 耗时（毫秒）
+     * @param pages 处理的页数（未知时为0）
+     * @param glyphs 处理的字形数（未知时为0）
+     */
+    public void recordStage(String stage, long elapsedMs, long pages, long glyphs) {
+        stages.computeIfAbsent(stage, k -> new StageMetrics(reservoirSize)).record(elapsedMs, pages, glyphs);
+    }
+
+    /**
+     * 记录一个文档的 MCID 缓存命中统计
+     */
+    public void recordCache(long hits, long misses) {
+        cacheHits.addAndGet(hits);
+        cacheMisses.addAndGet(misses);
+    }
+
+    /**
+     * 记录任务结束
+     *
+     * @param success 是否成功
+     */
+    public void recordTaskFinished(boolean success) {
+        if (success) {
+            tasksCompleted.incrementAndGet();
+        } else {
+            tasksFailed.incrementAndGet();
+        }
+    }
+
+    /**
+     * 指标快照（JSON 输出）
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+
+        Map<String, Object> stageMap = new LinkedHashMap<>();
+        for (Map.Entry<String, StageMetrics> entry : stages.entrySet()) {
+            stageMap.put(entry.getKey(), entry.getValue().toMap());
+        }
+        result.put("stages", stageMap);
+        result.put("queues", pipelineExecutors.getStageStats());
+        result.put("admission", admissionController.getStats());
+        result.put("convertWorkers", convertWorkerPool.getStats());
+        result.put("pdfCache", pdfConversionCache.getStats());
+        result.put("converters", converterRouter.getStats());
+
+        Map<String, Object> cache = new LinkedHashMap<>();
+        long hits = cacheHits.get();
+        long misses = cacheMisses.get();
+        cache.put("hits", hits);
+        cache.put("misses", misses);
+        cache.put("hitRate", hits + misses > 0 ? hits * 1.0 / (hits + misses) : 0.0);
+        result.put("mcidCache", cache);
+
+        Map<String, Object> tasks = new LinkedHashMap<>();
+        tasks.put("completed", tasksCompleted.get());
+        tasks.put("failed", tasksFailed.get());
+        result.put("tasks", tasks);
+
+        result.put("storage", storageManager.getStats());
+        return result;
+    }
+
+    /**
+     * Prometheus 文本格式输出
+     */
+    @SuppressWarnings("unchecked")
+    public String toPrometheus() {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append("# HELP docx_stage_latency_ms Stage latency quantiles over recent samples\n");
+        sb.append("# TYPE docx_stage_latency_ms summary\n");
+        for (Map.Entry<String, StageMetrics> entry : stages.entrySet()) {
+            String stage = entry.getKey();
+            StageMetrics m = entry.getValue();
+            long[] sorted = m.sortedSamples();
+            for (double q : QUANTILES) {
+                sb.append("docx_stage_latency_ms{stage=\"").append(stage).append("\",quantile=\"").append(q).append("\"} ")
+                        .append(percentile(sorted, q)).append('\n');
+            }
+            sb.append("docx_stage_latency_ms_sum{stage=\"").append(stage).append("\"} ").append(m.totalMs.get()).append('\n');
+            sb.append("docx_stage_latency_ms_count{stage=\"").append(stage).append("\"} ").append(m.count.get()).append('\n');
+        }
+
+        sb.append("# HELP docx_stage_pages_total Pages processed per stage\n");
+        sb.append("# TYPE docx_stage_pages_total counter\n");
+        for (Map.Entry<String, StageMetrics> entry : stages.entrySet()) {
+            sb.append("docx_stage_pages_total{stage=\"").append(entry.getKey()).append("\"} ")
+                    .append(entry.getValue().pages.get()).append('\n');
+        }
+        sb.append("# HELP docx_stage_glyphs_total Glyphs processed per stage\n");
+        sb.append("# TYPE docx_stage_glyphs_total counter\n");
+        for (Map.Entry<String, StageMetrics> entry : stages.entrySet()) {
+            sb.append("docx_stage_glyphs_total{stage=\"").append(entry.getKey()).append("\"} ")
+                    .append(entry.getValue().glyphs.get()).append('\n');
+        }
+
+        sb.append("# HELP docx_queue_depth Queued tasks per stage executor\n");
+        sb.append("# TYPE docx_queue_depth gauge\n");
+        Map<String, Object> queues = pipelineExecutors.getStageStats();
+        for (Map.Entry<String, Object> entry : queues.entrySet()) {
+            Map<String, Object> q = (Map<String, Object>) entry.getValue();
+            sb.append("docx_queue_depth{stage=\"").append(entry.getKey()).append("\"} ").append(q.get("queued")).append('\n');
+        }
+        sb.append("# HELP docx_queue_lane_depth Queued tasks per stage executor and priority lane\n");
+        sb.append("# TYPE docx_queue_lane_depth gauge\n");
+        for (Map.Entry<String, Object> entry : queues.entrySet()) {
+            Map<String, Object> q = (Map<String, Object>) entry.getValue();
+            sb.append("docx_queue_lane_depth{stage=\"").append(entry.getKey()).append("\",lane=\"interactive\"} ")
+                    .append(q.get("queuedInteractive")).append('\n');
+            sb.append("docx_queue_lane_depth{stage=\"").append(entry.getKey()).append("\",lane=\"bulk\"} ")
+                    .append(q.get("queuedBulk")).append('\n');
+        }
+        sb.append("# HELP docx_queue_active Active threads per stage executor\n");
+        sb.append("# TYPE docx_queue_active gauge\n");
+        for (Map.Entry<String, Object> entry : queues.entrySet()) {
+            Map<String, Object> q = (Map<String, Object>) entry.getValue();
+            sb.append("docx_queue_active{stage=\"").append(entry.getKey()).append("\"} ").append(q.get("active")).append('\n');
+        }
+
+        sb.append("# HELP docx_mcid_cache_requests_total PageMcidCache lookups\n");
+        sb.append("# TYPE docx_mcid_cache_requests_total counter\n");
+        sb.append("docx_mcid_cache_requests_total{result=\"hit\"} ").append(cacheHits.get()).append('\n');
+        sb.append("docx_mcid_cache_requests_total{result=\"miss\"} ").append(cacheMisses.get()).append('\n');
+
+        sb.append("# HELP docx_tasks_total Finished tasks\n");
+        sb.append("# TYPE docx_tasks_total counter\n");
+        sb.append("docx_tasks_total{result=\"completed\"} ").append(tasksCompleted.get()).append('\n');
+        sb.append("docx_tasks_total{result=\"failed\"} ").append(tasksFailed.get()).append('\n');
+
+        Map<String, Object> storage = storageManager.getStats();
+        sb.append("# HELP docx_storage_used_bytes Bytes used by finished tasks\n");
+        sb.append("# TYPE docx_storage_used_bytes gauge\n");
+        sb.append("docx_storage_used_bytes ").append(storage.get("usedBytes")).append('\n');
+        return sb.toString();
+    }
+
+    private static long percentile(long[] sorted, double q) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(q * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    /**
+     * 单个阶段的指标
+     */
+    private static class StageMetrics {
+        private final long[] samples;
+        private int next;
+        private int size;
+
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong totalMs = new AtomicLong();
+        final AtomicLong pages = new AtomicLong();
+        final AtomicLong glyphs = new AtomicLong();
+
+        StageMetrics(int reservoirSize) {
+            this.samples = new long[Math.max(1, reservoirSize)];
+        }
+
+        void record(long elapsedMs, long pageCount, long glyphCount) {
+            synchronized (samples) {
+                samples[next] = elapsedMs;
+                next = (next + 1) % samples.length;
+                if (size < samples.length) {
+                    size++;
+                }
+            }
+            count.incrementAndGet();
+            totalMs.addAndGet(elapsedMs);
+            pages.addAndGet(pageCount);
+            glyphs.addAndGet(glyphCount);
+        }
+
+        long[] sortedSamples() {
+            long[] copy;
+            synchronized (samples) {
+                copy = Arrays.copyOf(samples, size);
+            }
+            Arrays.sort(copy);
+            return copy;
+        }
+
+        Map<String, Object> toMap() {
+            long[] sorted = sortedSamples();
+            long total = totalMs.get();
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("count", count.get());
+            map.put("p50Ms", percentile(sorted, 0.5));
+            map.put("p95Ms", percentile(sorted, 0.95));
+            map.put("p99Ms", percentile(sorted, 0.99));
+            map.put("maxMs", sorted.length > 0 ? sorted[sorted.length - 1] : 0);
+            map.put("meanMs", count.get() > 0 ? total / count.get() : 0);
+            map.put("pages", pages.get());
+            map.put("glyphs", glyphs.get());
+            map.put("pagesPerSecond", total > 0 ? pages.get() * 1000.0 / total : 0.0);
+            map.put("glyphsPerSecond", total > 0 ? glyphs.get() * 1000.0 / total : 0.0);
+            return map;
+        }
+    }
+}
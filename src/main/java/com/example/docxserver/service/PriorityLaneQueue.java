@@ -0,0 +1,341 @@
+package com.example.docxserver.service;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 分优先级通道的有界阻塞队列（流水线各阶段线程池的工作队列）
+ *
+ * - 每个优先级一个独立的有界通道，某一通道满不影响另一通道入队
+ * - 出队时总是先取 INTERACTIVE；BULK 任务只有在正在执行的 BULK 数低于上限时才出队，
+ *   从而为交互任务预留线程，交互任务的等待时间与批量积压无关
+ *
+ * 入队的任务需要是 {@link LaneTask}（由 PipelineExecutors 按优先级包装），其他任务按 INTERACTIVE 处理。
+ *
+ * 使用的线程池必须预先启动全部核心线程（prestartAllCoreThreads），且核心线程数等于最大线程数：
+ * 线程数不足核心线程数时，ThreadPoolExecutor 直接用新线程执行提交的任务，不经过队列，
+ * 通道优先级和 BULK 执行上限都不生效。
+ */
+class PriorityLaneQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    private final ArrayDeque<Runnable> interactive = new ArrayDeque<>();
+    private final ArrayDeque<Runnable> bulk = new ArrayDeque<>();
+    private final int laneCapacity;
+    private final int bulkRunningLimit;
+
+    /**
+     * 已出队、尚未执行完的 BULK 任务数
+     */
+    private int bulkRunning;
+
+    /**
+     * @param laneCapacity 每个通道的容量
+     * @param bulkRunningLimit 同时执行的 BULK 任务上限（线程数 - 交互预留线程数）
+     */
+    PriorityLaneQueue(int laneCapacity, int bulkRunningLimit) {
+        this.laneCapacity = laneCapacity;
+        this.bulkRunningLimit = Math.max(1, bulkRunningLimit);
+    }
+
+    /**
+     * 包装为带优先级的任务（BULK 任务执行结束时归还执行名额）
+     */
+    Runnable wrap(Runnable command, TaskPriority priority) {
+        return new LaneTask(command, priority);
+    }
+
+    /**
+     * 取出包装前的任务（非 {@link LaneTask} 原样返回）
+     */
+    static Runnable unwrap(Runnable r) {
+        return r instanceof LaneTask ? ((LaneTask) r).delegate : r;
+    }
+
+    @Override
+    public boolean offer(Runnable r) {
+        lock.lock();
+        try {
+            ArrayDeque<Runnable> lane = laneOf(r);
+            if (lane.size() >= laneCapacity) {
+                return false;
+            }
+            lane.addLast(r);
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void put(Runnable r) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            ArrayDeque<Runnable> lane = laneOf(r);
+            while (lane.size() >= laneCapacity) {
+                notFull.await();
+            }
+            lane.addLast(r);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(Runnable r, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            ArrayDeque<Runnable> lane = laneOf(r);
+            while (lane.size() >= laneCapacity) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            lane.addLast(r);
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            Runnable r;
+            while ((r = dequeueEligible()) == null) {
+                notEmpty.await();
+            }
+            return r;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            Runnable r;
+            while ((r = dequeueEligible()) == null) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return r;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll() {
+        lock.lock();
+        try {
+            return dequeueEligible();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable peek() {
+        lock.lock();
+        try {
+            Runnable r = interactive.peekFirst();
+            return r != null ? r : bulk.peekFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        lock.lock();
+        try {
+            boolean removed = interactive.remove(o) || bulk.remove(o);
+            if (removed) {
+                notFull.signalAll();
+            }
+            return removed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return interactive.size() + bulk.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 指定通道的排队数
+     */
+    int size(TaskPriority priority) {
+        lock.lock();
+        try {
+            return lane(priority).size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        lock.lock();
+        try {
+            return (laneCapacity - interactive.size()) + (laneCapacity - bulk.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 指定通道的剩余容量
+     */
+    int remainingCapacity(TaskPriority priority) {
+        lock.lock();
+        try {
+            return laneCapacity - lane(priority).size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c, int maxElements) {
+        lock.lock();
+        try {
+            int n = 0;
+            while (n < maxElements && !interactive.isEmpty()) {
+                c.add(interactive.pollFirst());
+                n++;
+            }
+            while (n < maxElements && !bulk.isEmpty()) {
+                c.add(bulk.pollFirst());
+                n++;
+            }
+            if (n > 0) {
+                notFull.signalAll();
+            }
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Iterator<Runnable> iterator() {
+        lock.lock();
+        try {
+            List<Runnable> snapshot = new ArrayList<>(interactive);
+            snapshot.addAll(bulk);
+            return snapshot.iterator();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 该通道没有排队任务，且新任务入队后可以立即出队（BULK 的执行名额未用完）
+     */
+    boolean isLaneIdle(TaskPriority priority) {
+        lock.lock();
+        try {
+            if (!lane(priority).isEmpty()) {
+                return false;
+            }
+            return priority != TaskPriority.BULK || bulkRunning < bulkRunningLimit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 取出下一个可执行的任务（调用方持有锁）
+     */
+    private Runnable dequeueEligible() {
+        Runnable r = interactive.pollFirst();
+        if (r == null && !bulk.isEmpty() && bulkRunning < bulkRunningLimit) {
+            r = bulk.pollFirst();
+            bulkRunning++;
+        }
+        if (r != null) {
+            notFull.signalAll();
+        }
+        return r;
+    }
+
+    private void onBulkFinished() {
+        lock.lock();
+        try {
+            bulkRunning--;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ArrayDeque<Runnable> laneOf(Runnable r) {
+        if (r instanceof LaneTask) {
+            return lane(((LaneTask) r).priority);
+        }
+        return interactive;
+    }
+
+    private ArrayDeque<Runnable> lane(TaskPriority priority) {
+        return priority == TaskPriority.BULK ? bulk : interactive;
+    }
+
+    /**
+     * 带优先级的任务
+     */
+    private class LaneTask implements Runnable {
+        private final Runnable delegate;
+        private final TaskPriority priority;
+
+        LaneTask(Runnable delegate, TaskPriority priority) {
+            this.delegate = delegate;
+            this.priority = priority;
+        }
+
+        @Override
+        public void run() {
+            try {
+                delegate.run();
+            } finally {
+                if (priority == TaskPriority.BULK) {
+                    onBulkFinished();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,466 @@
+package com.example.docxserver.service;
+
+import com.google.gson.Gson;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiFunction;
+
+/**
+ * 多实例共享存储上的任务队列（基于租约）
+ *
+ * 多个实例挂载同一个 {basePath} 时启用（docx.cluster.enabled=true）。上传的任务不再由接收请求的实例直接处理，
+ * 而是写入共享队列，由入口阶段有空闲线程的实例在轮询时认领（接收请求的实例也不优先认领自己收到的任务）：
+ * - {basePath}/.queue/pending/{lane}_{enqueueTime}_{taskId}.json：待认领（文件名排序即调度顺序，交互任务在前）
+ * - {basePath}/.queue/leased/{nodeId}~同名文件：已被某个实例认领，认领 = 从 pending 原子重命名到 leased，只有一个实例能成功；
+ *   文件名带认领实例的标识，实例只删除自己名下的租约文件
+ * - 持有租约的实例定时更新租约文件的修改时间（心跳）；心跳超时的租约由任意实例重命名回 pending，
+ *   重新认领的实例根据处理日志从第一个未完成的阶段继续；原实例心跳时发现租约已丢失，取消本地处理
+ * - {basePath}/.queue/cancel/{taskId}：跨实例取消标记，持有租约的实例看到后取消本地处理
+ *
+ * 任务状态和产物都在共享存储上，任意实例都能应答状态查询和下载；
+ * 提交任务的实例轮询状态文件，把其他实例的处理进度转发给本地的 SSE 订阅者。
+ */
+@Slf4j
+@Component
+public class SharedWorkQueue {
+
+    private static final String QUEUE_DIR_NAME = ".queue";
+
+    private static final Gson GSON = new Gson();
+
+    @Value("${docx.storage.base-path:/data/docx_server}")
+    private String basePath;
+
+    @Value("${docx.cluster.enabled:false}")
+    private boolean enabled;
+
+    /**
+     * 实例标识，默认为 JVM 名称（pid@hostname）
+     */
+    @Value("${docx.cluster.node-id:}")
+    private String nodeId;
+
+    /**
+     * 租约超时（毫秒）：超过该时间没有心跳的租约被回收
+     */
+    @Value("${docx.cluster.lease-timeout-ms:60000}")
+    private long leaseTimeoutMs;
+
+    /**
+     * 共享队列中待认领任务的上限，超过后拒绝新任务（429）
+     */
+    @Value("${docx.cluster.max-pending:500}")
+    private int maxPending;
+
+    @Autowired
+    private PipelineExecutors pipelineExecutors;
+
+    @Autowired
+    private DrainingState drainingState;
+
+    @Autowired
+    private TaskStateRegistry taskStateRegistry;
+
+    @Autowired
+    private TaskProgressPublisher progressPublisher;
+
+    @Autowired
+    private TaskCancellation taskCancellation;
+
+    /**
+     * 本实例持有的租约：taskId -> 租约文件
+     */
+    private final Map<String, File> leases = new ConcurrentHashMap<>();
+
+    /**
+     * 心跳时发现租约已丢失、正在停止本地处理的任务
+     */
+    private final Set<String> lostLeases = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 本实例提交、等待结束的任务：taskId -> Future
+     */
+    private final Map<String, Awaited> awaited = new ConcurrentHashMap<>();
+
+    private File pendingDir;
+    private File leasedDir;
+    private File cancelDir;
+    private File tmpDir;
+
+    /**
+     * 本实例租约文件名前缀（实例标识中文件名不安全的字符替换为 '-'）
+     */
+    private String leasePrefix;
+
+    /**
+     * 认领任务后的执行入口（由 DocxPdfService 注册）：根据处理日志执行任务，返回整个处理流程的 Future
+     */
+    private volatile BiFunction<String, TaskPriority, CompletableFuture<Void>> taskRunner;
+
+    @PostConstruct
+    public void init() {
+        if (nodeId == null || nodeId.trim().isEmpty()) {
+            nodeId = ManagementFactory.getRuntimeMXBean().getName();
+        }
+        leasePrefix = nodeId.replaceAll("[^A-Za-z0-9.-]", "-") + "~";
+        if (!enabled) {
+            return;
+        }
+        File queueDir = new File(basePath, QUEUE_DIR_NAME);
+        pendingDir = new File(queueDir, "pending");
+        leasedDir = new File(queueDir, "leased");
+        cancelDir = new File(queueDir, "cancel");
+        tmpDir = new File(queueDir, "tmp");
+        pendingDir.mkdirs();
+        leasedDir.mkdirs();
+        cancelDir.mkdirs();
+        tmpDir.mkdirs();
+        log.info("共享任务队列已启用: nodeId={}, 目录={}, 租约超时={} ms", nodeId, queueDir.getAbsolutePath(), leaseTimeoutMs);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * 注册认领任务后的执行入口
+     */
+    public void setTaskRunner(BiFunction<String, TaskPriority, CompletableFuture<Void>> taskRunner) {
+        this.taskRunner = taskRunner;
+    }
+
+    /**
+     * 本实例是否持有该任务的租约（正在本地处理）
+     */
+    public boolean holdsLease(String taskId) {
+        return leases.containsKey(taskId);
+    }
+
+    /**
+     * 本实例是否已丢失该任务的租约（心跳失败，任务可能已由其他实例重新认领）
+     *
+     * 丢失租约后本地处理被取消，此时不应再写入任务的结束状态。
+     */
+    public boolean isLeaseLost(String taskId) {
+        return lostLeases.contains(taskId);
+    }
+
+    /**
+     * 提交任务到共享队列，由空闲的实例（包括本实例）在下一次轮询时认领
+     *
+     * @param taskId 任务ID（处理日志中已记录提交参数）
+     * @param priority 优先级
+     * @return 任务结束（无论在哪个实例上处理）时完成的 Future
+     * @throws RejectedExecutionException 共享队列已满或写入失败
+     */
+    public CompletableFuture<Void> submit(String taskId, TaskPriority priority) {
+        String[] pending = pendingDir.list();
+        if (pending != null && pending.length >= maxPending) {
+            throw new RejectedExecutionException("共享任务队列已满: " + pending.length);
+        }
+
+        long now = System.currentTimeMillis();
+        String fileName = (priority == TaskPriority.INTERACTIVE ? "0" : "1")
+                + "_" + String.format("%013d", now) + "_" + taskId + ".json";
+        Map<String, Object> entry = new HashMap<>();
+        entry.put("taskId", taskId);
+        entry.put("priority", priority.name());
+        entry.put("enqueueTime", now);
+        entry.put("origin", nodeId);
+
+        Awaited future = new Awaited();
+        awaited.put(taskId, future);
+        try {
+            File tmp = new File(tmpDir, fileName);
+            Files.write(tmp.toPath(), GSON.toJson(entry).getBytes(StandardCharsets.UTF_8));
+            move(tmp, new File(pendingDir, fileName));
+        } catch (IOException e) {
+            awaited.remove(taskId);
+            throw new RejectedExecutionException("写入共享任务队列失败: " + e.getMessage(), e);
+        }
+        log.info("[taskId: {}] 已加入共享任务队列: {}", taskId, fileName);
+        return future;
+    }
+
+    /**
+     * 是否有实例持有该任务的租约（正在某个实例上处理）
+     */
+    public boolean isLeased(String taskId) {
+        return findEntry(leasedDir, taskId) != null;
+    }
+
+    /**
+     * 跨实例取消：写入取消标记；任务尚未被认领时直接从队列移除
+     *
+     * @param taskId 任务ID
+     * @return true 表示任务尚未被认领，已从队列移除
+     */
+    public boolean cancel(String taskId) {
+        try {
+            Files.write(new File(cancelDir, taskId).toPath(), nodeId.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            log.warn("[taskId: {}] 写入取消标记失败: {}", taskId, e.getMessage());
+        }
+        File pendingFile = findEntry(pendingDir, taskId);
+        if (pendingFile != null && pendingFile.delete()) {
+            new File(cancelDir, taskId).delete();
+            log.info("[taskId: {}] 已从共享任务队列移除", taskId);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 定时执行：心跳、回收超时租约、检查取消标记、认领待处理任务、转发其他实例的处理状态
+     */
+    @Scheduled(fixedDelayString = "${docx.cluster.poll-interval-ms:1000}")
+    public void poll() {
+        if (!enabled) {
+            return;
+        }
+        heartbeat();
+        reclaimExpiredLeases();
+        claimPending();
+        checkAwaited();
+    }
+
+    /**
+     * 更新本实例持有的租约的修改时间；检查跨实例取消标记
+     *
+     * 租约文件已不存在或无法更新时，视为租约已丢失（超时被回收，可能已由其他实例重新认领）：
+     * 放弃本地租约并取消本地处理，避免两个实例同时处理同一任务。
+     */
+    private void heartbeat() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, File> lease : leases.entrySet()) {
+            String taskId = lease.getKey();
+            File leaseFile = lease.getValue();
+            if (!leaseFile.isFile() || !leaseFile.setLastModified(now)) {
+                if (leases.remove(taskId, leaseFile)) {
+                    log.warn("[taskId: {}] 租约心跳失败（租约已超时被回收），取消本地处理", taskId);
+                    lostLeases.add(taskId);
+                    taskCancellation.cancel(taskId);
+                }
+                continue;
+            }
+            if (new File(cancelDir, taskId).exists()) {
+                taskCancellation.cancel(taskId);
+            }
+        }
+    }
+
+    /**
+     * 把心跳超时的租约重命名回 pending（多个实例同时回收时只有一个成功）
+     */
+    private void reclaimExpiredLeases() {
+        File[] leased = leasedDir.listFiles();
+        if (leased == null) {
+            return;
+        }
+        long expireBefore = System.currentTimeMillis() - leaseTimeoutMs;
+        for (File lease : leased) {
+            if (lease.lastModified() >= expireBefore || leases.containsValue(lease)) {
+                continue;
+            }
+            try {
+                move(lease, new File(pendingDir, entryNameOf(lease.getName())));
+                log.warn("[taskId: {}] 租约心跳超时，任务已放回共享队列", taskIdOf(lease.getName()));
+            } catch (IOException e) {
+                // 已被其他实例回收
+            }
+        }
+    }
+
+    /**
+     * 在本地入口阶段有空闲线程时按顺序认领待处理任务
+     *
+     * 每个通道每轮最多认领一个：刚认领的任务从入队到被线程取走之间，空闲判断可能还看不到它。
+     */
+    private synchronized void claimPending() {
+        if (taskRunner == null || drainingState.isDraining()) {
+            return;
+        }
+        String[] names = pendingDir.list();
+        if (names == null || names.length == 0) {
+            return;
+        }
+        Arrays.sort(names);
+        Set<TaskPriority> claimed = EnumSet.noneOf(TaskPriority.class);
+        for (String name : names) {
+            TaskPriority priority = name.startsWith("0_") ? TaskPriority.INTERACTIVE : TaskPriority.BULK;
+            if (claimed.contains(priority) || !pipelineExecutors.isIdle(priority)) {
+                continue;
+            }
+            File leaseFile = new File(leasedDir, leasePrefix + name);
+            try {
+                move(new File(pendingDir, name), leaseFile);
+            } catch (IOException e) {
+                // 已被其他实例认领
+                continue;
+            }
+            leaseFile.setLastModified(System.currentTimeMillis());
+            if (!start(taskIdOf(name), priority, leaseFile)) {
+                return;
+            }
+            claimed.add(priority);
+        }
+    }
+
+    /**
+     * 在本地执行已认领的任务
+     *
+     * @return false 表示本地入口队列已满（租约已放回队列）
+     */
+    private boolean start(String taskId, TaskPriority priority, File leaseFile) {
+        if (new File(cancelDir, taskId).exists()) {
+            taskCancellation.cancel(taskId);
+        }
+        leases.put(taskId, leaseFile);
+        CompletableFuture<Void> future;
+        try {
+            future = taskRunner.apply(taskId, priority);
+        } catch (RejectedExecutionException e) {
+            leases.remove(taskId);
+            // 取消标记文件仍在，重新认领时再次生效
+            taskCancellation.unregister(taskId);
+            try {
+                move(leaseFile, new File(pendingDir, entryNameOf(leaseFile.getName())));
+            } catch (IOException moveError) {
+                log.warn("[taskId: {}] 放回共享队列失败，等待租约超时回收: {}", taskId, moveError.getMessage());
+            }
+            return false;
+        }
+        log.info("[taskId: {}] 已认领共享队列任务, nodeId={}", taskId, nodeId);
+        future.whenComplete((v, e) -> release(taskId, leaseFile));
+        return true;
+    }
+
+    /**
+     * 任务结束：删除租约和取消标记，完成本地等待的 Future
+     *
+     * 租约已丢失时不再触碰共享队列中的文件（同名任务可能已由其他实例认领），
+     * 本地等待的 Future 由 {@link #checkAwaited} 按状态文件完成。
+     */
+    private void release(String taskId, File leaseFile) {
+        // 本地处理已结束：清除心跳在结束前后记下的取消，避免遗留到同名任务下次处理
+        taskCancellation.unregister(taskId);
+        if (!leases.remove(taskId, leaseFile)) {
+            lostLeases.remove(taskId);
+            log.info("[taskId: {}] 租约已丢失，本地处理已停止", taskId);
+            return;
+        }
+        if (drainingState.isDraining() && !isFinished(taskId)) {
+            // 停机中断的任务：放回共享队列，由其他实例立即认领并按处理日志继续
+            try {
+                move(leaseFile, new File(pendingDir, entryNameOf(leaseFile.getName())));
+                log.info("[taskId: {}] 停机中断，任务已放回共享队列", taskId);
+                return;
+            } catch (IOException e) {
+                log.warn("[taskId: {}] 放回共享队列失败，等待租约超时回收: {}", taskId, e.getMessage());
+                return;
+            }
+        }
+        leaseFile.delete();
+        new File(cancelDir, taskId).delete();
+        Awaited future = awaited.remove(taskId);
+        if (future != null) {
+            future.complete(null);
+        }
+    }
+
+    /**
+     * 本实例提交、由其他实例处理的任务：从状态文件读取最新状态，转发给 SSE 订阅者，结束后完成 Future
+     */
+    private void checkAwaited() {
+        for (Map.Entry<String, Awaited> entry : awaited.entrySet()) {
+            String taskId = entry.getKey();
+            if (leases.containsKey(taskId)) {
+                continue;
+            }
+            Map<String, Object> state = taskStateRegistry.refresh(taskId);
+            if (state == null) {
+                continue;
+            }
+            Awaited future = entry.getValue();
+            Object updateTime = state.get("updateTime");
+            if (updateTime != null && !updateTime.equals(future.lastUpdateTime)) {
+                future.lastUpdateTime = updateTime;
+                Map<String, Object> statusData = new HashMap<>(state);
+                statusData.put("exists", true);
+                progressPublisher.publishStatus(taskId, statusData);
+            }
+            if (DocxPdfService.isFinishedStatus(state.get("status"))) {
+                awaited.remove(taskId);
+                future.complete(null);
+            }
+        }
+    }
+
+    private boolean isFinished(String taskId) {
+        Map<String, Object> state = taskStateRegistry.get(taskId);
+        return state != null && DocxPdfService.isFinishedStatus(state.get("status"));
+    }
+
+    private static File findEntry(File dir, String taskId) {
+        File[] files = dir.listFiles((d, name) -> name.endsWith("_" + taskId + ".json"));
+        return files != null && files.length > 0 ? files[0] : null;
+    }
+
+    /**
+     * 租约文件名去掉实例前缀，还原为队列条目名
+     */
+    private static String entryNameOf(String leaseName) {
+        return leaseName.substring(leaseName.indexOf('~') + 1);
+    }
+
+    private static String taskIdOf(String entryName) {
+        String base = entryName.endsWith(".json") ? entryName.substring(0, entryName.length() - 5) : entryName;
+        return base.substring(base.lastIndexOf('_') + 1);
+    }
+
+    /**
+     * 原子重命名；目标已存在或源文件已不存在（被其他实例抢先）时抛出 IOException
+     */
+    private static void move(File source, File target) throws IOException {
+        if (target.exists()) {
+            throw new FileAlreadyExistsException(target.getAbsolutePath());
+        }
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            throw new IOException("共享存储不支持原子重命名: " + source.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * 本实例等待结束的任务
+     */
+    private static class Awaited extends CompletableFuture<Void> {
+        volatile Object lastUpdateTime;
+    }
+}
@@ -0,0 +1,344 @@
+package com.example.docxserver.service;
+
+import com.example.docxserver.util.taggedPDF.PageOffsetIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 存储配额管理（按最近访问时间淘汰任务目录）
+ *
+ * - 每个已结束任务（COMPLETED/FAILED/CANCELLED）的占用字节数和最近访问时间记录在内存索引中，
+ *   持久化为 {basePath}/storage_index.txt（每行 "taskId\tbytes\tlastAccess"）
+ * - 只在任务结束时统计该任务目录的大小，定时检查只读索引，不遍历整个存储目录
+ * - 总占用超过配额时，按最近访问时间从旧到新删除任务，直到降到低水位以下
+ * - 任务结束时删除被新版本取代的带时间戳输出（旧的 _pdf_*.txt / _pdf_paragraph_*.txt / _merged_*.txt）
+ *
+ * 只在索引文件不存在（首次启用）时做一次全量扫描。
+ * 多实例部署时索引按实例分文件（storage_index_{nodeId}.txt），不做全量扫描，避免同一任务被多个实例重复计数。
+ */
+@Slf4j
+@Component
+public class StorageManager {
+
+    private static final String INDEX_FILE_NAME = "storage_index.txt";
+
+    /**
+     * 任务目录名：32位十六进制 taskId
+     */
+    private static final Pattern TASK_ID_PATTERN = Pattern.compile("[0-9a-f]{32}");
+
+    /**
+     * 带时间戳的输出文件：{taskId}_{kind}_{yyyyMMdd_HHmmss}.txt
+     */
+    private static final Pattern TIMESTAMPED_OUTPUT = Pattern.compile("(.+_(?:pdf_paragraph|pdf|merged))_(\\d{8}_\\d{6})\\.txt");
+
+    @Value("${docx.storage.base-path:/data/docx_server}")
+    private String basePath;
+
+    /**
+     * 存储配额（字节），0 表示不限制
+     */
+    @Value("${docx.storage.quota-bytes:53687091200}")
+    private long quotaBytes;
+
+    /**
+     * 超过配额后淘汰到配额的多少比例以下（避免频繁触发）
+     */
+    @Value("${docx.storage.low-watermark:0.9}")
+    private double lowWatermark;
+
+    @Autowired
+    private TaskStateRegistry taskStateRegistry;
+
+    @Autowired
+    private SharedWorkQueue sharedWorkQueue;
+
+    private final Map<String, Usage> usages = new ConcurrentHashMap<>();
+
+    private final AtomicLong totalBytes = new AtomicLong();
+
+    private volatile boolean indexDirty;
+
+    private File indexFile;
+
+    @PostConstruct
+    public void init() {
+        File baseDir = new File(basePath);
+        if (!baseDir.exists()) {
+            baseDir.mkdirs();
+        }
+        // 多实例部署：每个实例只登记和淘汰自己处理结束的任务，索引文件按实例分开
+        indexFile = new File(baseDir, sharedWorkQueue.isEnabled()
+                ? "storage_index_" + sharedWorkQueue.getNodeId().replaceAll("[^A-Za-z0-9._-]", "_") + ".txt"
+                : INDEX_FILE_NAME);
+        if (indexFile.isFile()) {
+            loadIndex();
+        } else if (!sharedWorkQueue.isEnabled()) {
+            // 首次启用：全量扫描一次，之后只增量维护
+            rebuildIndex(baseDir);
+        }
+        log.info("存储索引已加载: {} 个任务, 共 {} MB, 配额 {} MB",
+                usages.size(), totalBytes.get() / (1024 * 1024), quotaBytes / (1024 * 1024));
+    }
+
+    /**
+     * 任务结束时调用：删除被取代的旧输出，重新统计该任务占用
+     *
+     * @param taskId 任务ID
+     */
+    public void onTaskFinished(String taskId) {
+        File taskDir = new File(basePath, taskId);
+        if (!taskDir.isDirectory()) {
+            return;
+        }
+        pruneSupersededOutputs(taskDir);
+        long bytes = directorySize(taskDir);
+        Usage old = usages.put(taskId, new Usage(bytes, System.currentTimeMillis()));
+        totalBytes.addAndGet(bytes - (old != null ? old.bytes : 0));
+        indexDirty = true;
+    }
+
+    /**
+     * 记录任务被访问（下载、查询、匹配等）
+     *
+     * @param taskId 任务ID
+     */
+    public void touch(String taskId) {
+        Usage usage = usages.get(taskId);
+        if (usage != null) {
+            usage.lastAccess = System.currentTimeMillis();
+            indexDirty = true;
+        }
+    }
+
+    /**
+     * 任务目录被删除时调用
+     *
+     * @param taskId 任务ID
+     */
+    public void remove(String taskId) {
+        Usage old = usages.remove(taskId);
+        if (old != null) {
+            totalBytes.addAndGet(-old.bytes);
+            indexDirty = true;
+        }
+    }
+
+    /**
+     * 存储使用统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("tasks", usages.size());
+        stats.put("usedBytes", totalBytes.get());
+        stats.put("quotaBytes", quotaBytes);
+        return stats;
+    }
+
+    /**
+     * 定时检查配额并写回索引
+     */
+    @Scheduled(fixedDelayString = "${docx.storage.check-interval-ms:300000}",
+            initialDelayString = "${docx.storage.check-interval-ms:300000}")
+    public void enforceQuota() {
+        if (quotaBytes > 0 && totalBytes.get() > quotaBytes) {
+            evict((long) (quotaBytes * lowWatermark));
+        }
+        if (indexDirty) {
+            saveIndex();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (indexDirty) {
+            saveIndex();
+        }
+    }
+
+    /**
+     * 按最近访问时间从旧到新删除已结束的任务，直到总占用不超过目标值
+     */
+    private synchronized void evict(long targetBytes) {
+        List<Map.Entry<String, Usage>> candidates = new ArrayList<>(usages.entrySet());
+        candidates.sort((a, b) -> Long.compare(a.getValue().lastAccess, b.getValue().lastAccess));
+
+        long before = totalBytes.get();
+        int evicted = 0;
+        for (Map.Entry<String, Usage> candidate : candidates) {
+            if (totalBytes.get() <= targetBytes) {
+                break;
+            }
+            String taskId = candidate.getKey();
+            Map<String, Object> state = taskStateRegistry.get(taskId);
+            if (state != null && !isFinished(state.get("status"))) {
+                // 任务被重新处理中，不淘汰
+                continue;
+            }
+            try {
+                taskStateRegistry.remove(taskId);
+                FileSystemUtils.deleteRecursively(new File(basePath, taskId).toPath());
+                remove(taskId);
+                evicted++;
+                log.info("[taskId: {}] 超出存储配额，已淘汰（{} 字节，最近访问 {}）",
+                        taskId, candidate.getValue().bytes, candidate.getValue().lastAccess);
+            } catch (IOException e) {
+                log.warn("[taskId: {}] 淘汰任务目录失败: {}", taskId, e.getMessage());
+            }
+        }
+        log.info("存储配额淘汰完成: 淘汰 {} 个任务, {} MB -> {} MB", evicted,
+                before / (1024 * 1024), totalBytes.get() / (1024 * 1024));
+    }
+
+    /**
+     * 删除被取代的带时间戳输出：同类文件只保留时间戳最新的一个
+     */
+    private void pruneSupersededOutputs(File taskDir) {
+        File[] files = taskDir.listFiles(File::isFile);
+        if (files == null) {
+            return;
+        }
+        Map<String, File> latest = new HashMap<>();
+        List<File> superseded = new ArrayList<>();
+        for (File f : files) {
+            Matcher m = TIMESTAMPED_OUTPUT.matcher(f.getName());
+            if (!m.matches()) {
+                continue;
+            }
+            String kind = m.group(1);
+            File current = latest.get(kind);
+            if (current == null) {
+                latest.put(kind, f);
+            } else if (f.getName().compareTo(current.getName()) > 0) {
+                superseded.add(current);
+                latest.put(kind, f);
+            } else {
+                superseded.add(f);
+            }
+        }
+        for (File f : superseded) {
+            if (f.delete()) {
+                log.info("删除被取代的旧输出: {}", f.getAbsolutePath());
+            }
+            // 旧 TXT 的页索引一并删除，否则会成为孤立文件
+            PageOffsetIndex.indexFileFor(f).delete();
+        }
+    }
+
+    private static boolean isFinished(Object status) {
+        return DocxPdfService.isFinishedStatus(status);
+    }
+
+    private void loadIndex() {
+        try {
+            for (String line : Files.readAllLines(indexFile.toPath(), StandardCharsets.UTF_8)) {
+                String[] parts = line.split("\t");
+                if (parts.length != 3) {
+                    continue;
+                }
+                try {
+                    Usage usage = new Usage(Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+                    usages.put(parts[0], usage);
+                    totalBytes.addAndGet(usage.bytes);
+                } catch (NumberFormatException e) {
+                    log.warn("忽略无效的存储索引行: {}", line);
+                }
+            }
+        } catch (IOException e) {
+            log.error("加载存储索引失败: {}", e.getMessage());
+        }
+    }
+
+    private void rebuildIndex(File baseDir) {
+        long startTime = System.currentTimeMillis();
+        File[] taskDirs = baseDir.listFiles(f -> f.isDirectory() && TASK_ID_PATTERN.matcher(f.getName()).matches());
+        if (taskDirs != null) {
+            for (File taskDir : taskDirs) {
+                Map<String, Object> state = taskStateRegistry.get(taskDir.getName());
+                if (state != null && !isFinished(state.get("status"))) {
+                    continue;
+                }
+                long bytes = directorySize(taskDir);
+                usages.put(taskDir.getName(), new Usage(bytes, taskDir.lastModified()));
+                totalBytes.addAndGet(bytes);
+            }
+        }
+        saveIndex();
+        log.info("存储索引全量重建完成，耗时 {} ms", System.currentTimeMillis() - startTime);
+    }
+
+    private synchronized void saveIndex() {
+        indexDirty = false;
+        List<String> lines = new ArrayList<>(usages.size());
+        for (Map.Entry<String, Usage> entry : usages.entrySet()) {
+            lines.add(entry.getKey() + "\t" + entry.getValue().bytes + "\t" + entry.getValue().lastAccess);
+        }
+        File tmp = new File(indexFile.getParentFile(), indexFile.getName() + ".tmp");
+        try {
+            Files.write(tmp.toPath(), lines, StandardCharsets.UTF_8);
+            Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            indexDirty = true;
+            log.error("写入存储索引失败: {}", e.getMessage());
+        }
+    }
+
+    private static long directorySize(File dir) {
+        final AtomicLong size = new AtomicLong();
+        try {
+            Files.walkFileTree(dir.toPath(), new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    size.addAndGet(attrs.size());
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            log.warn("统计目录大小失败: {}, {}", dir.getAbsolutePath(), e.getMessage());
+        }
+        return size.get();
+    }
+
+    /**
+     * 单个任务的占用
+     */
+    private static class Usage {
+        final long bytes;
+        volatile long lastAccess;
+
+        Usage(long bytes, long lastAccess) {
+            this.bytes = bytes;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.docxserver.service;
+
+import com.example.docxserver.util.common.ProgressListener;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 任务取消与超时（协作式）
+ *
+ * 每个处理中的任务登记一个取消令牌，令牌在以下情况下失效：
+ * - 调用 DELETE /task/{taskId} 主动取消
+ * - 超过任务截止时间（docx.task.deadline-ms，从提交开始计算，0 表示不限制）
+ *
+ * 处理代码在检查点（阶段之间、MCID 预热的每页之间、结构树第二遍的每个根元素之间、
+ * 每个渲染任务之前）通过 {@link ProgressListener#isCancelled()} 检查令牌，
+ * 失效后抛出 {@link CancellationException}，尽快释放线程。
+ * Aspose 转换本身无法中断，只能在转换前后检查。
+ *
+ * 尚未开始处理的任务（如批次中排队）被取消时不创建令牌，只记入待生效的取消，
+ * 任务开始时 {@link #register} 取走并直接标记令牌为已取消；任务不再处理时须 {@link #unregister} 清除。
+ */
+@Slf4j
+@Component
+public class TaskCancellation {
+
+    /**
+     * 任务截止时间（毫秒，从提交开始计算），0 表示不限制
+     */
+    @Value("${docx.task.deadline-ms:1800000}")
+    private long deadlineMs;
+
+    private final Map<String, Token> tokens = new ConcurrentHashMap<>();
+
+    /**
+     * 尚未登记令牌就被取消的任务
+     */
+    private final Set<String> pendingCancels = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 任务开始处理时登记令牌（已被提前取消的任务登记后即为已取消）
+     *
+     * @param taskId 任务ID
+     * @return 取消令牌
+     */
+    public Token register(String taskId) {
+        long deadline = deadlineMs > 0 ? System.currentTimeMillis() + deadlineMs : Long.MAX_VALUE;
+        Token token = tokens.computeIfAbsent(taskId, k -> new Token(taskId, deadline));
+        if (pendingCancels.remove(taskId)) {
+            token.cancelled = true;
+        }
+        return token;
+    }
+
+    /**
+     * 任务结束（或不再处理，如已移出准入队列）时移除令牌和待生效的取消
+     *
+     * @param taskId 任务ID
+     */
+    public void unregister(String taskId) {
+        tokens.remove(taskId);
+        pendingCancels.remove(taskId);
+    }
+
+    /**
+     * 取消任务：正在处理的任务在下一个检查点停止，尚未开始（如批次中排队）的任务开始时立即停止
+     *
+     * @param taskId 任务ID
+     */
+    public void cancel(String taskId) {
+        if (!markCancelled(taskId)) {
+            pendingCancels.add(taskId);
+            // 与 register 并发：令牌可能在记入之前已登记，此时由这里直接标记
+            if (markCancelled(taskId)) {
+                pendingCancels.remove(taskId);
+            }
+        }
+        log.info("[taskId: {}] 已请求取消任务", taskId);
+    }
+
+    private boolean markCancelled(String taskId) {
+        return tokens.computeIfPresent(taskId, (k, token) -> {
+            token.cancelled = true;
+            return token;
+        }) != null;
+    }
+
+    /**
+     * 是否已登记令牌（处理中）
+     */
+    public boolean isRegistered(String taskId) {
+        return tokens.containsKey(taskId);
+    }
+
+    /**
+     * 已登记令牌的任务（处理中）
+     */
+    public List<String> activeTaskIds() {
+        return new ArrayList<>(tokens.keySet());
+    }
+
+    /**
+     * 任务是否已被主动取消
+     */
+    public boolean isCancelled(String taskId) {
+        Token token = tokens.get(taskId);
+        return token != null ? token.cancelled : pendingCancels.contains(taskId);
+    }
+
+    /**
+     * 包装进度回调：进度照常转发，isCancelled() 反映令牌状态
+     *
+     * @param token 取消令牌
+     * @param delegate 原进度回调
+     * @return 带取消检查的进度回调
+     */
+    public static ProgressListener wrap(Token token, ProgressListener delegate) {
+        return new ProgressListener() {
+            @Override
+            public void onProgress(String stage, int done, int total) {
+                delegate.onProgress(stage, done, total);
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return token.isCancelled();
+            }
+        };
+    }
+
+    /**
+     * 单个任务的取消令牌
+     */
+    public static class Token {
+        private final String taskId;
+        private final long deadline;
+        private volatile boolean cancelled;
+
+        Token(String taskId, long deadline) {
+            this.taskId = taskId;
+            this.deadline = deadline;
+        }
+
+        /**
+         * 是否已取消或超时
+         */
+        public boolean isCancelled() {
+            return cancelled || isDeadlineExceeded();
+        }
+
+        /**
+         * 是否超过截止时间（未被主动取消）
+         */
+        public boolean isDeadlineExceeded() {
+            return !cancelled && System.currentTimeMillis() > deadline;
+        }
+
+        /**
+         * 检查点：已取消或超时则抛出 CancellationException
+         */
+        public void check() {
+            if (cancelled) {
+                throw new CancellationException("任务已取消: " + taskId);
+            }
+            if (isDeadlineExceeded()) {
+                throw new CancellationException("任务处理超时: " + taskId);
+            }
+        }
+    }
+}
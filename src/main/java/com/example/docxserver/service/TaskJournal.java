@@ -0,0 +1,235 @@
+package com.example.docxserver.service;
+
+import com.google.gson.Gson;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 任务处理阶段日志（崩溃后断点续跑）
+ *
+ * 每个任务目录下一个只追加的 journal.log，每行一条 JSON 记录：
+ * - SUBMITTED：任务参数（includeMcid、originalName、contentHash），用于重启后恢复
+ * - 各阶段完成记录：阶段名 + 产物相对路径 + 产物校验和
+ *
+ * 读取时会重新校验产物：文件缺失或校验和不一致的阶段视为未完成。
+ * 每条记录写入后立即 fsync，进程崩溃不会丢失已完成阶段。
+ */
+@Slf4j
+@Component
+public class TaskJournal {
+
+    public static final String JOURNAL_FILE_NAME = "journal.log";
+
+    public static final String STAGE_SUBMITTED = "SUBMITTED";
+    /**
+     * 清理后的 DOCX（页眉页脚和批注已移除），与 CONVERT 在 convert 阶段的同一次解析中产生
+     */
+    public static final String STAGE_HEADER_FOOTER = "HEADER_FOOTER";
+    public static final String STAGE_CONVERT = "CONVERT";
+    public static final String STAGE_MCID_PRELOAD = "MCID_PRELOAD";
+    public static final String STAGE_TXT = "TXT";
+    public static final String STAGE_AI_JSON = "AI_JSON";
+    public static final String STAGE_RENDER = "RENDER";
+
+    private static final Gson GSON = new Gson();
+
+    @Value("${docx.storage.base-path:/data/docx_server}")
+    private String basePath;
+
+    /**
+     * 记录任务提交参数（开始新一轮处理时调用，会清空旧日志）
+     *
+     * @param taskId 任务ID
+     * @param params 任务参数
+     */
+    public void begin(String taskId, Map<String, Object> params) {
+        File journalFile = getJournalFile(taskId);
+        if (journalFile.exists()) {
+            journalFile.delete();
+        }
+        Entry entry = new Entry();
+        entry.stage = STAGE_SUBMITTED;
+        entry.time = System.currentTimeMillis();
+        entry.params = params;
+        append(taskId, entry);
+    }
+
+    /**
+     * 记录阶段完成
+     *
+     * @param taskId 任务ID
+     * @param stage 阶段名
+     * @param artifact 阶段产物（文件或目录，可为null）
+     */
+    public void record(String taskId, String stage, File artifact) {
+        Entry entry = new Entry();
+        entry.stage = stage;
+        entry.time = System.currentTimeMillis();
+        if (artifact != null) {
+            File taskDir = new File(basePath, taskId);
+            entry.artifact = taskDir.toPath().relativize(artifact.toPath()).toString();
+            try {
+                entry.checksum = checksum(artifact);
+            } catch (IOException e) {
+                log.warn("[taskId: {}] 计算 {} 阶段产物校验和失败: {}", taskId, stage, e.getMessage());
+                return;
+            }
+        }
+        append(taskId, entry);
+    }
+
+    /**
+     * 读取日志
+     *
+     * @param taskId 任务ID
+     * @return 日志状态，没有日志返回 null
+     */
+    public State read(String taskId) {
+        File journalFile = getJournalFile(taskId);
+        if (!journalFile.isFile()) {
+            return null;
+        }
+        State state = new State();
+        File taskDir = new File(basePath, taskId);
+        try {
+            List<String> lines = Files.readAllLines(journalFile.toPath(), StandardCharsets.UTF_8);
+            for (String line : lines) {
+                Entry entry;
+                try {
+                    entry = GSON.fromJson(line, Entry.class);
+                } catch (Exception e) {
+                    // 崩溃时写了一半的最后一行
+                    log.warn("[taskId: {}] 忽略损坏的日志行: {}", taskId, line);
+                    continue;
+                }
+                if (entry == null || entry.stage == null) {
+                    continue;
+                }
+                if (STAGE_SUBMITTED.equals(entry.stage)) {
+                    state.params = entry.params;
+                } else if (verify(taskDir, entry)) {
+                    state.completed.put(entry.stage, entry);
+                } else {
+                    log.warn("[taskId: {}] {} 阶段产物缺失或校验失败，将重新执行", taskId, entry.stage);
+                }
+            }
+        } catch (IOException e) {
+            log.error("[taskId: {}] 读取处理日志失败: {}", taskId, e.getMessage());
+            return null;
+        }
+        return state;
+    }
+
+    private boolean verify(File taskDir, Entry entry) {
+        if (entry.artifact == null) {
+            return true;
+        }
+        File artifact = new File(taskDir, entry.artifact);
+        if (!artifact.exists()) {
+            return false;
+        }
+        try {
+            return checksum(artifact).equals(entry.checksum);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void append(String taskId, Entry entry) {
+        File journalFile = getJournalFile(taskId);
+        if (!journalFile.getParentFile().isDirectory()) {
+            return;
+        }
+        byte[] line = (GSON.toJson(entry) + "\n").getBytes(StandardCharsets.UTF_8);
+        try (FileOutputStream fos = new FileOutputStream(journalFile, true)) {
+            fos.write(line);
+            fos.getFD().sync();
+        } catch (IOException e) {
+            log.error("[taskId: {}] 写入处理日志失败: {}", taskId, e.getMessage());
+        }
+    }
+
+    private File getJournalFile(String taskId) {
+        return new File(new File(basePath, taskId), JOURNAL_FILE_NAME);
+    }
+
+    /**
+     * 产物校验和：文件为 SHA-256；目录为各子文件名和大小的 SHA-256（如渲染图片目录）
+     */
+    static String checksum(File artifact) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 不可用", e);
+        }
+        if (artifact.isDirectory()) {
+            File[] files = artifact.listFiles(File::isFile);
+            if (files != null) {
+                Arrays.sort(files);
+                for (File f : files) {
+                    digest.update((f.getName() + ":" + f.length() + "\n").getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        } else {
+            byte[] buffer = new byte[64 * 1024];
+            try (InputStream is = new FileInputStream(artifact)) {
+                int len;
+                while ((len = is.read(buffer)) > 0) {
+                    digest.update(buffer, 0, len);
+                }
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 日志记录
+     */
+    public static class Entry {
+        public String stage;
+        public long time;
+        public String artifact;
+        public String checksum;
+        public Map<String, Object> params;
+    }
+
+    /**
+     * 日志状态：任务参数 + 已完成（且产物校验通过）的阶段
+     */
+    public static class State {
+        public Map<String, Object> params;
+        public final Map<String, Entry> completed = new LinkedHashMap<>();
+
+        public boolean isDone(String stage) {
+            return completed.containsKey(stage);
+        }
+
+        /**
+         * 已完成阶段的产物相对路径
+         */
+        public String getArtifact(String stage) {
+            Entry entry = completed.get(stage);
+            return entry != null ? entry.artifact : null;
+        }
+    }
+}
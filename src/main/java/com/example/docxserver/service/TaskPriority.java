@@ -0,0 +1,32 @@
+package com.example.docxserver.service;
+
+/**
+ * 任务优先级（处理流水线的调度通道）
+ *
+ * - INTERACTIVE：用户在页面上等待结果的单文件上传，各阶段优先调度
+ * - BULK：批量导入、重启恢复等后台任务，只使用交互通道预留之外的线程
+ */
+public enum TaskPriority {
+
+    INTERACTIVE,
+    BULK;
+
+    /**
+     * 解析请求参数（不区分大小写），无法识别时使用默认值
+     *
+     * @param value 参数值（interactive / bulk）
+     * @param defaultValue 默认值
+     * @return 优先级
+     */
+    public static TaskPriority parse(String value, TaskPriority defaultValue) {
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        for (TaskPriority priority : values()) {
+            if (priority.name().equalsIgnoreCase(value.trim())) {
+                return priority;
+            }
+        }
+        return defaultValue;
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.docxserver.service;
+
+import com.example.docxserver.util.common.ProgressListener;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+/**
+ * 任务进度推送（Server-Sent Events）
+ *
+ * 每个任务可有多个订阅者，推送两类事件：
+ * - status：状态变更（与 /status/{taskId} 返回的内容一致），任务结束（COMPLETED/FAILED/CANCELLED）后关闭连接
+ * - progress：细粒度进度 {stage, done, total, percent}，来自 MCID 预热、第二遍遍历和图片渲染
+ *
+ * progress 事件按任务+阶段节流：百分比变化或超过最小间隔才推送，最后一条（done == total）总会推送。
+ */
+@Slf4j
+@Component
+public class TaskProgressPublisher {
+
+    public static final String EVENT_STATUS = "status";
+    public static final String EVENT_PROGRESS = "progress";
+
+    /**
+     * SSE 连接超时（毫秒）
+     */
+    @Value("${docx.progress.sse-timeout-ms:1800000}")
+    private long sseTimeoutMs;
+
+    /**
+     * 同一阶段两次 progress 推送的最小间隔（毫秒）
+     */
+    @Value("${docx.progress.min-interval-ms:200}")
+    private long minIntervalMs;
+
+    private final Map<String, List<SseEmitter>> emitters = new ConcurrentHashMap<>();
+
+    /**
+     * 订阅任务进度
+     *
+     * 订阅后立即推送一次当前状态；任务已结束或不存在时推送后直接关闭。
+     * 状态在登记连接之后读取：任务若恰好在订阅期间结束，最终状态也不会因 publishStatus 先于登记而丢失。
+     *
+     * @param taskId 任务ID
+     * @param statusSource 当前状态的读取方式
+     * @return SSE 连接
+     */
+    public SseEmitter subscribe(String taskId, Supplier<Map<String, Object>> statusSource) {
+        SseEmitter emitter = new SseEmitter(sseTimeoutMs);
+
+        List<SseEmitter> list = emitters.computeIfAbsent(taskId, k -> new CopyOnWriteArrayList<>());
+        list.add(emitter);
+        Runnable cleanup = () -> removeEmitter(taskId, emitter);
+        emitter.onCompletion(cleanup);
+        emitter.onTimeout(cleanup);
+        emitter.onError(e -> removeEmitter(taskId, emitter));
+
+        Map<String, Object> currentStatus = statusSource.get();
+        if (isFinished(currentStatus)) {
+            // 已结束：publishStatus 可能已在登记前执行过，这里补发最终状态并关闭
+            removeEmitter(taskId, emitter);
+            try {
+                emitter.send(SseEmitter.event().name(EVENT_STATUS).data(currentStatus, MediaType.APPLICATION_JSON));
+                emitter.complete();
+            } catch (IOException | IllegalStateException e) {
+                // 并发的 publishStatus 已推送并关闭该连接
+                log.debug("[taskId: {}] 订阅时任务已结束，连接已关闭: {}", taskId, e.getMessage());
+            }
+            return emitter;
+        }
+
+        send(taskId, emitter, EVENT_STATUS, currentStatus);
+        log.debug("[taskId: {}] 新增进度订阅，当前订阅数: {}", taskId, list.size());
+        return emitter;
+    }
+
+    /**
+     * 推送状态变更，任务结束时关闭该任务的所有连接
+     *
+     * @param taskId 任务ID
+     * @param statusData 状态数据
+     */
+    public void publishStatus(String taskId, Map<String, Object> statusData) {
+        List<SseEmitter> list = emitters.get(taskId);
+        if (list == null) {
+            return;
+        }
+        for (SseEmitter emitter : list) {
+            send(taskId, emitter, EVENT_STATUS, statusData);
+        }
+        if (isFinished(statusData)) {
+            emitters.remove(taskId);
+            for (SseEmitter emitter : list) {
+                emitter.complete();
+            }
+        }
+    }
+
+    /**
+     * 创建任务的进度回调（节流后推送 progress 事件）
+     *
+     * @param taskId 任务ID
+     * @return 进度回调（线程安全）
+     */
+    public ProgressListener listener(String taskId) {
+        return new ThrottledListener(taskId);
+    }
+
+    private void publishProgress(String taskId, String stage, int done, int total) {
+        List<SseEmitter> list = emitters.get(taskId);
+        if (list == null || list.isEmpty()) {
+            return;
+        }
+        Map<String, Object> data = new HashMap<>();
+        data.put("taskId", taskId);
+        data.put("stage", stage);
+        data.put("done", done);
+        data.put("total", total);
+        data.put("percent", total > 0 ? done * 100 / total : 100);
+        for (SseEmitter emitter : list) {
+            send(taskId, emitter, EVENT_PROGRESS, data);
+        }
+    }
+
+    private void send(String taskId, SseEmitter emitter, String eventName, Map<String, Object> data) {
+        try {
+            emitter.send(SseEmitter.event().name(eventName).data(data, MediaType.APPLICATION_JSON));
+        } catch (Exception e) {
+            // 客户端已断开
+            log.debug("[taskId: {}] 推送进度失败，移除订阅: {}", taskId, e.getMessage());
+            removeEmitter(taskId, emitter);
+        }
+    }
+
+    private void removeEmitter(String taskId, SseEmitter emitter) {
+        List<SseEmitter> list = emitters.get(taskId);
+        if (list != null) {
+            list.remove(emitter);
+            if (list.isEmpty()) {
+                emitters.remove(taskId, list);
+            }
+        }
+    }
+
+    private static boolean isFinished(Map<String, Object> status) {
+        Object s = status.get("status");
+        return DocxPdfService.isFinishedStatus(s) || DocxPdfService.STATUS_NOT_FOUND.equals(s);
+    }
+
+    /**
+     * 按阶段节流的进度回调
+     */
+    private class ThrottledListener implements ProgressListener {
+        private final String taskId;
+        private final Map<String, long[]> lastSent = new ConcurrentHashMap<>();
+
+        ThrottledListener(String taskId) {
+            this.taskId = taskId;
+        }
+
+        @Override
+        public void onProgress(String stage, int done, int total) {
+            if (!emitters.containsKey(taskId)) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            int percent = total > 0 ? done * 100 / total : 100;
+            // [上次推送时间, 上次推送百分比]
+            long[] last = lastSent.computeIfAbsent(stage, k -> new long[]{0L, -1L});
+            synchronized (last) {
+                boolean finished = done >= total;
+                if (!finished && (percent == last[1] || now - last[0] < minIntervalMs)) {
+                    return;
+                }
+                last[0] = now;
+                last[1] = percent;
+            }
+            publishProgress(taskId, stage, done, total);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.docxserver.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 启动时恢复被中断的任务
+ *
+ * 服务启动完成后，在后台线程中查找状态停留在处理中（UPLOADED/PROCESSING/CONVERTING/EXTRACTING）的任务，
+ * 根据处理日志从第一个未完成的阶段继续执行；没有处理日志的任务标记为失败。
+ * 入口队列已满时等待后重试，不与新请求争抢容量。
+ *
+ * 多实例部署（共享任务队列启用）时不在启动时恢复：处理中的任务可能属于其他实例，
+ * 宕机实例的任务由租约超时回收后重新认领。
+ */
+@Slf4j
+@Component
+public class TaskRecoveryService {
+
+    private static final List<String> INTERRUPTED_STATUSES = Arrays.asList(
+            DocxPdfService.STATUS_UPLOADED,
+            DocxPdfService.STATUS_PROCESSING,
+            DocxPdfService.STATUS_CONVERTING,
+            DocxPdfService.STATUS_EXTRACTING);
+
+    @Value("${docx.recovery.enabled:true}")
+    private boolean enabled;
+
+    @Autowired
+    private TaskStateRegistry taskStateRegistry;
+
+    @Autowired
+    private DocxPdfService docxPdfService;
+
+    @Autowired
+    private PipelineExecutors pipelineExecutors;
+
+    @Autowired
+    private SharedWorkQueue sharedWorkQueue;
+
+    @Autowired
+    private GracefulShutdown gracefulShutdown;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        GracefulShutdown.Checkpoint checkpoint = gracefulShutdown.takeCheckpoint();
+        if (sharedWorkQueue.isEnabled()) {
+            return;
+        }
+        // 停机前已请求取消、处理线程还没来得及写入结束状态的任务：不再恢复
+        for (String taskId : taskStateRegistry.findTaskIds(Collections.singletonList(DocxPdfService.STATUS_CANCELLING))) {
+            docxPdfService.updateTaskStatus(taskId, DocxPdfService.STATUS_CANCELLED, "任务已取消", null);
+        }
+        if (!enabled) {
+            return;
+        }
+
+        // 上次优雅停机记录的任务在前（保持原顺序和优先级），其余按状态扫描找到的任务走 BULK
+        Map<String, TaskPriority> tasks = new LinkedHashMap<>();
+        if (checkpoint != null) {
+            for (GracefulShutdown.Checkpoint.Entry entry : checkpoint.tasks) {
+                Map<String, Object> state = taskStateRegistry.get(entry.taskId);
+                if (state != null && INTERRUPTED_STATUSES.contains(state.get("status"))) {
+                    tasks.put(entry.taskId, TaskPriority.parse(entry.priority, TaskPriority.BULK));
+                }
+            }
+            log.info("读取停机检查点: 记录 {} 个任务，需要恢复 {} 个", checkpoint.tasks.size(), tasks.size());
+        }
+        for (String taskId : taskStateRegistry.findTaskIds(INTERRUPTED_STATUSES)) {
+            tasks.putIfAbsent(taskId, TaskPriority.BULK);
+        }
+        if (tasks.isEmpty()) {
+            return;
+        }
+        log.info("发现 {} 个被中断的任务，开始后台恢复", tasks.size());
+
+        Thread thread = new Thread(() -> recover(tasks), "docx-task-recovery");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void recover(Map<String, TaskPriority> tasks) {
+        int resumed = 0;
+        int failed = 0;
+        for (Map.Entry<String, TaskPriority> task : tasks.entrySet()) {
+            String taskId = task.getKey();
+            if (gracefulShutdown.isDraining()) {
+                log.info("服务正在停止，剩余任务将在下次启动时恢复");
+                return;
+            }
+            try {
+                if (submitWithRetry(taskId, task.getValue())) {
+                    resumed++;
+                } else {
+                    failed++;
+                    Map<String, Object> errorInfo = new HashMap<>();
+                    errorInfo.put("error", "服务重启导致任务中断，且没有可恢复的处理日志");
+                    docxPdfService.updateTaskStatus(taskId, DocxPdfService.STATUS_FAILED,
+                            "处理失败: 服务重启导致任务中断", errorInfo);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("任务恢复被中断，剩余任务将在下次启动时恢复");
+                return;
+            } catch (Exception e) {
+                failed++;
+                log.error("[taskId: {}] 恢复任务失败: {}", taskId, e.getMessage(), e);
+            }
+        }
+        log.info("中断任务恢复提交完成: 恢复={}, 无法恢复={}", resumed, failed);
+    }
+
+    /**
+     * 提交恢复任务，入口队列已满时等待后重试
+     *
+     * @return false 表示没有处理日志，无法恢复
+     */
+    private boolean submitWithRetry(String taskId, TaskPriority priority) throws InterruptedException {
+        while (true) {
+            try {
+                return docxPdfService.resumeTask(taskId, priority) != null;
+            } catch (RejectedExecutionException e) {
+                Thread.sleep(pipelineExecutors.getRetryAfterSeconds() * 1000L);
+            }
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.docxserver.service;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * 任务状态注册表（内存为主，异步批量写回 status.json）
+ *
+ * - 状态更新只修改内存并标记为脏，由定时任务批量写入 {basePath}/{taskId}/status.json
+ * - 状态查询直接读内存，不再读取和解析文件
+ * - 启动时扫描各任务目录的 status.json 重建注册表，关闭前写回所有未落盘的状态
+ *
+ * 内存中的每个状态是不可变快照，读写无需加锁。
+ */
+@Slf4j
+@Component
+public class TaskStateRegistry {
+
+    public static final String STATUS_FILE_NAME = "status.json";
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    @Value("${docx.storage.base-path:/data/docx_server}")
+    private String basePath;
+
+    private final Map<String, Map<String, Object>> states = new ConcurrentHashMap<>();
+
+    private final Set<String> dirtyTaskIds = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void init() {
+        long startTime = System.currentTimeMillis();
+        File[] taskDirs = new File(basePath).listFiles(File::isDirectory);
+        if (taskDirs == null) {
+            return;
+        }
+        for (File taskDir : taskDirs) {
+            Map<String, Object> state = readStatusFile(taskDir);
+            if (state != null) {
+                states.put(taskDir.getName(), Collections.unmodifiableMap(state));
+            }
+        }
+        log.info("任务状态已加载: {} 个任务, 耗时 {} ms", states.size(), System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * 更新任务状态（只写内存，稍后批量落盘）
+     *
+     * @param taskId 任务ID
+     * @param state 完整的状态数据
+     */
+    public void put(String taskId, Map<String, Object> state) {
+        states.put(taskId, Collections.unmodifiableMap(new HashMap<>(state)));
+        dirtyTaskIds.add(taskId);
+    }
+
+    /**
+     * 按当前状态有条件地更新（原子操作，与其他更新互斥）
+     *
+     * @param taskId 任务ID
+     * @param state 完整的状态数据
+     * @param allowed 判断当前状态（未登记时为 null）是否允许被替换
+     * @return true 表示已更新
+     */
+    public boolean putIf(String taskId, Map<String, Object> state, Predicate<Map<String, Object>> allowed) {
+        Map<String, Object> snapshot = Collections.unmodifiableMap(new HashMap<>(state));
+        boolean[] updated = {false};
+        states.compute(taskId, (k, current) -> {
+            if (!allowed.test(current)) {
+                return current;
+            }
+            updated[0] = true;
+            return snapshot;
+        });
+        if (updated[0]) {
+            dirtyTaskIds.add(taskId);
+        }
+        return updated[0];
+    }
+
+    /**
+     * 查询任务状态
+     *
+     * @param taskId 任务ID
+     * @return 状态快照（只读），未登记返回 null
+     */
+    public Map<String, Object> get(String taskId) {
+        return states.get(taskId);
+    }
+
+    /**
+     * 从磁盘刷新任务状态（多实例部署时，任务可能由其他实例处理并写入 status.json）
+     *
+     * 只有状态文件比内存中的更新（updateTime 更大）且本地没有未落盘的修改时才替换内存中的快照。
+     *
+     * @param taskId 任务ID
+     * @return 刷新后的状态快照，内存和磁盘都没有时返回 null
+     */
+    public Map<String, Object> refresh(String taskId) {
+        Map<String, Object> current = states.get(taskId);
+        if (dirtyTaskIds.contains(taskId)) {
+            return current;
+        }
+        Map<String, Object> onDisk = readStatusFile(new File(basePath, taskId));
+        if (onDisk == null) {
+            return current;
+        }
+        if (current == null || updateTimeOf(onDisk) > updateTimeOf(current)) {
+            Map<String, Object> snapshot = Collections.unmodifiableMap(onDisk);
+            states.put(taskId, snapshot);
+            return snapshot;
+        }
+        return current;
+    }
+
+    /**
+     * 查找处于指定状态的任务
+     *
+     * @param statuses 状态集合
+     * @return 任务ID列表
+     */
+    public List<String> findTaskIds(Collection<String> statuses) {
+        List<String> taskIds = new ArrayList<>();
+        for (Map.Entry<String, Map<String, Object>> entry : states.entrySet()) {
+            if (statuses.contains(String.valueOf(entry.getValue().get("status")))) {
+                taskIds.add(entry.getKey());
+            }
+        }
+        return taskIds;
+    }
+
+    /**
+     * 移除任务状态（任务目录被删除时调用）
+     *
+     * @param taskId 任务ID
+     */
+    public void remove(String taskId) {
+        states.remove(taskId);
+        dirtyTaskIds.remove(taskId);
+    }
+
+    /**
+     * 从磁盘读取单个任务的状态（注册表中不存在时使用，如其他实例创建的任务）
+     *
+     * @param taskDir 任务目录
+     * @return 状态数据，文件不存在返回 null
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> readStatusFile(File taskDir) {
+        File statusFile = new File(taskDir, STATUS_FILE_NAME);
+        if (!statusFile.isFile()) {
+            return null;
+        }
+        try {
+            String json = new String(Files.readAllBytes(statusFile.toPath()), StandardCharsets.UTF_8);
+            return GSON.fromJson(json, Map.class);
+        } catch (Exception e) {
+            log.warn("读取状态文件失败: {}, {}", statusFile.getAbsolutePath(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 批量写回脏状态
+     *
+     * 先从脏集合移除再读取最新快照写入；写入期间的新更新会重新标记为脏，下一轮写回。
+     */
+    @Scheduled(fixedDelayString = "${docx.task-state.flush-interval-ms:500}")
+    public synchronized void flush() {
+        if (dirtyTaskIds.isEmpty()) {
+            return;
+        }
+        List<String> taskIds = new ArrayList<>(dirtyTaskIds);
+        int written = 0;
+        for (String taskId : taskIds) {
+            dirtyTaskIds.remove(taskId);
+            Map<String, Object> state = states.get(taskId);
+            if (state == null) {
+                continue;
+            }
+            File taskDir = new File(basePath, taskId);
+            if (!taskDir.isDirectory()) {
+                // 任务目录已被删除
+                continue;
+            }
+            try {
+                writeStatusFile(taskDir, state);
+                written++;
+            } catch (IOException e) {
+                log.error("[taskId: {}] 写入状态文件失败: {}", taskId, e.getMessage());
+                dirtyTaskIds.add(taskId);
+            }
+        }
+        log.debug("任务状态写回: {} 个", written);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+        log.info("任务状态已写回磁盘");
+    }
+
+    private static long updateTimeOf(Map<String, Object> state) {
+        Object updateTime = state.get("updateTime");
+        return updateTime instanceof Number ? ((Number) updateTime).longValue() : 0L;
+    }
+
+    private void writeStatusFile(File taskDir, Map<String, Object> state) throws IOException {
+        File statusFile = new File(taskDir, STATUS_FILE_NAME);
+        File tmpFile = new File(taskDir, STATUS_FILE_NAME + ".tmp");
+        Files.write(tmpFile.toPath(), GSON.toJson(state).getBytes(StandardCharsets.UTF_8));
+        try {
+            Files.move(tmpFile.toPath(), statusFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmpFile.toPath(), statusFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.docxserver.service;
+
+import com.example.docxserver.util.aspose.PdfImageRenderer;
+import com.example.docxserver.util.common.ProgressListener;
+import com.example.docxserver.util.taggedPDF.PdfExtractionContext;
+import com.example.docxserver.util.taggedPDF.PdfTableExtractor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFRun;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 启动预热
+ *
+ * 部署后的第一个文档比之后的慢数倍：Aspose 首次转换要扫描系统字体，
+ * PDFBox 首次解析字体要构建 FontMapper 缓存、加载字体提供者。
+ * 服务启动完成后，在后台把一个运行时生成的小 DOCX（中英文段落 + 表格）完整走一遍：
+ * 转换 PDF（转换子进程池启用时在每个子进程中各转换一次）→ 构建 MCID 缓存并提取 TXT → 渲染页面图片。
+ *
+ * 预热完成前 /ready 返回 503，负载均衡据此在预热完成后才把请求转发过来。
+ * 预热失败只记录日志，不影响服务（之后的第一个请求仍会承担冷启动开销）。
+ */
+@Slf4j
+@Component
+public class WarmUpService {
+
+    @Value("${docx.warmup.enabled:true}")
+    private boolean enabled;
+
+    @Autowired
+    private ConvertWorkerPool convertWorkerPool;
+
+    @Autowired
+    private GracefulShutdown gracefulShutdown;
+
+    private volatile boolean warmedUp;
+    private volatile long warmUpMs = -1;
+    private volatile String warmUpError;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!enabled) {
+            warmedUp = true;
+            return;
+        }
+        Thread thread = new Thread(this::warmUp, "docx-warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 是否可以接收请求：预热已完成且不在停机排空中
+     */
+    public boolean isReady() {
+        return warmedUp && !gracefulShutdown.isDraining();
+    }
+
+    /**
+     * 就绪状态
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("ready", isReady());
+        status.put("warmedUp", warmedUp);
+        status.put("draining", gracefulShutdown.isDraining());
+        if (warmUpMs >= 0) {
+            status.put("warmUpMs", warmUpMs);
+        }
+        if (warmUpError != null) {
+            status.put("warmUpError", warmUpError);
+        }
+        return status;
+    }
+
+    private void warmUp() {
+        long startTime = System.currentTimeMillis();
+        log.info("开始预热: Aspose 字体、PDFBox 字体缓存、页面渲染");
+        File workDir = null;
+        try {
+            byte[] docx = buildSampleDocx();
+
+            // 1. Aspose 转换（字体扫描）
+            long stageStart = System.currentTimeMillis();
+            byte[] pdf = convertWorkerPool.warmUp(docx);
+            log.info("预热: PDF 转换完成，耗时 {} ms", System.currentTimeMillis() - stageStart);
+
+            workDir = Files.createTempDirectory("docx-warmup").toFile();
+            File pdfFile = new File(workDir, "warmup.pdf");
+            Files.write(pdfFile.toPath(), pdf);
+
+            // 2. MCID 缓存 + TXT 提取（PDFBox FontMapper、字体提供者）
+            stageStart = System.currentTimeMillis();
+            try (PdfExtractionContext ctx = new PdfExtractionContext(pdf, pdfFile.getAbsolutePath(), ProgressListener.NONE)) {
+                PdfTableExtractor.extractTxtToMemory(ctx, false, ProgressListener.NONE);
+            } finally {
+                PdfTableExtractor.releaseThreadResources();
+            }
+            log.info("预热: TXT 提取完成，耗时 {} ms", System.currentTimeMillis() - stageStart);
+
+            // 3. 页面渲染
+            stageStart = System.currentTimeMillis();
+            PdfImageRenderer.render(pdfFile, new File(workDir, "images"));
+            log.info("预热: 页面渲染完成，耗时 {} ms", System.currentTimeMillis() - stageStart);
+
+            warmUpMs = System.currentTimeMillis() - startTime;
+            log.info("预热完成，耗时 {} ms", warmUpMs);
+        } catch (Exception e) {
+            warmUpError = e.getMessage();
+            log.warn("预热失败（不影响服务，首个请求仍需承担冷启动开销）: {}", e.getMessage(), e);
+        } finally {
+            if (workDir != null) {
+                FileSystemUtils.deleteRecursively(workDir);
+            }
+            warmedUp = true;
+        }
+    }
+
+    /**
+     * 生成预热用的样例 DOCX：中英文段落和一个小表格，覆盖常用的中文、西文字体
+     */
+    private static byte[] buildSampleDocx() throws IOException {
+        try (XWPFDocument document = new XWPFDocument()) {
+            XWPFParagraph title = document.createParagraph();
+            XWPFRun titleRun = title.createRun();
+            titleRun.setBold(true);
+            titleRun.setFontSize(16);
+            titleRun.setText("预热文档 Warm-up Document");
+
+            XWPFParagraph body = document.createParagraph();
+            XWPFRun bodyRun = body.createRun();
+            bodyRun.setText("第一章 总则。本文档用于服务启动预热，The quick brown fox jumps over the lazy dog 0123456789。");
+
+            XWPFTable table = document.createTable(2, 2);
+            table.getRow(0).getCell(0).setText("项目");
+            table.getRow(0).getCell(1).setText("Item");
+            table.getRow(1).getCell(0).setText("金额（元）");
+            table.getRow(1).getCell(1).setText("1,000.00");
+
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            document.write(bos);
+            return bos.toByteArray();
+        }
+    }
+}
@@ -211,6 +211,31 @@ public class RemoteLibreOfficeCli {
 
     }
 
+    /**
+     * 获取docx转pdf的命令模板
+     * 输出带结构标签的PDF（UseTaggedPDF），后续按MCID提取依赖结构树；滤镜参数的JSON写法需要 LibreOffice 7.4 及以上
+     *
+     * @return docx转pdf的命令模板字符串（包含3个占位符：inputFile, outputDir, imageName）
+     */
+    public static String getDocxToPdfCommandTemplate() {
+        return "set -euo pipefail\n" +
+                "IN=\"%s\"\n" +
+                "OUTDIR=\"%s\"\n" +
+                "WD=$(dirname \"$IN\")\n" +
+                "BN=$(basename \"$IN\")\n" +
+                "[ -n \"$OUTDIR\" ] || OUTDIR=\"$WD\"\n" +
+                "mkdir -p \"$OUTDIR\"\n" +
+                "docker run --rm \\\n" +
+                "  -v \"$WD\":/in:Z \\\n" +
+                "  -v \"$OUTDIR\":/out:Z \\\n" +
+                "  %s \\\n" +
+                "  --headless --nologo --nofirststartwizard \\\n" +
+                "  --convert-to 'pdf:writer_pdf_Export:{\"UseTaggedPDF\":{\"type\":\"boolean\",\"value\":\"true\"}}' \\\n" +
+                "  --outdir /out \\\n" +
+                "  \"/in/$BN\"\n" +
+                "echo \"DONE: $IN -> $OUTDIR\"";
+    }
+
     /**
      * 根据命令模板构建Docker转换命令（支持占位符）
      * 模板使用%s占位符，按照以下顺序传入参数：
@@ -575,7 +600,7 @@ public class RemoteLibreOfficeCli {
      * 将xhtml文件及所有相关资源（图片、目录）打包为.tgz，并生成SHA256校验文件
      *
      * 打包内容：
-     * 1. ${base}.xhtml - xhtml文件
+     * 1. ${base}.xhtml / ${base}.odt / ${base}.pdf - 转换结果
      * 2. ${base}/ - 同名目录（如果存在）
      * 3. ${base}-img*.* - 所有图片文件（如 park-img001.png, park-img002.png）
      * 4. ${base}-*.* - 其他同名资源文件
@@ -594,12 +619,13 @@ public class RemoteLibreOfficeCli {
             "echo \"=== 准备打包以下文件 ===\"\n" +
             "ls -lh \"${base}.xhtml\" 2>/dev/null || true\n" +
             "ls -lh \"${base}.odt\" 2>/dev/null || true\n" +
+            "ls -lh \"${base}.pdf\" 2>/dev/null || true\n" +
             "ls -lhd \"${base}\" 2>/dev/null || true\n" +
             "ls -lh \"${base}\"-* 2>/dev/null || true\n" +
             "echo \"=========================\"\n" +
             "# 使用find查找所有相关文件并打包\n" +
-            "# 包括: xhtml/odt文件 + 同名目录 + 所有 base-* 格式的文件（图片等）\n" +
-            "find . -maxdepth 1 \\( -name \"${base}.xhtml\" -o -name \"${base}.odt\" -o -name \"${base}\" -o -name \"${base}-*\" \\) -print0 | \\\n" +
+            "# 包括: xhtml/odt/pdf文件 + 同名目录 + 所有 base-* 格式的文件（图片等）\n" +
+            "find . -maxdepth 1 \\( -name \"${base}.xhtml\" -o -name \"${base}.odt\" -o -name \"${base}.pdf\" -o -name \"${base}\" -o -name \"${base}-*\" \\) -print0 | \\\n" +
             "  tar -czf \"${base}.tgz\" --null -T -\n" +
             "# 生成校验文件\n" +
             "sha256sum \"${base}.tgz\" > \"${base}.tgz.sha256\"\n" +
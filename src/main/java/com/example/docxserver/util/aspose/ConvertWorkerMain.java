@@ -0,0 +1,166 @@
+package com.example.docxserver.util.aspose;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Aspose 转换子进程入口（由 {@link com.example.docxserver.service.ConvertWorkerPool} 启动，不启动 Spring）
+ *
+ * 通过标准输入 / 输出与父进程通信（DataInput / DataOutput，大端）：
+ * - 启动完成：子进程写出一个 STATUS_OK
+ * - OP_CONVERT_FILE：docxPath(UTF) pdfPath(UTF) cleanedDocxPath(UTF，空串表示不保存)
+ *   → status(byte) [错误时 message(UTF)] peakRssKb(long)
+ * - OP_CONVERT_BYTES：length(int) docx(bytes) wantCleaned(boolean)
+ *   → status(byte) [成功时 pdfLength(int) pdf(bytes) docxLength(int，-1 表示无) docx(bytes) | 错误时 message(UTF)] peakRssKb(long)
+ * - OP_EXIT：退出
+ *
+ * 标准输出只用于协议，日志等输出一律重定向到标准错误（父进程继承）。
+ * 父进程退出后标准输入读到 EOF，子进程随之退出。
+ */
+public class ConvertWorkerMain {
+
+    /**
+     * 协议输出流：须在日志初始化之前把 System.out 换成标准错误
+     */
+    private static final PrintStream PROTOCOL_OUT = redirectStdout();
+
+    private static final Logger log = LoggerFactory.getLogger(ConvertWorkerMain.class);
+
+    public static final int OP_CONVERT_FILE = 1;
+    public static final int OP_CONVERT_BYTES = 2;
+    public static final int OP_EXIT = 3;
+
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_ERROR = 1;
+
+    /**
+     * 错误信息上限（writeUTF 最多 64KB）
+     */
+    private static final int MAX_MESSAGE_LENGTH = 4000;
+
+    public static void main(String[] args) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(PROTOCOL_OUT));
+        out.writeByte(STATUS_OK);
+        out.flush();
+        log.info("转换进程已启动");
+
+        while (true) {
+            int op;
+            try {
+                op = in.readInt();
+            } catch (EOFException e) {
+                return;
+            }
+            switch (op) {
+                case OP_CONVERT_FILE:
+                    convertFile(in, out);
+                    break;
+                case OP_CONVERT_BYTES:
+                    convertBytes(in, out);
+                    break;
+                case OP_EXIT:
+                    return;
+                default:
+                    throw new IOException("未知指令: " + op);
+            }
+            out.flush();
+        }
+    }
+
+    private static void convertFile(DataInputStream in, DataOutputStream out) throws IOException {
+        // 先读完整个请求，转换失败时协议流仍然对齐
+        String docxPath = in.readUTF();
+        String pdfPath = in.readUTF();
+        String cleanedDocxPath = in.readUTF();
+        try {
+            DocxConvertPdf.convert(docxPath, pdfPath, cleanedDocxPath.isEmpty() ? null : cleanedDocxPath);
+            out.writeByte(STATUS_OK);
+        } catch (Throwable e) {
+            writeError(out, e);
+        }
+        out.writeLong(peakRssKb());
+    }
+
+    private static void convertBytes(DataInputStream in, DataOutputStream out) throws IOException {
+        byte[] docx = new byte[in.readInt()];
+        in.readFully(docx);
+        boolean wantCleaned = in.readBoolean();
+        try {
+            ByteArrayOutputStream cleaned = wantCleaned ? new ByteArrayOutputStream(docx.length) : null;
+            byte[] pdf = DocxConvertPdf.convert(docx, cleaned);
+            out.writeByte(STATUS_OK);
+            out.writeInt(pdf.length);
+            out.write(pdf);
+            if (cleaned != null) {
+                out.writeInt(cleaned.size());
+                cleaned.writeTo(out);
+            } else {
+                out.writeInt(-1);
+            }
+        } catch (Throwable e) {
+            writeError(out, e);
+        }
+        out.writeLong(peakRssKb());
+    }
+
+    private static void writeError(DataOutputStream out, Throwable e) throws IOException {
+        log.error("转换失败: {}", e.getMessage(), e);
+        String message = e.getClass().getSimpleName() + ": " + e.getMessage();
+        if (message.length() > MAX_MESSAGE_LENGTH) {
+            message = message.substring(0, MAX_MESSAGE_LENGTH);
+        }
+        out.writeByte(STATUS_ERROR);
+        out.writeUTF(message);
+        if (e instanceof OutOfMemoryError) {
+            // 堆状态已不可靠：应答后退出，由父进程换新进程
+            out.writeLong(peakRssKb());
+            out.flush();
+            System.exit(1);
+        }
+    }
+
+    private static PrintStream redirectStdout() {
+        PrintStream stdout = System.out;
+        System.setOut(System.err);
+        return stdout;
+    }
+
+    /**
+     * 进程峰值常驻内存（KB）：Linux 取 /proc/self/status 的 VmHWM，其他系统以当前堆和非堆用量近似
+     */
+    static long peakRssKb() {
+        File status = new File("/proc/self/status");
+        if (status.isFile()) {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(status), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith("VmHWM:")) {
+                        return Long.parseLong(line.substring("VmHWM:".length()).replace("kB", "").trim());
+                    }
+                }
+            } catch (IOException | NumberFormatException ignored) {
+                // 按 JVM 内存用量估算
+            }
+        }
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        return (memory.getHeapMemoryUsage().getUsed() + memory.getNonHeapMemoryUsage().getUsed()) / 1024;
+    }
+}
@@ -1,19 +1,25 @@
 package com.example.docxserver.util.aspose;
 
+import com.aspose.words.BuildVersionInfo;
 import com.aspose.words.Document;
 import com.aspose.words.NodeType;
 import com.aspose.words.PdfCompliance;
 import com.aspose.words.PdfSaveOptions;
+import com.aspose.words.SaveFormat;
 import com.aspose.words.Section;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.example.docxserver.util.common.ProgressListener;
 import com.example.docxserver.util.docx.DocxHeaderFooterRemover;
 import com.example.docxserver.util.taggedPDF.PdfTableExtractor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
@@ -36,6 +42,9 @@ public class DocxConvertPdf {
     /** 覆盖模式：true=转换所有文件并覆盖记录，false=只转换未转换/失败的文件 */
     private static final boolean OVERWRITE_MODE = true;
 
+    /** 转换前清理规则（{@link #prepare(Document)}）的版本，修改清理规则时递增，使 PDF 转换缓存失效 */
+    private static final int PREPARE_VERSION = 1;
+
     /**
      * 将 docx 文件转换为 pdf
      * 转换前会自动移除页眉、页脚和批注
@@ -45,25 +54,95 @@ public class DocxConvertPdf {
      * @throws Exception 转换异常
      */
     public static void convert(String docxPath, String pdfPath) throws Exception {
+        convert(docxPath, pdfPath, null);
+    }
+
+    /**
+     * 将 docx 文件转换为 pdf，同时保存移除页眉、页脚和批注后的 docx
+     *
+     * 文档只由 Aspose 解析一次，清理在内存中完成后依次导出 docx 和 pdf，
+     * 不再需要先用 POI 读写一遍 docx 再交给 Aspose 重新解析。
+     *
+     * @param docxPath        docx 文件路径
+     * @param pdfPath         输出的 pdf 文件路径
+     * @param cleanedDocxPath 清理后 docx 的输出路径（可与 docxPath 相同；为null时不保存）
+     * @throws Exception 转换异常
+     */
+    public static void convert(String docxPath, String pdfPath, String cleanedDocxPath) throws Exception {
         Document doc = new Document(docxPath);
+        prepare(doc);
+        if (cleanedDocxPath != null) {
+            doc.save(cleanedDocxPath, SaveFormat.DOCX);
+        }
+        doc.save(pdfPath, createSaveOptions());
+    }
 
-        // 移除批注
+    /**
+     * 在内存中将 docx 转换为 pdf（小文档快速通道，不落盘）
+     * 转换前会自动移除页眉、页脚和批注
+     *
+     * @param docx        docx 内容
+     * @param cleanedDocx 清理后 docx 的输出流（为null时不输出）
+     * @return pdf 内容
+     * @throws Exception 转换异常
+     */
+    public static byte[] convert(byte[] docx, OutputStream cleanedDocx) throws Exception {
+        Document doc = new Document(new ByteArrayInputStream(docx));
+        prepare(doc);
+        if (cleanedDocx != null) {
+            doc.save(cleanedDocx, SaveFormat.DOCX);
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(docx.length * 2);
+        doc.save(bos, createSaveOptions());
+        return bos.toByteArray();
+    }
+
+    /**
+     * 移除批注（含批注范围标记）和页眉页脚
+     *
+     * 与 {@link DocxHeaderFooterRemover} 的清理范围一致：页眉页脚连同节中的引用一起删除，
+     * 批注连同 commentRangeStart / commentRangeEnd 一起删除。
+     */
+    private static void prepare(Document doc) {
+        // 移除批注及其范围标记
         doc.getChildNodes(NodeType.COMMENT, true).clear();
+        doc.getChildNodes(NodeType.COMMENT_RANGE_START, true).clear();
+        doc.getChildNodes(NodeType.COMMENT_RANGE_END, true).clear();
         log.info("已移除批注");
 
-        // 移除页眉页脚
+        // 移除页眉页脚（删除 HeaderFooter 节点，保存的 docx 中不再保留空的页眉页脚部件）
         for (Section section : doc.getSections()) {
-            section.clearHeadersFooters();
+            section.getHeadersFooters().clear();
         }
         log.info("已移除页眉页脚");
+    }
+
+    /**
+     * 影响转换输出的设置指纹（PDF 转换缓存键的一部分）
+     *
+     * 由实际使用的保存选项（合规级别、是否导出文档结构、书签大纲级别）、清理规则版本和 Aspose 版本组成，
+     * 任一项变化后旧的缓存不再命中。
+     *
+     * @return 设置指纹
+     */
+    public static String saveOptionsFingerprint() {
+        PdfSaveOptions options = createSaveOptions();
+        return "compliance=" + options.getCompliance()
+                + ";structure=" + options.getExportDocumentStructure()
+                + ";outline=" + options.getOutlineOptions().getDefaultBookmarksOutlineLevel()
+                + ";prepare=" + PREPARE_VERSION
+                + ";aspose=" + BuildVersionInfo.getVersion();
+    }
 
-        // 配置 PDF 保存选项，生成 PDF/UA-2 Tagged PDF
+    /**
+     * 配置 PDF 保存选项，生成 PDF/UA-2 Tagged PDF
+     */
+    private static PdfSaveOptions createSaveOptions() {
         PdfSaveOptions saveOptions = new PdfSaveOptions();
         saveOptions.setCompliance(PdfCompliance.PDF_UA_2);
         saveOptions.setExportDocumentStructure(true);  // 生成 Tagged PDF
         saveOptions.getOutlineOptions().setDefaultBookmarksOutlineLevel(1);  // 书签大纲级别
-
-        doc.save(pdfPath, saveOptions);
+        return saveOptions;
     }
 
     /**
@@ -161,13 +240,9 @@ public class DocxConvertPdf {
                 // 获取原始文件名（不含扩展名）
                 String originalName = fileName.substring(0, fileName.lastIndexOf('.'));
 
-                // Step 1: 移除页眉页脚
-                System.out.println("  [1/4] 移除页眉页脚...");
-                DocxHeaderFooterRemover.removeHeaderFooter(docxFile.getAbsolutePath());
-
-                // Step 2: DOCX 转 PDF
-                System.out.println("  [2/4] 转换 PDF...");
-                convert(docxFile.getAbsolutePath(), pdfFile.getAbsolutePath());
+                // Step 1 & 2: 移除页眉页脚和批注（覆盖原 docx），转换 PDF
+                System.out.println("  [1&2/4] 移除页眉页脚、转换 PDF...");
+                convert(docxFile.getAbsolutePath(), pdfFile.getAbsolutePath(), docxFile.getAbsolutePath());
                 long elapsed = System.currentTimeMillis() - startTime;
 
                 fileNode.put("status", "converted");
@@ -354,9 +429,20 @@ public class DocxConvertPdf {
      * @param imageDir 图片输出目录
      */
     public static void renderPdfToImages(File pdfFile, File imageDir) {
+        renderPdfToImages(pdfFile, imageDir, ProgressListener.NONE);
+    }
+
+    /**
+     * 将 PDF 页面渲染为图片（指定输出目录，逐页回调进度）
+     *
+     * @param pdfFile  PDF 文件
+     * @param imageDir 图片输出目录
+     * @param listener 进度回调
+     */
+    public static void renderPdfToImages(File pdfFile, File imageDir, ProgressListener listener) {
         try {
             // 使用 PdfImageRenderer（默认5线程，72 DPI）
-            PdfImageRenderer.render(pdfFile, imageDir);
+            PdfImageRenderer.render(pdfFile, imageDir, listener);
         } catch (IOException e) {
             log.error("PDF 渲染图片失败: {}", e.getMessage(), e);
             System.err.println("  -> 图片渲染失败: " + e.getMessage());
@@ -478,13 +564,9 @@ public class DocxConvertPdf {
             // 获取原始文件名（不含扩展名）
             String originalName = fileName.substring(0, fileName.lastIndexOf('.'));
 
-            // Step 1: 移除页眉页脚
-            System.out.println("  [1/4] 移除页眉页脚...");
-            DocxHeaderFooterRemover.removeHeaderFooter(pendingFile.getAbsolutePath());
-
-            // Step 2: DOCX 转 PDF
-            System.out.println("  [2/4] 转换 PDF...");
-            convert(pendingFile.getAbsolutePath(), pdfFile.getAbsolutePath());
+            // Step 1 & 2: 移除页眉页脚和批注（覆盖原 docx），转换 PDF
+            System.out.println("  [1&2/4] 移除页眉页脚、转换 PDF...");
+            convert(pendingFile.getAbsolutePath(), pdfFile.getAbsolutePath(), pendingFile.getAbsolutePath());
             long elapsed = System.currentTimeMillis() - startTime;
 
             fileNode.put("status", "converted");
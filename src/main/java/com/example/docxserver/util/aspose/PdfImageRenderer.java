@@ -1,5 +1,6 @@
 package com.example.docxserver.util.aspose;
 
+import com.example.docxserver.util.common.ProgressListener;
 import org.apache.pdfbox.Loader;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.rendering.ImageType;
@@ -14,6 +15,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * PDF 页面渲染为图片的工具类
@@ -44,6 +46,18 @@ public class PdfImageRenderer {
         render(pdfFile, imageDir, DEFAULT_THREAD_COUNT, DEFAULT_DPI);
     }
 
+    /**
+     * 渲染 PDF 所有页面为 PNG 图片（使用默认5线程，逐页回调进度）
+     *
+     * @param pdfFile  PDF 文件
+     * @param imageDir 图片输出目录
+     * @param listener 进度回调
+     * @throws IOException IO 异常
+     */
+    public static void render(File pdfFile, File imageDir, ProgressListener listener) throws IOException {
+        render(pdfFile, imageDir, DEFAULT_THREAD_COUNT, DEFAULT_DPI, listener);
+    }
+
     /**
      * 渲染 PDF 所有页面为 PNG 图片（可指定线程数）
      *
@@ -54,6 +68,23 @@ public class PdfImageRenderer {
      * @throws IOException IO 异常
      */
     public static void render(File pdfFile, File imageDir, int threadCount, int dpi) throws IOException {
+        render(pdfFile, imageDir, threadCount, dpi, ProgressListener.NONE);
+    }
+
+    /**
+     * 渲染 PDF 所有页面为 PNG 图片（每完成一页回调一次进度）
+     *
+     * 回调在渲染线程中并发发生，完成数按实际完成顺序递增。
+     * listener 报告已取消时不再开始新页面，已提交的页面被丢弃，并抛出 CancellationException。
+     *
+     * @param pdfFile     PDF 文件
+     * @param imageDir    图片输出目录
+     * @param threadCount 线程数
+     * @param dpi         渲染 DPI
+     * @param listener    进度回调
+     * @throws IOException IO 异常
+     */
+    public static void render(File pdfFile, File imageDir, int threadCount, int dpi, ProgressListener listener) throws IOException {
         if (!pdfFile.exists()) {
             log.error("PDF 文件不存在: {}", pdfFile.getAbsolutePath());
             return;
@@ -78,17 +109,30 @@ public class PdfImageRenderer {
             // 创建线程池
             ExecutorService executor = Executors.newFixedThreadPool(threadCount);
             List<Future<RenderResult>> futures = new ArrayList<>();
+            AtomicInteger renderedCount = new AtomicInteger();
 
             // 提交渲染任务
             for (int page = 0; page < pageCount; page++) {
                 final int pageIndex = page;
-                futures.add(executor.submit(() -> renderPage(pdfFile, imageDir, pageIndex, dpi)));
+                futures.add(executor.submit(() -> {
+                    // 取消检查点：已取消的任务不再开始新页面
+                    if (listener.isCancelled()) {
+                        return new RenderResult(pageIndex, false, "已取消");
+                    }
+                    RenderResult result = renderPage(pdfFile, imageDir, pageIndex, dpi);
+                    listener.onProgress(ProgressListener.STAGE_RENDER, renderedCount.incrementAndGet(), pageCount);
+                    return result;
+                }));
             }
 
             // 等待所有任务完成
             int successCount = 0;
             int failCount = 0;
             for (Future<RenderResult> future : futures) {
+                if (listener.isCancelled()) {
+                    executor.shutdownNow();
+                    throw new CancellationException("渲染已取消");
+                }
                 try {
                     RenderResult result = future.get();
                     if (result.success) {
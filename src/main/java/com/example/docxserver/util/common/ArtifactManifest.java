@@ -0,0 +1,366 @@
+package com.example.docxserver.util.common;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 任务产物清单：{taskDir}/artifacts.json
+ *
+ * 记录每种产物的当前版本（相对路径、大小、SHA-256、更新时间），产物生成时写入，
+ * 读取方按种类直接定位文件，不再列目录、比较带时间戳的文件名。
+ *
+ * - 清单按修改时间缓存在内存中（最近使用的任务），命中时只需一次 stat
+ * - 写入为 读取-修改-临时文件-原子重命名，同一任务目录的写入串行
+ * - 没有清单的旧任务在第一次读取时按原来的文件名规则扫描一次目录并生成清单
+ */
+public class ArtifactManifest {
+
+    private static final Logger log = LoggerFactory.getLogger(ArtifactManifest.class);
+
+    public static final String FILE_NAME = "artifacts.json";
+
+    public static final String KIND_DOCX = "docx";
+    public static final String KIND_PDF = "pdf";
+    public static final String KIND_TABLE_TXT = "tableTxt";
+    public static final String KIND_PARAGRAPH_TXT = "paragraphTxt";
+    public static final String KIND_MERGED_TXT = "mergedTxt";
+    public static final String KIND_AI_JSON = "aiJson";
+    /**
+     * 页面图片目录：images/{originalName}/{pageIndex}.png，count 为图片数
+     */
+    public static final String KIND_IMAGES = "images";
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    private static final Type MANIFEST_TYPE = new TypeToken<LinkedHashMap<String, Entry>>() { }.getType();
+
+    private static final int CACHE_SIZE = 1024;
+
+    private static final Object[] LOCKS = new Object[64];
+
+    static {
+        for (int i = 0; i < LOCKS.length; i++) {
+            LOCKS[i] = new Object();
+        }
+    }
+
+    /**
+     * 任务目录 -> 清单（按清单文件修改时间校验）
+     */
+    private static final Map<String, Cached> CACHE = new LinkedHashMap<String, Cached>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /**
+     * 登记（或替换）一种产物的当前版本
+     *
+     * @param taskDir 任务目录
+     * @param kind 产物种类（KIND_*）
+     * @param artifact 产物文件或目录（须位于任务目录下）
+     * @throws IOException 计算校验和或写入清单失败
+     */
+    public static void record(File taskDir, String kind, File artifact) throws IOException {
+        put(taskDir, kind, describe(taskDir, artifact));
+    }
+
+    /**
+     * 登记一个已知 SHA-256 的文件产物（如上传时边写边算的摘要），不再重新读取文件
+     *
+     * @param taskDir 任务目录
+     * @param kind 产物种类
+     * @param artifact 产物文件
+     * @param sha256 文件内容的 SHA-256（十六进制）
+     * @throws IOException 写入清单失败
+     */
+    public static void record(File taskDir, String kind, File artifact, String sha256) throws IOException {
+        Entry entry = new Entry();
+        entry.path = relativePath(taskDir, artifact);
+        entry.size = artifact.length();
+        entry.sha256 = sha256;
+        entry.updateTime = System.currentTimeMillis();
+        put(taskDir, kind, entry);
+    }
+
+    /**
+     * 复制另一个任务的清单条目（复用产物时使用，文件已链接到本任务目录）
+     *
+     * @param taskDir 任务目录
+     * @param kind 产物种类
+     * @param source 源清单条目
+     * @param path 本任务中的相对路径
+     * @throws IOException 写入清单失败
+     */
+    public static void recordCopy(File taskDir, String kind, Entry source, String path) throws IOException {
+        Entry entry = new Entry();
+        entry.path = path;
+        entry.size = source.size;
+        entry.sha256 = source.sha256;
+        entry.count = source.count;
+        entry.updateTime = System.currentTimeMillis();
+        put(taskDir, kind, entry);
+    }
+
+    /**
+     * 读取清单（只读）
+     *
+     * @param taskDir 任务目录
+     * @return 产物种类 -> 条目，任务目录不存在时为空
+     */
+    public static Map<String, Entry> read(File taskDir) {
+        synchronized (lockFor(taskDir)) {
+            return Collections.unmodifiableMap(load(taskDir));
+        }
+    }
+
+    /**
+     * 定位某种产物的当前文件
+     *
+     * @param taskDir 任务目录
+     * @param kind 产物种类
+     * @return 产物文件（目录类产物返回目录），未登记或已不存在时返回 null
+     */
+    public static File resolve(File taskDir, String kind) {
+        Entry entry = read(taskDir).get(kind);
+        if (entry == null) {
+            return null;
+        }
+        File file = new File(taskDir, entry.path);
+        return file.exists() ? file : null;
+    }
+
+    private static void put(File taskDir, String kind, Entry entry) throws IOException {
+        synchronized (lockFor(taskDir)) {
+            Map<String, Entry> entries = new LinkedHashMap<>(load(taskDir));
+            entries.put(kind, entry);
+            write(taskDir, entries);
+        }
+    }
+
+    /**
+     * 读取清单（调用方持有锁）：优先用缓存，清单不存在时按旧规则扫描目录生成
+     */
+    private static Map<String, Entry> load(File taskDir) {
+        String key = taskDir.getAbsolutePath();
+        File manifestFile = new File(taskDir, FILE_NAME);
+        long lastModified = manifestFile.lastModified();
+
+        synchronized (CACHE) {
+            Cached cached = CACHE.get(key);
+            if (cached != null && lastModified != 0 && cached.lastModified == lastModified) {
+                return cached.entries;
+            }
+        }
+
+        Map<String, Entry> entries;
+        if (lastModified != 0) {
+            try {
+                String json = new String(Files.readAllBytes(manifestFile.toPath()), StandardCharsets.UTF_8);
+                entries = GSON.fromJson(json, MANIFEST_TYPE);
+                if (entries == null) {
+                    entries = new LinkedHashMap<>();
+                }
+            } catch (Exception e) {
+                log.warn("读取产物清单失败，重新扫描目录: {}, {}", manifestFile.getAbsolutePath(), e.getMessage());
+                entries = migrate(taskDir);
+            }
+        } else if (taskDir.isDirectory()) {
+            entries = migrate(taskDir);
+        } else {
+            return Collections.emptyMap();
+        }
+
+        synchronized (CACHE) {
+            CACHE.put(key, new Cached(new File(taskDir, FILE_NAME).lastModified(), entries));
+        }
+        return entries;
+    }
+
+    /**
+     * 旧任务：按原来的文件名规则扫描一次目录并写入清单
+     */
+    private static Map<String, Entry> migrate(File taskDir) {
+        String taskId = taskDir.getName();
+        File pdf = null;
+        File tableTxt = null;
+        File paragraphTxt = null;
+        File mergedTxt = null;
+        File aiJson = null;
+        File docx = null;
+
+        File[] files = taskDir.listFiles(File::isFile);
+        if (files != null) {
+            for (File f : files) {
+                String name = f.getName();
+                if (name.equals(taskId + ".pdf")) {
+                    pdf = f;
+                } else if (name.equals(taskId + ".docx")) {
+                    docx = f;
+                } else if (name.endsWith(".json") && !name.equals(FILE_NAME) && !name.equals("status.json")
+                        && !name.startsWith(taskId + "_")) {
+                    aiJson = f;
+                } else if (name.startsWith(taskId + "_pdf_paragraph_") && name.endsWith(".txt")) {
+                    paragraphTxt = newer(paragraphTxt, f);
+                } else if (name.startsWith(taskId + "_merged_") && name.endsWith(".txt")) {
+                    mergedTxt = newer(mergedTxt, f);
+                } else if (name.startsWith(taskId + "_pdf_") && name.endsWith(".txt")) {
+                    tableTxt = newer(tableTxt, f);
+                }
+            }
+        }
+        File images = null;
+        File[] imageDirs = new File(taskDir, "images").listFiles(File::isDirectory);
+        if (imageDirs != null && imageDirs.length > 0) {
+            images = imageDirs[0];
+        }
+
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        try {
+            putIfPresent(entries, taskDir, KIND_DOCX, docx);
+            putIfPresent(entries, taskDir, KIND_PDF, pdf);
+            putIfPresent(entries, taskDir, KIND_TABLE_TXT, tableTxt);
+            putIfPresent(entries, taskDir, KIND_PARAGRAPH_TXT, paragraphTxt);
+            putIfPresent(entries, taskDir, KIND_MERGED_TXT, mergedTxt);
+            putIfPresent(entries, taskDir, KIND_AI_JSON, aiJson);
+            putIfPresent(entries, taskDir, KIND_IMAGES, images);
+            if (!entries.isEmpty()) {
+                write(taskDir, entries);
+                log.info("旧任务已生成产物清单: {}, {} 种产物", taskDir.getAbsolutePath(), entries.size());
+            }
+        } catch (IOException e) {
+            log.warn("生成产物清单失败: {}, {}", taskDir.getAbsolutePath(), e.getMessage());
+        }
+        return entries;
+    }
+
+    private static void putIfPresent(Map<String, Entry> entries, File taskDir, String kind, File artifact) throws IOException {
+        if (artifact != null) {
+            entries.put(kind, describe(taskDir, artifact));
+        }
+    }
+
+    private static File newer(File current, File candidate) {
+        return current == null || candidate.getName().compareTo(current.getName()) > 0 ? candidate : current;
+    }
+
+    /**
+     * 计算产物的清单条目：文件为内容 SHA-256，目录为各文件名和大小的 SHA-256
+     */
+    private static Entry describe(File taskDir, File artifact) throws IOException {
+        Entry entry = new Entry();
+        entry.path = relativePath(taskDir, artifact);
+        entry.updateTime = System.currentTimeMillis();
+        MessageDigest digest = newSha256();
+        if (artifact.isDirectory()) {
+            File[] files = artifact.listFiles(File::isFile);
+            if (files == null) {
+                files = new File[0];
+            }
+            Arrays.sort(files);
+            long size = 0;
+            for (File f : files) {
+                digest.update(f.getName().getBytes(StandardCharsets.UTF_8));
+                digest.update(Long.toString(f.length()).getBytes(StandardCharsets.UTF_8));
+                size += f.length();
+            }
+            entry.size = size;
+            entry.count = files.length;
+        } else {
+            byte[] buffer = new byte[ZipStreamUtils.BUFFER_SIZE];
+            try (InputStream is = Files.newInputStream(artifact.toPath())) {
+                int len;
+                while ((len = is.read(buffer)) != -1) {
+                    digest.update(buffer, 0, len);
+                }
+            }
+            entry.size = artifact.length();
+        }
+        entry.sha256 = toHex(digest.digest());
+        return entry;
+    }
+
+    private static String relativePath(File taskDir, File artifact) {
+        return taskDir.toPath().relativize(artifact.toPath()).toString().replace('\\', '/');
+    }
+
+    private static void write(File taskDir, Map<String, Entry> entries) throws IOException {
+        File manifestFile = new File(taskDir, FILE_NAME);
+        File tmpFile = new File(taskDir, FILE_NAME + ".tmp");
+        Files.write(tmpFile.toPath(), GSON.toJson(entries).getBytes(StandardCharsets.UTF_8));
+        try {
+            Files.move(tmpFile.toPath(), manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmpFile.toPath(), manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        synchronized (CACHE) {
+            CACHE.put(taskDir.getAbsolutePath(), new Cached(manifestFile.lastModified(), entries));
+        }
+    }
+
+    private static Object lockFor(File taskDir) {
+        return LOCKS[(taskDir.getAbsolutePath().hashCode() & 0x7fffffff) % LOCKS.length];
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 不可用", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 清单条目
+     */
+    public static class Entry {
+        /**
+         * 相对任务目录的路径
+         */
+        public String path;
+        public long size;
+        public String sha256;
+        /**
+         * 目录类产物中的文件数
+         */
+        public Integer count;
+        public long updateTime;
+    }
+
+    private static class Cached {
+        final long lastModified;
+        final Map<String, Entry> entries;
+
+        Cached(long lastModified, Map<String, Entry> entries) {
+            this.lastModified = lastModified;
+            this.entries = entries;
+        }
+    }
+}
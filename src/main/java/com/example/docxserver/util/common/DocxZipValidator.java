@@ -0,0 +1,213 @@
+package com.example.docxserver.util.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * DOCX（ZIP）结构校验：检查中央目录
+ *
+ * 上传时边写盘边调用 {@link #update(byte[], int, int)}，只在内存中保留文件末尾的一段数据；
+ * 写完后 {@link #validate(File, long)} 从保留的尾部找到 EOCD 和中央目录并逐条检查，
+ * 要求包含 [Content_Types].xml 和 word/document.xml。
+ * 中央目录超过保留长度时（条目极多的文档）才回读文件的对应区间（刚写入，仍在页缓存中）。
+ * 已在内存中的完整 DOCX 用 {@link #validate(byte[])} 直接校验。
+ */
+public class DocxZipValidator {
+
+    /**
+     * 保留的尾部长度：EOCD（最长 22 + 65535 字节注释）加上常见文档的中央目录
+     */
+    private static final int TAIL_SIZE = 256 * 1024;
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_EOCD_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_EOCD_SIGNATURE = 0x06064b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int EOCD_MIN_SIZE = 22;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+
+    private static final String CONTENT_TYPES_ENTRY = "[Content_Types].xml";
+    private static final String DOCUMENT_ENTRY = "word/document.xml";
+
+    private final byte[] ring = new byte[TAIL_SIZE];
+    private long total;
+
+    /**
+     * 追加写入的数据（只保留最后 TAIL_SIZE 字节）
+     */
+    public void update(byte[] b, int off, int len) {
+        if (len >= TAIL_SIZE) {
+            System.arraycopy(b, off + len - TAIL_SIZE, ring, 0, TAIL_SIZE);
+            total += len;
+            // 整块覆盖后环形缓冲区的起点回到 0：按 total 对齐
+            rotateTo((int) (total % TAIL_SIZE));
+            return;
+        }
+        int pos = (int) (total % TAIL_SIZE);
+        int first = Math.min(len, TAIL_SIZE - pos);
+        System.arraycopy(b, off, ring, pos, first);
+        if (first < len) {
+            System.arraycopy(b, off + first, ring, 0, len - first);
+        }
+        total += len;
+    }
+
+    /**
+     * 已写入的总字节数
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * 校验中央目录
+     *
+     * @param file 已写入的文件（中央目录超出保留尾部时回读）
+     * @param fileLength 文件长度
+     * @throws IllegalArgumentException 不是有效的 DOCX
+     * @throws IOException 回读文件失败
+     */
+    public void validate(File file, long fileLength) throws IOException {
+        validate(tail(), file, fileLength);
+    }
+
+    /**
+     * 校验内存中的完整 DOCX（小文档同步处理时使用，不落盘）
+     *
+     * @param data DOCX 内容
+     * @throws IllegalArgumentException 不是有效的 DOCX
+     */
+    public static void validate(byte[] data) {
+        try {
+            validate(data, null, data.length);
+        } catch (IOException e) {
+            // 中央目录总在 data 范围内，不会回读文件
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param tail 文件末尾的数据（可以是整个文件）
+     * @param file 中央目录超出 tail 时回读的文件
+     */
+    private static void validate(byte[] tail, File file, long fileLength) throws IOException {
+        long tailStart = fileLength - tail.length;
+        ByteBuffer tailBuf = ByteBuffer.wrap(tail).order(ByteOrder.LITTLE_ENDIAN);
+
+        int eocd = findEocd(tail);
+        if (eocd < 0) {
+            throw new IllegalArgumentException("不是有效的DOCX文件：缺少ZIP中央目录结束标记");
+        }
+        long entryCount = tailBuf.getShort(eocd + 10) & 0xFFFF;
+        long cdSize = tailBuf.getInt(eocd + 12) & 0xFFFFFFFFL;
+        long cdOffset = tailBuf.getInt(eocd + 16) & 0xFFFFFFFFL;
+
+        if (entryCount == 0xFFFF || cdSize == 0xFFFFFFFFL || cdOffset == 0xFFFFFFFFL) {
+            // ZIP64：从 ZIP64 EOCD 记录读取
+            int locator = eocd - 20;
+            if (locator < 0 || tailBuf.getInt(locator) != ZIP64_EOCD_LOCATOR_SIGNATURE) {
+                throw new IllegalArgumentException("不是有效的DOCX文件：ZIP64 定位记录缺失");
+            }
+            long zip64Eocd = tailBuf.getLong(locator + 8) - tailStart;
+            if (zip64Eocd < 0 || zip64Eocd + 56 > tail.length
+                    || tailBuf.getInt((int) zip64Eocd) != ZIP64_EOCD_SIGNATURE) {
+                throw new IllegalArgumentException("不是有效的DOCX文件：ZIP64 中央目录结束记录无效");
+            }
+            entryCount = tailBuf.getLong((int) zip64Eocd + 32);
+            cdSize = tailBuf.getLong((int) zip64Eocd + 40);
+            cdOffset = tailBuf.getLong((int) zip64Eocd + 48);
+        }
+
+        if (entryCount == 0 || cdOffset + cdSize > fileLength || cdSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("不是有效的DOCX文件：中央目录位置无效");
+        }
+
+        ByteBuffer cd;
+        if (cdOffset >= tailStart) {
+            cd = ByteBuffer.wrap(tail, (int) (cdOffset - tailStart), (int) cdSize).slice();
+        } else {
+            cd = ByteBuffer.allocate((int) cdSize);
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                raf.getChannel().read(cd, cdOffset);
+            }
+            cd.flip();
+        }
+        checkEntries(cd.order(ByteOrder.LITTLE_ENDIAN), entryCount);
+    }
+
+    private static void checkEntries(ByteBuffer cd, long entryCount) {
+        Set<String> names = new HashSet<>();
+        int pos = 0;
+        for (long i = 0; i < entryCount; i++) {
+            if (pos + CENTRAL_HEADER_SIZE > cd.limit() || cd.getInt(pos) != CENTRAL_HEADER_SIGNATURE) {
+                throw new IllegalArgumentException("不是有效的DOCX文件：中央目录第 " + (i + 1) + " 个条目损坏");
+            }
+            int nameLen = cd.getShort(pos + 28) & 0xFFFF;
+            int extraLen = cd.getShort(pos + 30) & 0xFFFF;
+            int commentLen = cd.getShort(pos + 32) & 0xFFFF;
+            if (pos + CENTRAL_HEADER_SIZE + nameLen > cd.limit()) {
+                throw new IllegalArgumentException("不是有效的DOCX文件：中央目录条目名越界");
+            }
+            byte[] name = new byte[nameLen];
+            for (int k = 0; k < nameLen; k++) {
+                name[k] = cd.get(pos + CENTRAL_HEADER_SIZE + k);
+            }
+            names.add(new String(name, StandardCharsets.UTF_8));
+            pos += CENTRAL_HEADER_SIZE + nameLen + extraLen + commentLen;
+        }
+        if (!names.contains(CONTENT_TYPES_ENTRY) || !names.contains(DOCUMENT_ENTRY)) {
+            throw new IllegalArgumentException("不是有效的DOCX文件：缺少 " + CONTENT_TYPES_ENTRY + " 或 " + DOCUMENT_ENTRY);
+        }
+    }
+
+    /**
+     * 从尾部向前查找 EOCD 签名（注释长度需与剩余字节一致）
+     */
+    private static int findEocd(byte[] tail) {
+        ByteBuffer buf = ByteBuffer.wrap(tail).order(ByteOrder.LITTLE_ENDIAN);
+        int lowest = Math.max(0, tail.length - EOCD_MIN_SIZE - 0xFFFF);
+        for (int i = tail.length - EOCD_MIN_SIZE; i >= lowest; i--) {
+            if (buf.getInt(i) == EOCD_SIGNATURE && (buf.getShort(i + 20) & 0xFFFF) == tail.length - i - EOCD_MIN_SIZE) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 按写入顺序取出保留的尾部
+     */
+    private byte[] tail() {
+        if (total <= TAIL_SIZE) {
+            byte[] copy = new byte[(int) total];
+            System.arraycopy(ring, 0, copy, 0, (int) total);
+            return copy;
+        }
+        int pos = (int) (total % TAIL_SIZE);
+        byte[] copy = new byte[TAIL_SIZE];
+        System.arraycopy(ring, pos, copy, 0, TAIL_SIZE - pos);
+        System.arraycopy(ring, 0, copy, TAIL_SIZE - pos, pos);
+        return copy;
+    }
+
+    /**
+     * 整块写入后，把按顺序排列的缓冲区旋转到环形布局（起点 = start）
+     */
+    private void rotateTo(int start) {
+        if (start == 0) {
+            return;
+        }
+        byte[] copy = new byte[TAIL_SIZE];
+        // ring 当前按顺序存放最后 TAIL_SIZE 字节；环形布局中第 j 个字节位于 (start + j) % TAIL_SIZE
+        for (int j = 0; j < TAIL_SIZE; j++) {
+            copy[(start + j) % TAIL_SIZE] = ring[j];
+        }
+        System.arraycopy(copy, 0, ring, 0, TAIL_SIZE);
+    }
+}
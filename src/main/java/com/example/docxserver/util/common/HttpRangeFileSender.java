@@ -0,0 +1,169 @@
+package com.example.docxserver.util.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 静态文件发送工具类（支持 ETag、Range 断点续传和零拷贝）
+ *
+ * 发送方式：
+ * 1. 容器支持 sendfile（Tomcat NIO/APR）时，设置 sendfile 请求属性，由容器直接从文件发送到 socket
+ * 2. 否则使用 FileChannel.transferTo 写入响应通道，不经过堆上的大缓冲区
+ *
+ * 只支持单个区间（bytes=start-end / bytes=start- / bytes=-suffix），多区间请求按完整文件返回。
+ */
+public class HttpRangeFileSender {
+
+    private static final Logger log = LoggerFactory.getLogger(HttpRangeFileSender.class);
+
+    private static final String SENDFILE_SUPPORT_ATTR = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    /**
+     * 发送文件
+     *
+     * @param request      HTTP 请求
+     * @param response     HTTP 响应
+     * @param file         要发送的文件
+     * @param etag         强 ETag（含双引号）
+     * @param downloadName 下载文件名
+     * @throws IOException IO 异常
+     */
+    public static void send(HttpServletRequest request, HttpServletResponse response,
+                            File file, String etag, String downloadName) throws IOException {
+        long length = file.length();
+
+        response.setHeader("ETag", etag);
+        response.setHeader("Accept-Ranges", "bytes");
+        response.setHeader("Content-Disposition", "attachment; filename=\"" + encodeFileName(downloadName) + "\"");
+        response.setContentType("application/octet-stream");
+
+        // 条件请求：客户端缓存仍然有效
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null && (ifNoneMatch.contains(etag) || "*".equals(ifNoneMatch.trim()))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        long start = 0;
+        long end = length - 1;
+        String range = request.getHeader("Range");
+        String ifRange = request.getHeader("If-Range");
+
+        // If-Range 与当前版本不一致时忽略 Range，返回完整文件
+        boolean rangeApplicable = range != null && (ifRange == null || ifRange.trim().equals(etag));
+        if (rangeApplicable) {
+            long[] parsed = parseRange(range, length);
+            if (parsed == null) {
+                // 无法识别（如多区间）：按完整文件返回
+                rangeApplicable = false;
+            } else if (parsed.length == 0) {
+                response.setHeader("Content-Range", "bytes */" + length);
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            } else {
+                start = parsed[0];
+                end = parsed[1];
+            }
+        }
+
+        long count = end - start + 1;
+        if (rangeApplicable) {
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
+        } else {
+            response.setStatus(HttpServletResponse.SC_OK);
+        }
+        response.setHeader("Content-Length", String.valueOf(count));
+
+        if ("HEAD".equalsIgnoreCase(request.getMethod()) || count <= 0) {
+            return;
+        }
+
+        // 容器支持 sendfile：由容器零拷贝发送，Servlet 不写响应体
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTR))) {
+            request.setAttribute(SENDFILE_FILENAME_ATTR, file.getCanonicalPath());
+            request.setAttribute(SENDFILE_START_ATTR, start);
+            request.setAttribute(SENDFILE_END_ATTR, end + 1);
+            log.debug("sendfile 发送: {} [{}-{}]", file.getName(), start, end);
+            return;
+        }
+
+        // 退化：FileChannel.transferTo 写入响应通道
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long remaining = count;
+            while (remaining > 0) {
+                long transferred = channel.transferTo(position, remaining, out);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+                remaining -= transferred;
+            }
+        }
+        response.flushBuffer();
+    }
+
+    /**
+     * 解析单个 Range 区间
+     *
+     * @return [start, end]（闭区间）；空数组表示区间不可满足；null 表示无法识别
+     */
+    static long[] parseRange(String range, long length) {
+        if (!range.startsWith("bytes=") || range.indexOf(',') >= 0) {
+            return null;
+        }
+        String spec = range.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            String startStr = spec.substring(0, dash).trim();
+            String endStr = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (startStr.isEmpty()) {
+                // bytes=-N：最后 N 个字节
+                long suffix = Long.parseLong(endStr);
+                if (suffix <= 0) {
+                    return new long[0];
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(startStr);
+                end = endStr.isEmpty() ? length - 1 : Math.min(Long.parseLong(endStr), length - 1);
+            }
+            if (start >= length || start > end) {
+                return new long[0];
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String encodeFileName(String fileName) {
+        try {
+            return URLEncoder.encode(fileName, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            return fileName;
+        }
+    }
+}
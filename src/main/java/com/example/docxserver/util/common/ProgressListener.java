@@ -0,0 +1,59 @@
+package com.example.docxserver.util.common;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * 处理进度回调
+ *
+ * 由 PDF 解析、渲染等工具类在逐页/逐元素处理时调用，调用方（如 SSE 推送）自行决定节流。
+ * 渲染等多线程场景下会被多个线程并发调用，实现需保证线程安全。
+ *
+ * 同时作为协作式取消的检查点：长时间循环在每页/每个元素之间调用 {@link #checkCancelled()}。
+ */
+public interface ProgressListener {
+
+    /**
+     * MCID 缓存预热（逐页）
+     */
+    String STAGE_MCID_PRELOAD = "MCID_PRELOAD";
+
+    /**
+     * 结构树第二遍遍历：提取表格和段落（逐个根元素）
+     */
+    String STAGE_EXTRACT_TXT = "EXTRACT_TXT";
+
+    /**
+     * 页面图片渲染（逐页）
+     */
+    String STAGE_RENDER = "RENDER";
+
+    /**
+     * 不关心进度时使用
+     */
+    ProgressListener NONE = (stage, done, total) -> { };
+
+    /**
+     * 进度更新
+     *
+     * @param stage 阶段名
+     * @param done  已完成数量
+     * @param total 总数量
+     */
+    void onProgress(String stage, int done, int total);
+
+    /**
+     * 任务是否已取消（或超过截止时间）
+     */
+    default boolean isCancelled() {
+        return false;
+    }
+
+    /**
+     * 检查点：任务已取消时抛出 CancellationException
+     */
+    default void checkCancelled() {
+        if (isCancelled()) {
+            throw new CancellationException("任务已取消");
+        }
+    }
+}
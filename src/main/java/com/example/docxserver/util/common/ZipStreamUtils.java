@@ -0,0 +1,82 @@
+package com.example.docxserver.util.common;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * ZIP 流式写入工具类
+ *
+ * 文件按固定大小的缓冲区逐块写入 ZipOutputStream，内存占用与文件大小无关。
+ * 已压缩格式（PNG/JPG 等）使用 STORED 方式直接存储，避免重复 deflate 浪费 CPU。
+ */
+public class ZipStreamUtils {
+
+    /**
+     * 流式写入缓冲区大小
+     */
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * 将文件作为一个条目写入 ZIP 流
+     *
+     * @param zos       ZIP 输出流
+     * @param file      源文件
+     * @param entryName ZIP 中的条目名
+     * @param buffer    复用的读缓冲区
+     * @return 是否写入（文件不存在时返回 false）
+     * @throws IOException IO 异常
+     */
+    public static boolean addFile(ZipOutputStream zos, File file, String entryName, byte[] buffer) throws IOException {
+        if (!file.isFile()) {
+            return false;
+        }
+
+        ZipEntry entry = new ZipEntry(entryName);
+        entry.setTime(file.lastModified());
+
+        if (isPrecompressed(file.getName())) {
+            // STORED 需要事先给出大小和 CRC：先流式读一遍计算 CRC（只读不压缩，成本很低）
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(file.length());
+            entry.setCompressedSize(file.length());
+            entry.setCrc(computeCrc(file, buffer));
+        } else {
+            entry.setMethod(ZipEntry.DEFLATED);
+        }
+
+        zos.putNextEntry(entry);
+        try (InputStream is = new FileInputStream(file)) {
+            int len;
+            while ((len = is.read(buffer)) > 0) {
+                zos.write(buffer, 0, len);
+            }
+        }
+        zos.closeEntry();
+        return true;
+    }
+
+    /**
+     * 判断文件是否为已压缩格式（再次 deflate 没有收益）
+     */
+    public static boolean isPrecompressed(String fileName) {
+        String lower = fileName.toLowerCase();
+        return lower.endsWith(".png") || lower.endsWith(".jpg") || lower.endsWith(".jpeg")
+                || lower.endsWith(".zip") || lower.endsWith(".gz");
+    }
+
+    private static long computeCrc(File file, byte[] buffer) throws IOException {
+        CRC32 crc = new CRC32();
+        try (InputStream is = new FileInputStream(file)) {
+            int len;
+            while ((len = is.read(buffer)) > 0) {
+                crc.update(buffer, 0, len);
+            }
+        }
+        return crc.getValue();
+    }
+}
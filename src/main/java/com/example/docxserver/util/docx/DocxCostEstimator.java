@@ -0,0 +1,243 @@
+package com.example.docxserver.util.docx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * DOCX 处理成本预估（准入控制用）
+ *
+ * 只流式扫描一遍 word/document.xml（StAX，不构建 DOM），统计段落、表格、单元格、图片、字符数和分页符，
+ * 与 {@link DocxStructureAnalyzer} 的 layoutStats 口径相近，但不需要 POI 加载整个文档。
+ * 图片字节数取自 word/media/ 下的 ZIP 条目大小。
+ *
+ * 由统计值按线性模型估算处理整个流水线（转换 + 提取 + 渲染）的 CPU 秒数和峰值堆内存。
+ * 系数为经验值，可对照 /metrics 中各阶段耗时校准。
+ */
+public class DocxCostEstimator {
+
+    private static final Logger log = LoggerFactory.getLogger(DocxCostEstimator.class);
+
+    private static final String DOCUMENT_ENTRY = "word/document.xml";
+    private static final String MEDIA_PREFIX = "word/media/";
+    private static final String WORDML_NS = "http://schemas.openxmlformats.org/wordprocessingml/2006/main";
+
+    /**
+     * 没有分页信息时，每页的平均字符数（中文标书正文）
+     */
+    private static final int CHARS_PER_PAGE = 1800;
+
+    // CPU 秒数：固定开销 + 每页 + 每个单元格 + 每张图片
+    private static final double CPU_BASE_SECONDS = 1.0;
+    private static final double CPU_SECONDS_PER_PAGE = 0.15;
+    private static final double CPU_SECONDS_PER_CELL = 0.002;
+    private static final double CPU_SECONDS_PER_IMAGE = 0.05;
+
+    // 峰值堆内存 MB：固定开销 + 每页（PDF 对象和 MCID 缓存）+ 每个单元格 + 图片解码后约为压缩大小的 4 倍
+    private static final double HEAP_BASE_MB = 64;
+    private static final double HEAP_MB_PER_PAGE = 0.6;
+    private static final double HEAP_MB_PER_CELL = 0.01;
+    private static final double HEAP_MEDIA_FACTOR = 4.0;
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = createInputFactory();
+
+    /**
+     * 预估结果
+     */
+    public static class Estimate {
+        public int paragraphs;
+        public int tables;
+        public int cells;
+        public int images;
+        public long chars;
+        /**
+         * Word 保存时记录的分页位置（lastRenderedPageBreak）和手动分页符
+         */
+        public int pageBreaks;
+        public long mediaBytes;
+
+        public int estimatedPages;
+        public double cpuSeconds;
+        public long heapMb;
+
+        @Override
+        public String toString() {
+            return String.format("pages~%d, paragraphs=%d, tables=%d, cells=%d, images=%d, cpu~%.1fs, heap~%dMB",
+                    estimatedPages, paragraphs, tables, cells, images, cpuSeconds, heapMb);
+        }
+    }
+
+    /**
+     * 预估已保存的 DOCX（ZipFile 随机访问，只解压 document.xml）
+     *
+     * @param docxFile DOCX 文件
+     * @return 预估结果
+     * @throws IOException 读取失败或缺少 word/document.xml
+     */
+    public static Estimate estimate(File docxFile) throws IOException {
+        long startTime = System.currentTimeMillis();
+        Estimate estimate = new Estimate();
+        try (ZipFile zip = new ZipFile(docxFile)) {
+            ZipEntry document = zip.getEntry(DOCUMENT_ENTRY);
+            if (document == null) {
+                throw new IOException("缺少 " + DOCUMENT_ENTRY);
+            }
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.getName().startsWith(MEDIA_PREFIX) && entry.getSize() > 0) {
+                    estimate.mediaBytes += entry.getSize();
+                }
+            }
+            try (InputStream is = zip.getInputStream(document)) {
+                scanDocument(is, estimate);
+            }
+        }
+        computeCost(estimate);
+        log.debug("成本预估: {}, {}, 耗时 {} ms", docxFile.getName(), estimate, System.currentTimeMillis() - startTime);
+        return estimate;
+    }
+
+    /**
+     * 预估内存中的 DOCX（小文档同步处理）
+     *
+     * @param docx DOCX 内容
+     * @return 预估结果
+     * @throws IOException 读取失败或缺少 word/document.xml
+     */
+    public static Estimate estimate(byte[] docx) throws IOException {
+        Estimate estimate = new Estimate();
+        boolean found = false;
+        try (ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(docx))) {
+            ZipEntry entry;
+            byte[] buffer = new byte[8192];
+            while ((entry = zis.getNextEntry()) != null) {
+                if (DOCUMENT_ENTRY.equals(entry.getName())) {
+                    // JDK 自带的 StAX 实现读到文档结尾会关闭输入流，这里不能让它关掉 ZipInputStream
+                    scanDocument(new FilterInputStream(zis) {
+                        @Override
+                        public void close() {
+                        }
+                    }, estimate);
+                    found = true;
+                } else if (entry.getName().startsWith(MEDIA_PREFIX)) {
+                    // 流式读取时条目大小可能未知，按实际解压字节数统计
+                    int n;
+                    while ((n = zis.read(buffer)) != -1) {
+                        estimate.mediaBytes += n;
+                    }
+                }
+            }
+        }
+        if (!found) {
+            throw new IOException("缺少 " + DOCUMENT_ENTRY);
+        }
+        computeCost(estimate);
+        return estimate;
+    }
+
+    /**
+     * 流式统计 document.xml（调用方负责关闭流）
+     */
+    private static void scanDocument(InputStream is, Estimate estimate) throws IOException {
+        XMLStreamReader reader = null;
+        try {
+            reader = XML_INPUT_FACTORY.createXMLStreamReader(is);
+            boolean inText = false;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    if (!WORDML_NS.equals(reader.getNamespaceURI())) {
+                        continue;
+                    }
+                    switch (reader.getLocalName()) {
+                        case "p":
+                            estimate.paragraphs++;
+                            break;
+                        case "tbl":
+                            estimate.tables++;
+                            break;
+                        case "tc":
+                            estimate.cells++;
+                            break;
+                        case "drawing":
+                        case "pict":
+                        case "object":
+                            estimate.images++;
+                            break;
+                        case "t":
+                            inText = true;
+                            break;
+                        case "lastRenderedPageBreak":
+                            estimate.pageBreaks++;
+                            break;
+                        case "br":
+                            if ("page".equals(reader.getAttributeValue(WORDML_NS, "type"))) {
+                                estimate.pageBreaks++;
+                            }
+                            break;
+                        default:
+                            break;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (inText && "t".equals(reader.getLocalName())) {
+                        inText = false;
+                    }
+                } else if (inText && event == XMLStreamConstants.CHARACTERS) {
+                    estimate.chars += reader.getTextLength();
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("解析 " + DOCUMENT_ENTRY + " 失败: " + e.getMessage(), e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException ignored) {
+                    // 底层流由调用方关闭
+                }
+            }
+        }
+    }
+
+    /**
+     * 由统计值估算页数、CPU 秒数和峰值堆内存
+     */
+    private static void computeCost(Estimate estimate) {
+        // 文档带有 Word 保存时的分页记录时以其为准，否则按字符数、表格和图片估算
+        int pagesByContent = (int) (estimate.chars / CHARS_PER_PAGE) + estimate.tables / 2 + estimate.images / 3;
+        estimate.estimatedPages = Math.max(1, Math.max(estimate.pageBreaks + 1, pagesByContent));
+
+        estimate.cpuSeconds = CPU_BASE_SECONDS
+                + estimate.estimatedPages * CPU_SECONDS_PER_PAGE
+                + estimate.cells * CPU_SECONDS_PER_CELL
+                + estimate.images * CPU_SECONDS_PER_IMAGE;
+
+        estimate.heapMb = (long) Math.ceil(HEAP_BASE_MB
+                + estimate.estimatedPages * HEAP_MB_PER_PAGE
+                + estimate.cells * HEAP_MB_PER_CELL
+                + estimate.mediaBytes * HEAP_MEDIA_FACTOR / (1024 * 1024));
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        return factory;
+    }
+}
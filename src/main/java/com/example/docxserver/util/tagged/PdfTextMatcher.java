@@ -1,5 +1,6 @@
 package com.example.docxserver.util.tagged;
 
+import com.example.docxserver.util.common.ArtifactManifest;
 import com.example.docxserver.util.tagged.dto.MatchRequest;
 import com.example.docxserver.util.tagged.dto.MatchResponse;
 import com.example.docxserver.util.taggedPDF.TextUtils;
@@ -9,7 +10,6 @@ import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 
 import java.io.File;
-import java.io.FileFilter;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
@@ -74,7 +74,7 @@ public class PdfTextMatcher {
      *
      * @param inputItems 输入项列表
      * @param taskId 任务ID（用于查找 _pdf.txt 文件）
-     * @param baseDir 文件目录
+     * @param baseDir 任务目录（从产物清单定位 _pdf.txt 文件）
      * @return 匹配结果列表
      */
     public static List<MatchResult> match(List<InputItem> inputItems, String taskId, String baseDir) throws IOException {
@@ -95,7 +95,7 @@ public class PdfTextMatcher {
 
         // 处理表格段落
         if (!tableItems.isEmpty()) {
-            File pdfTxtFile = findLatestFile(baseDir, taskId + "_pdf_", ".txt", "paragraph");
+            File pdfTxtFile = ArtifactManifest.resolve(new File(baseDir), ArtifactManifest.KIND_TABLE_TXT);
             if (pdfTxtFile != null) {
                 Map<String, MatchResult> tableResults = matchFromTableFile(tableItems, pdfTxtFile);
                 resultMap.putAll(tableResults);
@@ -109,7 +109,7 @@ public class PdfTextMatcher {
 
         // 处理普通段落
         if (!paragraphItems.isEmpty()) {
-            File paragraphTxtFile = findLatestFile(baseDir, taskId + "_pdf_paragraph_", ".txt", null);
+            File paragraphTxtFile = ArtifactManifest.resolve(new File(baseDir), ArtifactManifest.KIND_PARAGRAPH_TXT);
             if (paragraphTxtFile != null) {
                 Map<String, MatchResult> paragraphResults = matchFromParagraphFile(paragraphItems, paragraphTxtFile);
                 resultMap.putAll(paragraphResults);
@@ -354,51 +354,6 @@ public class PdfTextMatcher {
         return false;
     }
 
-    /**
-     * 查找最新的文件
-     *
-     * @param dir 目录
-     * @param prefix 文件名前缀
-     * @param suffix 文件名后缀
-     * @param excludeKeyword 排除包含此关键字的文件（可为null）
-     */
-    private static File findLatestFile(String dir, String prefix, String suffix, String excludeKeyword) {
-        File directory = new File(dir);
-        if (!directory.exists() || !directory.isDirectory()) {
-            return null;
-        }
-
-        final String finalPrefix = prefix;
-        final String finalSuffix = suffix;
-        final String finalExclude = excludeKeyword;
-
-        File[] files = directory.listFiles(new FileFilter() {
-            @Override
-            public boolean accept(File file) {
-                String name = file.getName();
-                boolean match = name.startsWith(finalPrefix) && name.endsWith(finalSuffix);
-                if (match && finalExclude != null) {
-                    match = !name.contains(finalExclude);
-                }
-                return match;
-            }
-        });
-
-        if (files == null || files.length == 0) {
-            return null;
-        }
-
-        // 按文件名降序排序，取最新的
-        Arrays.sort(files, new Comparator<File>() {
-            @Override
-            public int compare(File f1, File f2) {
-                return f2.getName().compareTo(f1.getName());
-            }
-        });
-
-        return files[0];
-    }
-
     /**
      * 单元格/段落信息
      */
@@ -0,0 +1,243 @@
+package com.example.docxserver.util.taggedPDF;
+
+import com.example.docxserver.util.taggedPDF.dto.CompareReport;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.apache.poi.xwpf.usermodel.XWPFTableCell;
+import org.apache.poi.xwpf.usermodel.XWPFTableRow;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DOCX 与 PDF 比较（生成结构化报告）
+ *
+ * 与 {@link TenderPdfExtractor} 的控制台比较使用相同的 ID 规则和匹配策略，区别在于：
+ * - DOCX 只解析一次，表格外段落和表格单元格在同一遍中取出，不写中间 TXT 再用 Jsoup 回读
+ * - PDF 表格/段落 TXT 各解析一次
+ * - 结果返回 {@link CompareReport}，不打印到控制台
+ */
+public class DocxPdfComparator {
+
+    private static final Logger log = LoggerFactory.getLogger(DocxPdfComparator.class);
+
+    /**
+     * 报告中文本摘要的最大长度
+     */
+    private static final int TEXT_PREVIEW_LENGTH = 80;
+
+    /**
+     * 比较 DOCX 与 PDF 的表格段落和表格外段落
+     *
+     * @param docxFile DOCX 文件
+     * @param pdfTableFile PDF 表格 TXT（{taskId}_pdf_*.txt），为 null 时跳过表格比较
+     * @param pdfParagraphFile PDF 段落 TXT（{taskId}_pdf_paragraph_*.txt），为 null 时跳过段落比较
+     * @return 比较报告（taskId、version 由调用方填写）
+     * @throws IOException 文件读取异常
+     */
+    public static CompareReport compare(File docxFile, File pdfTableFile, File pdfParagraphFile) throws IOException {
+        long startTime = System.currentTimeMillis();
+
+        // DOCX：表格外段落（p001...）和表格单元格（t001-r001-c001-p001）
+        List<String[]> docxParagraphs = new ArrayList<>();
+        List<String[]> docxCells = new ArrayList<>();
+        try (InputStream is = Files.newInputStream(docxFile.toPath());
+             XWPFDocument document = new XWPFDocument(is)) {
+            collectParagraphs(document, docxParagraphs);
+            collectTableCells(document, docxCells);
+        }
+
+        CompareReport report = new CompareReport();
+        if (pdfTableFile != null) {
+            compareTables(docxCells, parse(pdfTableFile), report);
+        }
+        if (pdfParagraphFile != null) {
+            compareParagraphs(docxParagraphs, parse(pdfParagraphFile), report);
+        }
+
+        report.createTime = System.currentTimeMillis();
+        report.elapsedMs = report.createTime - startTime;
+        log.info("DOCX与PDF比较完成: 表格段落 {} 个（匹配 {}，TR回退 {}，未匹配 {}），表格外段落 {} 个（匹配 {}，未匹配 {}），耗时 {} ms",
+                report.tables.total, report.tables.matched.size(), report.tables.mismatched.size(), report.tables.missing.size(),
+                report.paragraphs.total, report.paragraphs.matched.size(), report.paragraphs.missing.size(),
+                report.elapsedMs);
+        return report;
+    }
+
+    /**
+     * 表格外段落：与 TenderPdfExtractor.writeDocxParagraphsToTxt 的编号一致（只给非空段落编号）
+     */
+    private static void collectParagraphs(XWPFDocument document, List<String[]> out) {
+        for (XWPFParagraph para : document.getParagraphs()) {
+            String text = para.getText();
+            if (text != null && !text.trim().isEmpty()) {
+                out.add(new String[]{String.format("p%03d", out.size() + 1), text.trim()});
+            }
+        }
+    }
+
+    /**
+     * 表格单元格：与 TenderPdfExtractor.writeDocxTableParagraphsToTxt 的编号一致（单元格内段落合并）
+     */
+    private static void collectTableCells(XWPFDocument document, List<String[]> out) {
+        List<XWPFTable> tables = document.getTables();
+        for (int tableIndex = 0; tableIndex < tables.size(); tableIndex++) {
+            String tableId = String.format("t%03d", tableIndex + 1);
+            List<XWPFTableRow> rows = tables.get(tableIndex).getRows();
+            for (int rowIndex = 0; rowIndex < rows.size(); rowIndex++) {
+                String rowId = tableId + "-r" + String.format("%03d", rowIndex + 1);
+                List<XWPFTableCell> cells = rows.get(rowIndex).getTableCells();
+                for (int cellIndex = 0; cellIndex < cells.size(); cellIndex++) {
+                    StringBuilder cellText = new StringBuilder();
+                    for (XWPFParagraph para : cells.get(cellIndex).getParagraphs()) {
+                        String text = para.getText();
+                        if (text != null && !text.isEmpty()) {
+                            if (cellText.length() > 0) {
+                                cellText.append("\n");
+                            }
+                            cellText.append(text);
+                        }
+                    }
+                    String cellId = rowId + "-c" + String.format("%03d", cellIndex + 1) + "-p001";
+                    out.add(new String[]{cellId, cellText.toString().trim()});
+                }
+            }
+        }
+    }
+
+    /**
+     * 表格段落：以 DOCX 为主，先全局精确匹配，再在同一 TR 内回退匹配（列偏移）
+     */
+    private static void compareTables(List<String[]> docxCells, Document pdfDoc, CompareReport report) {
+        // PDF 归一化文本 -> ID（后出现的覆盖先出现的，与控制台比较一致）
+        Map<String, String> pdfTextToId = new HashMap<>();
+        for (Element p : pdfDoc.select("p[id]")) {
+            String text = p.text().trim();
+            if (!text.isEmpty()) {
+                pdfTextToId.put(TextUtils.normalizeText(text), p.attr("id"));
+            }
+        }
+
+        // PDF tr -> [cellId, 归一化文本]
+        Map<String, List<String[]>> pdfTrToCells = new HashMap<>();
+        for (Element row : pdfDoc.select("table[id] tr[id]")) {
+            List<String[]> cells = new ArrayList<>();
+            for (Element td : row.select("td, th")) {
+                Element p = td.selectFirst("p[id]");
+                if (p != null) {
+                    cells.add(new String[]{p.attr("id"), TextUtils.normalizeText(p.text().trim())});
+                }
+            }
+            pdfTrToCells.put(row.attr("id"), cells);
+        }
+
+        CompareReport.Section section = report.tables;
+        for (String[] cell : docxCells) {
+            String docxId = cell[0];
+            String docxText = cell[1];
+            CompareReport.TableStats stats = tableStats(report.tableStats, docxId);
+            stats.total++;
+            section.total++;
+
+            if (docxText.isEmpty()) {
+                stats.empty++;
+                section.empty++;
+                continue;
+            }
+
+            String normalized = TextUtils.normalizeText(docxText);
+            String pdfId = pdfTextToId.get(normalized);
+            if (pdfId != null) {
+                stats.exactMatch++;
+                section.matched.add(new CompareReport.Item(docxId, pdfId, CompareReport.MATCH_EXACT, null));
+                continue;
+            }
+
+            String fallbackId = findInRow(pdfTrToCells.get(extractTrId(docxId)), normalized);
+            if (fallbackId != null) {
+                stats.trFallback++;
+                section.mismatched.add(new CompareReport.Item(docxId, fallbackId, CompareReport.MATCH_TR_FALLBACK,
+                        TextUtils.truncate(docxText, TEXT_PREVIEW_LENGTH)));
+                continue;
+            }
+
+            stats.notFound++;
+            section.missing.add(new CompareReport.Item(docxId, null, null, TextUtils.truncate(docxText, TEXT_PREVIEW_LENGTH)));
+        }
+    }
+
+    /**
+     * 表格外段落：以 PDF 为主，逐个在 DOCX 中查找（同一文本对应多个 DOCX ID 时取第一个）
+     */
+    private static void compareParagraphs(List<String[]> docxParagraphs, Document pdfDoc, CompareReport report) {
+        Map<String, String> docxTextToId = new HashMap<>();
+        for (String[] para : docxParagraphs) {
+            docxTextToId.putIfAbsent(TextUtils.normalizeText(para[1]), para[0]);
+        }
+
+        CompareReport.Section section = report.paragraphs;
+        for (Element p : pdfDoc.select("p")) {
+            section.total++;
+            String pdfText = p.text().trim();
+            if (pdfText.isEmpty()) {
+                section.empty++;
+                continue;
+            }
+            String pdfId = p.attr("id");
+            String docxId = docxTextToId.get(TextUtils.normalizeText(pdfText));
+            if (docxId != null) {
+                section.matched.add(new CompareReport.Item(docxId, pdfId, CompareReport.MATCH_EXACT, null));
+            } else {
+                section.missing.add(new CompareReport.Item(null, pdfId, null, TextUtils.truncate(pdfText, TEXT_PREVIEW_LENGTH)));
+            }
+        }
+    }
+
+    private static String findInRow(List<String[]> rowCells, String normalized) {
+        if (rowCells == null) {
+            return null;
+        }
+        for (String[] cell : rowCells) {
+            if (normalized.equals(cell[1])) {
+                return cell[0];
+            }
+        }
+        return null;
+    }
+
+    private static CompareReport.TableStats tableStats(Map<String, CompareReport.TableStats> all, String docxId) {
+        int dashIndex = docxId.indexOf('-');
+        String tableId = dashIndex > 0 ? docxId.substring(0, dashIndex) : docxId;
+        CompareReport.TableStats stats = all.get(tableId);
+        if (stats == null) {
+            stats = new CompareReport.TableStats();
+            all.put(tableId, stats);
+        }
+        return stats;
+    }
+
+    /**
+     * 从段落ID中提取TR ID（t001-r001-c001-p001 -> t001-r001）
+     */
+    private static String extractTrId(String paragraphId) {
+        String[] parts = paragraphId.split("-");
+        return parts.length >= 2 ? parts[0] + "-" + parts[1] : null;
+    }
+
+    private static Document parse(File file) throws IOException {
+        return Jsoup.parse(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+    }
+}
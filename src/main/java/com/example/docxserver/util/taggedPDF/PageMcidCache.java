@@ -1,5 +1,6 @@
 package com.example.docxserver.util.taggedPDF;
 
+import com.example.docxserver.util.common.ProgressListener;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.text.TextPosition;
@@ -44,6 +45,7 @@ public class PageMcidCache {
     private int cacheMisses = 0;
     private int pagesParsed = 0;
     private long totalParseTimeMs = 0;
+    private long glyphsParsed = 0;
 
     public PageMcidCache(PDDocument doc) {
         this.doc = doc;
@@ -135,6 +137,7 @@ public class PageMcidCache {
             String text = entry.getValue();
             List<TextPosition> positions = mcidPositions.getOrDefault(mcid, new ArrayList<>());
             pageCache.put(mcid, new McidTextInfo(text, positions));
+            glyphsParsed += positions.size();
         }
 
         cache.put(page, pageCache);
@@ -163,13 +166,25 @@ public class PageMcidCache {
      * @throws IOException IO异常
      */
     public void preloadAllPages() throws IOException {
+        preloadAllPages(ProgressListener.NONE);
+    }
+
+    /**
+     * 预热所有页面的 MCID 缓存（逐页回调进度）
+     *
+     * @param listener 进度回调
+     * @throws IOException 解析异常
+     */
+    public void preloadAllPages(ProgressListener listener) throws IOException {
         long startTime = System.currentTimeMillis();
         int totalPages = doc.getNumberOfPages();
         log.info("开始预热所有页面的 MCID 缓存，共 {} 页...", totalPages);
 
         for (int i = 0; i < totalPages; i++) {
+            listener.checkCancelled();
             PDPage page = doc.getPage(i);
             ensurePageParsed(page);
+            listener.onProgress(ProgressListener.STAGE_MCID_PRELOAD, i + 1, totalPages);
 
             // 每 20 页打印一次进度
             if ((i + 1) % 20 == 0 || i == totalPages - 1) {
@@ -197,6 +212,25 @@ public class PageMcidCache {
         );
     }
 
+    public int getCacheHits() {
+        return cacheHits;
+    }
+
+    public int getCacheMisses() {
+        return cacheMisses;
+    }
+
+    public int getPagesParsed() {
+        return pagesParsed;
+    }
+
+    /**
+     * 已解析的字形（TextPosition）总数
+     */
+    public long getGlyphsParsed() {
+        return glyphsParsed;
+    }
+
     /**
      * 清空缓存
      */
@@ -207,6 +241,7 @@ public class PageMcidCache {
         cacheMisses = 0;
         pagesParsed = 0;
         totalParseTimeMs = 0;
+        glyphsParsed = 0;
     }
 
     /**
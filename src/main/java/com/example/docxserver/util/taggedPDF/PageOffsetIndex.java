@@ -0,0 +1,270 @@
+package com.example.docxserver.util.taggedPDF;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * TXT 输出的按页偏移索引（{txt文件名}.pidx）
+ *
+ * 提取时记录每个元素（表格 / 段落）在 TXT 中的字节区间和所在页码范围，
+ * 按页读取时只 seek 到对应元素，不读取整个文件。
+ *
+ * 文件格式（大端）：
+ * - 头部：magic(int) version(int) pageCount(int) elementCount(int)
+ * - 页表：pageCount 项，第 p 页（1-based）为 [firstElement(int), endElement(int))，无元素的页为 [0, 0)
+ * - 元素表：elementCount 项，offset(long) length(int) firstPage(int) lastPage(int)，按输出顺序
+ */
+public class PageOffsetIndex {
+
+    public static final String FILE_SUFFIX = ".pidx";
+
+    private static final int MAGIC = 0x50494458;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int PAGE_ENTRY_SIZE = 8;
+    private static final int ELEMENT_ENTRY_SIZE = 20;
+
+    /**
+     * 索引文件路径
+     */
+    public static File indexFileFor(File txtFile) {
+        return new File(txtFile.getParentFile(), txtFile.getName() + FILE_SUFFIX);
+    }
+
+    /**
+     * 提取时记录元素区间（字符偏移），写文件时换算为 UTF-8 字节偏移
+     *
+     * 元素须按输出顺序记录且互不重叠（写文件时顺序扫描一遍缓冲区换算偏移），否则 add 抛出异常。
+     */
+    public static class Builder {
+        private final PDDocument doc;
+        private final int pageCount;
+        private Map<PDPage, Integer> pageNumbers;
+        /**
+         * [charStart, charEnd, firstPage, lastPage]
+         */
+        private final List<int[]> elements = new ArrayList<>();
+        /**
+         * 上一个元素的结束位置
+         */
+        private int lastEnd;
+
+        public Builder(PDDocument doc) {
+            this.doc = doc;
+            this.pageCount = doc.getNumberOfPages();
+        }
+
+        /**
+         * 记录一个元素（页码 1-based）
+         *
+         * @param charStart 元素在输出缓冲区中的起始位置
+         * @param charEnd 元素结束位置（不含）
+         * @param pages 元素所在页码，为空时不记录
+         * @throws IllegalArgumentException 区间无效，或与上一个元素重叠、不在其之后
+         */
+        public void add(int charStart, int charEnd, Collection<Integer> pages) {
+            if (charEnd < charStart || charStart < lastEnd) {
+                throw new IllegalArgumentException("元素区间须按输出顺序且互不重叠: [" + charStart + ", " + charEnd
+                        + ")，上一个元素结束于 " + lastEnd);
+            }
+            lastEnd = charEnd;
+            int first = Integer.MAX_VALUE;
+            int last = Integer.MIN_VALUE;
+            for (Integer p : pages) {
+                if (p != null && p >= 1 && p <= pageCount) {
+                    first = Math.min(first, p);
+                    last = Math.max(last, p);
+                }
+            }
+            if (first <= last) {
+                elements.add(new int[]{charStart, charEnd, first, last});
+            }
+        }
+
+        /**
+         * 记录一个元素（按 PDPage）
+         */
+        public void addPages(int charStart, int charEnd, Collection<PDPage> pages) {
+            if (pageNumbers == null) {
+                pageNumbers = new IdentityHashMap<>();
+                int index = 1;
+                for (PDPage page : doc.getPages()) {
+                    pageNumbers.put(page, index++);
+                }
+            }
+            List<Integer> numbers = new ArrayList<>(pages.size());
+            for (PDPage page : pages) {
+                numbers.add(pageNumbers.get(page));
+            }
+            add(charStart, charEnd, numbers);
+        }
+
+        /**
+         * 写入 TXT（UTF-8）和索引文件
+         *
+         * 元素区间须落在 content 之内（记录后缓冲区只能追加）。
+         *
+         * @param content 输出缓冲区
+         * @param txtFile TXT 文件
+         * @throws IOException 写入失败
+         */
+        public void write(CharSequence content, File txtFile) throws IOException {
+            long[] offsets = new long[elements.size()];
+            int[] lengths = new int[elements.size()];
+            try (OutputStream os = Files.newOutputStream(txtFile.toPath())) {
+                long bytes = 0;
+                int written = 0;
+                for (int i = 0; i < elements.size(); i++) {
+                    int[] e = elements.get(i);
+                    bytes += writeChars(os, content, written, e[0]);
+                    offsets[i] = bytes;
+                    int length = writeChars(os, content, e[0], e[1]);
+                    lengths[i] = length;
+                    bytes += length;
+                    written = e[1];
+                }
+                writeChars(os, content, written, content.length());
+            }
+
+            int[][] pageRanges = new int[pageCount + 1][];
+            for (int i = 0; i < elements.size(); i++) {
+                int[] e = elements.get(i);
+                for (int p = e[2]; p <= e[3]; p++) {
+                    if (pageRanges[p] == null) {
+                        pageRanges[p] = new int[]{i, i + 1};
+                    } else {
+                        pageRanges[p][1] = i + 1;
+                    }
+                }
+            }
+
+            File indexFile = indexFileFor(txtFile);
+            try (DataOutputStream dos = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(indexFile.toPath())))) {
+                dos.writeInt(MAGIC);
+                dos.writeInt(VERSION);
+                dos.writeInt(pageCount);
+                dos.writeInt(elements.size());
+                for (int p = 1; p <= pageCount; p++) {
+                    dos.writeInt(pageRanges[p] != null ? pageRanges[p][0] : 0);
+                    dos.writeInt(pageRanges[p] != null ? pageRanges[p][1] : 0);
+                }
+                for (int i = 0; i < elements.size(); i++) {
+                    int[] e = elements.get(i);
+                    dos.writeLong(offsets[i]);
+                    dos.writeInt(lengths[i]);
+                    dos.writeInt(e[2]);
+                    dos.writeInt(e[3]);
+                }
+            }
+        }
+
+        private static int writeChars(OutputStream os, CharSequence content, int start, int end) throws IOException {
+            if (end <= start) {
+                return 0;
+            }
+            byte[] bytes = content.subSequence(start, end).toString().getBytes(StandardCharsets.UTF_8);
+            os.write(bytes);
+            return bytes.length;
+        }
+    }
+
+    /**
+     * 按页读取的结果
+     */
+    public static class PageSlice {
+        public int pageCount;
+        public List<String> elements = new ArrayList<>();
+    }
+
+    /**
+     * 读取与 [fromPage, toPage] 有交集的元素（按输出顺序）
+     *
+     * @param txtFile TXT 文件（同目录下须有索引文件）
+     * @param fromPage 起始页（1-based，含）
+     * @param toPage 结束页（含）
+     * @return 元素原文及文档总页数；索引不存在时返回 null
+     * @throws IOException 读取失败或索引格式不符
+     */
+    public static PageSlice read(File txtFile, int fromPage, int toPage) throws IOException {
+        File indexFile = indexFileFor(txtFile);
+        if (!indexFile.exists()) {
+            return null;
+        }
+        PageSlice slice = new PageSlice();
+        try (RandomAccessFile index = new RandomAccessFile(indexFile, "r")) {
+            if (index.readInt() != MAGIC || index.readInt() != VERSION) {
+                throw new IOException("页索引格式不符: " + indexFile.getName());
+            }
+            int pageCount = index.readInt();
+            int elementCount = index.readInt();
+            slice.pageCount = pageCount;
+
+            int from = Math.max(1, fromPage);
+            int to = Math.min(pageCount, toPage);
+            if (from > to || elementCount == 0) {
+                return slice;
+            }
+
+            // 页表：取覆盖这些页的元素区间
+            ByteBuffer pages = readAt(index, HEADER_SIZE + (long) (from - 1) * PAGE_ENTRY_SIZE,
+                    (to - from + 1) * PAGE_ENTRY_SIZE);
+            int first = Integer.MAX_VALUE;
+            int end = 0;
+            for (int p = from; p <= to; p++) {
+                int pageFirst = pages.getInt();
+                int pageEnd = pages.getInt();
+                if (pageEnd > pageFirst) {
+                    first = Math.min(first, pageFirst);
+                    end = Math.max(end, pageEnd);
+                }
+            }
+            if (first >= end) {
+                return slice;
+            }
+
+            // 元素表：过滤出与页范围有交集的元素
+            long elementsStart = HEADER_SIZE + (long) pageCount * PAGE_ENTRY_SIZE;
+            ByteBuffer entries = readAt(index, elementsStart + (long) first * ELEMENT_ENTRY_SIZE,
+                    (end - first) * ELEMENT_ENTRY_SIZE);
+            try (RandomAccessFile txt = new RandomAccessFile(txtFile, "r")) {
+                for (int i = first; i < end; i++) {
+                    long offset = entries.getLong();
+                    int length = entries.getInt();
+                    int firstPage = entries.getInt();
+                    int lastPage = entries.getInt();
+                    if (lastPage < from || firstPage > to) {
+                        continue;
+                    }
+                    byte[] bytes = new byte[length];
+                    txt.seek(offset);
+                    txt.readFully(bytes);
+                    slice.elements.add(new String(bytes, StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return slice;
+    }
+
+    private static ByteBuffer readAt(RandomAccessFile file, long position, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        file.seek(position);
+        file.readFully(bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+}
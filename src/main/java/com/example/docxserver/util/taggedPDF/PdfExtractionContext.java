@@ -1,5 +1,6 @@
 package com.example.docxserver.util.taggedPDF;
 
+import com.example.docxserver.util.common.ProgressListener;
 import org.apache.pdfbox.Loader;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
@@ -47,6 +48,12 @@ public class PdfExtractionContext implements Closeable {
      */
     private String tableTxtPath;
 
+    /**
+     * 段落 TXT 和聚合 TXT 文件路径（由 PdfTableExtractor 生成后设置）
+     */
+    private String paragraphTxtPath;
+    private String mergedTxtPath;
+
     /**
      * 创建 PDF 提取上下文
      *
@@ -56,18 +63,38 @@ public class PdfExtractionContext implements Closeable {
      * @throws IOException 文件读取异常
      */
     public PdfExtractionContext(String pdfPath) throws IOException {
-        this.pdfPath = pdfPath;
-        File pdfFile = new File(pdfPath);
+        this(pdfPath, ProgressListener.NONE);
+    }
 
-        if (!pdfFile.exists()) {
-            throw new IOException("PDF 文件不存在: " + pdfPath);
-        }
+    /**
+     * 创建 PDF 提取上下文（预热 MCID 缓存时回调进度）
+     *
+     * @param pdfPath  PDF 文件路径
+     * @param listener 进度回调
+     * @throws IOException 文件读取异常
+     */
+    public PdfExtractionContext(String pdfPath, ProgressListener listener) throws IOException {
+        this(load(pdfPath), pdfPath, listener);
+    }
 
-        long startTime = System.currentTimeMillis();
-        log.info("开始初始化 PDF 提取上下文: {}", pdfFile.getName());
+    /**
+     * 从内存中的 PDF 创建提取上下文（小文档快速通道，不读文件）
+     *
+     * @param pdfBytes PDF 内容
+     * @param pdfPath  PDF 落盘路径（只用于 getPdfPath 和日志，调用时文件可以尚不存在）
+     * @param listener 进度回调
+     * @throws IOException PDF 解析异常
+     */
+    public PdfExtractionContext(byte[] pdfBytes, String pdfPath, ProgressListener listener) throws IOException {
+        this(Loader.loadPDF(pdfBytes), pdfPath, listener);
+    }
 
-        // 1. 打开 PDF 文档
-        this.doc = Loader.loadPDF(pdfFile);
+    private PdfExtractionContext(PDDocument doc, String pdfPath, ProgressListener listener) throws IOException {
+        this.pdfPath = pdfPath;
+        this.doc = doc;
+
+        long startTime = System.currentTimeMillis();
+        log.info("开始初始化 PDF 提取上下文: {}", new File(pdfPath).getName());
 
         // 2. 获取结构树根节点
         if (doc.getDocumentCatalog() == null || doc.getDocumentCatalog().getStructureTreeRoot() == null) {
@@ -78,7 +105,7 @@ public class PdfExtractionContext implements Closeable {
 
         // 3. 创建并预热 MCID 缓存
         this.mcidCache = new PageMcidCache(doc);
-        mcidCache.preloadAllPages();
+        mcidCache.preloadAllPages(listener);
 
         // 4. 收集所有表格的 MCID（按页分桶）
         this.tableMCIDsByPage = new HashMap<>();
@@ -99,6 +126,17 @@ public class PdfExtractionContext implements Closeable {
                 doc.getNumberOfPages(), totalTableMCIDs, elapsed);
     }
 
+    /**
+     * 打开 PDF 文件
+     */
+    private static PDDocument load(String pdfPath) throws IOException {
+        File pdfFile = new File(pdfPath);
+        if (!pdfFile.exists()) {
+            throw new IOException("PDF 文件不存在: " + pdfPath);
+        }
+        return Loader.loadPDF(pdfFile);
+    }
+
     public PDDocument getDoc() {
         return doc;
     }
@@ -149,4 +187,32 @@ public class PdfExtractionContext implements Closeable {
     public String getTableTxtPath() {
         return tableTxtPath;
     }
+
+    /**
+     * 设置段落 TXT 文件路径
+     */
+    public void setParagraphTxtPath(String paragraphTxtPath) {
+        this.paragraphTxtPath = paragraphTxtPath;
+    }
+
+    /**
+     * 获取段落 TXT 文件路径
+     */
+    public String getParagraphTxtPath() {
+        return paragraphTxtPath;
+    }
+
+    /**
+     * 设置聚合 TXT 文件路径
+     */
+    public void setMergedTxtPath(String mergedTxtPath) {
+        this.mergedTxtPath = mergedTxtPath;
+    }
+
+    /**
+     * 获取聚合 TXT 文件路径
+     */
+    public String getMergedTxtPath() {
+        return mergedTxtPath;
+    }
 }
@@ -3,6 +3,7 @@ package com.example.docxserver.util.taggedPDF;
 import com.example.docxserver.util.aspose.LineLevelArtifactGenerator;
 import com.example.docxserver.util.aspose.typeUtil.PdfListParser;
 import com.example.docxserver.util.aspose.typeUtil.PdfTocParser;
+import com.example.docxserver.util.common.ProgressListener;
 import com.example.docxserver.util.taggedPDF.dto.Counter;
 import com.example.docxserver.util.taggedPDF.dto.McidPageInfo;
 import com.example.docxserver.util.taggedPDF.dto.MergedElement;
@@ -61,6 +62,23 @@ public class PdfTableExtractor {
      */
     public static void extract(String taskId, String pdfPath, String outputDir,
                                String[] outputTypes, boolean includeMcid, String originalName) throws IOException {
+        extract(taskId, pdfPath, outputDir, outputTypes, includeMcid, originalName, ProgressListener.NONE);
+    }
+
+    /**
+     * 统一的 PDF 提取入口（回调 MCID 预热和第二遍遍历的进度）
+     *
+     * @param taskId      任务ID
+     * @param pdfPath     PDF文件路径
+     * @param outputDir   输出目录
+     * @param outputTypes 输出类型数组，支持 "txt"（表格/段落TXT）和 "infer"（AI训练JSON）
+     * @param includeMcid 是否在TXT输出中包含MCID属性
+     * @param originalName 原始文件名（不含扩展名），用于AI训练JSON文件名
+     * @param listener    进度回调
+     * @throws IOException 文件读写异常
+     */
+    public static void extract(String taskId, String pdfPath, String outputDir, String[] outputTypes,
+                               boolean includeMcid, String originalName, ProgressListener listener) throws IOException {
         // 解析输出类型
         Set<String> types = Arrays.stream(outputTypes)
                 .map(String::toLowerCase)
@@ -77,10 +95,10 @@ public class PdfTableExtractor {
         log.info("开始 PDF 提取: outputTypes={}, includeMcid={}", Arrays.toString(outputTypes), includeMcid);
 
         // 使用共享 Context，避免重复打开文件和预热缓存
-        try (PdfExtractionContext ctx = new PdfExtractionContext(pdfPath)) {
+        try (PdfExtractionContext ctx = new PdfExtractionContext(pdfPath, listener)) {
             // 根据输出类型串行执行（共享同一个 PDDocument，避免并发问题）
             if (needTxt) {
-                extractTxtWithContext(ctx, taskId, outputDir, includeMcid);
+                extractTxtWithContext(ctx, taskId, outputDir, includeMcid, listener);
             }
 
             if (needInfer) {
@@ -89,12 +107,20 @@ public class PdfTableExtractor {
 
             log.info("PDF 提取完成: {}", ctx.getCacheStats());
         } finally {
-            // 清理共享的 Parser
-            sharedListParser.remove();
-            sharedTocParser.remove();
+            releaseThreadResources();
         }
     }
 
+    /**
+     * 清理当前线程共享的 Parser（每个文档处理完后调用）
+     *
+     * 直接调用 extractTxtWithContext 的调用方需要在文档处理结束后自行调用。
+     */
+    public static void releaseThreadResources() {
+        sharedListParser.remove();
+        sharedTocParser.remove();
+    }
+
     /**
      * 使用共享 Context 提取 TXT（表格结构 + 段落结构 + 聚合文件）
      *
@@ -105,15 +131,39 @@ public class PdfTableExtractor {
      * @throws IOException 文件读写异常
      */
     public static void extractTxtWithContext(PdfExtractionContext ctx, String taskId, String outputDir, boolean includeMcid) throws IOException {
-        log.info("开始提取 TXT（使用共享 Context）...");
+        extractTxtWithContext(ctx, taskId, outputDir, includeMcid, ProgressListener.NONE);
+    }
+
+    /**
+     * 使用共享 Context 提取 TXT（第二遍遍历时按根元素回调进度）
+     *
+     * @param ctx         共享上下文
+     * @param taskId      任务ID
+     * @param outputDir   输出目录
+     * @param includeMcid 是否包含MCID属性
+     * @param listener    进度回调
+     * @throws IOException 文件读写异常
+     */
+    public static void extractTxtWithContext(PdfExtractionContext ctx, String taskId, String outputDir, boolean includeMcid,
+                                             ProgressListener listener) throws IOException {
         long startTime = System.currentTimeMillis();
+        TxtOutput output = extractTxtToMemory(ctx, includeMcid, listener);
+        output.write(ctx, taskId, outputDir);
+        long elapsed = System.currentTimeMillis() - startTime;
+        log.info("TXT 提取完成，总耗时: {} ms", elapsed);
+    }
 
-        // 生成带时间戳的输出文件名
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd_HHmmss");
-        String timestamp = sdf.format(new Date());
-        String tableOutputPath = outputDir + File.separator + taskId + "_pdf_" + timestamp + ".txt";
-        String paragraphOutputPath = outputDir + File.separator + taskId + "_pdf_paragraph_" + timestamp + ".txt";
-        String mergedOutputPath = outputDir + File.separator + taskId + "_merged_" + timestamp + ".txt";
+    /**
+     * 使用共享 Context 提取 TXT 到内存（不写文件，供小文档同步返回）
+     *
+     * @param ctx         共享上下文
+     * @param includeMcid 是否包含MCID属性
+     * @param listener    进度回调
+     * @return 表格/段落 TXT 及按页偏移索引，调用 {@link TxtOutput#write} 落盘
+     */
+    public static TxtOutput extractTxtToMemory(PdfExtractionContext ctx, boolean includeMcid,
+                                               ProgressListener listener) throws IOException {
+        log.info("开始提取 TXT（使用共享 Context）...");
 
         StringBuilder tableOutput = new StringBuilder();
         StringBuilder paragraphOutput = new StringBuilder();
@@ -127,37 +177,94 @@ public class PdfTableExtractor {
         log.info("提取表格和段落...");
         long pass2Start = System.currentTimeMillis();
         Counter tableCounter = new Counter();
-
-        for (Object kid : structTreeRoot.getKids()) {
+        tableCounter.tablePageIndex = new PageOffsetIndex.Builder(doc);
+        tableCounter.paragraphPageIndex = new PageOffsetIndex.Builder(doc);
+        List<Object> rootKids = structTreeRoot.getKids();
+        int totalRootKids = rootKids.size();
+        int rootKidIndex = 0;
+
+        for (Object kid : rootKids) {
+            listener.checkCancelled();
+            rootKidIndex++;
             if (kid instanceof PDStructureElement) {
                 PDStructureElement element = (PDStructureElement) kid;
                 extractTablesFromElement(element, tableOutput, paragraphOutput, tableCounter, doc,
                         tableMCIDsByPage, null, structTreeRoot, includeMcid, mcidCache);
             }
+            listener.onProgress(ProgressListener.STAGE_EXTRACT_TXT, rootKidIndex, totalRootKids);
         }
 
         long pass2End = System.currentTimeMillis();
         log.info("共提取 {} 个表格, {} 个段落，耗时: {} ms",
                 tableCounter.tableIndex, tableCounter.paragraphIndex, (pass2End - pass2Start));
 
-        // 写入表格文件
-        Files.write(Paths.get(tableOutputPath), tableOutput.toString().getBytes(StandardCharsets.UTF_8));
-        log.info("PDF表格结构已写入到: {}", tableOutputPath);
+        return new TxtOutput(tableOutput, paragraphOutput, tableCounter);
+    }
 
-        // 保存表格 TXT 路径到 Context（供 LineLevelArtifactGenerator 使用）
-        ctx.setTableTxtPath(tableOutputPath);
+    /**
+     * 内存中的 TXT 提取结果（表格、段落及其按页偏移索引）
+     */
+    public static class TxtOutput {
+        private final StringBuilder tableOutput;
+        private final StringBuilder paragraphOutput;
+        private final Counter counter;
+
+        private TxtOutput(StringBuilder tableOutput, StringBuilder paragraphOutput, Counter counter) {
+            this.tableOutput = tableOutput;
+            this.paragraphOutput = paragraphOutput;
+            this.counter = counter;
+        }
 
-        // 写入段落文件
-        Files.write(Paths.get(paragraphOutputPath), paragraphOutput.toString().getBytes(StandardCharsets.UTF_8));
-        log.info("PDF段落结构已写入到: {}", paragraphOutputPath);
+        public String getTableTxt() {
+            return tableOutput.toString();
+        }
 
-        // 生成聚合文件
-        String mergedContent = generateMergedContent(tableOutput.toString(), paragraphOutput.toString());
-        Files.write(Paths.get(mergedOutputPath), mergedContent.getBytes(StandardCharsets.UTF_8));
-        log.info("PDF聚合结构已写入到: {}", mergedOutputPath);
+        public String getParagraphTxt() {
+            return paragraphOutput.toString();
+        }
 
-        long elapsed = System.currentTimeMillis() - startTime;
-        log.info("TXT 提取完成，总耗时: {} ms", elapsed);
+        public int getTableCount() {
+            return counter.tableIndex;
+        }
+
+        public int getParagraphCount() {
+            return counter.paragraphIndex;
+        }
+
+        /**
+         * 写入表格、段落、聚合 TXT 和按页偏移索引，并把路径保存到 Context
+         *
+         * @param ctx       共享上下文（供 LineLevelArtifactGenerator 使用）
+         * @param taskId    任务ID
+         * @param outputDir 输出目录
+         * @throws IOException 文件写入异常
+         */
+        public void write(PdfExtractionContext ctx, String taskId, String outputDir) throws IOException {
+            // 生成带时间戳的输出文件名
+            SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd_HHmmss");
+            String timestamp = sdf.format(new Date());
+            String tableOutputPath = outputDir + File.separator + taskId + "_pdf_" + timestamp + ".txt";
+            String paragraphOutputPath = outputDir + File.separator + taskId + "_pdf_paragraph_" + timestamp + ".txt";
+            String mergedOutputPath = outputDir + File.separator + taskId + "_merged_" + timestamp + ".txt";
+
+            // 写入表格文件（同时写入按页偏移索引）
+            counter.tablePageIndex.write(tableOutput, new File(tableOutputPath));
+            log.info("PDF表格结构已写入到: {}", tableOutputPath);
+
+            // 保存表格 TXT 路径到 Context（供 LineLevelArtifactGenerator 使用）
+            ctx.setTableTxtPath(tableOutputPath);
+
+            // 写入段落文件（同时写入按页偏移索引）
+            counter.paragraphPageIndex.write(paragraphOutput, new File(paragraphOutputPath));
+            log.info("PDF段落结构已写入到: {}", paragraphOutputPath);
+            ctx.setParagraphTxtPath(paragraphOutputPath);
+
+            // 生成聚合文件
+            String mergedContent = generateMergedContent(tableOutput.toString(), paragraphOutput.toString());
+            Files.write(Paths.get(mergedOutputPath), mergedContent.getBytes(StandardCharsets.UTF_8));
+            log.info("PDF聚合结构已写入到: {}", mergedOutputPath);
+            ctx.setMergedTxtPath(mergedOutputPath);
+        }
     }
 
     // ==================== 旧方法（向后兼容） ====================
@@ -747,6 +854,7 @@ public class PdfTableExtractor {
             tableCounter.finishTable(tableId);
 
             // 构建表格开始标签（带page和bbox属性）
+            int tableStart = tableOutput.length();
             tableOutput.append("<table id=\"").append(tableId).append("\" type=\"Table\"");
 
             // 添加page属性（使用 | 分隔符，与bbox格式保持一致）
@@ -768,6 +876,9 @@ public class PdfTableExtractor {
             tableOutput.append(">\n");
             tableOutput.append(tableContent);
             tableOutput.append("</table>\n");
+            if (tableCounter.tablePageIndex != null) {
+                tableCounter.tablePageIndex.add(tableStart, tableOutput.length(), tablePages);
+            }
         }
 
         // 表格外段落提取逻辑
@@ -846,6 +957,7 @@ public class PdfTableExtractor {
                     }
 
                     // 输出XML（带type属性和bbox）
+                    int paraStart = paragraphOutput.length();
                     paragraphOutput.append("<p id=\"").append(paraId)
                           .append("\" type=\"").append(structType).append("\"");
 
@@ -863,6 +975,7 @@ public class PdfTableExtractor {
                     paragraphOutput.append(">")
                           .append(TextUtils.escapeHtml(paraText))
                           .append("</p>\n");
+                    recordParagraphPages(tableCounter, paraStart, paragraphOutput.length(), elementMcidsByPage);
 
                     // 已经提取了该元素及其所有子元素的文本，不再递归
                     return;
@@ -1027,6 +1140,7 @@ public class PdfTableExtractor {
             String bbox = computeBoundingBox(allPositions);
 
             // 输出 XML
+            int paraStart = paragraphOutput.length();
             paragraphOutput.append("<p id=\"").append(paraId)
                   .append("\" type=\"LI\"");
 
@@ -1045,6 +1159,7 @@ public class PdfTableExtractor {
             paragraphOutput.append(">")
                   .append(TextUtils.escapeHtml(fullText))
                   .append("</p>\n");
+            recordParagraphPages(tableCounter, paraStart, paragraphOutput.length(), liMcidsByPage);
         }
 
         // 递归处理嵌套列表
@@ -1193,6 +1308,7 @@ public class PdfTableExtractor {
                 }
 
                 // 输出 XML
+                int paraStart = paragraphOutput.length();
                 paragraphOutput.append("<p id=\"").append(paraId)
                       .append("\" type=\"LI\"");
 
@@ -1211,6 +1327,7 @@ public class PdfTableExtractor {
                 paragraphOutput.append(">")
                       .append(TextUtils.escapeHtml(fullText))
                       .append("</p>\n");
+                recordParagraphPages(tableCounter, paraStart, paragraphOutput.length(), mcidsByPage);
             }
 
             // 递归处理子列表
@@ -1307,6 +1424,7 @@ public class PdfTableExtractor {
                 }
 
                 // 输出 XML
+                int paraStart = paragraphOutput.length();
                 paragraphOutput.append("<p id=\"").append(paraId)
                       .append("\" type=\"TOCI\"");
 
@@ -1325,6 +1443,7 @@ public class PdfTableExtractor {
                 paragraphOutput.append(">")
                       .append(TextUtils.escapeHtml(fullText))
                       .append("</p>\n");
+                recordParagraphPages(tableCounter, paraStart, paragraphOutput.length(), mcidsByPage);
             }
 
             // 递归处理子目录条目
@@ -1404,4 +1523,13 @@ public class PdfTableExtractor {
 
         return result.length() > 0 ? result.toString() : null;
     }
-}
\ No newline at end of file
+
+    /**
+     * 记录表格外段落的页码范围（按页偏移索引）
+     */
+    private static void recordParagraphPages(Counter tableCounter, int start, int end, Map<PDPage, Set<Integer>> mcidsByPage) {
+        if (tableCounter.paragraphPageIndex != null && mcidsByPage != null) {
+            tableCounter.paragraphPageIndex.addPages(start, end, mcidsByPage.keySet());
+        }
+    }
+}
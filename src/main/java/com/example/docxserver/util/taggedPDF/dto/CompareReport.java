@@ -0,0 +1,87 @@
+package com.example.docxserver.util.taggedPDF.dto;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DOCX 与 PDF 比较报告
+ *
+ * tables：表格段落，以 DOCX 为主，逐个检查 DOCX 单元格在 PDF 中能否找到
+ * paragraphs：表格外段落，以 PDF 为主，逐个检查 PDF 段落在 DOCX 中能否找到（与原控制台比较一致）
+ */
+public class CompareReport {
+
+    public static final String MATCH_EXACT = "EXACT";
+    public static final String MATCH_TR_FALLBACK = "TR_FALLBACK";
+
+    public String taskId;
+    /**
+     * 输入产物版本（DOCX、表格TXT、段落TXT 的 SHA-256 组合），产物变化后报告失效
+     */
+    public String version;
+    public long createTime;
+    public long elapsedMs;
+
+    public Section tables = new Section();
+    public Section paragraphs = new Section();
+
+    /**
+     * 按表格聚合的统计（tableId -> 统计）
+     */
+    public Map<String, TableStats> tableStats = new LinkedHashMap<>();
+
+    /**
+     * 一类段落的比较结果
+     */
+    public static class Section {
+        public int total;
+        public int empty;
+        /**
+         * 文本全局精确匹配
+         */
+        public List<Item> matched = new ArrayList<>();
+        /**
+         * 文本在同一行的其他单元格中找到（TR_FALLBACK，列偏移）
+         */
+        public List<Item> mismatched = new ArrayList<>();
+        /**
+         * 另一侧找不到的段落
+         */
+        public List<Item> missing = new ArrayList<>();
+    }
+
+    /**
+     * 单个段落的比较结果
+     */
+    public static class Item {
+        public String docxId;
+        public String pdfId;
+        public String matchType;
+        /**
+         * 文本摘要（只在 mismatched/missing 中给出）
+         */
+        public String text;
+
+        public Item() {}
+
+        public Item(String docxId, String pdfId, String matchType, String text) {
+            this.docxId = docxId;
+            this.pdfId = pdfId;
+            this.matchType = matchType;
+            this.text = text;
+        }
+    }
+
+    /**
+     * 单个表格的统计
+     */
+    public static class TableStats {
+        public int total;
+        public int exactMatch;
+        public int trFallback;
+        public int notFound;
+        public int empty;
+    }
+}
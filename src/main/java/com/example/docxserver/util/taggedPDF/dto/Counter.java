@@ -1,5 +1,6 @@
 package com.example.docxserver.util.taggedPDF.dto;
 
+import com.example.docxserver.util.taggedPDF.PageOffsetIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -15,6 +16,10 @@ public class Counter {
     public int rowIndex = 0;        // 当前表格的行计数（用于细粒度日志）
     public int cellIndex = 0;       // 当前表格的单元格计数
 
+    // 按页偏移索引（为 null 时不记录）
+    public PageOffsetIndex.Builder tablePageIndex;
+    public PageOffsetIndex.Builder paragraphPageIndex;
+
     // 用于定期打印进度的时间戳
     private long lastLogTime = System.currentTimeMillis();
     private long startTime = System.currentTimeMillis();
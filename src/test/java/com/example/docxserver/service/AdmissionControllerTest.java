@@ -0,0 +1,253 @@
+package com.example.docxserver.service;
+
+import com.example.docxserver.util.docx.DocxCostEstimator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdmissionControllerTest {
+
+    private AdmissionController controller;
+
+    /**
+     * 已启动的任务（按启动顺序）及其结束 Future
+     */
+    private final List<String> started = new ArrayList<>();
+    private final Map<String, CompletableFuture<Void>> running = new HashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        controller = new AdmissionController();
+        ReflectionTestUtils.setField(controller, "enabled", true);
+        ReflectionTestUtils.setField(controller, "cpuBudgetSeconds", 10.0);
+        ReflectionTestUtils.setField(controller, "heapBudgetMb", 1000L);
+        ReflectionTestUtils.setField(controller, "maxQueued", 3);
+        controller.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        controller.shutdown();
+    }
+
+    @Test
+    void startsImmediatelyWhileBudgetFits() {
+        submit("a", 4, TaskPriority.BULK);
+        submit("b", 4, TaskPriority.BULK);
+
+        assertEquals(Arrays.asList("a", "b"), started);
+        assertEquals(8.0, controller.getStats().get("cpuInFlightSeconds"));
+    }
+
+    @Test
+    void queuesUntilBudgetIsReleased() {
+        submit("a", 6, TaskPriority.BULK);
+        CompletableFuture<Void> queued = submit("b", 6, TaskPriority.BULK);
+
+        assertEquals(Collections.singletonList("a"), started);
+        assertTrue(controller.isQueued("b"));
+        assertFalse(queued.isDone());
+
+        finish("a");
+        assertEquals(Arrays.asList("a", "b"), started);
+        assertFalse(controller.isQueued("b"));
+
+        // 排队任务返回的 Future 在任务真正结束后完成
+        assertFalse(queued.isDone());
+        finish("b");
+        assertTrue(queued.isDone());
+    }
+
+    @Test
+    void admitsOversizedCpuEstimateWhenNothingIsRunning() {
+        submit("huge", 50, TaskPriority.BULK);
+
+        assertEquals(Collections.singletonList("huge"), started);
+    }
+
+    @Test
+    void startsQueuedInteractiveBeforeEarlierBulk() {
+        submit("running", 10, TaskPriority.BULK);
+        submit("bulk", 5, TaskPriority.BULK);
+        submit("interactive", 5, TaskPriority.INTERACTIVE);
+
+        finish("running");
+        assertEquals(Arrays.asList("running", "interactive", "bulk"), started);
+    }
+
+    @Test
+    void keepsFifoWithinLane() {
+        submit("running", 8, TaskPriority.BULK);
+        submit("big", 6, TaskPriority.BULK);
+        // 预算够小任务开始，但同通道已有任务在排队：不插队
+        submit("small", 1, TaskPriority.BULK);
+        assertEquals(Collections.singletonList("running"), started);
+
+        finish("running");
+        assertEquals(Arrays.asList("running", "big", "small"), started);
+    }
+
+    @Test
+    void bulkWaitsBehindQueuedInteractiveHead() {
+        submit("running", 8, TaskPriority.BULK);
+        submit("interactive", 6, TaskPriority.INTERACTIVE);
+        // 交互通道队首还在等待预算：BULK 即使放得下也不插队
+        submit("bulk", 1, TaskPriority.BULK);
+        assertEquals(Collections.singletonList("running"), started);
+
+        finish("running");
+        assertEquals(Arrays.asList("running", "interactive", "bulk"), started);
+    }
+
+    @Test
+    void interactiveDoesNotWaitBehindQueuedBulk() {
+        submit("running", 8, TaskPriority.BULK);
+        submit("bulk", 6, TaskPriority.BULK);
+        submit("interactive", 1, TaskPriority.INTERACTIVE);
+
+        assertEquals(Arrays.asList("running", "interactive"), started);
+    }
+
+    @Test
+    void rejectsWhenQueueIsFull() {
+        submit("running", 10, TaskPriority.BULK);
+        submit("q1", 1, TaskPriority.BULK);
+        submit("q2", 1, TaskPriority.INTERACTIVE);
+        submit("q3", 1, TaskPriority.BULK);
+
+        assertThrows(RejectedExecutionException.class, () -> submit("q4", 1, TaskPriority.INTERACTIVE));
+        assertEquals(1L, controller.getStats().get("rejected"));
+    }
+
+    @Test
+    void rejectsDocumentLargerThanHeapBudget() {
+        DocxCostEstimator.Estimate estimate = estimate(1, 2000);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> controller.submit("huge", estimate, TaskPriority.INTERACTIVE, () -> start("huge")));
+        assertTrue(started.isEmpty());
+    }
+
+    @Test
+    void removesQueuedTask() {
+        submit("running", 10, TaskPriority.BULK);
+        CompletableFuture<Void> queued = submit("queued", 1, TaskPriority.BULK);
+
+        assertTrue(controller.remove("queued"));
+        assertTrue(queued.isDone());
+        assertFalse(controller.remove("queued"));
+
+        finish("running");
+        assertEquals(Collections.singletonList("running"), started);
+    }
+
+    @Test
+    void synchronousAcquireDoesNotQueue() {
+        submit("running", 8, TaskPriority.BULK);
+
+        assertFalse(controller.tryAcquire("sync", estimate(5, 100)));
+        assertTrue(controller.tryAcquire("sync", estimate(2, 100)));
+        controller.release("sync");
+        assertEquals(8.0, controller.getStats().get("cpuInFlightSeconds"));
+    }
+
+    @Test
+    void claimReservationDoesNotCountAsRejection() {
+        submit("running", 8, TaskPriority.BULK);
+        submit("interactive", 5, TaskPriority.INTERACTIVE);
+
+        assertFalse(controller.tryReserve("claimed", estimate(5, 100), TaskPriority.BULK));
+        // 交互通道有任务在排队：BULK 认领不插队，即使预算放得下
+        assertFalse(controller.tryReserve("claimed", estimate(1, 100), TaskPriority.BULK));
+        assertEquals(0L, controller.getStats().get("rejected"));
+
+        finish("running");
+        assertTrue(controller.tryReserve("claimed", estimate(1, 100), TaskPriority.BULK));
+        controller.release("claimed");
+    }
+
+    @Test
+    void enqueuedTaskWaitsForBudget() {
+        submit("running", 8, TaskPriority.BULK);
+        controller.enqueue("deferred", estimate(5, 10), TaskPriority.BULK, () -> start("deferred"));
+        assertTrue(controller.isQueued("deferred"));
+
+        finish("running");
+        assertEquals(Arrays.asList("running", "deferred"), started);
+    }
+
+    @Test
+    void enqueuedTaskIsRetriedWhenPipelineIsFull() throws InterruptedException {
+        CountDownLatch startedLatch = new CountDownLatch(1);
+        AtomicInteger attempts = new AtomicInteger();
+        controller.enqueue("retried", estimate(1, 10), TaskPriority.BULK, () -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new RejectedExecutionException("入口队列已满");
+            }
+            startedLatch.countDown();
+            return new CompletableFuture<>();
+        });
+
+        // 第一次启动被拒绝：放回队首，由重试调度再次启动，不在调用线程上等待
+        assertTrue(controller.isQueued("retried"));
+        assertTrue(startedLatch.await(5, TimeUnit.SECONDS));
+        assertFalse(controller.isQueued("retried"));
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    void suspendListsQueuedTasksInteractiveFirst() {
+        submit("running", 10, TaskPriority.BULK);
+        submit("bulk", 1, TaskPriority.BULK);
+        submit("interactive", 1, TaskPriority.INTERACTIVE);
+
+        List<AdmissionController.QueuedTask> queued = controller.suspend();
+        assertEquals("interactive", queued.get(0).taskId);
+        assertEquals("bulk", queued.get(1).taskId);
+
+        // 停机后结束的任务不再启动排队任务，也不接收新任务
+        finish("running");
+        assertEquals(Collections.singletonList("running"), started);
+        assertThrows(RejectedExecutionException.class, () -> submit("late", 1, TaskPriority.INTERACTIVE));
+    }
+
+    private CompletableFuture<Void> submit(String taskId, double cpuSeconds, TaskPriority priority) {
+        return controller.submit(taskId, estimate(cpuSeconds, 10), priority, () -> start(taskId));
+    }
+
+    private CompletableFuture<Void> start(String taskId) {
+        started.add(taskId);
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        running.put(taskId, future);
+        return future;
+    }
+
+    private void finish(String taskId) {
+        running.get(taskId).complete(null);
+    }
+
+    private static DocxCostEstimator.Estimate estimate(double cpuSeconds, long heapMb) {
+        DocxCostEstimator.Estimate estimate = new DocxCostEstimator.Estimate();
+        estimate.cpuSeconds = cpuSeconds;
+        estimate.heapMb = heapMb;
+        return estimate;
+    }
+}
@@ -0,0 +1,231 @@
+package com.example.docxserver.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConverterRouterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private ConverterRouter router;
+    private File docx;
+    private File pdf;
+    private File cleanedDocx;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        docx = tempDir.resolve("input.docx").toFile();
+        Files.write(docx.toPath(), "docx".getBytes(StandardCharsets.UTF_8));
+        pdf = tempDir.resolve("output.pdf").toFile();
+        cleanedDocx = tempDir.resolve("cleaned.docx").toFile();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (router != null) {
+            router.shutdown();
+        }
+    }
+
+    @Test
+    void routesToFastestBackendOnceBothAreMeasured() throws Exception {
+        StandInConverter slow = new StandInConverter("slow", 80, false);
+        StandInConverter fast = new StandInConverter("fast", 5, false);
+        router = newRouter(false, slow, fast);
+
+        // 冷启动：按配置顺序各试一次
+        assertEquals("slow", convert());
+        assertEquals("fast", convert());
+        for (int i = 0; i < 5; i++) {
+            assertEquals("fast", convert());
+        }
+        assertEquals(1, slow.calls.get());
+        assertEquals("pdf:fast", read(pdf));
+        assertEquals("docx", read(cleanedDocx));
+    }
+
+    @Test
+    void fallsBackToNextBackendWhenConversionFails() throws Exception {
+        StandInConverter broken = new StandInConverter("broken", 0, true);
+        StandInConverter healthy = new StandInConverter("healthy", 0, false);
+        router = newRouter(false, broken, healthy);
+
+        assertEquals("healthy", convert());
+        assertEquals("pdf:healthy", read(pdf));
+        assertEquals(1, broken.calls.get());
+        assertNoPartFiles();
+        assertEquals(1L, router.getStats().get("fallbacks"));
+    }
+
+    @Test
+    void pausesBackendWithHighErrorRate() throws Exception {
+        StandInConverter broken = new StandInConverter("broken", 0, true);
+        StandInConverter healthy = new StandInConverter("healthy", 50, false);
+        router = newRouter(false, broken, healthy);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals("healthy", convert());
+        }
+        // min-samples=3：失败 3 次后不再尝试（probe-interval 足够长，测试期间不会试探）
+        assertEquals(3, broken.calls.get());
+        assertFalse((Boolean) backendStats("broken").get("healthy"));
+        assertTrue((Boolean) backendStats("healthy").get("healthy"));
+    }
+
+    @Test
+    void probesPausedBackendAndRestoresItOnSuccess() throws Exception {
+        StandInConverter flaky = new StandInConverter("flaky", 0, true);
+        StandInConverter healthy = new StandInConverter("healthy", 20, false);
+        router = newRouter(false, flaky, healthy);
+        ReflectionTestUtils.setField(router, "probeIntervalMs", 0L);
+
+        for (int i = 0; i < 3; i++) {
+            convert();
+        }
+        flaky.fail = false;
+        // 第一次发现不健康时开始暂停，下一次即试探
+        assertEquals("healthy", convert());
+        assertEquals("flaky", convert());
+        assertTrue((Boolean) backendStats("flaky").get("healthy"));
+        assertEquals("flaky", convert());
+    }
+
+    @Test
+    void hedgesSlowPrimaryWithNextBackend() throws Exception {
+        StandInConverter slow = new StandInConverter("slow", 1000, false);
+        StandInConverter fast = new StandInConverter("fast", 10, false);
+        router = newRouter(true, slow, fast);
+
+        long start = System.currentTimeMillis();
+        assertEquals("fast", convert());
+        assertTrue(System.currentTimeMillis() - start < 800, "对冲后不应等待主后端完成");
+        assertEquals("pdf:fast", read(pdf));
+        assertEquals(1L, router.getStats().get("hedges"));
+        assertEquals(1L, router.getStats().get("hedgeWins"));
+
+        // 落选的尝试完成后丢弃产物，不覆盖生效的结果
+        Thread.sleep(1300);
+        assertEquals("pdf:fast", read(pdf));
+        assertNoPartFiles();
+    }
+
+    @Test
+    void doesNotHedgeWhenPrimaryFinishesInTime() throws Exception {
+        StandInConverter primary = new StandInConverter("primary", 5, false);
+        StandInConverter secondary = new StandInConverter("secondary", 5, false);
+        router = newRouter(true, primary, secondary);
+
+        assertEquals("primary", convert());
+        assertEquals(0, secondary.calls.get());
+        assertEquals(0L, router.getStats().get("hedges"));
+    }
+
+    @Test
+    void throwsLastFailureWhenAllBackendsFail() {
+        StandInConverter first = new StandInConverter("first", 0, true);
+        StandInConverter second = new StandInConverter("second", 0, true);
+        router = newRouter(true, first, second);
+
+        IOException e = assertThrows(IOException.class, this::convert);
+        assertEquals("second failed", e.getMessage());
+        assertFalse(pdf.exists());
+        assertNoPartFiles();
+    }
+
+    private ConverterRouter newRouter(boolean hedge, StandInConverter... converters) {
+        ConverterRouter router = new ConverterRouter();
+        StringBuilder names = new StringBuilder();
+        for (StandInConverter converter : converters) {
+            names.append(names.length() > 0 ? "," : "").append(converter.getName());
+        }
+        ReflectionTestUtils.setField(router, "converters", Arrays.<DocxPdfConverter>asList(converters));
+        ReflectionTestUtils.setField(router, "backendNames", names.toString());
+        ReflectionTestUtils.setField(router, "windowSize", 20);
+        ReflectionTestUtils.setField(router, "minSamples", 3);
+        ReflectionTestUtils.setField(router, "maxErrorRate", 0.5);
+        ReflectionTestUtils.setField(router, "probeIntervalMs", 3600000L);
+        ReflectionTestUtils.setField(router, "hedgeEnabled", hedge);
+        ReflectionTestUtils.setField(router, "hedgeDefaultDelayMs", 100L);
+        ReflectionTestUtils.setField(router, "hedgeMinDelayMs", 50L);
+        ReflectionTestUtils.setField(router, "timeoutMs", 5000L);
+        router.init();
+        return router;
+    }
+
+    private String convert() throws Exception {
+        return router.convert(docx.getPath(), pdf.getPath(), cleanedDocx.getPath());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> backendStats(String name) {
+        Map<String, Object> backends = (Map<String, Object>) router.getStats().get("backends");
+        return (Map<String, Object>) backends.get(name);
+    }
+
+    private void assertNoPartFiles() {
+        String[] parts = tempDir.toFile().list((dir, name) -> name.endsWith(".part"));
+        assertEquals(0, parts == null ? 0 : parts.length, "临时文件未清理: " + Arrays.toString(parts));
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 替身后端：等待指定时间后写出 "pdf:{name}"，并把输入复制为清理后的 DOCX
+     */
+    private static class StandInConverter implements DocxPdfConverter {
+        private final String name;
+        private final long delayMs;
+        volatile boolean fail;
+        final AtomicInteger calls = new AtomicInteger();
+
+        StandInConverter(String name, long delayMs, boolean fail) {
+            this.name = name;
+            this.delayMs = delayMs;
+            this.fail = fail;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        public void convert(String docxPath, String pdfPath, String cleanedDocxPath) throws Exception {
+            calls.incrementAndGet();
+            Thread.sleep(delayMs);
+            if (fail) {
+                throw new IOException(name + " failed");
+            }
+            Files.write(new File(pdfPath).toPath(), ("pdf:" + name).getBytes(StandardCharsets.UTF_8));
+            if (cleanedDocxPath != null) {
+                Files.copy(new File(docxPath).toPath(), new File(cleanedDocxPath).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.docxserver.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DocxPdfServiceReprocessTest {
+
+    private static final String TASK_ID = "task-1";
+    private static final String HASH = "abc123";
+
+    @TempDir
+    Path tempDir;
+
+    private DocxPdfService service;
+    private DocxContentIndex contentIndex;
+    private TaskStateRegistry taskStateRegistry;
+    private TaskJournal taskJournal;
+    private SharedWorkQueue sharedWorkQueue;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        File taskDir = tempDir.resolve(TASK_ID).toFile();
+        taskDir.mkdirs();
+        Files.write(new File(taskDir, TASK_ID + ".docx").toPath(), "docx".getBytes(StandardCharsets.UTF_8));
+
+        contentIndex = new DocxContentIndex();
+        ReflectionTestUtils.setField(contentIndex, "basePath", tempDir.toString());
+        contentIndex.init();
+
+        taskStateRegistry = mock(TaskStateRegistry.class);
+        Map<String, Object> state = new HashMap<>();
+        state.put("taskId", TASK_ID);
+        state.put("status", DocxPdfService.STATUS_COMPLETED);
+        when(taskStateRegistry.get(TASK_ID)).thenReturn(state);
+
+        taskJournal = mock(TaskJournal.class);
+        TaskJournal.State journal = new TaskJournal.State();
+        journal.params = new HashMap<>();
+        journal.params.put("includeMcid", false);
+        journal.params.put("originalName", "合同");
+        journal.params.put("contentHash", HASH);
+        when(taskJournal.read(TASK_ID)).thenReturn(journal);
+
+        // 多实例模式：重新提取交给共享队列，不在测试中真正执行流水线
+        sharedWorkQueue = mock(SharedWorkQueue.class);
+        when(sharedWorkQueue.isEnabled()).thenReturn(true);
+        when(sharedWorkQueue.submit(anyString(), any(TaskPriority.class)))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        service = new DocxPdfService();
+        ReflectionTestUtils.setField(service, "basePath", tempDir.toString());
+        ReflectionTestUtils.setField(service, "contentIndex", contentIndex);
+        ReflectionTestUtils.setField(service, "taskStateRegistry", taskStateRegistry);
+        ReflectionTestUtils.setField(service, "taskJournal", taskJournal);
+        ReflectionTestUtils.setField(service, "sharedWorkQueue", sharedWorkQueue);
+        ReflectionTestUtils.setField(service, "storageManager", mock(StorageManager.class));
+        ReflectionTestUtils.setField(service, "progressPublisher", mock(TaskProgressPublisher.class));
+        ReflectionTestUtils.setField(service, "admissionController", mock(AdmissionController.class));
+    }
+
+    @Test
+    void dropsPreviousContentKeyWhenReprocessingWithDifferentMcid() {
+        String previousKey = DocxContentIndex.buildKey(HASH, false);
+        contentIndex.register(previousKey, TASK_ID);
+
+        service.reprocessTask(TASK_ID, true, TaskPriority.INTERACTIVE);
+
+        assertNull(contentIndex.lookup(previousKey));
+        assertNull(contentIndex.lookup(DocxContentIndex.buildKey(HASH, true)));
+        verify(sharedWorkQueue).submit(eq(TASK_ID), eq(TaskPriority.INTERACTIVE));
+    }
+
+    @Test
+    void keepsContentKeyOwnedByAnotherTask() {
+        String previousKey = DocxContentIndex.buildKey(HASH, false);
+        contentIndex.register(previousKey, "task-2");
+
+        service.reprocessTask(TASK_ID, true, TaskPriority.INTERACTIVE);
+
+        assertEquals("task-2", contentIndex.lookup(previousKey));
+    }
+}
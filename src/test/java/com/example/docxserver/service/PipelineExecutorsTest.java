@@ -0,0 +1,113 @@
+package com.example.docxserver.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PipelineExecutorsTest {
+
+    private PipelineExecutors executors;
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() {
+        executors = new PipelineExecutors();
+        for (String stage : new String[]{"convert", "extract", "render"}) {
+            ReflectionTestUtils.setField(executors, stage + "Threads", 1);
+            ReflectionTestUtils.setField(executors, stage + "QueueCapacity", 2);
+        }
+        ReflectionTestUtils.setField(executors, "interactiveReservedThreads", 1);
+        ReflectionTestUtils.setField(executors, "bulkClients", "");
+        ReflectionTestUtils.setField(executors, "retryAfterSeconds", 30);
+        executors.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executors.shutdown();
+    }
+
+    @Test
+    void entryRejectsWithoutBlockingWhenLaneIsFull() throws InterruptedException {
+        Executor entry = executors.forPriority(TaskPriority.BULK).getEntryExecutor();
+        occupy(entry);
+        PipelineExecutors.runAsync(() -> { }, entry);
+        PipelineExecutors.runAsync(() -> { }, entry);
+
+        assertFalse(executors.hasCapacity(TaskPriority.BULK));
+        assertTrue(executors.hasCapacity(TaskPriority.INTERACTIVE));
+        assertThrows(RejectedExecutionException.class, () -> PipelineExecutors.runAsync(() -> { }, entry));
+    }
+
+    @Test
+    void reportsIdleOnlyWithFreeThreadAndEmptyLane() throws InterruptedException {
+        assertTrue(executors.isIdle(TaskPriority.INTERACTIVE));
+
+        occupy(executors.forPriority(TaskPriority.INTERACTIVE).getEntryExecutor());
+        assertFalse(executors.isIdle(TaskPriority.INTERACTIVE));
+        assertFalse(executors.isIdle(TaskPriority.BULK));
+    }
+
+    @Test
+    void stageFailureCompletesFutureExceptionally() {
+        CompletableFuture<Void> future = PipelineExecutors.runAsync(() -> {
+            throw new IllegalStateException("stage failed");
+        }, executors.forPriority(TaskPriority.INTERACTIVE).getExtractExecutor());
+
+        CompletionException e = assertThrows(CompletionException.class, future::join);
+        assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+
+    @Test
+    void drainCancelsDroppedStagesAndLetsRunningOnesFinish() throws InterruptedException {
+        Executor entry = executors.forPriority(TaskPriority.INTERACTIVE).getEntryExecutor();
+        CompletableFuture<Void> running = occupy(entry);
+        AtomicBoolean droppedRan = new AtomicBoolean();
+        CompletableFuture<Void> queued = PipelineExecutors.runAsync(() -> droppedRan.set(true), entry);
+
+        assertEquals(1, executors.drainAndShutdown());
+        // 等待中的调用方立即得到取消，不会一直阻塞
+        assertTrue(queued.isCompletedExceptionally());
+        assertThrows(CancellationException.class, queued::join);
+        assertThrows(RejectedExecutionException.class, () -> PipelineExecutors.runAsync(() -> { }, entry));
+
+        release.countDown();
+        running.join();
+        assertTrue(executors.awaitTermination(5000));
+        assertFalse(droppedRan.get());
+    }
+
+    /**
+     * 提交一个阻塞到测试结束的任务，占住该阶段唯一的线程
+     */
+    private CompletableFuture<Void> occupy(Executor stage) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CompletableFuture<Void> future = PipelineExecutors.runAsync(() -> {
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, stage);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return future;
+    }
+}
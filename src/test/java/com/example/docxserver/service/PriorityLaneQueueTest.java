@@ -0,0 +1,179 @@
+package com.example.docxserver.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PriorityLaneQueueTest {
+
+    @Test
+    void dequeuesInteractiveBeforeBulk() {
+        PriorityLaneQueue queue = new PriorityLaneQueue(10, 2);
+        Runnable bulk1 = queue.wrap(() -> { }, TaskPriority.BULK);
+        Runnable bulk2 = queue.wrap(() -> { }, TaskPriority.BULK);
+        Runnable interactive1 = queue.wrap(() -> { }, TaskPriority.INTERACTIVE);
+        Runnable interactive2 = queue.wrap(() -> { }, TaskPriority.INTERACTIVE);
+
+        assertTrue(queue.offer(bulk1));
+        assertTrue(queue.offer(interactive1));
+        assertTrue(queue.offer(bulk2));
+        assertTrue(queue.offer(interactive2));
+
+        // 交互任务总在前，同一通道内先进先出
+        assertEquals(interactive1, queue.poll());
+        assertEquals(interactive2, queue.poll());
+        assertEquals(bulk1, queue.poll());
+        assertEquals(bulk2, queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    void treatsUnwrappedTasksAsInteractive() {
+        PriorityLaneQueue queue = new PriorityLaneQueue(1, 1);
+        Runnable bulk = queue.wrap(() -> { }, TaskPriority.BULK);
+        Runnable plain = () -> { };
+
+        assertTrue(queue.offer(bulk));
+        assertTrue(queue.offer(plain));
+        assertEquals(0, queue.remainingCapacity(TaskPriority.INTERACTIVE));
+        assertEquals(plain, queue.poll());
+    }
+
+    @Test
+    void capsRunningBulkTasksUntilTheyFinish() {
+        PriorityLaneQueue queue = new PriorityLaneQueue(10, 1);
+        Runnable bulk1 = queue.wrap(() -> { }, TaskPriority.BULK);
+        Runnable bulk2 = queue.wrap(() -> { }, TaskPriority.BULK);
+        queue.offer(bulk1);
+        queue.offer(bulk2);
+
+        assertEquals(bulk1, queue.poll());
+        // 已有 1 个 BULK 在执行：第二个留在队列中，交互任务不受影响
+        assertNull(queue.poll());
+        assertEquals(1, queue.size(TaskPriority.BULK));
+        Runnable interactive = queue.wrap(() -> { }, TaskPriority.INTERACTIVE);
+        queue.offer(interactive);
+        assertEquals(interactive, queue.poll());
+
+        // LaneTask.run 结束时归还名额
+        bulk1.run();
+        assertEquals(bulk2, queue.poll());
+    }
+
+    @Test
+    void releasesBulkSlotWhenTaskThrows() {
+        PriorityLaneQueue queue = new PriorityLaneQueue(10, 1);
+        Runnable failing = queue.wrap(() -> {
+            throw new IllegalStateException("boom");
+        }, TaskPriority.BULK);
+        Runnable next = queue.wrap(() -> { }, TaskPriority.BULK);
+        queue.offer(failing);
+        queue.offer(next);
+
+        assertEquals(failing, queue.poll());
+        assertThrows(IllegalStateException.class, failing::run);
+        assertEquals(next, queue.poll());
+    }
+
+    @Test
+    void keepsLaneCapacitiesIndependent() {
+        PriorityLaneQueue queue = new PriorityLaneQueue(2, 1);
+        assertTrue(queue.offer(queue.wrap(() -> { }, TaskPriority.BULK)));
+        assertTrue(queue.offer(queue.wrap(() -> { }, TaskPriority.BULK)));
+
+        // BULK 通道已满不影响交互通道入队
+        assertFalse(queue.offer(queue.wrap(() -> { }, TaskPriority.BULK)));
+        assertEquals(0, queue.remainingCapacity(TaskPriority.BULK));
+        assertEquals(2, queue.remainingCapacity(TaskPriority.INTERACTIVE));
+        assertTrue(queue.offer(queue.wrap(() -> { }, TaskPriority.INTERACTIVE)));
+        assertTrue(queue.offer(queue.wrap(() -> { }, TaskPriority.INTERACTIVE)));
+        assertFalse(queue.offer(queue.wrap(() -> { }, TaskPriority.INTERACTIVE)));
+
+        assertEquals(4, queue.size());
+        assertEquals(0, queue.remainingCapacity());
+    }
+
+    @Test
+    void reportsLaneIdleOnlyWhenNewTaskCanStartImmediately() {
+        PriorityLaneQueue queue = new PriorityLaneQueue(10, 1);
+        assertTrue(queue.isLaneIdle(TaskPriority.INTERACTIVE));
+        assertTrue(queue.isLaneIdle(TaskPriority.BULK));
+
+        Runnable bulk = queue.wrap(() -> { }, TaskPriority.BULK);
+        queue.offer(bulk);
+        assertFalse(queue.isLaneIdle(TaskPriority.BULK));
+        assertTrue(queue.isLaneIdle(TaskPriority.INTERACTIVE));
+
+        // 队列已空，但唯一的 BULK 执行名额还被占用
+        assertEquals(bulk, queue.poll());
+        assertFalse(queue.isLaneIdle(TaskPriority.BULK));
+        bulk.run();
+        assertTrue(queue.isLaneIdle(TaskPriority.BULK));
+    }
+
+    @Test
+    void drainsInteractiveFirstRegardlessOfBulkLimit() {
+        PriorityLaneQueue queue = new PriorityLaneQueue(10, 1);
+        Runnable bulk1 = queue.wrap(() -> { }, TaskPriority.BULK);
+        Runnable bulk2 = queue.wrap(() -> { }, TaskPriority.BULK);
+        Runnable interactive = queue.wrap(() -> { }, TaskPriority.INTERACTIVE);
+        queue.offer(bulk1);
+        queue.offer(bulk2);
+        queue.offer(interactive);
+
+        List<Runnable> drained = new ArrayList<>();
+        assertEquals(3, queue.drainTo(drained));
+        assertEquals(interactive, drained.get(0));
+        assertEquals(Collections.emptyList(), new ArrayList<>(queue));
+    }
+
+    @Test
+    void reservesThreadForInteractiveTasksInPrestartedPool() throws Exception {
+        // 2 个线程、BULK 上限 1：第 2 个线程只执行交互任务
+        PriorityLaneQueue queue = new PriorityLaneQueue(10, 1);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 60L, TimeUnit.SECONDS, queue);
+        executor.prestartAllCoreThreads();
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch bulkStarted = new CountDownLatch(1);
+            CountDownLatch secondBulkStarted = new CountDownLatch(1);
+            CountDownLatch interactiveDone = new CountDownLatch(1);
+
+            executor.execute(queue.wrap(() -> {
+                bulkStarted.countDown();
+                await(release);
+            }, TaskPriority.BULK));
+            assertTrue(bulkStarted.await(5, TimeUnit.SECONDS));
+            executor.execute(queue.wrap(secondBulkStarted::countDown, TaskPriority.BULK));
+            executor.execute(queue.wrap(interactiveDone::countDown, TaskPriority.INTERACTIVE));
+
+            // 第二个 BULK 排队等待名额，交互任务由空闲线程立即执行
+            assertTrue(interactiveDone.await(5, TimeUnit.SECONDS));
+            assertFalse(secondBulkStarted.await(200, TimeUnit.MILLISECONDS));
+
+            release.countDown();
+            assertTrue(secondBulkStarted.await(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.docxserver.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TaskCancellationTest {
+
+    private TaskCancellation cancellation;
+
+    @BeforeEach
+    void setUp() {
+        cancellation = new TaskCancellation();
+        ReflectionTestUtils.setField(cancellation, "deadlineMs", 0L);
+    }
+
+    @Test
+    void cancelMarksRunningTask() {
+        TaskCancellation.Token token = cancellation.register("t1");
+        cancellation.cancel("t1");
+
+        assertTrue(token.isCancelled());
+        assertTrue(cancellation.isCancelled("t1"));
+    }
+
+    @Test
+    void cancelBeforeStartTakesEffectOnRegisterWithoutCreatingToken() {
+        cancellation.cancel("t1");
+
+        assertTrue(cancellation.isCancelled("t1"));
+        assertFalse(cancellation.isRegistered("t1"));
+        assertTrue(cancellation.activeTaskIds().isEmpty());
+
+        assertTrue(cancellation.register("t1").isCancelled());
+    }
+
+    @Test
+    void unregisterClearsPendingCancel() {
+        cancellation.cancel("t1");
+        cancellation.unregister("t1");
+
+        assertFalse(cancellation.isCancelled("t1"));
+        assertFalse(cancellation.register("t1").isCancelled());
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.docxserver.util.common;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DocxZipValidatorTest {
+
+    private static final String CONTENT_TYPES = "[Content_Types].xml";
+    private static final String DOCUMENT = "word/document.xml";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void acceptsMinimalDocx() throws IOException {
+        byte[] docx = zip(null, 0, CONTENT_TYPES, DOCUMENT);
+
+        DocxZipValidator.validate(docx);
+        validateStreamed(docx, 1000);
+    }
+
+    @Test
+    void acceptsDocxWithArchiveComment() throws IOException {
+        byte[] docx = zip("由文档编辑器生成", 0, CONTENT_TYPES, DOCUMENT);
+
+        DocxZipValidator.validate(docx);
+        validateStreamed(docx, 7);
+    }
+
+    @Test
+    void rejectsZipWithoutDocumentPart() {
+        byte[] zip = zip(null, 0, CONTENT_TYPES, "xl/workbook.xml");
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> DocxZipValidator.validate(zip));
+        assertEquals("不是有效的DOCX文件：缺少 " + CONTENT_TYPES + " 或 " + DOCUMENT, e.getMessage());
+    }
+
+    @Test
+    void rejectsNonZipContent() {
+        byte[] text = "这不是一个DOCX文件".getBytes(StandardCharsets.UTF_8);
+
+        assertThrows(IllegalArgumentException.class, () -> DocxZipValidator.validate(text));
+        assertThrows(IllegalArgumentException.class, () -> DocxZipValidator.validate(new byte[0]));
+    }
+
+    @Test
+    void rejectsTruncatedZip() {
+        byte[] docx = zip(null, 0, CONTENT_TYPES, DOCUMENT);
+        byte[] truncated = Arrays.copyOf(docx, docx.length - 10);
+
+        assertThrows(IllegalArgumentException.class, () -> DocxZipValidator.validate(truncated));
+    }
+
+    @Test
+    void rejectsCorruptCentralDirectory() {
+        byte[] docx = zip(null, 0, CONTENT_TYPES, DOCUMENT);
+        // 破坏第一个中央目录条目的签名（中央目录偏移位于 EOCD + 16）
+        int eocd = docx.length - 22;
+        int cdOffset = (docx[eocd + 16] & 0xFF) | (docx[eocd + 17] & 0xFF) << 8
+                | (docx[eocd + 18] & 0xFF) << 16 | (docx[eocd + 19] & 0xFF) << 24;
+        docx[cdOffset] = 0;
+
+        assertThrows(IllegalArgumentException.class, () -> DocxZipValidator.validate(docx));
+    }
+
+    @Test
+    void keepsTailAcrossChunkBoundariesAndLargeWrites() throws IOException {
+        // 大于保留尾部（256 KB）的不可压缩内容，使环形缓冲区多次回绕
+        byte[] docx = zip(null, 700 * 1024, CONTENT_TYPES, DOCUMENT);
+
+        validateStreamed(docx, 8191);
+        validateStreamed(docx, 300 * 1024);
+        validateStreamed(docx, docx.length);
+    }
+
+    @Test
+    void rereadsCentralDirectoryLargerThanTail() throws IOException {
+        // 条目很多：中央目录超过保留尾部，需要回读文件
+        String[] names = new String[4000];
+        names[0] = CONTENT_TYPES;
+        names[1] = DOCUMENT;
+        for (int i = 2; i < names.length; i++) {
+            names[i] = String.format("word/media/embedded_object_with_a_rather_long_name_%05d.bin", i);
+        }
+        byte[] docx = zip(null, 0, names);
+
+        validateStreamed(docx, 64 * 1024);
+    }
+
+    private void validateStreamed(byte[] docx, int chunkSize) throws IOException {
+        File file = tempDir.resolve("upload-" + chunkSize + ".docx").toFile();
+        Files.write(file.toPath(), docx);
+
+        DocxZipValidator validator = new DocxZipValidator();
+        for (int off = 0; off < docx.length; off += chunkSize) {
+            validator.update(docx, off, Math.min(chunkSize, docx.length - off));
+        }
+        assertEquals(docx.length, validator.getTotal());
+        validator.validate(file, docx.length);
+    }
+
+    /**
+     * 构造 ZIP：每个条目写入少量内容，第一个条目额外写入 padding 字节的随机数据（不可压缩）
+     */
+    private static byte[] zip(String comment, int padding, String... names) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(bytes)) {
+            if (comment != null) {
+                zos.setComment(comment);
+            }
+            Random random = new Random(42);
+            for (int i = 0; i < names.length; i++) {
+                zos.putNextEntry(new ZipEntry(names[i]));
+                zos.write("<xml/>".getBytes(StandardCharsets.UTF_8));
+                if (i == 0 && padding > 0) {
+                    byte[] noise = new byte[padding];
+                    random.nextBytes(noise);
+                    zos.write(noise);
+                }
+                zos.closeEntry();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+}
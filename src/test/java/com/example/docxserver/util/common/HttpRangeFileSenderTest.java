@@ -0,0 +1,133 @@
+package com.example.docxserver.util.common;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class HttpRangeFileSenderTest {
+
+    private static final String ETAG = "\"v1\"";
+    private static final String CONTENT = "0123456789";
+
+    @TempDir
+    Path tempDir;
+
+    private File file;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        file = tempDir.resolve("result.txt").toFile();
+        Files.write(file.toPath(), CONTENT.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void parsesClosedRange() {
+        assertArrayEquals(new long[]{2, 5}, HttpRangeFileSender.parseRange("bytes=2-5", 10));
+        assertArrayEquals(new long[]{0, 0}, HttpRangeFileSender.parseRange("bytes=0-0", 10));
+    }
+
+    @Test
+    void parsesOpenEndedRange() {
+        assertArrayEquals(new long[]{0, 9}, HttpRangeFileSender.parseRange("bytes=0-", 10));
+        assertArrayEquals(new long[]{7, 9}, HttpRangeFileSender.parseRange("bytes=7-", 10));
+    }
+
+    @Test
+    void parsesSuffixRange() {
+        assertArrayEquals(new long[]{7, 9}, HttpRangeFileSender.parseRange("bytes=-3", 10));
+        // 后缀长度超过文件长度：返回整个文件
+        assertArrayEquals(new long[]{0, 9}, HttpRangeFileSender.parseRange("bytes=-20", 10));
+    }
+
+    @Test
+    void clampsEndBeyondLength() {
+        assertArrayEquals(new long[]{5, 9}, HttpRangeFileSender.parseRange("bytes=5-100", 10));
+    }
+
+    @Test
+    void reportsUnsatisfiableRanges() {
+        assertEquals(0, HttpRangeFileSender.parseRange("bytes=10-", 10).length);
+        assertEquals(0, HttpRangeFileSender.parseRange("bytes=20-30", 10).length);
+        assertEquals(0, HttpRangeFileSender.parseRange("bytes=-0", 10).length);
+        assertEquals(0, HttpRangeFileSender.parseRange("bytes=0-", 0).length);
+    }
+
+    @Test
+    void ignoresUnrecognizedRanges() {
+        assertNull(HttpRangeFileSender.parseRange("bytes=0-1,4-5", 10));
+        assertNull(HttpRangeFileSender.parseRange("items=0-1", 10));
+        assertNull(HttpRangeFileSender.parseRange("bytes=abc", 10));
+        assertNull(HttpRangeFileSender.parseRange("bytes=a-b", 10));
+    }
+
+    @Test
+    void sendsPartialContent() throws IOException {
+        MockHttpServletResponse response = send("bytes=2-5", null);
+
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 2-5/10", response.getHeader("Content-Range"));
+        assertEquals("4", response.getHeader("Content-Length"));
+        assertEquals("2345", response.getContentAsString());
+    }
+
+    @Test
+    void answersUnsatisfiableRangeWith416() throws IOException {
+        MockHttpServletResponse response = send("bytes=10-20", null);
+
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */10", response.getHeader("Content-Range"));
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    void fallsBackToFullContentForMultipleRanges() throws IOException {
+        MockHttpServletResponse response = send("bytes=0-1,4-5", null);
+
+        assertEquals(200, response.getStatus());
+        assertNull(response.getHeader("Content-Range"));
+        assertEquals(CONTENT, response.getContentAsString());
+    }
+
+    @Test
+    void ignoresRangeWhenIfRangeDoesNotMatch() throws IOException {
+        MockHttpServletResponse response = send("bytes=2-5", "\"v0\"");
+
+        assertEquals(200, response.getStatus());
+        assertEquals(CONTENT, response.getContentAsString());
+    }
+
+    @Test
+    void answersMatchingETagWith304() throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/download");
+        request.addHeader("If-None-Match", ETAG);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        HttpRangeFileSender.send(request, response, file, ETAG, "result.txt");
+
+        assertEquals(304, response.getStatus());
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    private MockHttpServletResponse send(String range, String ifRange) throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/download");
+        request.addHeader("Range", range);
+        if (ifRange != null) {
+            request.addHeader("If-Range", ifRange);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        HttpRangeFileSender.send(request, response, file, ETAG, "result.txt");
+        return response;
+    }
+}
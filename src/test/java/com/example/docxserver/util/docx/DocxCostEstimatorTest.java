@@ -0,0 +1,156 @@
+package com.example.docxserver.util.docx;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DocxCostEstimatorTest {
+
+    private static final String DOCUMENT_HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+            + "<w:document xmlns:w=\"http://schemas.openxmlformats.org/wordprocessingml/2006/main\""
+            + " xmlns:v=\"urn:schemas-microsoft-com:vml\"><w:body>";
+    private static final String DOCUMENT_FOOTER = "</w:body></w:document>";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void countsDocumentStructure() throws IOException {
+        String body = paragraph("第一章 招标公告")
+                + "<w:tbl><w:tr><w:tc>" + paragraph("名称") + "</w:tc><w:tc>" + paragraph("数量") + "</w:tc></w:tr>"
+                + "<w:tr><w:tc>" + paragraph("服务器") + "</w:tc><w:tc>" + paragraph("2") + "</w:tc></w:tr></w:tbl>"
+                + "<w:p><w:r><w:drawing/></w:r><w:r><w:pict><v:shape/></w:pict></w:r></w:p>"
+                + "<w:p><w:r><w:lastRenderedPageBreak/><w:t>第二页</w:t></w:r></w:p>"
+                + "<w:p><w:r><w:br w:type=\"page\"/><w:br/></w:r></w:p>";
+        byte[] media = new byte[3 * 1024 * 1024];
+        byte[] docx = docx(body, media);
+
+        DocxCostEstimator.Estimate estimate = DocxCostEstimator.estimate(docx);
+
+        assertEquals(8, estimate.paragraphs);
+        assertEquals(1, estimate.tables);
+        assertEquals(4, estimate.cells);
+        assertEquals(2, estimate.images);
+        assertEquals("第一章 招标公告名称数量服务器2第二页".length(), estimate.chars);
+        // lastRenderedPageBreak 和 w:type="page" 的分页符，普通换行不计
+        assertEquals(2, estimate.pageBreaks);
+        assertEquals(3, estimate.estimatedPages);
+        assertEquals(media.length, estimate.mediaBytes);
+        assertTrue(estimate.heapMb >= 64 + 12, "图片按解码后约 4 倍计入内存: " + estimate.heapMb);
+    }
+
+    @Test
+    void fileAndInMemoryEstimatesAgree() throws IOException {
+        byte[] docx = docx(paragraph("正文") + "<w:tbl><w:tr><w:tc>" + paragraph("单元格") + "</w:tc></w:tr></w:tbl>",
+                new byte[4096]);
+        File file = tempDir.resolve("input.docx").toFile();
+        Files.write(file.toPath(), docx);
+
+        DocxCostEstimator.Estimate fromBytes = DocxCostEstimator.estimate(docx);
+        DocxCostEstimator.Estimate fromFile = DocxCostEstimator.estimate(file);
+
+        assertEquals(fromBytes.toString(), fromFile.toString());
+        assertEquals(fromBytes.mediaBytes, fromFile.mediaBytes);
+        assertEquals(fromBytes.chars, fromFile.chars);
+    }
+
+    @Test
+    void estimatesPagesFromContentWithoutPageBreaks() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 5 * 1800; i++) {
+            text.append('字');
+        }
+        DocxCostEstimator.Estimate estimate = DocxCostEstimator.estimate(docx(paragraph(text.toString()), null));
+
+        assertEquals(0, estimate.pageBreaks);
+        assertEquals(5, estimate.estimatedPages);
+    }
+
+    @Test
+    void costGrowsWithDocumentSize() throws IOException {
+        DocxCostEstimator.Estimate small = DocxCostEstimator.estimate(docx(paragraph("短文档"), null));
+
+        StringBuilder rows = new StringBuilder("<w:tbl>");
+        for (int r = 0; r < 200; r++) {
+            rows.append("<w:tr>");
+            for (int c = 0; c < 5; c++) {
+                rows.append("<w:tc>").append(paragraph("单元格" + r + "-" + c)).append("</w:tc>");
+            }
+            rows.append("</w:tr>");
+        }
+        rows.append("</w:tbl>");
+        DocxCostEstimator.Estimate large = DocxCostEstimator.estimate(docx(rows.toString(), null));
+
+        assertEquals(1, small.estimatedPages);
+        assertEquals(1000, large.cells);
+        assertTrue(large.cpuSeconds > small.cpuSeconds);
+        assertTrue(large.heapMb > small.heapMb);
+    }
+
+    @Test
+    void failsWithoutDocumentPart() {
+        byte[] zip = zip(singleEntry("word/styles.xml", "<styles/>".getBytes(StandardCharsets.UTF_8)));
+        File file = tempDir.resolve("no-document.docx").toFile();
+
+        assertThrows(IOException.class, () -> DocxCostEstimator.estimate(zip));
+        assertThrows(IOException.class, () -> {
+            Files.write(file.toPath(), zip);
+            DocxCostEstimator.estimate(file);
+        });
+    }
+
+    @Test
+    void failsOnMalformedDocumentXml() {
+        byte[] zip = zip(singleEntry("word/document.xml", "<w:document><w:body>".getBytes(StandardCharsets.UTF_8)));
+
+        assertThrows(IOException.class, () -> DocxCostEstimator.estimate(zip));
+    }
+
+    private static String paragraph(String text) {
+        return "<w:p><w:r><w:t>" + text + "</w:t></w:r></w:p>";
+    }
+
+    private static byte[] docx(String body, byte[] media) {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("[Content_Types].xml", "<Types/>".getBytes(StandardCharsets.UTF_8));
+        entries.put("word/document.xml", (DOCUMENT_HEADER + body + DOCUMENT_FOOTER).getBytes(StandardCharsets.UTF_8));
+        if (media != null) {
+            entries.put("word/media/image1.png", media);
+        }
+        return zip(entries);
+    }
+
+    private static Map<String, byte[]> singleEntry(String name, byte[] content) {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put(name, content);
+        return entries;
+    }
+
+    private static byte[] zip(Map<String, byte[]> entries) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(bytes)) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                zos.putNextEntry(new ZipEntry(entry.getKey()));
+                zos.write(entry.getValue());
+                zos.closeEntry();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.docxserver.util.taggedPDF;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PageOffsetIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    private PDDocument doc;
+    private File txtFile;
+
+    /**
+     * 输出缓冲区和各元素区间：元素之间夹杂不属于任何元素的文本，元素含多字节字符（含 4 字节的表情符号）
+     */
+    private final StringBuilder content = new StringBuilder();
+    private int[] first;
+    private int[] spanning;
+    private int[] last;
+
+    @BeforeEach
+    void setUp() {
+        doc = new PDDocument();
+        for (int i = 0; i < 4; i++) {
+            doc.addPage(new PDPage());
+        }
+        txtFile = tempDir.resolve("task_table.txt").toFile();
+
+        content.append("文档开头的说明文字\n");
+        first = append("<p page=\"1\">第一页：甲方（以下简称“买方”）</p>\n");
+        content.append("元素之间的文字\n");
+        spanning = append("<table page=\"1|2|3\"><tr><td>跨页表格，单价￥1,000</td></tr></table>\n");
+        last = append("<p page=\"3\">第三页：签字 😀 盖章</p>\n");
+        content.append("结尾");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        doc.close();
+    }
+
+    @Test
+    void writesUtf8TxtAndByteOffsets() throws IOException {
+        PageOffsetIndex.Builder builder = newBuilder();
+        builder.write(content, txtFile);
+
+        assertEquals(content.toString(), new String(Files.readAllBytes(txtFile.toPath()), StandardCharsets.UTF_8));
+
+        try (DataInputStream in = new DataInputStream(
+                Files.newInputStream(PageOffsetIndex.indexFileFor(txtFile).toPath()))) {
+            assertEquals(0x50494458, in.readInt());
+            assertEquals(1, in.readInt());
+            assertEquals(4, in.readInt());
+            assertEquals(3, in.readInt());
+
+            // 页表：[firstElement, endElement)，第 4 页没有元素
+            int[][] pages = {{0, 2}, {1, 2}, {1, 3}, {0, 0}};
+            for (int[] page : pages) {
+                assertEquals(page[0], in.readInt());
+                assertEquals(page[1], in.readInt());
+            }
+
+            // 元素表：字节偏移和长度按 UTF-8 换算，不是字符偏移
+            int[][] elements = {{first[0], first[1], 1, 1}, {spanning[0], spanning[1], 1, 3}, {last[0], last[1], 3, 3}};
+            for (int[] element : elements) {
+                assertEquals(utf8Length(0, element[0]), in.readLong());
+                assertEquals(utf8Length(element[0], element[1]), in.readInt());
+                assertEquals(element[2], in.readInt());
+                assertEquals(element[3], in.readInt());
+            }
+        }
+        assertTrue(utf8Length(0, last[0]) > last[0], "测试数据须包含多字节字符");
+    }
+
+    @Test
+    void readsElementsOverlappingPageRange() throws IOException {
+        newBuilder().write(content, txtFile);
+
+        PageOffsetIndex.PageSlice page1 = PageOffsetIndex.read(txtFile, 1, 1);
+        assertEquals(4, page1.pageCount);
+        assertEquals(Arrays.asList(text(first), text(spanning)), page1.elements);
+
+        // 跨页元素在它覆盖的每一页都能读到
+        assertEquals(Collections.singletonList(text(spanning)), PageOffsetIndex.read(txtFile, 2, 2).elements);
+        assertEquals(Arrays.asList(text(spanning), text(last)), PageOffsetIndex.read(txtFile, 3, 3).elements);
+        assertEquals(Arrays.asList(text(first), text(spanning), text(last)),
+                PageOffsetIndex.read(txtFile, 1, 4).elements);
+    }
+
+    @Test
+    void returnsEmptySliceForPagesWithoutElements() throws IOException {
+        newBuilder().write(content, txtFile);
+
+        assertEquals(Collections.emptyList(), PageOffsetIndex.read(txtFile, 4, 4).elements);
+        // 超出文档范围的页码被截断
+        assertEquals(Collections.emptyList(), PageOffsetIndex.read(txtFile, 5, 10).elements);
+        assertEquals(Arrays.asList(text(first), text(spanning)), PageOffsetIndex.read(txtFile, -3, 1).elements);
+    }
+
+    @Test
+    void mapsPdPagesToPageNumbers() throws IOException {
+        // getPage 为 0-based：元素分别位于第 2 页和第 3~4 页
+        PageOffsetIndex.Builder builder = new PageOffsetIndex.Builder(doc);
+        builder.addPages(first[0], first[1], Collections.singletonList(doc.getPage(1)));
+        builder.addPages(spanning[0], spanning[1], Arrays.asList(doc.getPage(3), doc.getPage(2)));
+        builder.write(content, txtFile);
+
+        assertEquals(Collections.singletonList(text(first)), PageOffsetIndex.read(txtFile, 2, 2).elements);
+        assertEquals(Collections.singletonList(text(spanning)), PageOffsetIndex.read(txtFile, 3, 3).elements);
+        assertEquals(Collections.singletonList(text(spanning)), PageOffsetIndex.read(txtFile, 4, 4).elements);
+        assertEquals(Collections.emptyList(), PageOffsetIndex.read(txtFile, 1, 1).elements);
+    }
+
+    @Test
+    void skipsElementsWithoutValidPages() throws IOException {
+        PageOffsetIndex.Builder builder = new PageOffsetIndex.Builder(doc);
+        builder.add(first[0], first[1], Collections.<Integer>emptyList());
+        builder.add(spanning[0], spanning[1], Arrays.asList(0, 9));
+        builder.add(last[0], last[1], Collections.singletonList(3));
+        builder.write(content, txtFile);
+
+        assertEquals(content.toString(), new String(Files.readAllBytes(txtFile.toPath()), StandardCharsets.UTF_8));
+        assertEquals(Collections.singletonList(text(last)), PageOffsetIndex.read(txtFile, 1, 4).elements);
+    }
+
+    @Test
+    void rejectsElementsOutOfOrderOrOverlapping() {
+        PageOffsetIndex.Builder builder = new PageOffsetIndex.Builder(doc);
+        builder.add(spanning[0], spanning[1], Collections.singletonList(1));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> builder.add(first[0], first[1], Collections.singletonList(1)));
+        assertThrows(IllegalArgumentException.class,
+                () -> builder.add(spanning[1] - 1, last[1], Collections.singletonList(2)));
+        assertThrows(IllegalArgumentException.class,
+                () -> builder.add(last[1], last[0], Collections.singletonList(3)));
+    }
+
+    @Test
+    void returnsNullWithoutIndexFile() throws IOException {
+        Files.write(txtFile.toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+
+        assertNull(PageOffsetIndex.read(txtFile, 1, 1));
+    }
+
+    private PageOffsetIndex.Builder newBuilder() {
+        PageOffsetIndex.Builder builder = new PageOffsetIndex.Builder(doc);
+        builder.add(first[0], first[1], Collections.singletonList(1));
+        builder.add(spanning[0], spanning[1], Arrays.asList(1, 2, 3));
+        builder.add(last[0], last[1], Collections.singletonList(3));
+        return builder;
+    }
+
+    private int[] append(String element) {
+        int start = content.length();
+        content.append(element);
+        return new int[]{start, content.length()};
+    }
+
+    private String text(int[] element) {
+        return content.substring(element[0], element[1]);
+    }
+
+    private int utf8Length(int start, int end) {
+        return content.substring(start, end).getBytes(StandardCharsets.UTF_8).length;
+    }
+}